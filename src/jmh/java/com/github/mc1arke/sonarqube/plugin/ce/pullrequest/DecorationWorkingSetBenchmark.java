@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.ComponentImpl;
+import org.sonar.ce.task.projectanalysis.component.FileAttributes;
+import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+import org.sonar.core.issue.DefaultIssue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares filtering a decoration's issues against the pull request's changed files, and checking issue keys against
+ * the keys of open issues, using list scans (as decoration previously did) and using {@link DecorationWorkingSet}.
+ * <br>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DecorationWorkingSetBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int issueCount;
+
+    @Param({"100", "1000", "10000"})
+    private int changedFileCount;
+
+    private List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private List<String> changedFiles;
+
+    @Setup
+    public void setUp() {
+        changedFiles = new ArrayList<>(changedFileCount);
+        for (int i = 0; i < changedFileCount; i++) {
+            changedFiles.add("/src/main/java/File" + (i * 2) + ".java");
+        }
+
+        List<Component> components = new ArrayList<>();
+        for (int i = 0; i < changedFileCount * 2; i++) {
+            components.add(ComponentImpl.builder(Component.Type.FILE)
+                    .setUuid("uuid" + i)
+                    .setKey("key" + i)
+                    .setName("File" + i + ".java")
+                    .setShortName("File" + i + ".java")
+                    .setStatus(Component.Status.CHANGED)
+                    .setReportAttributes(ReportAttributes.newBuilder(i).setScmPath("src/main/java/File" + i + ".java").build())
+                    .setFileAttributes(new FileAttributes(false, "java", 10))
+                    .build());
+        }
+
+        issues = new ArrayList<>(issueCount);
+        for (int i = 0; i < issueCount; i++) {
+            DefaultIssue defaultIssue = new DefaultIssue()
+                    .setKey("issue" + i)
+                    .setStatus("OPEN")
+                    .setLine(1);
+            issues.add(new PostAnalysisIssueVisitor.ComponentIssue(components.get(i % components.size()),
+                    new PostAnalysisIssueVisitor.LightIssue(defaultIssue)));
+        }
+    }
+
+    @Benchmark
+    public int listScan() {
+        List<PostAnalysisIssueVisitor.ComponentIssue> issuesInChangedFiles = issues.stream()
+                .filter(issue -> issue.getScmPath().isPresent() && (changedFiles.contains("/" + issue.getScmPath().get())
+                        || changedFiles.contains(issue.getScmPath().get())))
+                .collect(Collectors.toList());
+        List<String> openIssueKeys = issues.stream()
+                .map(issue -> issue.getIssue().key())
+                .collect(Collectors.toList());
+
+        int matches = 0;
+        for (PostAnalysisIssueVisitor.ComponentIssue issue : issuesInChangedFiles) {
+            if (openIssueKeys.contains(issue.getIssue().key())) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int workingSet() {
+        DecorationWorkingSet workingSet = DecorationWorkingSet.create(changedFiles, issues, issues);
+
+        int matches = 0;
+        for (PostAnalysisIssueVisitor.ComponentIssue issue : workingSet.getIssuesInChangedFiles()) {
+            if (workingSet.isOpenIssue(issue.getIssue().key())) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -18,16 +18,30 @@
  */
 package com.github.mc1arke.sonarqube.plugin;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsCommitChangesCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.DefaultGithubClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.AppJwtCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.DefaultUrlConnectionProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.InstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.DefaultGraphqlProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmBindingCache;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationMetrics;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestPostAnalysisTask;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -54,6 +68,8 @@ import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.SetGithubBindingAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.SetGitlabBindingAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.ValidateBindingAction;
+import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.CommunityBranchWs;
+import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.action.MetricsAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.PullRequestWs;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.action.DeleteAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.action.ListAction;
@@ -74,6 +90,8 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
 
     public static final String IMAGE_URL_BASE = "com.github.mc1arke.sonarqube.plugin.branch.image-url-base";
 
+    private static final String PULL_REQUEST_DECORATION_SUBCATEGORY = "Pull Request Decoration";
+
     @Override
     public String getName() {
         return "Community Branch Plugin";
@@ -82,7 +100,10 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
     @Override
     public void load(CoreExtension.Context context) {
         if (SonarQubeSide.COMPUTE_ENGINE == context.getRuntime().getSonarQubeSide()) {
-            context.addExtensions(CommunityReportAnalysisComponentProvider.class);
+            context.addExtensions(CommunityReportAnalysisComponentProvider.class, DecorationExecutor.class, AlmOperationExecutor.class,
+                    AlmBindingCache.class, AlmApiMetrics.class, DecorationMetrics.class, AlmHttpClientPool.class,
+                    AlmResponseCache.class, AlmRateLimiter.class, AlmCircuitBreaker.class, HttpClientBuilderFactory.class, InstallationTokenCache.class, AppJwtCache.class,
+                    AzureDevopsCommitChangesCache.class);
         } else if (SonarQubeSide.SERVER == context.getRuntime().getSonarQubeSide()) {
             context.addExtensions(CommunityBranchFeatureExtension.class, CommunityBranchSupportDelegate.class,
                                   DeleteBindingAction.class,
@@ -95,6 +116,8 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                     DeleteAction.class,
                     ListAction.class,
                     PullRequestWs.class,
+                    MetricsAction.class,
+                    CommunityBranchWs.class,
 
                     GithubValidator.class,
                     DefaultGraphqlProvider.class,
@@ -102,13 +125,22 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                     DefaultLinkHeaderReader.class,
                     DefaultUrlConnectionProvider.class,
                     RestApplicationAuthenticationProvider.class,
+                    InstallationTokenCache.class,
+                    AppJwtCache.class,
                     HttpClientBuilderFactory.class,
                     DefaultBitbucketClientFactory.class,
                     BitbucketValidator.class,
                     GitlabValidator.class,
                     DefaultGitlabClientFactory.class,
                     DefaultAzureDevopsClientFactory.class,
+                    AzureDevopsCommitChangesCache.class,
                     AzureDevopsValidator.class,
+                    AlmApiMetrics.class,
+                    AlmHttpClientPool.class,
+                    AlmResponseCache.class,
+                    AlmRateLimiter.class,
+                    AlmCircuitBreaker.class,
+                    AlmOperationExecutor.class,
 
                 /* org.sonar.db.purge.PurgeConfiguration uses the value for the this property if it's configured, so it only
                 needs to be specified here, but doesn't need any additional classes to perform the relevant purge/cleanup
@@ -155,6 +187,168 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                                           .description("Base URL used to load the images for the PR comments (please use this only if images are not displayed properly).")
                                           .type(PropertyType.STRING)
                                           .build(),
+                                  PropertyDefinition.builder(DecorationExecutor.ASYNC_DECORATION_ENABLED)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Decorate pull requests asynchronously")
+                                          .description("Run pull request decoration on a dedicated pool of Compute Engine threads so analysis tasks complete without waiting for the ALM to respond. Changes take effect when the Compute Engine is restarted.")
+                                          .type(PropertyType.BOOLEAN)
+                                          .defaultValue("false")
+                                          .index(1)
+                                          .build(),
+                                  PropertyDefinition.builder(DecorationExecutor.ASYNC_DECORATION_THREADS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Asynchronous decoration threads")
+                                          .description("Number of threads used to decorate pull requests when asynchronous decoration is enabled.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(DecorationExecutor.DEFAULT_THREADS))
+                                          .index(2)
+                                          .build(),
+                                  PropertyDefinition.builder(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Asynchronous decoration queue size")
+                                          .description("Maximum number of pull request decorations waiting for a thread. Once the queue is full, decoration runs as part of the analysis task.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(DecorationExecutor.DEFAULT_QUEUE_SIZE))
+                                          .index(3)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmOperationExecutor.ALM_OPERATION_THREADS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Concurrent ALM operations")
+                                          .description("Maximum number of discussions resolved or comments posted concurrently against each type of ALM. Set to 1 to perform these operations one at a time. Changes take effect when the Compute Engine is restarted.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmOperationExecutor.DEFAULT_THREADS))
+                                          .index(4)
+                                          .build(),
+                                  PropertyDefinition.builder(PostAnalysisIssueVisitor.RETAIN_SCM_FILE_ISSUES_ONLY)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Only retain issues on files under source control")
+                                          .description("Discard issues that are not on a file with an SCM path whilst analysing pull requests, rather than holding them in memory until decoration. Issues on directories or the project are then not included in the issue counts of the summary comment.")
+                                          .type(PropertyType.BOOLEAN)
+                                          .defaultValue("false")
+                                          .index(5)
+                                          .build(),
+                                  PropertyDefinition.builder(PostAnalysisIssueVisitor.RETAIN_CHANGED_FILE_ISSUES_ONLY)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Only retain issues on files changed by the pull request")
+                                          .description("Discard issues on files the scanner reported no changed lines for whilst analysing pull requests. This implies only retaining issues on files under source control. Existing comments for issues on unchanged files are resolved during decoration.")
+                                          .type(PropertyType.BOOLEAN)
+                                          .defaultValue("false")
+                                          .index(6)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmBindingCache.CACHE_EXPIRY_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM binding cache expiry")
+                                          .description("Number of seconds the Compute Engine reuses a project's ALM binding and ALM settings after reading them, rather than reading them again for each pull request analysis. Changes to a binding or ALM setting may take this long to be used for decoration. Set to 0 to always read the current values.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmBindingCache.DEFAULT_EXPIRY_SECONDS))
+                                          .index(7)
+                                          .build(),
+                                  PropertyDefinition.builder(PullRequestPostAnalysisTask.DECORATION_TIMEOUT_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Decoration time limit")
+                                          .description("Number of seconds each pull request decoration has to complete its calls to the ALM. Calls to the ALM time out once this limit is reached, and optional updates such as issue comments and annotations are skipped, although the quality gate status is still reported.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(PullRequestPostAnalysisTask.DEFAULT_DECORATION_TIMEOUT_SECONDS))
+                                          .index(8)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmHttpClientPool.MAX_CONNECTIONS_PER_ROUTE)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM connections per host")
+                                          .description("Maximum number of connections kept open to each host for each GitLab or Azure DevOps ALM setting. Requests wait for a connection to become free once this many are in use.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmHttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE))
+                                          .index(9)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmHttpClientPool.KEEP_ALIVE_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM connection keep-alive")
+                                          .description("Maximum number of seconds a GitLab or Azure DevOps connection is kept for reuse after a request. A shorter period is used if the ALM asks for one.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmHttpClientPool.DEFAULT_KEEP_ALIVE_SECONDS))
+                                          .index(10)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmHttpClientPool.IDLE_TIMEOUT_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM connection idle timeout")
+                                          .description("Number of seconds a GitLab, Azure DevOps or Bitbucket connection can be left unused before it is closed.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmHttpClientPool.DEFAULT_IDLE_TIMEOUT_SECONDS))
+                                          .index(11)
+                                          .build(),
+                                  PropertyDefinition.builder(DefaultGithubClientFactory.MAX_ANNOTATIONS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Github annotation limit")
+                                          .description("Maximum number of issues reported as annotations on a Github check run. Issues beyond the limit are left out of the check run. Set to 0 to report all issues.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(DefaultGithubClientFactory.DEFAULT_MAX_ANNOTATIONS))
+                                          .index(12)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmResponseCache.MAX_SIZE_MB)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM response cache size (MB)")
+                                          .description("Maximum total size of ALM responses kept so repeated reads can be revalidated with ETag or Last-Modified rather than downloaded again. Set to 0 to disable the cache.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmResponseCache.DEFAULT_MAX_SIZE_MB))
+                                          .index(13)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmRateLimiter.LOW_QUOTA_THRESHOLD)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM rate limit pacing threshold")
+                                          .description("Once an ALM reports this many or fewer calls remaining in its rate limit, calls to it are spread evenly over the time until the limit resets. Set to 0 to only wait once the limit is exhausted.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmRateLimiter.DEFAULT_LOW_QUOTA_THRESHOLD))
+                                          .index(14)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmRateLimiter.MAX_WAIT_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM rate limit maximum wait (seconds)")
+                                          .description("Maximum time a call to an ALM is held waiting for its rate limit before being sent anyway. Calls rejected as rate limited are retried if the ALM will accept them within this time.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmRateLimiter.DEFAULT_MAX_WAIT_SECONDS))
+                                          .index(15)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmCircuitBreaker.FAILURE_THRESHOLD)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM circuit breaker failure threshold")
+                                          .description("Number of consecutive calls to an ALM host that have to fail, without a response or with a server error, before further calls to it fail immediately rather than being attempted.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD))
+                                          .index(16)
+                                          .build(),
+                                  PropertyDefinition.builder(AlmCircuitBreaker.OPEN_SECONDS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("ALM circuit breaker open period (seconds)")
+                                          .description("Time calls to a failing ALM host fail immediately for before a single call is attempted to test whether the host has recovered.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(AlmCircuitBreaker.DEFAULT_OPEN_SECONDS))
+                                          .index(17)
+                                          .build(),
+                                  PropertyDefinition.builder(HttpClientBuilderFactory.MAX_IDLE_CONNECTIONS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(PULL_REQUEST_DECORATION_SUBCATEGORY)
+                                          .name("Bitbucket idle connections")
+                                          .description("Maximum number of unused connections kept open for reuse across all Bitbucket hosts. Further connections are closed once their request completes.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue(String.valueOf(HttpClientBuilderFactory.DEFAULT_MAX_IDLE_CONNECTIONS))
+                                          .index(18)
+                                          .build(),
                 MonoRepoFeature.class);
 
         }
@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts the calls made to each ALM host, broken down by the type of operation being performed, along with the time
+ * taken by the calls, the size of the responses received and the number of retries needed. The counts cover the
+ * lifetime of the process. Where a client reports how its connections are obtained, the number of requests served by
+ * a newly opened connection rather than one reused from a pool is also counted for each host.
+ * <br>
+ * A {@link TaskSummary} can also be started on the thread performing a decoration to total up the calls made for that
+ * decoration alone. Operations handed off to other threads need to be wrapped with {@link #inCurrentTask(Consumer)}
+ * for their calls to be included.
+ */
+@ComputeEngineSide
+@ServerSide
+public class AlmApiMetrics {
+
+    static final long[] LATENCY_BUCKETS_MILLIS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private static final String UNKNOWN_HOST = "unknown";
+    private static final ThreadLocal<TaskSummary> CURRENT_TASK = new ThreadLocal<>();
+
+    private final Map<OperationKey, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionMetrics> connections = new ConcurrentHashMap<>();
+    private final LongSupplier nanoTimeSupplier;
+
+    public AlmApiMetrics() {
+        this(System::nanoTime);
+    }
+
+    AlmApiMetrics(LongSupplier nanoTimeSupplier) {
+        super();
+        this.nanoTimeSupplier = nanoTimeSupplier;
+    }
+
+    /**
+     * Starts timing a call to the ALM. The call is recorded when the returned {@link Call} is closed, and is counted as
+     * a failure unless {@link Call#succeeded()} was called before then.
+     *
+     * @param apiUrl the URL, or base URL, being called, which the host is taken from
+     * @param operation the type of operation being performed, such as {@code getPullRequest} or {@code resolveDiscussion}
+     */
+    public Call startCall(String apiUrl, String operation) {
+        return new Call(getOperationMetrics(apiUrl, operation), CURRENT_TASK.get(), nanoTimeSupplier);
+    }
+
+    public void recordRetry(String apiUrl, String operation) {
+        getOperationMetrics(apiUrl, operation).retries.increment();
+        TaskSummary taskSummary = CURRENT_TASK.get();
+        if (null != taskSummary) {
+            taskSummary.retries.increment();
+        }
+    }
+
+    /**
+     * Records a connection being obtained for a request to the ALM.
+     *
+     * @param reused whether the connection was taken from a pool rather than being newly opened
+     */
+    public void recordConnection(String apiUrl, boolean reused) {
+        ConnectionMetrics connectionMetrics = connections.computeIfAbsent(getHost(apiUrl), key -> new ConnectionMetrics());
+        if (reused) {
+            connectionMetrics.reused.increment();
+        } else {
+            connectionMetrics.opened.increment();
+        }
+    }
+
+    /**
+     * Starts totalling the calls made on the current thread. The summary stops collecting once it's closed.
+     */
+    public TaskSummary startTask() {
+        TaskSummary taskSummary = new TaskSummary();
+        CURRENT_TASK.set(taskSummary);
+        return taskSummary;
+    }
+
+    /**
+     * Wraps the operation so calls it makes are included in the {@link TaskSummary} active on the current thread, even
+     * when the operation is run on a different thread.
+     */
+    public static <T> Consumer<T> inCurrentTask(Consumer<T> operation) {
+        TaskSummary taskSummary = CURRENT_TASK.get();
+        if (null == taskSummary) {
+            return operation;
+        }
+        return item -> {
+            TaskSummary previous = CURRENT_TASK.get();
+            CURRENT_TASK.set(taskSummary);
+            try {
+                operation.accept(item);
+            } finally {
+                if (null == previous) {
+                    CURRENT_TASK.remove();
+                } else {
+                    CURRENT_TASK.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the current counts for every host and operation that has been called, ordered by host then operation
+     */
+    public List<OperationSnapshot> getSnapshot() {
+        List<OperationSnapshot> snapshot = new ArrayList<>(operations.size());
+        operations.forEach((key, metrics) -> snapshot.add(metrics.snapshot(key)));
+        snapshot.sort(Comparator.comparing(OperationSnapshot::getHost).thenComparing(OperationSnapshot::getOperation));
+        return snapshot;
+    }
+
+    /**
+     * @return the number of connections opened and reused for every host that connections have been recorded for,
+     * ordered by host
+     */
+    public List<ConnectionSnapshot> getConnectionSnapshot() {
+        List<ConnectionSnapshot> snapshot = new ArrayList<>(connections.size());
+        connections.forEach((host, metrics) -> snapshot.add(new ConnectionSnapshot(host, metrics.opened.sum(), metrics.reused.sum())));
+        snapshot.sort(Comparator.comparing(ConnectionSnapshot::getHost));
+        return snapshot;
+    }
+
+    private OperationMetrics getOperationMetrics(String apiUrl, String operation) {
+        return operations.computeIfAbsent(new OperationKey(getHost(apiUrl), operation), key -> new OperationMetrics());
+    }
+
+    static String getHost(String apiUrl) {
+        if (null == apiUrl) {
+            return UNKNOWN_HOST;
+        }
+        try {
+            String host = URI.create(apiUrl.trim()).getHost();
+            return null == host ? UNKNOWN_HOST : host;
+        } catch (IllegalArgumentException ex) {
+            return UNKNOWN_HOST;
+        }
+    }
+
+    public static final class Call implements AutoCloseable {
+
+        private final OperationMetrics operationMetrics;
+        private final TaskSummary taskSummary;
+        private final LongSupplier nanoTimeSupplier;
+        private final long startNanos;
+        private long payloadBytes;
+        private boolean succeeded;
+        private boolean closed;
+
+        private Call(OperationMetrics operationMetrics, TaskSummary taskSummary, LongSupplier nanoTimeSupplier) {
+            this.operationMetrics = operationMetrics;
+            this.taskSummary = taskSummary;
+            this.nanoTimeSupplier = nanoTimeSupplier;
+            this.startNanos = nanoTimeSupplier.getAsLong();
+        }
+
+        public void setPayloadBytes(long payloadBytes) {
+            this.payloadBytes = Math.max(0, payloadBytes);
+        }
+
+        /**
+         * Wraps the stream a response body is read from, so the bytes read from it are recorded as the payload size
+         * without the body having to be buffered to measure it.
+         */
+        public InputStream countPayloadBytes(InputStream inputStream) {
+            return new FilterInputStream(inputStream) {
+                @Override
+                public int read() throws IOException {
+                    int value = super.read();
+                    if (value >= 0) {
+                        payloadBytes++;
+                    }
+                    return value;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int count = super.read(buffer, offset, length);
+                    if (count > 0) {
+                        payloadBytes += count;
+                    }
+                    return count;
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    long skipped = super.skip(count);
+                    payloadBytes += Math.max(0, skipped);
+                    return skipped;
+                }
+            };
+        }
+
+        public void succeeded() {
+            this.succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(nanoTimeSupplier.getAsLong() - startNanos);
+            operationMetrics.record(durationMillis, payloadBytes, succeeded);
+            if (null != taskSummary) {
+                taskSummary.record(durationMillis, payloadBytes, succeeded);
+            }
+        }
+    }
+
+    public static final class TaskSummary implements AutoCloseable {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAdder payloadBytes = new LongAdder();
+
+        private TaskSummary() {
+            super();
+        }
+
+        private void record(long durationMillis, long payloadBytes, boolean succeeded) {
+            calls.increment();
+            if (!succeeded) {
+                failures.increment();
+            }
+            totalMillis.add(durationMillis);
+            this.payloadBytes.add(payloadBytes);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getTotalMillis() {
+            return totalMillis.sum();
+        }
+
+        public long getPayloadBytes() {
+            return payloadBytes.sum();
+        }
+
+        @Override
+        public void close() {
+            if (CURRENT_TASK.get() == this) {
+                CURRENT_TASK.remove();
+            }
+        }
+    }
+
+    public static final class OperationSnapshot {
+
+        private final String host;
+        private final String operation;
+        private final long calls;
+        private final long failures;
+        private final long retries;
+        private final long totalMillis;
+        private final long maxMillis;
+        private final long payloadBytes;
+        private final Map<String, Long> latencyHistogram;
+
+        private OperationSnapshot(String host, String operation, long calls, long failures, long retries,
+                                  long totalMillis, long maxMillis, long payloadBytes, Map<String, Long> latencyHistogram) {
+            this.host = host;
+            this.operation = operation;
+            this.calls = calls;
+            this.failures = failures;
+            this.retries = retries;
+            this.totalMillis = totalMillis;
+            this.maxMillis = maxMillis;
+            this.payloadBytes = payloadBytes;
+            this.latencyHistogram = latencyHistogram;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getPayloadBytes() {
+            return payloadBytes;
+        }
+
+        /**
+         * @return the number of calls taking up to each bucket's number of milliseconds, and more than the previous
+         * bucket's, with {@code +Inf} holding the calls slower than every bucket
+         */
+        public Map<String, Long> getLatencyHistogram() {
+            return latencyHistogram;
+        }
+    }
+
+    public static final class ConnectionSnapshot {
+
+        private final String host;
+        private final long opened;
+        private final long reused;
+
+        private ConnectionSnapshot(String host, long opened, long reused) {
+            this.host = host;
+            this.opened = opened;
+            this.reused = reused;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getOpened() {
+            return opened;
+        }
+
+        public long getReused() {
+            return reused;
+        }
+    }
+
+    private static final class ConnectionMetrics {
+
+        private final LongAdder opened = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+    }
+
+    private static final class OperationMetrics {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAccumulator maxMillis = new LongAccumulator(Long::max, 0);
+        private final LongAdder payloadBytes = new LongAdder();
+        private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+
+        private void record(long durationMillis, long payloadBytes, boolean succeeded) {
+            calls.increment();
+            if (!succeeded) {
+                failures.increment();
+            }
+            totalMillis.add(durationMillis);
+            maxMillis.accumulate(durationMillis);
+            this.payloadBytes.add(payloadBytes);
+            latencyBuckets.incrementAndGet(getBucketIndex(durationMillis));
+        }
+
+        private OperationSnapshot snapshot(OperationKey key) {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+                histogram.put(String.valueOf(LATENCY_BUCKETS_MILLIS[i]), latencyBuckets.get(i));
+            }
+            histogram.put("+Inf", latencyBuckets.get(LATENCY_BUCKETS_MILLIS.length));
+            return new OperationSnapshot(key.host, key.operation, calls.sum(), failures.sum(), retries.sum(),
+                    totalMillis.sum(), maxMillis.get(), payloadBytes.sum(), Collections.unmodifiableMap(histogram));
+        }
+
+        private static int getBucketIndex(long durationMillis) {
+            for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+                if (durationMillis <= LATENCY_BUCKETS_MILLIS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BUCKETS_MILLIS.length;
+        }
+    }
+
+    private static final class OperationKey {
+
+        private final String host;
+        private final String operation;
+
+        private OperationKey(String host, String operation) {
+            this.host = host;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            OperationKey that = (OperationKey) o;
+            return host.equals(that.host) && operation.equals(that.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, operation);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the results of read calls made through an ALM client for the lifetime of a single decoration, so the same
+ * pull request, user or discussion list is only downloaded once however many times the decorator asks for it. Each
+ * result is keyed by the name of the call and its arguments. Clients that write to the ALM have to either update or
+ * invalidate the entries their write affects, since nothing here ever expires on its own.
+ * <br>
+ * Operations may be run concurrently by the decorator, so entries can be read and updated from multiple threads.
+ */
+public final class AlmCallMemo {
+
+    private final Map<List<Object>, Object> results = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the result previously recorded for the call, or performs the call and records the result if there isn't
+     * one. Failures and {@code null} results are never recorded, so are retried on the next request.
+     */
+    public <T> T get(String call, List<Object> arguments, Loader<T> loader) throws IOException {
+        List<Object> key = createKey(call, arguments);
+        @SuppressWarnings("unchecked")
+        T result = (T) results.get(key);
+        if (null != result) {
+            return result;
+        }
+
+        result = loader.load();
+        if (null != result) {
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the recorded result of a call with the output of the given function, leaving the call unrecorded if
+     * it has not previously been made.
+     */
+    public <T> void update(String call, List<Object> arguments, UnaryOperator<T> updater) {
+        results.computeIfPresent(createKey(call, arguments), (key, value) -> {
+            @SuppressWarnings("unchecked")
+            T current = (T) value;
+            return updater.apply(current);
+        });
+    }
+
+    /**
+     * Records an item returned from a write at the end of the recorded list result of a call, so the list reflects
+     * the write without being downloaded again. The recorded list is copied rather than modified, since it may already
+     * have been handed out.
+     */
+    public <T> void append(String call, List<Object> arguments, T item) {
+        this.<List<T>>update(call, arguments, current -> {
+            List<T> updated = new ArrayList<>(current.size() + 1);
+            updated.addAll(current);
+            updated.add(item);
+            return updated;
+        });
+    }
+
+    public void invalidate(String call, List<Object> arguments) {
+        results.remove(createKey(call, arguments));
+    }
+
+    private static List<Object> createKey(String call, List<Object> arguments) {
+        List<Object> key = new ArrayList<>(arguments.size() + 1);
+        key.add(call);
+        key.addAll(arguments);
+        return key;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+}
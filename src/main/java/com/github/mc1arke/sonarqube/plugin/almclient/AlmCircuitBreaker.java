@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks whether calls to each ALM host are succeeding. Once a number of consecutive calls to a host have failed,
+ * either without a response or with a server error, the host's circuit is opened and further calls fail immediately
+ * with an {@link AlmUnavailableException}, so decorations stop waiting on a host that isn't responding. Once the open
+ * period has passed, a single call is let through to test the host: the circuit closes again if it succeeds, and
+ * re-opens if it fails.
+ */
+@ComputeEngineSide
+@ServerSide
+public class AlmCircuitBreaker {
+
+    public static final String FAILURE_THRESHOLD = "com.github.mc1arke.sonarqube.plugin.branch.decoration.circuit-breaker.failure-threshold";
+    public static final String OPEN_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.circuit-breaker.open-seconds";
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_OPEN_SECONDS = 30;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmCircuitBreaker.class);
+
+    private final Configuration configuration;
+    private final Clock clock;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public AlmCircuitBreaker(Configuration configuration, Clock clock) {
+        super();
+        this.configuration = configuration;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the circuit shared by every client calling the given host
+     */
+    public Circuit getCircuit(String host) {
+        return circuits.computeIfAbsent(host.toLowerCase(Locale.ENGLISH), key -> new Circuit(key,
+                Math.max(1, configuration.getInt(FAILURE_THRESHOLD).orElse(DEFAULT_FAILURE_THRESHOLD)),
+                TimeUnit.SECONDS.toMillis(Math.max(1, configuration.getInt(OPEN_SECONDS).orElse(DEFAULT_OPEN_SECONDS))),
+                clock));
+    }
+
+    /**
+     * @return the circuit for the host the given URL refers to
+     */
+    public Circuit getCircuitForUrl(String url) {
+        return getCircuit(getHost(url));
+    }
+
+    /**
+     * Creates a circuit using the default settings that isn't shared with any other client, for clients created
+     * without a circuit breaker.
+     */
+    public static Circuit createUnsharedCircuit(String url) {
+        return new Circuit(getHost(url), DEFAULT_FAILURE_THRESHOLD, TimeUnit.SECONDS.toMillis(DEFAULT_OPEN_SECONDS), Clock.systemUTC());
+    }
+
+    private static String getHost(String url) {
+        try {
+            return Optional.ofNullable(URI.create(url).getHost()).orElse(url);
+        } catch (IllegalArgumentException ex) {
+            return url;
+        }
+    }
+
+    /**
+     * The state of calls to a single host. Callers {@link #acquire()} the circuit before each call, then record
+     * whether the call succeeded or failed.
+     */
+    public static final class Circuit {
+
+        private final String host;
+        private final int failureThreshold;
+        private final long openMillis;
+        private final Clock clock;
+        private int consecutiveFailures;
+        private long openUntilMillis;
+
+        private Circuit(String host, int failureThreshold, long openMillis, Clock clock) {
+            this.host = host;
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+            this.clock = clock;
+        }
+
+        /**
+         * @throws AlmUnavailableException if the circuit is open, or a trial call is already testing whether the host
+         * has recovered
+         */
+        public synchronized void acquire() throws AlmUnavailableException {
+            long nowMillis = clock.millis();
+            if (nowMillis < openUntilMillis) {
+                throw new AlmUnavailableException(String.format("Calls to %s are failing, so are not being attempted until %s", host, Instant.ofEpochMilli(openUntilMillis)));
+            }
+            if (consecutiveFailures >= failureThreshold) {
+                // let this call through as a trial, and hold any others until it completes or the open period passes again
+                openUntilMillis = nowMillis + openMillis;
+            }
+        }
+
+        public synchronized void recordSuccess() {
+            if (consecutiveFailures >= failureThreshold) {
+                LOGGER.info("Calls to {} are succeeding again", host);
+            }
+            consecutiveFailures = 0;
+            openUntilMillis = 0;
+        }
+
+        public synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (consecutiveFailures < failureThreshold) {
+                return;
+            }
+            if (consecutiveFailures == failureThreshold) {
+                LOGGER.warn("{} consecutive calls to {} have failed. Further calls will fail without being attempted for {}s",
+                        consecutiveFailures, host, TimeUnit.MILLISECONDS.toSeconds(openMillis));
+            }
+            openUntilMillis = clock.millis() + openMillis;
+        }
+    }
+}
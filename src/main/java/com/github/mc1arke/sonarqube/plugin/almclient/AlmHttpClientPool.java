@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds a pooled HTTP client for each ALM setting, so connections to the ALM are kept alive and reused across
+ * requests, and across decorations, rather than a new connection and TLS handshake being needed for every request.
+ * The clients are shared, so callers must close the responses they receive but never the clients themselves. GET
+ * requests are revalidated against {@link AlmResponseCache} where an earlier response is held, requests to each
+ * ALM setting are paced by its {@link AlmRateLimiter} bucket, and requests to a host whose {@link AlmCircuitBreaker}
+ * circuit is open fail straight away, with idempotent requests being retried as {@link AlmRetryPolicy} allows.
+ */
+@ComputeEngineSide
+@ServerSide
+public class AlmHttpClientPool implements Startable {
+
+    public static final String MAX_CONNECTIONS_PER_ROUTE = "com.github.mc1arke.sonarqube.plugin.branch.decoration.http.max-connections-per-route";
+    public static final String KEEP_ALIVE_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.http.keep-alive-seconds";
+    public static final String IDLE_TIMEOUT_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.http.idle-timeout-seconds";
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmHttpClientPool.class);
+
+    private final Configuration configuration;
+    private final AlmResponseCache responseCache;
+    private final AlmRateLimiter rateLimiter;
+    private final AlmCircuitBreaker circuitBreaker;
+    private final Map<String, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+
+    public AlmHttpClientPool(Configuration configuration, AlmResponseCache responseCache, AlmRateLimiter rateLimiter,
+                             AlmCircuitBreaker circuitBreaker) {
+        super();
+        this.configuration = configuration;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void start() {
+        // clients are created on first use for each ALM setting
+    }
+
+    @Override
+    public void stop() {
+        httpClients.values().forEach(AlmHttpClientPool::close);
+        httpClients.clear();
+    }
+
+    /**
+     * @return the shared client for the given ALM setting, which is keyed on the setting's UUID, or on its URL for
+     * settings that haven't been saved yet
+     */
+    public CloseableHttpClient getHttpClient(AlmSettingDto almSettingDto) {
+        String key = Optional.ofNullable(almSettingDto.getUuid()).orElseGet(almSettingDto::getUrl);
+        return httpClients.computeIfAbsent(key, k -> createHttpClient(rateLimiter.getBucket(almSettingDto)));
+    }
+
+    private CloseableHttpClient createHttpClient(AlmRateLimiter.Bucket rateLimitBucket) {
+        int maxConnectionsPerRoute = Math.max(1, configuration.getInt(MAX_CONNECTIONS_PER_ROUTE).orElse(DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(Math.max(1, configuration.getLong(KEEP_ALIVE_SECONDS).orElse(DEFAULT_KEEP_ALIVE_SECONDS)));
+        long idleTimeoutSeconds = Math.max(1, configuration.getLong(IDLE_TIMEOUT_SECONDS).orElse(DEFAULT_IDLE_TIMEOUT_SECONDS));
+
+        ConditionalRequestInterceptor conditionalRequestInterceptor = new ConditionalRequestInterceptor(responseCache);
+        RateLimitInterceptor rateLimitInterceptor = new RateLimitInterceptor(rateLimitBucket);
+        ResilienceInterceptor resilienceInterceptor = new ResilienceInterceptor(circuitBreaker);
+        return HttpClients.custom()
+                .useSystemProperties()
+                .addInterceptorLast((HttpRequestInterceptor) resilienceInterceptor)
+                .addInterceptorLast((HttpResponseInterceptor) resilienceInterceptor)
+                .setRetryHandler(resilienceInterceptor)
+                .addInterceptorLast((HttpRequestInterceptor) rateLimitInterceptor)
+                .addInterceptorLast((HttpResponseInterceptor) rateLimitInterceptor)
+                .setServiceUnavailableRetryStrategy(anyOf(rateLimitInterceptor, resilienceInterceptor))
+                .addInterceptorLast((HttpRequestInterceptor) conditionalRequestInterceptor)
+                .addInterceptorLast((HttpResponseInterceptor) conditionalRequestInterceptor)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnectionsPerRoute)
+                .setKeepAliveStrategy(createKeepAliveStrategy(keepAliveMillis))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Keeps connections alive for as long as the ALM allows, as given in its {@code Keep-Alive} header, but no longer
+     * than the configured maximum.
+     */
+    static ConnectionKeepAliveStrategy createKeepAliveStrategy(long maxKeepAliveMillis) {
+        return (response, context) -> {
+            long serverKeepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAliveMillis > 0 ? Math.min(serverKeepAliveMillis, maxKeepAliveMillis) : maxKeepAliveMillis;
+        };
+    }
+
+    /**
+     * Retries a response if any of the strategies want it retried. Each strategy waits before deciding to retry, so no
+     * interval is applied between retries.
+     */
+    private static ServiceUnavailableRetryStrategy anyOf(ServiceUnavailableRetryStrategy... strategies) {
+        return new ServiceUnavailableRetryStrategy() {
+            @Override
+            public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+                for (ServiceUnavailableRetryStrategy strategy : strategies) {
+                    if (strategy.retryRequest(response, executionCount, context)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public long getRetryInterval() {
+                return 0;
+            }
+        };
+    }
+
+    private static void close(CloseableHttpClient httpClient) {
+        try {
+            httpClient.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Could not close ALM HTTP client", ex);
+        }
+    }
+}
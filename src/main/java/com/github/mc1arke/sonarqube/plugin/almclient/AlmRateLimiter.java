@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces the calls made to each ALM so decorations slow down as the ALM's rate limit quota runs low, rather than
+ * exhausting it and failing. Every client for an ALM setting shares a single {@link Bucket}, which is kept up to date
+ * from the {@code X-RateLimit-*}, {@code RateLimit-*} and {@code Retry-After} headers on each response the ALM sends.
+ * <br>
+ * Calls are sent without delay until the remaining quota reported by the ALM falls to the configured threshold, after
+ * which they're spread evenly over the time left until the quota resets. Once the quota is exhausted, or the ALM
+ * rejects a call as rate limited, calls are held until the quota resets or the time given in {@code Retry-After} has
+ * passed. No call is held for longer than the configured maximum wait, or beyond the deadline of the decoration making
+ * it, after which it's sent anyway and left to the ALM to accept or reject.
+ */
+@ComputeEngineSide
+@ServerSide
+public class AlmRateLimiter {
+
+    public static final String LOW_QUOTA_THRESHOLD = "com.github.mc1arke.sonarqube.plugin.branch.decoration.rate-limit.low-quota-threshold";
+    public static final String MAX_WAIT_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.rate-limit.max-wait-seconds";
+
+    public static final int DEFAULT_LOW_QUOTA_THRESHOLD = 50;
+    public static final int DEFAULT_MAX_WAIT_SECONDS = 60;
+
+    /**
+     * The number of times a call rejected as rate limited is sent again once the limit allows it.
+     */
+    public static final int MAX_RETRIES = 2;
+
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(60);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmRateLimiter.class);
+    // reset headers give either an epoch timestamp or a number of seconds to wait, and no sensible delay is this large
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    private final Configuration configuration;
+    private final Clock clock;
+    private final Sleeper sleeper;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public AlmRateLimiter(Configuration configuration, Clock clock) {
+        this(configuration, clock, Thread::sleep);
+    }
+
+    AlmRateLimiter(Configuration configuration, Clock clock, Sleeper sleeper) {
+        super();
+        this.configuration = configuration;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @return the bucket shared by every client for the given ALM setting, which is keyed on the setting's UUID, or on
+     * its URL for settings that haven't been saved yet
+     */
+    public Bucket getBucket(AlmSettingDto almSettingDto) {
+        String key = Optional.ofNullable(almSettingDto.getUuid())
+                .or(() -> Optional.ofNullable(almSettingDto.getUrl()))
+                .orElseGet(() -> String.valueOf(almSettingDto.getKey()));
+        String name = Optional.ofNullable(almSettingDto.getKey()).orElse(key);
+        return buckets.computeIfAbsent(key, k -> new Bucket(name,
+                Math.max(0, configuration.getInt(LOW_QUOTA_THRESHOLD).orElse(DEFAULT_LOW_QUOTA_THRESHOLD)),
+                TimeUnit.SECONDS.toMillis(Math.max(0, configuration.getInt(MAX_WAIT_SECONDS).orElse(DEFAULT_MAX_WAIT_SECONDS))),
+                clock, sleeper));
+    }
+
+    /**
+     * Creates a bucket using the default settings that isn't shared with any other client or included in
+     * {@link #getSnapshot()}, for clients created without a rate limiter.
+     */
+    public static Bucket createUnsharedBucket(String name) {
+        return new Bucket(name, DEFAULT_LOW_QUOTA_THRESHOLD, TimeUnit.SECONDS.toMillis(DEFAULT_MAX_WAIT_SECONDS), Clock.systemUTC(), Thread::sleep);
+    }
+
+    /**
+     * @return the quota last reported by, and the number of calls delayed or rejected by, each ALM setting that has
+     * been called, ordered by the name of the setting
+     */
+    public List<BucketSnapshot> getSnapshot() {
+        List<BucketSnapshot> snapshot = new ArrayList<>(buckets.size());
+        buckets.values().forEach(bucket -> snapshot.add(bucket.snapshot()));
+        snapshot.sort(Comparator.comparing(BucketSnapshot::getAlmSetting));
+        return snapshot;
+    }
+
+    /**
+     * @return whether the response shows the call was rejected for exceeding a rate limit. Some ALMs respond with a
+     * {@code 403} rather than a {@code 429}, so a {@code 403} is treated as rate limited if it reports no remaining
+     * quota or asks for the call to be retried later.
+     */
+    public static boolean isRateLimited(int statusCode, AlmResponseCache.HeaderLookup headers) {
+        if (statusCode == 429) {
+            return true;
+        }
+        return statusCode == 403 && (null != headers.getHeader("Retry-After")
+                || parseLong(headers, "X-RateLimit-Remaining", "RateLimit-Remaining").orElse(-1) == 0);
+    }
+
+    private static OptionalLong parseLong(AlmResponseCache.HeaderLookup headers, String... names) {
+        for (String name : names) {
+            String value = headers.getHeader(name);
+            if (null == value) {
+                continue;
+            }
+            try {
+                return OptionalLong.of(Long.parseLong(value.trim()));
+            } catch (NumberFormatException ex) {
+                LOGGER.debug("Could not parse {} header value '{}'", name, value);
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    private static OptionalLong parseRetryAfter(String retryAfter, long nowMillis) {
+        if (null == retryAfter) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(nowMillis + TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException ex) {
+            // Retry-After may also be given as an HTTP date
+        }
+        try {
+            return OptionalLong.of(ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli());
+        } catch (DateTimeParseException ex) {
+            LOGGER.debug("Could not parse Retry-After header value '{}'", retryAfter);
+            return OptionalLong.empty();
+        }
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /**
+     * The rate limit state for a single ALM setting. Callers {@link #acquire()} a permit before sending each call and
+     * {@link #update(int, AlmResponseCache.HeaderLookup)} the bucket with every response received.
+     */
+    public static final class Bucket {
+
+        private final String name;
+        private final int lowQuotaThreshold;
+        private final long maxWaitMillis;
+        private final Clock clock;
+        private final Sleeper sleeper;
+        private final LongAdder delayedCalls = new LongAdder();
+        private final LongAdder delayMillis = new LongAdder();
+        private final LongAdder rateLimitedResponses = new LongAdder();
+        private long limit = -1;
+        private long remaining = -1;
+        private long resetAtMillis;
+        private long pausedUntilMillis;
+        private long nextPermitMillis;
+
+        private Bucket(String name, int lowQuotaThreshold, long maxWaitMillis, Clock clock, Sleeper sleeper) {
+            this.name = name;
+            this.lowQuotaThreshold = lowQuotaThreshold;
+            this.maxWaitMillis = maxWaitMillis;
+            this.clock = clock;
+            this.sleeper = sleeper;
+        }
+
+        /**
+         * Blocks until the ALM's rate limit allows another call to be sent, or the maximum wait has passed.
+         *
+         * @throws InterruptedIOException if the thread is interrupted whilst waiting
+         */
+        public void acquire() throws InterruptedIOException {
+            long waitMillis = Math.min(reserve(), getMaxWaitMillis());
+            if (waitMillis <= 0) {
+                return;
+            }
+
+            delayedCalls.increment();
+            delayMillis.add(waitMillis);
+            LOGGER.debug("Delaying call to {} by {}ms to stay within its rate limit", name, waitMillis);
+            try {
+                sleeper.sleep(waitMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException exception = new InterruptedIOException("Interrupted whilst waiting for the rate limit of " + name);
+                exception.initCause(ex);
+                throw exception;
+            }
+        }
+
+        /**
+         * Records the quota reported in a response from the ALM.
+         *
+         * @return whether the call was rejected as rate limited, in which case any further calls are held until the
+         * ALM allows them
+         */
+        public synchronized boolean update(int statusCode, AlmResponseCache.HeaderLookup headers) {
+            long nowMillis = clock.millis();
+            parseLong(headers, "X-RateLimit-Limit", "RateLimit-Limit").ifPresent(value -> limit = value);
+            parseLong(headers, "X-RateLimit-Remaining", "RateLimit-Remaining").ifPresent(value -> remaining = value);
+            parseLong(headers, "X-RateLimit-Reset", "RateLimit-Reset")
+                    .ifPresent(value -> resetAtMillis = value > EPOCH_SECONDS_THRESHOLD ? TimeUnit.SECONDS.toMillis(value) : nowMillis + TimeUnit.SECONDS.toMillis(value));
+
+            boolean rateLimited = isRateLimited(statusCode, headers);
+            OptionalLong retryAfter = parseRetryAfter(headers.getHeader("Retry-After"), nowMillis);
+            if (retryAfter.isPresent()) {
+                pausedUntilMillis = Math.max(pausedUntilMillis, retryAfter.getAsLong());
+            } else if (rateLimited) {
+                long pauseMillis = remaining == 0 && resetAtMillis > nowMillis ? resetAtMillis : nowMillis + DEFAULT_RETRY_AFTER.toMillis();
+                pausedUntilMillis = Math.max(pausedUntilMillis, pauseMillis);
+            }
+
+            if (rateLimited) {
+                rateLimitedResponses.increment();
+                LOGGER.debug("Call to {} was rate limited. Further calls are held until {}", name, Instant.ofEpochMilli(pausedUntilMillis));
+            }
+            return rateLimited;
+        }
+
+        /**
+         * @param retries the number of times the call has already been retried
+         * @return whether a call rejected as rate limited should be sent again, which is only done if the ALM will
+         * accept it within the maximum wait
+         */
+        public synchronized boolean shouldRetry(int retries) {
+            return retries < MAX_RETRIES && pausedUntilMillis - clock.millis() <= getMaxWaitMillis();
+        }
+
+        private synchronized long reserve() {
+            long nowMillis = clock.millis();
+            if (resetAtMillis <= nowMillis) {
+                // the quota has been replenished, but what's left won't be known until the ALM next reports it
+                remaining = -1;
+            }
+
+            long permitMillis = Math.max(nowMillis, pausedUntilMillis);
+            if (remaining == 0) {
+                permitMillis = Math.max(permitMillis, resetAtMillis);
+            } else if (remaining > 0 && remaining <= lowQuotaThreshold) {
+                permitMillis = Math.max(permitMillis, nextPermitMillis);
+                nextPermitMillis = permitMillis + (resetAtMillis - nowMillis) / remaining;
+            }
+
+            if (remaining > 0) {
+                remaining--;
+            }
+            return permitMillis - nowMillis;
+        }
+
+        private long getMaxWaitMillis() {
+            return AlmRequestDeadline.current()
+                    .map(deadline -> Math.min(maxWaitMillis, deadline.getRemaining().toMillis()))
+                    .orElse(maxWaitMillis);
+        }
+
+        private synchronized BucketSnapshot snapshot() {
+            boolean quotaKnown = resetAtMillis > clock.millis();
+            return new BucketSnapshot(name, limit < 0 ? null : limit, quotaKnown && remaining >= 0 ? remaining : null,
+                    quotaKnown ? Instant.ofEpochMilli(resetAtMillis).toString() : null,
+                    delayedCalls.sum(), delayMillis.sum(), rateLimitedResponses.sum());
+        }
+    }
+
+    public static final class BucketSnapshot {
+
+        private final String almSetting;
+        private final Long limit;
+        private final Long remaining;
+        private final String resetAt;
+        private final long delayedCalls;
+        private final long delayMillis;
+        private final long rateLimitedResponses;
+
+        private BucketSnapshot(String almSetting, Long limit, Long remaining, String resetAt, long delayedCalls,
+                               long delayMillis, long rateLimitedResponses) {
+            this.almSetting = almSetting;
+            this.limit = limit;
+            this.remaining = remaining;
+            this.resetAt = resetAt;
+            this.delayedCalls = delayedCalls;
+            this.delayMillis = delayMillis;
+            this.rateLimitedResponses = rateLimitedResponses;
+        }
+
+        public String getAlmSetting() {
+            return almSetting;
+        }
+
+        /**
+         * @return the size of the quota last reported by the ALM, or {@code null} if it hasn't reported one
+         */
+        public Long getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return the number of calls left in the current quota, or {@code null} if the ALM hasn't reported it or the
+         * quota has since reset
+         */
+        public Long getRemaining() {
+            return remaining;
+        }
+
+        public String getResetAt() {
+            return resetAt;
+        }
+
+        public long getDelayedCalls() {
+            return delayedCalls;
+        }
+
+        public long getDelayMillis() {
+            return delayMillis;
+        }
+
+        public long getRateLimitedResponses() {
+            return rateLimitedResponses;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A time budget for a unit of work, such as decorating a pull request, that makes calls to an ALM. Whilst a deadline
+ * is active on a thread, each ALM client limits the connect and read timeouts of the calls it makes to the time left
+ * before the deadline, so a slow or unresponsive ALM can't hold up the caller for longer than the budget allows.
+ * <br>
+ * Timeouts never drop below {@link #MINIMUM_REQUEST_TIMEOUT}, so that essential calls made once the deadline has
+ * passed, such as posting a quality gate status, still have a chance to complete. Callers are expected to check
+ * {@link #isExpired()} and skip any optional work once the deadline has passed.
+ */
+public final class AlmRequestDeadline implements AutoCloseable {
+
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    public static final Duration MINIMUM_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final ThreadLocal<AlmRequestDeadline> CURRENT_DEADLINE = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final LongSupplier nanoTimeSupplier;
+
+    private AlmRequestDeadline(Duration budget, LongSupplier nanoTimeSupplier) {
+        this.nanoTimeSupplier = nanoTimeSupplier;
+        this.deadlineNanos = nanoTimeSupplier.getAsLong() + budget.toNanos();
+    }
+
+    /**
+     * Starts a deadline on the current thread, which remains active until the returned deadline is closed.
+     */
+    public static AlmRequestDeadline start(Duration budget) {
+        return start(budget, System::nanoTime);
+    }
+
+    static AlmRequestDeadline start(Duration budget, LongSupplier nanoTimeSupplier) {
+        AlmRequestDeadline deadline = new AlmRequestDeadline(budget, nanoTimeSupplier);
+        CURRENT_DEADLINE.set(deadline);
+        return deadline;
+    }
+
+    public static Optional<AlmRequestDeadline> current() {
+        return Optional.ofNullable(CURRENT_DEADLINE.get());
+    }
+
+    /**
+     * @return whether a deadline is active on the current thread and has passed
+     */
+    public static boolean isCurrentDeadlineExpired() {
+        return current().map(AlmRequestDeadline::isExpired).orElse(false);
+    }
+
+    /**
+     * @return the timeout, in milliseconds, to use for connecting to and reading from an ALM in a call made on the
+     * current thread
+     */
+    public static int getRequestTimeoutMillis() {
+        long timeoutMillis = current()
+                .map(deadline -> Math.max(deadline.getRemaining().toMillis(), MINIMUM_REQUEST_TIMEOUT.toMillis()))
+                .map(remainingMillis -> Math.min(remainingMillis, DEFAULT_REQUEST_TIMEOUT.toMillis()))
+                .orElse(DEFAULT_REQUEST_TIMEOUT.toMillis());
+        return (int) timeoutMillis;
+    }
+
+    /**
+     * Wraps the operation so the deadline active on the current thread also applies when the operation is run on a
+     * different thread.
+     */
+    public static <T> Consumer<T> inCurrentDeadline(Consumer<T> operation) {
+        AlmRequestDeadline deadline = CURRENT_DEADLINE.get();
+        if (null == deadline) {
+            return operation;
+        }
+        return item -> {
+            AlmRequestDeadline previous = CURRENT_DEADLINE.get();
+            CURRENT_DEADLINE.set(deadline);
+            try {
+                operation.accept(item);
+            } finally {
+                if (null == previous) {
+                    CURRENT_DEADLINE.remove();
+                } else {
+                    CURRENT_DEADLINE.set(previous);
+                }
+            }
+        };
+    }
+
+    public Duration getRemaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - nanoTimeSupplier.getAsLong()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - nanoTimeSupplier.getAsLong() <= 0;
+    }
+
+    @Override
+    public void close() {
+        if (CURRENT_DEADLINE.get() == this) {
+            CURRENT_DEADLINE.remove();
+        }
+    }
+}
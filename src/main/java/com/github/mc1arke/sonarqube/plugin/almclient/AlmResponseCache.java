@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Holds the bodies of ALM API responses that carried an {@code ETag} or {@code Last-Modified} validator, so a later
+ * request for the same URL can be made conditional and, where the ALM responds with {@code 304 Not Modified}, be
+ * answered from the stored body rather than downloading and parsing an identical copy. On GitHub, conditional
+ * requests answered with a 304 also don't count against the rate limit.
+ * <br>
+ * Responses are held against the URL and a hash of the credential used to request them, so a response is only ever
+ * returned to a caller authenticated in the same way as the one that received it. The cache is shared by every ALM
+ * client, and is bounded by the total size of the bodies it holds, discarding the least recently used responses once
+ * that is exceeded.
+ */
+@ServerSide
+@ComputeEngineSide
+public class AlmResponseCache {
+
+    public static final String MAX_SIZE_MB = "com.github.mc1arke.sonarqube.plugin.branch.decoration.response-cache.max-size-mb";
+
+    public static final int DEFAULT_MAX_SIZE_MB = 16;
+
+    /**
+     * The headers, other than the validators, kept alongside a response body, since the client may need them to
+     * interpret the body (such as a {@code Link} header pointing at the next page) and a 304 isn't guaranteed to
+     * repeat them.
+     */
+    public static final List<String> RETAINED_HEADERS = List.of("Link", "Content-Type");
+
+    private static final String STREAMING_ATTRIBUTE = AlmResponseCache.class.getName() + ".streaming";
+
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private final long maxSizeBytes;
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+
+    public AlmResponseCache(Configuration configuration) {
+        super();
+        this.maxSizeBytes = Math.max(0, configuration.getInt(MAX_SIZE_MB).orElse(DEFAULT_MAX_SIZE_MB)) * 1024L * 1024L;
+    }
+
+    /**
+     * @return a context for executing a request whose response is read as a stream. The request is still made
+     * conditional, but a downloaded body is passed on as it's read rather than being buffered up front, and is only
+     * stored once the client has read all of it without exceeding {@link #getMaxBodySize()}
+     */
+    public static HttpClientContext createStreamingContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(STREAMING_ATTRIBUTE, Boolean.TRUE);
+        return context;
+    }
+
+    public static boolean isMarkedStreaming(HttpContext context) {
+        return Boolean.TRUE.equals(context.getAttribute(STREAMING_ATTRIBUTE));
+    }
+
+    /**
+     * @return the response previously stored for the URL when requested with the same credential, if it's still held
+     */
+    public synchronized Optional<CachedResponse> get(String url, String credential) {
+        return Optional.ofNullable(responses.get(createKey(url, credential)));
+    }
+
+    /**
+     * Stores a successful response if it carried an {@code ETag} or {@code Last-Modified} header, replacing any response
+     * held for the same URL and credential. Responses without a validator can't be revalidated so aren't stored, and
+     * neither is any response that would take up more than a quarter of the cache.
+     *
+     * @param headers a lookup for the response headers, returning {@code null} for any header that wasn't returned
+     */
+    public void put(String url, String credential, HeaderLookup headers, byte[] body) {
+        if (!hasValidator(headers) || maxSizeBytes == 0 || body.length > getMaxBodySize()) {
+            return;
+        }
+
+        Map<String, String> retainedHeaders = new LinkedHashMap<>();
+        for (String header : RETAINED_HEADERS) {
+            Optional.ofNullable(headers.getHeader(header)).ifPresent(value -> retainedHeaders.put(header, value));
+        }
+        CachedResponse response = new CachedResponse(headers.getHeader(ETAG), headers.getHeader(LAST_MODIFIED), retainedHeaders, body);
+        String key = createKey(url, credential);
+
+        synchronized (this) {
+            Optional.ofNullable(responses.put(key, response)).ifPresent(previous -> sizeBytes -= previous.body.length);
+            sizeBytes += body.length;
+
+            Iterator<CachedResponse> iterator = responses.values().iterator();
+            while (sizeBytes > maxSizeBytes && iterator.hasNext()) {
+                sizeBytes -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return whether a response with the given headers could be revalidated, and so is worth buffering to be stored
+     */
+    public static boolean hasValidator(HeaderLookup headers) {
+        return null != headers.getHeader(ETAG) || null != headers.getHeader(LAST_MODIFIED);
+    }
+
+    /**
+     * @return the size of the largest body the cache will store, so responses known to be larger can be passed on
+     * without being buffered
+     */
+    public long getMaxBodySize() {
+        return maxSizeBytes / 4;
+    }
+
+    /**
+     * Reads the start of a response body, stopping one byte beyond {@link #getMaxBodySize()}, so a body too large to be
+     * stored is found without reading all of it into memory. Where more than the maximum is returned, the bytes read
+     * have to be passed on ahead of whatever is left in the stream.
+     */
+    public byte[] readBodyPrefix(InputStream inputStream) throws IOException {
+        return inputStream.readNBytes((int) Math.min(getMaxBodySize() + 1, Integer.MAX_VALUE - 8));
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    private static String createKey(String url, String credential) {
+        try {
+            byte[] credentialHash = MessageDigest.getInstance("SHA-256").digest(String.valueOf(credential).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(credentialHash) + ' ' + url;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    @FunctionalInterface
+    public interface HeaderLookup {
+
+        String getHeader(String name);
+    }
+
+    @FunctionalInterface
+    public interface HeaderSetter {
+
+        void setHeader(String name, String value);
+    }
+
+    public static final class CachedResponse {
+
+        private final String etag;
+        private final String lastModified;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        private CachedResponse(String etag, String lastModified, Map<String, String> headers, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Adds the {@code If-None-Match} and {@code If-Modified-Since} headers needed to revalidate this response.
+         */
+        public void addValidators(HeaderSetter request) {
+            Optional.ofNullable(etag).ifPresent(value -> request.setHeader("If-None-Match", value));
+            Optional.ofNullable(lastModified).ifPresent(value -> request.setHeader("If-Modified-Since", value));
+        }
+
+        /**
+         * @return the value of one of the {@link #RETAINED_HEADERS} as it was when the response was stored
+         */
+        public Optional<String> getHeader(String name) {
+            return Optional.ofNullable(headers.get(name));
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return the stored body. The array is shared, so must not be modified
+         */
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
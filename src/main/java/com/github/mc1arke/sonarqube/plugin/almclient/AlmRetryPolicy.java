@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Decides whether a failed call to an ALM is sent again, and how long to back off before doing so. Only calls that
+ * can be repeated without changing the outcome are retried: those using an idempotent HTTP method, and those a client
+ * has marked as idempotent, such as setting the status of a commit. The back-off doubles with each retry, and a random
+ * delay up to that limit is used so that calls which failed together don't all retry together. No retry is made where
+ * the back-off would run past the {@link AlmRequestDeadline} active on the calling thread.
+ */
+public final class AlmRetryPolicy {
+
+    /**
+     * The number of times a call that failed with a transient error is sent again.
+     */
+    public static final int MAX_RETRIES = 2;
+
+    static final Duration INITIAL_BACKOFF = Duration.ofMillis(500);
+    static final Duration MAX_BACKOFF = Duration.ofSeconds(5);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmRetryPolicy.class);
+    private static final String IDEMPOTENT_ATTRIBUTE = AlmRetryPolicy.class.getName() + ".idempotent";
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(502, 503, 504);
+
+    private AlmRetryPolicy() {
+        super();
+    }
+
+    /**
+     * @return a context for executing a request that isn't sent with an idempotent HTTP method, but can be safely
+     * sent again if it fails
+     */
+    public static HttpClientContext createIdempotentContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(IDEMPOTENT_ATTRIBUTE, Boolean.TRUE);
+        return context;
+    }
+
+    public static boolean isMarkedIdempotent(HttpContext context) {
+        return Boolean.TRUE.equals(context.getAttribute(IDEMPOTENT_ATTRIBUTE));
+    }
+
+    public static boolean isIdempotentMethod(String method) {
+        return IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @return whether the status shows the ALM, or a proxy in front of it, couldn't handle the call at the moment
+     */
+    public static boolean isRetryableStatus(int statusCode) {
+        return RETRYABLE_STATUSES.contains(statusCode);
+    }
+
+    /**
+     * @return whether the status shows the call failed because of a problem with the ALM, which counts towards opening
+     * its {@link AlmCircuitBreaker.Circuit}
+     */
+    public static boolean isServerError(int statusCode) {
+        return statusCode >= 500;
+    }
+
+    /**
+     * @return whether the exception shows the ALM host couldn't be reached or didn't respond in time, rather than the
+     * call being stopped by the {@link AlmCircuitBreaker} or by the calling thread being interrupted
+     */
+    public static boolean isHostFailure(IOException ex) {
+        return !(ex instanceof AlmUnavailableException || (ex instanceof InterruptedIOException && Thread.currentThread().isInterrupted()));
+    }
+
+    /**
+     * @return whether the exception may be transient, so the call is worth sending again. Timeouts aren't retried,
+     * since a retry would wait just as long, and neither are failures to resolve the host or negotiate TLS.
+     */
+    public static boolean isRetryableException(IOException ex) {
+        return !(ex instanceof InterruptedIOException || ex instanceof UnknownHostException || ex instanceof SSLException
+                || ex instanceof AlmUnavailableException);
+    }
+
+    /**
+     * Waits before sending a failed call again.
+     *
+     * @param retries the number of times the call has already been retried
+     * @return whether the call should be sent again, which it isn't once the retries have been used up or where the
+     * back-off would run past the current deadline
+     * @throws InterruptedIOException if the thread is interrupted whilst waiting
+     */
+    public static boolean backOff(int retries) throws InterruptedIOException {
+        return backOff(retries, bound -> ThreadLocalRandom.current().nextLong(bound + 1), Thread::sleep);
+    }
+
+    static boolean backOff(int retries, LongUnaryOperator jitter, AlmRateLimiter.Sleeper sleeper) throws InterruptedIOException {
+        if (retries >= MAX_RETRIES) {
+            return false;
+        }
+        long ceilingMillis = Math.min(MAX_BACKOFF.toMillis(), INITIAL_BACKOFF.toMillis() << retries);
+        long delayMillis = jitter.applyAsLong(ceilingMillis);
+        boolean beforeDeadline = AlmRequestDeadline.current()
+                .map(deadline -> deadline.getRemaining().toMillis() > delayMillis)
+                .orElse(true);
+        if (!beforeDeadline) {
+            return false;
+        }
+
+        LOGGER.debug("Retrying failed ALM call in {}ms", delayMillis);
+        try {
+            sleeper.sleep(delayMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("Interrupted whilst waiting to retry ALM call");
+            exception.initCause(ex);
+            throw exception;
+        }
+        return true;
+    }
+}
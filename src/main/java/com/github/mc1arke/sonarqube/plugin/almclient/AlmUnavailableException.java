@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2021 Julien Roy
+ * Copyright (C) 2024 Michael Clarke
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -16,25 +16,19 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  *
  */
-package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
+package com.github.mc1arke.sonarqube.plugin.almclient;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import io.aexp.nodes.graphql.annotations.GraphQLArgument;
-import io.aexp.nodes.graphql.annotations.GraphQLProperty;
+import java.io.IOException;
 
-@GraphQLProperty(name = "minimizeComment", arguments = {@GraphQLArgument(name = "input")})
-public class MinimizeComment {
-
-    private final String clientMutationId;
+/**
+ * Thrown instead of calling an ALM host whilst its {@link AlmCircuitBreaker.Circuit} is open, so the caller fails
+ * straight away rather than waiting on a host that has been failing.
+ */
+public class AlmUnavailableException extends IOException {
 
-    @JsonCreator
-    public MinimizeComment(@JsonProperty("clientMutationId") String clientMutationId) {
-        this.clientMutationId = clientMutationId;
-    }
+    private static final long serialVersionUID = 1L;
 
-    public String getClientMutationId() {
-        return clientMutationId;
+    AlmUnavailableException(String message) {
+        super(message);
     }
-
 }
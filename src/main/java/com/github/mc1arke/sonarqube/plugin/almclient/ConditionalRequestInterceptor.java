@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Makes GET requests sent through a pooled client conditional where {@link AlmResponseCache} holds an earlier response
+ * for the same URL and credential, and turns a {@code 304 Not Modified} back into a {@code 200} carrying the cached
+ * body, so the ALM clients handle a revalidated response exactly as they would a freshly downloaded one. Successful
+ * responses carrying a validator are buffered and stored for the next request, unless they're larger than the cache
+ * would store, in which case they're passed on as a stream having read no more than is needed to find that out.
+ * Requests executed with {@link AlmResponseCache#createStreamingContext()} are still made conditional, but their
+ * responses aren't buffered up front: the body is copied as the client reads it, and the copy is stored once the
+ * client has read to the end without it growing beyond what the cache would store.
+ * <br>
+ * The response is processed after the client has decompressed it, so the cached body is always the decoded one.
+ */
+final class ConditionalRequestInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+    private static final String CACHE_KEY_ATTRIBUTE = ConditionalRequestInterceptor.class.getName() + ".key";
+    private static final String CACHED_RESPONSE_ATTRIBUTE = ConditionalRequestInterceptor.class.getName() + ".cachedResponse";
+    private static final String[] CREDENTIAL_HEADERS = {"Authorization", "PRIVATE-TOKEN"};
+
+    private final AlmResponseCache responseCache;
+
+    ConditionalRequestInterceptor(AlmResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        context.removeAttribute(CACHE_KEY_ATTRIBUTE);
+        context.removeAttribute(CACHED_RESPONSE_ATTRIBUTE);
+        if (!"GET".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+            return;
+        }
+
+        CacheKey cacheKey = new CacheKey(getUrl(request, context), getCredential(request));
+        context.setAttribute(CACHE_KEY_ATTRIBUTE, cacheKey);
+        responseCache.get(cacheKey.url, cacheKey.credential).ifPresent(cachedResponse -> {
+            cachedResponse.addValidators(request::setHeader);
+            context.setAttribute(CACHED_RESPONSE_ATTRIBUTE, cachedResponse);
+        });
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws IOException {
+        CacheKey cacheKey = (CacheKey) context.getAttribute(CACHE_KEY_ATTRIBUTE);
+        if (null == cacheKey) {
+            return;
+        }
+
+        int statusCode = response.getStatusLine().getStatusCode();
+        AlmResponseCache.CachedResponse cachedResponse = (AlmResponseCache.CachedResponse) context.getAttribute(CACHED_RESPONSE_ATTRIBUTE);
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED && null != cachedResponse) {
+            EntityUtils.consume(response.getEntity());
+            response.setStatusCode(HttpStatus.SC_OK);
+            response.setReasonPhrase("OK");
+            cachedResponse.getHeaders().forEach(response::setHeader);
+            response.setEntity(createEntity(cachedResponse.getBody(), cachedResponse.getHeader("Content-Type").orElse(null)));
+        } else if (statusCode == HttpStatus.SC_OK && null != response.getEntity()) {
+            AlmResponseCache.HeaderLookup headers = name -> Optional.ofNullable(response.getFirstHeader(name)).map(Header::getValue).orElse(null);
+            if (!AlmResponseCache.hasValidator(headers)) {
+                return;
+            }
+            HttpEntity entity = response.getEntity();
+            long maxBodySize = responseCache.getMaxBodySize();
+            if (maxBodySize == 0 || entity.getContentLength() > maxBodySize) {
+                return;
+            }
+            String contentType = Optional.ofNullable(entity.getContentType()).map(Header::getValue).orElse(null);
+            InputStream content = entity.getContent();
+            if (AlmResponseCache.isMarkedStreaming(context)) {
+                InputStreamEntity streamedEntity = new InputStreamEntity(new CopyingInputStream(content, maxBodySize,
+                        body -> responseCache.put(cacheKey.url, cacheKey.credential, headers, body)), entity.getContentLength());
+                streamedEntity.setContentType(contentType);
+                response.setEntity(streamedEntity);
+                return;
+            }
+            byte[] body = responseCache.readBodyPrefix(content);
+            if (body.length > maxBodySize) {
+                InputStreamEntity streamedEntity = new InputStreamEntity(new SequenceInputStream(new ByteArrayInputStream(body), content), entity.getContentLength());
+                streamedEntity.setContentType(contentType);
+                response.setEntity(streamedEntity);
+                return;
+            }
+            content.close();
+            responseCache.put(cacheKey.url, cacheKey.credential, headers, body);
+            response.setEntity(createEntity(body, contentType));
+        }
+    }
+
+    private static HttpEntity createEntity(byte[] body, String contentType) {
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        entity.setContentType(contentType);
+        return entity;
+    }
+
+    private static String getUrl(HttpRequest request, HttpContext context) {
+        String uri = request.getRequestLine().getUri();
+        HttpHost targetHost = HttpClientContext.adapt(context).getTargetHost();
+        return uri.startsWith("/") && null != targetHost ? targetHost.toURI() + uri : uri;
+    }
+
+    private static String getCredential(HttpRequest request) {
+        StringBuilder credential = new StringBuilder();
+        for (String header : CREDENTIAL_HEADERS) {
+            for (Header value : request.getHeaders(header)) {
+                credential.append(header).append(':').append(value.getValue()).append('\n');
+            }
+        }
+        return credential.toString();
+    }
+
+    /**
+     * Passes a body on as it's read, keeping a copy that's handed over once the end of the body is reached, unless the
+     * body turns out to be larger than the given maximum, in which case the copy is dropped. A stream closed before
+     * its end is read to the end first, as long as the copy is still being kept, since a parser can stop at the end of
+     * the document it's reading without consuming whatever follows.
+     */
+    private static final class CopyingInputStream extends FilterInputStream {
+
+        private final long maxBodySize;
+        private final Consumer<byte[]> bodyConsumer;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private CopyingInputStream(InputStream inputStream, long maxBodySize, Consumer<byte[]> bodyConsumer) {
+            super(inputStream);
+            this.maxBodySize = maxBodySize;
+            this.bodyConsumer = bodyConsumer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value < 0) {
+                complete();
+            } else {
+                copy(new byte[]{(byte) value}, 0, 1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count < 0) {
+                complete();
+            } else {
+                copy(buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            copy = null;
+            return super.skip(count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] buffer = new byte[8192];
+                while (null != copy && read(buffer) >= 0) {
+                    // keep reading until the end of the body is reached or it's found to be too large to store
+                }
+            } catch (IOException ex) {
+                copy = null;
+            }
+            super.close();
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (null == copy) {
+                return;
+            }
+            if (copy.size() + (long) length > maxBodySize) {
+                copy = null;
+                return;
+            }
+            copy.write(buffer, offset, length);
+        }
+
+        private void complete() {
+            if (null != copy) {
+                bodyConsumer.accept(copy.toByteArray());
+                copy = null;
+            }
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String url;
+        private final String credential;
+
+        private CacheKey(String url, String credential) {
+            this.url = url;
+            this.credential = credential;
+        }
+    }
+}
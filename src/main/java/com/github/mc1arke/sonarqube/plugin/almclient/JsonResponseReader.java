@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Deserialises ALM responses directly from the stream the body is received on, rather than buffering the body as
+ * bytes and then again as a String before parsing it. An {@link ObjectReader} is created the first time each type is
+ * read and reused for every later response of that type.
+ */
+public final class JsonResponseReader {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    public JsonResponseReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public <T> T read(InputStream inputStream, Class<T> type) throws IOException {
+        return getReader(type).readValue(inputStream);
+    }
+
+    /**
+     * Reads a JSON array one element at a time, passing each element to the consumer as soon as it has been read, so
+     * only the element currently being read is held rather than the whole array. An empty body is treated as an empty
+     * array, and a single value is treated as an array holding just that value where the mapper accepts single values
+     * as arrays.
+     */
+    public <T> void readEach(InputStream inputStream, Class<T> type, Consumer<T> consumer) throws IOException {
+        ObjectReader reader = getReader(type);
+        try (JsonParser parser = reader.createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            if (null == token) {
+                return;
+            }
+            if (JsonToken.START_ARRAY != token) {
+                if (!reader.isEnabled(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)) {
+                    throw new JsonParseException(parser, "Expected a JSON array but found " + token);
+                }
+                consumer.accept(reader.readValue(parser));
+                return;
+            }
+            while (JsonToken.END_ARRAY != (token = parser.nextToken())) {
+                if (null == token) {
+                    throw new JsonParseException(parser, "Unexpected end of content whilst reading JSON array");
+                }
+                consumer.accept(reader.readValue(parser));
+            }
+        }
+    }
+
+    private ObjectReader getReader(Class<?> type) {
+        return readers.computeIfAbsent(type, key -> objectMapper.reader().forType(key));
+    }
+}
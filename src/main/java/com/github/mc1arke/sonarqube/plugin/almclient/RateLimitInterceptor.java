@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Applies an {@link AlmRateLimiter.Bucket} to a pooled client: each request waits for a permit before being sent,
+ * each response updates the bucket, and a request rejected as rate limited is sent again, where the bucket allows it,
+ * rather than the rejection being returned to the caller. No interval is needed between retries, since the retried
+ * request waits for its permit in the same way as any other.
+ */
+final class RateLimitInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor, ServiceUnavailableRetryStrategy {
+
+    private static final String RATE_LIMITED_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".rateLimited";
+
+    private final AlmRateLimiter.Bucket bucket;
+
+    RateLimitInterceptor(AlmRateLimiter.Bucket bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws IOException {
+        context.removeAttribute(RATE_LIMITED_ATTRIBUTE);
+        bucket.acquire();
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        boolean rateLimited = bucket.update(response.getStatusLine().getStatusCode(),
+                name -> Optional.ofNullable(response.getFirstHeader(name)).map(Header::getValue).orElse(null));
+        context.setAttribute(RATE_LIMITED_ATTRIBUTE, rateLimited);
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        return Boolean.TRUE.equals(context.getAttribute(RATE_LIMITED_ATTRIBUTE)) && bucket.shouldRetry(executionCount - 1);
+    }
+
+    @Override
+    public long getRetryInterval() {
+        return 0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+
+/**
+ * Applies the {@link AlmCircuitBreaker} and {@link AlmRetryPolicy} to a pooled client: each request fails straight
+ * away whilst the circuit for its host is open, each response or failure to get one is recorded against the circuit,
+ * and idempotent requests that fail with a transient error are sent again after backing off. The back-off is taken
+ * when deciding to retry, so no further interval is needed between retries.
+ */
+final class ResilienceInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor, HttpRequestRetryHandler, ServiceUnavailableRetryStrategy {
+
+    private static final String RETRYABLE_STATUS_ATTRIBUTE = ResilienceInterceptor.class.getName() + ".retryableStatus";
+
+    private final AlmCircuitBreaker circuitBreaker;
+
+    ResilienceInterceptor(AlmCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws IOException {
+        context.removeAttribute(RETRYABLE_STATUS_ATTRIBUTE);
+        getCircuit(context).acquire();
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (AlmRetryPolicy.isServerError(statusCode)) {
+            getCircuit(context).recordFailure();
+        } else {
+            getCircuit(context).recordSuccess();
+        }
+        context.setAttribute(RETRYABLE_STATUS_ATTRIBUTE, AlmRetryPolicy.isRetryableStatus(statusCode));
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+        if (AlmRetryPolicy.isHostFailure(exception)) {
+            getCircuit(context).recordFailure();
+        }
+        return AlmRetryPolicy.isRetryableException(exception) && isIdempotent(context) && backOff(executionCount - 1);
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        return Boolean.TRUE.equals(context.getAttribute(RETRYABLE_STATUS_ATTRIBUTE)) && isIdempotent(context) && backOff(executionCount - 1);
+    }
+
+    @Override
+    public long getRetryInterval() {
+        return 0;
+    }
+
+    private AlmCircuitBreaker.Circuit getCircuit(HttpContext context) {
+        return circuitBreaker.getCircuit(Optional.ofNullable(HttpClientContext.adapt(context).getTargetHost())
+                .map(HttpHost::getHostName)
+                .orElse("unknown"));
+    }
+
+    private static boolean isIdempotent(HttpContext context) {
+        return AlmRetryPolicy.isMarkedIdempotent(context) || Optional.ofNullable(HttpClientContext.adapt(context).getRequest())
+                .map(request -> AlmRetryPolicy.isIdempotentMethod(request.getRequestLine().getMethod()))
+                .orElse(false);
+    }
+
+    private static boolean backOff(int retries) {
+        try {
+            return AlmRetryPolicy.backOff(retries);
+        } catch (InterruptedIOException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Holds the changes retrieved for each commit, so repeated analyses of a pull request whose merge commit hasn't
+ * changed don't have to page through the changes again. The changes in a commit never change, so entries are never
+ * revalidated, only discarded (least recently used first) once the total number of changes held exceeds the limit.
+ * <br>
+ * Changes are held against the ALM URL, project, repository and commit, along with a hash of the credential used to
+ * retrieve them, so they're only ever returned to a client authenticated in the same way as the one that retrieved them.
+ * The cache is a container component rather than being held by a client factory, since the factories are recreated for
+ * every analysis task.
+ */
+@ServerSide
+@ComputeEngineSide
+public class AzureDevopsCommitChangesCache {
+
+    static final int DEFAULT_MAX_CHANGES = 100_000;
+
+    private final int maxChanges;
+    private final LinkedHashMap<List<String>, List<Change>> changes = new LinkedHashMap<>(16, 0.75f, true);
+    private int changeCount;
+
+    public AzureDevopsCommitChangesCache() {
+        this(DEFAULT_MAX_CHANGES);
+    }
+
+    AzureDevopsCommitChangesCache(int maxChanges) {
+        super();
+        this.maxChanges = maxChanges;
+    }
+
+    synchronized Optional<List<Change>> get(String apiUrl, String credential, String projectId, String repositoryName, String commitId) {
+        return Optional.ofNullable(changes.get(createKey(apiUrl, credential, projectId, repositoryName, commitId)));
+    }
+
+    /**
+     * Stores the changes for a commit, unless there are more of them than the cache can hold.
+     *
+     * @return an unmodifiable copy of the given changes
+     */
+    List<Change> put(String apiUrl, String credential, String projectId, String repositoryName, String commitId, List<Change> commitChanges) {
+        List<Change> copy = Collections.unmodifiableList(new ArrayList<>(commitChanges));
+        if (copy.size() > maxChanges) {
+            return copy;
+        }
+        List<String> key = createKey(apiUrl, credential, projectId, repositoryName, commitId);
+
+        synchronized (this) {
+            Optional.ofNullable(changes.put(key, copy)).ifPresent(previous -> changeCount -= previous.size());
+            changeCount += copy.size();
+
+            Iterator<List<Change>> iterator = changes.values().iterator();
+            while (changeCount > maxChanges && iterator.hasNext()) {
+                changeCount -= iterator.next().size();
+                iterator.remove();
+            }
+        }
+        return copy;
+    }
+
+    synchronized int getChangeCount() {
+        return changeCount;
+    }
+
+    private static List<String> createKey(String apiUrl, String credential, String projectId, String repositoryName, String commitId) {
+        try {
+            byte[] credentialHash = MessageDigest.getInstance("SHA-256").digest(String.valueOf(credential).getBytes(StandardCharsets.UTF_8));
+            return Arrays.asList(Base64.getEncoder().encodeToString(credentialHash), apiUrl, projectId, repositoryName, commitId);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
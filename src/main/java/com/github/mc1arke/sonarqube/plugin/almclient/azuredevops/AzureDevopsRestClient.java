@@ -19,6 +19,10 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.JsonResponseReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThreadResponse;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commit;
@@ -32,70 +36,85 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Changes;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.UpdateCommentThreadStatusRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Supplier;
 
 public class AzureDevopsRestClient implements AzureDevopsClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AzureDevopsRestClient.class);
     private static final String API_VERSION = "4.1";
     private static final String API_VERSION_PREVIEW = API_VERSION + "-preview";
+    static final int COMMIT_CHANGES_PAGE_SIZE = 1000;
 
     private final String authToken;
     private final String apiUrl;
     private final ObjectMapper objectMapper;
-    private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final JsonResponseReader responseReader;
+    private final CloseableHttpClient httpClient;
+    private final AlmApiMetrics almApiMetrics;
+    private final AzureDevopsCommitChangesCache commitChangesCache;
 
-    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, CloseableHttpClient httpClient,
+                          AlmApiMetrics almApiMetrics, AzureDevopsCommitChangesCache commitChangesCache) {
         super();
         this.apiUrl = apiUrl;
         this.authToken = authToken;
         this.objectMapper = objectMapper;
-        this.httpClientFactory = httpClientFactory;
+        this.responseReader = new JsonResponseReader(objectMapper);
+        this.httpClient = httpClient;
+        this.almApiMetrics = almApiMetrics;
+        this.commitChangesCache = commitChangesCache;
     }
 
     @Override
     public void submitPullRequestStatus(String projectId, String repositoryName, int pullRequestId, GitPullRequestStatus status) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/statuses?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION_PREVIEW);
-        execute(url, "post", objectMapper.writeValueAsString(status), null);
+        // a newer status for the same context supersedes an older one, so the request can be retried despite being a POST
+        execute("submitPullRequestStatus", url, "post", objectMapper.writeValueAsString(status), null, AlmRetryPolicy.createIdempotentContext());
     }
 
     @Override
     public Repository getRepository(String projectId, String repositoryName) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), API_VERSION);
-        return execute(url, "get", null, Repository.class);
+        return execute("getRepository", url, "get", null, Repository.class);
     }
 
     @Override
     public List<CommentThread> retrieveThreads(String projectId, String repositoryName, int pullRequestId) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return Objects.requireNonNull(execute(url, "get", null, CommentThreadResponse.class)).getValue();
+        return Objects.requireNonNull(execute("retrieveThreads", url, "get", null, CommentThreadResponse.class)).getValue();
     }
 
     @Override
     public CommentThread createThread(String projectId, String repositoryName, int pullRequestId, CreateCommentThreadRequest thread) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return execute(url, "post", objectMapper.writeValueAsString(thread), CommentThread.class);
+        return execute("createThread", url, "post", objectMapper.writeValueAsString(thread), CommentThread.class);
     }
 
     @Override
     public void addCommentToThread(String projectId, String repositoryName, int pullRequestId, int threadId, CreateCommentRequest comment) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads/%s/comments?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, threadId, API_VERSION);
-        execute(url, "post", objectMapper.writeValueAsString(comment), null);
+        execute("addCommentToThread", url, "post", objectMapper.writeValueAsString(comment), null);
     }
 
     @Override
@@ -103,45 +122,91 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads/%s?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, threadId, API_VERSION);
 
         UpdateCommentThreadStatusRequest commentThread = new UpdateCommentThreadStatusRequest(CommentThreadStatus.CLOSED);
-        execute(url, "patch", objectMapper.writeValueAsString(commentThread), null);
+        execute("resolvePullRequestThread", url, "patch", objectMapper.writeValueAsString(commentThread), null);
     }
 
     @Override
     public PullRequest retrievePullRequest(String projectId, String repositoryName, int pullRequestId) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return execute(url, "get", null, PullRequest.class);
+        return execute("retrievePullRequest", url, "get", null, PullRequest.class);
     }
 
     @Override
     public List<Commit> getPullRequestCommits(String projectId, String repositoryName, int pullRequestId) throws IOException {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/commits?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return Objects.requireNonNull(execute(url, "get", null, Commits.class)).getValue();
+        return Objects.requireNonNull(execute("getPullRequestCommits", url, "get", null, Commits.class)).getValue();
     }
 
     @Override
     public List<Change> getCommitChanges(String projectId, String repositoryName, String commitId) throws IOException {
-        String url = String.format("%s/%s/_apis/git/repositories/%s/commits/%s/changes?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), commitId, API_VERSION);
-        return Objects.requireNonNull(execute(url, "get", null, Changes.class)).getChanges();
+        Optional<List<Change>> cachedChanges = commitChangesCache.get(apiUrl, authToken, projectId, repositoryName, commitId);
+        if (cachedChanges.isPresent()) {
+            return cachedChanges.get();
+        }
+
+        List<Change> changes = new ArrayList<>();
+        boolean moreChanges = true;
+        while (moreChanges) {
+            String url = String.format("%s/%s/_apis/git/repositories/%s/commits/%s/changes?top=%s&skip=%s&api-version=%s", apiUrl, encode(projectId), encode(repositoryName), commitId, COMMIT_CHANGES_PAGE_SIZE, changes.size(), API_VERSION);
+            Changes page = Objects.requireNonNull(execute("getCommitChanges", url, "get", null, Changes.class));
+            List<Change> pageChanges = Optional.ofNullable(page.getChanges()).orElse(List.of());
+            changes.addAll(pageChanges);
+            moreChanges = !pageChanges.isEmpty() && hasMoreChanges(page, changes.size(), pageChanges.size());
+        }
+        return commitChangesCache.put(apiUrl, authToken, projectId, repositoryName, commitId, changes);
+    }
+
+    /**
+     * Uses the total number of changes Azure Devops reports for the commit to decide whether there's another page, so
+     * the changes aren't truncated if Azure Devops returns fewer changes in a page than were asked for. Where the totals
+     * aren't reported, a full page is taken to mean there may be more.
+     */
+    private static boolean hasMoreChanges(Changes page, int retrievedCount, int pageCount) {
+        return Optional.ofNullable(page.getChangeCounts())
+                .map(changeCounts -> changeCounts.values().stream().filter(Objects::nonNull).mapToInt(Integer::intValue).sum() > retrievedCount)
+                .orElse(pageCount >= COMMIT_CHANGES_PAGE_SIZE);
+    }
+
+    private <T> T execute(String operation, String url, String method, String content, Class<T> type) throws IOException {
+        return execute(operation, url, method, content, type, HttpClientContext.create());
     }
 
-    private <T> T execute(String url, String method, String content, Class<T> type) throws IOException {
+    private <T> T execute(String operation, String url, String method, String content, Class<T> type, HttpContext httpContext) throws IOException {
         RequestBuilder requestBuilder = RequestBuilder.create(method)
                 .setUri(url)
                 .addHeader("Authorization", "Basic " + authToken)
-                .addHeader("Content-type", ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8).toString());
+                .addHeader("Content-type", ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8).toString())
+                .setConfig(createRequestConfig());
 
         Optional.ofNullable(content).ifPresent(body -> requestBuilder.setEntity(new StringEntity(body, StandardCharsets.UTF_8)));
         Optional.ofNullable(type).ifPresent(responseType -> requestBuilder.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType()));
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(requestBuilder.build());
-
+        try (AlmApiMetrics.Call call = almApiMetrics.startCall(apiUrl, operation);
+             CloseableHttpResponse httpResponse = httpClient.execute(requestBuilder.build(), httpContext)) {
             validateResponse(httpResponse);
 
-            if (null == type) {
-                return null;
-            }
-            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+            T entity = null == type ? null : readEntity(httpResponse, type, call);
+            call.succeeded();
+            return entity;
+        }
+    }
+
+    private static RequestConfig createRequestConfig() {
+        int timeoutMillis = AlmRequestDeadline.getRequestTimeoutMillis();
+        return RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build();
+    }
+
+    private <T> T readEntity(HttpResponse httpResponse, Class<T> type, AlmApiMetrics.Call call) throws IOException {
+        HttpEntity httpEntity = httpResponse.getEntity();
+        if (null == httpEntity) {
+            return null;
+        }
+        try (InputStream content = call.countPayloadBytes(httpEntity.getContent())) {
+            return responseReader.read(content, type);
         }
     }
 
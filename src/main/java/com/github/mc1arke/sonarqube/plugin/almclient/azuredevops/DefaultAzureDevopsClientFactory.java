@@ -22,8 +22,9 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.impl.client.HttpClients;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.server.ServerSide;
@@ -40,9 +41,16 @@ public class DefaultAzureDevopsClientFactory implements AzureDevopsClientFactory
 
     private final ObjectMapper objectMapper;
     private final Settings settings;
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmHttpClientPool almHttpClientPool;
+    private final AzureDevopsCommitChangesCache commitChangesCache;
 
-    public DefaultAzureDevopsClientFactory(Settings settings) {
+    public DefaultAzureDevopsClientFactory(Settings settings, AlmApiMetrics almApiMetrics, AlmHttpClientPool almHttpClientPool,
+                                           AzureDevopsCommitChangesCache commitChangesCache) {
         this.settings = settings;
+        this.almApiMetrics = almApiMetrics;
+        this.almHttpClientPool = almHttpClientPool;
+        this.commitChangesCache = commitChangesCache;
         objectMapper = new ObjectMapper()
                 .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true)
                 .configure(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT, true)
@@ -55,6 +63,6 @@ public class DefaultAzureDevopsClientFactory implements AzureDevopsClientFactory
     public AzureDevopsClient createClient(ProjectAlmSettingDto projectAlmSettingDto, AlmSettingDto almSettingDto) {
         String apiUrl = Optional.ofNullable(almSettingDto.getUrl()).map(StringUtils::trimToNull).orElseThrow(() -> new IllegalStateException("ALM URL must be provided"));
         String accessToken = Optional.ofNullable(almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption())).map(StringUtils::trimToNull).orElseThrow(() -> new IllegalStateException("Personal Access Token must be provided"));
-        return new AzureDevopsRestClient(apiUrl, Base64.getEncoder().encodeToString((":" + accessToken).getBytes(StandardCharsets.UTF_8)), objectMapper, HttpClients::createSystem);
+        return new AzureDevopsRestClient(apiUrl, Base64.getEncoder().encodeToString((":" + accessToken).getBytes(StandardCharsets.UTF_8)), objectMapper, almHttpClientPool.getHttpClient(almSettingDto), almApiMetrics, commitChangesCache);
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCallMemo;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commit;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentThreadRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitPullRequestStatus;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps an {@link AzureDevopsClient} for the duration of a single decoration, only calling through to Azure Devops
+ * for the first of any repeated reads. Threads created or resolved through this client are applied to the recorded
+ * thread list so it remains accurate without being downloaded again, whereas adding a comment to a thread discards
+ * the recorded list, since the full comment Azure Devops creates is not returned.
+ */
+public final class MemoisingAzureDevopsClient implements AzureDevopsClient {
+
+    private static final String RETRIEVE_THREADS = "retrieveThreads";
+
+    private final AzureDevopsClient delegate;
+    private final AlmCallMemo memo = new AlmCallMemo();
+
+    public MemoisingAzureDevopsClient(AzureDevopsClient delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public PullRequest retrievePullRequest(String projectName, String repositoryName, int pullRequestId) throws IOException {
+        return memo.get("retrievePullRequest", Arrays.asList(projectName, repositoryName, pullRequestId),
+                () -> delegate.retrievePullRequest(projectName, repositoryName, pullRequestId));
+    }
+
+    @Override
+    public List<Commit> getPullRequestCommits(String projectName, String repositoryName, int pullRequestId) throws IOException {
+        return memo.get("getPullRequestCommits", Arrays.asList(projectName, repositoryName, pullRequestId),
+                () -> delegate.getPullRequestCommits(projectName, repositoryName, pullRequestId));
+    }
+
+    @Override
+    public List<CommentThread> retrieveThreads(String projectName, String repositoryName, int pullRequestId) throws IOException {
+        return memo.get(RETRIEVE_THREADS, Arrays.asList(projectName, repositoryName, pullRequestId),
+                () -> delegate.retrieveThreads(projectName, repositoryName, pullRequestId));
+    }
+
+    @Override
+    public CommentThread createThread(String projectName, String repositoryName, int pullRequestId, CreateCommentThreadRequest commentThreadRequest) throws IOException {
+        List<Object> threadsKey = Arrays.asList(projectName, repositoryName, pullRequestId);
+        try {
+            CommentThread thread = delegate.createThread(projectName, repositoryName, pullRequestId, commentThreadRequest);
+            if (null == thread) {
+                memo.invalidate(RETRIEVE_THREADS, threadsKey);
+            } else {
+                memo.append(RETRIEVE_THREADS, threadsKey, thread);
+            }
+            return thread;
+        } catch (IOException | RuntimeException ex) {
+            // the thread may still have been created, so the recorded threads can no longer be trusted
+            memo.invalidate(RETRIEVE_THREADS, threadsKey);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void addCommentToThread(String projectName, String repositoryName, int pullRequestId, int threadId, CreateCommentRequest comment) throws IOException {
+        try {
+            delegate.addCommentToThread(projectName, repositoryName, pullRequestId, threadId, comment);
+        } finally {
+            memo.invalidate(RETRIEVE_THREADS, Arrays.asList(projectName, repositoryName, pullRequestId));
+        }
+    }
+
+    @Override
+    public void resolvePullRequestThread(String projectName, String repositoryName, int pullRequestId, int threadId) throws IOException {
+        List<Object> threadsKey = Arrays.asList(projectName, repositoryName, pullRequestId);
+        try {
+            delegate.resolvePullRequestThread(projectName, repositoryName, pullRequestId, threadId);
+        } catch (IOException | RuntimeException ex) {
+            memo.invalidate(RETRIEVE_THREADS, threadsKey);
+            throw ex;
+        }
+        memo.<List<CommentThread>>update(RETRIEVE_THREADS, threadsKey, threads -> threads.stream()
+                .map(thread -> thread.getId() == threadId ? closeThread(thread) : thread)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void submitPullRequestStatus(String projectName, String repositoryName, int pullRequestId, GitPullRequestStatus status) throws IOException {
+        delegate.submitPullRequestStatus(projectName, repositoryName, pullRequestId, status);
+    }
+
+    @Override
+    public Repository getRepository(String projectName, String repositoryName) throws IOException {
+        return memo.get("getRepository", Arrays.asList(projectName, repositoryName),
+                () -> delegate.getRepository(projectName, repositoryName));
+    }
+
+    @Override
+    public List<Change> getCommitChanges(String projectId, String repositoryName, String commitId) throws IOException {
+        return memo.get("getCommitChanges", Arrays.asList(projectId, repositoryName, commitId),
+                () -> delegate.getCommitChanges(projectId, repositoryName, commitId));
+    }
+
+    private static CommentThread closeThread(CommentThread thread) {
+        return new CommentThread(CommentThreadStatus.CLOSED, thread.getComments(), thread.getThreadContext(),
+                thread.getId(), thread.isDeleted());
+    }
+}
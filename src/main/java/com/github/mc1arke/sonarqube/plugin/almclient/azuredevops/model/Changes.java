@@ -22,16 +22,26 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
+import java.util.Map;
 
 public class Changes {
 
+    private final Map<String, Integer> changeCounts;
     private final List<Change> changes;
 
     @JsonCreator
-    public Changes(@JsonProperty("changes") List<Change> changes) {
+    public Changes(@JsonProperty("changeCounts") Map<String, Integer> changeCounts, @JsonProperty("changes") List<Change> changes) {
+        this.changeCounts = changeCounts;
         this.changes = changes;
     }
 
+    /**
+     * The number of changes of each type in the commit, across all pages of changes.
+     */
+    public Map<String, Integer> getChangeCounts() {
+        return changeCounts;
+    }
+
     public List<Change> getChanges() {
         return changes;
     }
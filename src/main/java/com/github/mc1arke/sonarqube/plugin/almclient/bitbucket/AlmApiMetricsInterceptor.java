@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Records each request made through the client in {@link AlmApiMetrics}, using the {@link String} tag on the request
+ * as the name of the operation, or the HTTP method where the request hasn't been tagged. The time recorded is the time
+ * taken to receive the response headers, since the body is read by the caller after this interceptor has returned.
+ */
+class AlmApiMetricsInterceptor implements Interceptor {
+
+    private final AlmApiMetrics almApiMetrics;
+
+    AlmApiMetricsInterceptor(AlmApiMetrics almApiMetrics) {
+        this.almApiMetrics = almApiMetrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String operation = Optional.ofNullable(request.tag(String.class)).orElse(request.method());
+
+        try (AlmApiMetrics.Call call = almApiMetrics.startCall(request.url().toString(), operation)) {
+            Response response = chain.proceed(request);
+            Optional.ofNullable(response.body()).map(ResponseBody::contentLength).ifPresent(call::setPayloadBytes);
+            if (response.isSuccessful()) {
+                call.succeeded();
+            }
+            return response;
+        }
+    }
+}
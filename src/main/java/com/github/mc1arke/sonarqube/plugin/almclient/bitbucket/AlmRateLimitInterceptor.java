@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Waits for a permit from the ALM setting's {@link AlmRateLimiter.Bucket} before sending each request, updates the
+ * bucket from each response, and sends a request rejected as rate limited again where the bucket allows it.
+ */
+class AlmRateLimitInterceptor implements Interceptor {
+
+    private final AlmRateLimiter.Bucket bucket;
+    private final AlmApiMetrics almApiMetrics;
+
+    AlmRateLimitInterceptor(AlmRateLimiter.Bucket bucket, AlmApiMetrics almApiMetrics) {
+        this.bucket = bucket;
+        this.almApiMetrics = almApiMetrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        int retries = 0;
+        while (true) {
+            bucket.acquire();
+            Response response = chain.proceed(request);
+            if (!bucket.update(response.code(), response::header) || !bucket.shouldRetry(retries)) {
+                return response;
+            }
+            response.close();
+            retries++;
+            almApiMetrics.recordRetry(request.url().toString(), Optional.ofNullable(request.tag(String.class)).orElse(request.method()));
+        }
+    }
+}
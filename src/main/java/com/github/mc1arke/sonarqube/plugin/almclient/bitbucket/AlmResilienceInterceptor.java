@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRetryPolicy;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Fails each request straight away whilst the {@link AlmCircuitBreaker} circuit for its host is open, records the
+ * outcome of each request against the circuit, and sends idempotent requests that fail with a transient error again
+ * as {@link AlmRetryPolicy} allows.
+ */
+class AlmResilienceInterceptor implements Interceptor {
+
+    private final AlmCircuitBreaker circuitBreaker;
+    private final AlmApiMetrics almApiMetrics;
+
+    AlmResilienceInterceptor(AlmCircuitBreaker circuitBreaker, AlmApiMetrics almApiMetrics) {
+        this.circuitBreaker = circuitBreaker;
+        this.almApiMetrics = almApiMetrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        AlmCircuitBreaker.Circuit circuit = circuitBreaker.getCircuit(request.url().host());
+        boolean idempotent = AlmRetryPolicy.isIdempotentMethod(request.method());
+        int retries = 0;
+        while (true) {
+            circuit.acquire();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException ex) {
+                if (AlmRetryPolicy.isHostFailure(ex)) {
+                    circuit.recordFailure();
+                }
+                if (!idempotent || !AlmRetryPolicy.isRetryableException(ex) || !AlmRetryPolicy.backOff(retries)) {
+                    throw ex;
+                }
+                retries++;
+                recordRetry(request);
+                continue;
+            }
+
+            if (AlmRetryPolicy.isServerError(response.code())) {
+                circuit.recordFailure();
+            } else {
+                circuit.recordSuccess();
+            }
+            if (!idempotent || !AlmRetryPolicy.isRetryableStatus(response.code()) || !AlmRetryPolicy.backOff(retries)) {
+                return response;
+            }
+            response.close();
+            retries++;
+            recordRetry(request);
+        }
+    }
+
+    private void recordRetry(Request request) {
+        almApiMetrics.recordRetry(request.url().toString(), Optional.ofNullable(request.tag(String.class)).orElse(request.method()));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Optional;
+
+/**
+ * Makes GET requests conditional where {@link AlmResponseCache} holds an earlier response for the same URL, and turns a
+ * {@code 304 Not Modified} back into a {@code 200} carrying the cached body, so the client handles a revalidated
+ * response exactly as it would a freshly downloaded one. Successful responses carrying a validator are buffered and
+ * stored for the next request, unless they're larger than the cache would store, in which case they're passed on
+ * having buffered no more than is needed to find that out.
+ * <br>
+ * Responses are cached against the credential the client was configured with rather than the {@code Authorization}
+ * header, since Bitbucket Cloud clients negotiate a new bearer token each time they're created.
+ */
+class AlmResponseCacheInterceptor implements Interceptor {
+
+    private final AlmResponseCache responseCache;
+    private final String credential;
+
+    AlmResponseCacheInterceptor(AlmResponseCache responseCache, String credential) {
+        this.responseCache = responseCache;
+        this.credential = credential;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+
+        String url = request.url().toString();
+        Optional<AlmResponseCache.CachedResponse> cachedResponse = responseCache.get(url, credential);
+        Request.Builder requestBuilder = request.newBuilder();
+        cachedResponse.ifPresent(cached -> cached.addValidators(requestBuilder::header));
+        Response response = chain.proceed(requestBuilder.build());
+
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED && cachedResponse.isPresent()) {
+            response.close();
+            AlmResponseCache.CachedResponse cached = cachedResponse.get();
+            Response.Builder responseBuilder = response.newBuilder().code(HttpURLConnection.HTTP_OK).message("OK");
+            cached.getHeaders().forEach(responseBuilder::header);
+            return responseBuilder
+                    .body(ResponseBody.create(cached.getBody(), cached.getHeader("Content-Type").map(MediaType::parse).orElse(null)))
+                    .build();
+        }
+
+        ResponseBody body = response.body();
+        if (response.code() != HttpURLConnection.HTTP_OK || null == body || !AlmResponseCache.hasValidator(response::header)) {
+            return response;
+        }
+
+        long maxBodySize = responseCache.getMaxBodySize();
+        if (maxBodySize == 0 || body.contentLength() > maxBodySize) {
+            return response;
+        }
+        BufferedSource source = body.source();
+        if (source.request(maxBodySize + 1)) {
+            // the bytes requested stay in the source's buffer, so the body is still read in full by the client
+            return response;
+        }
+
+        MediaType contentType = body.contentType();
+        byte[] content = source.readByteArray();
+        body.close();
+        responseCache.put(url, credential, response::header, content);
+        return response.newBuilder().body(ResponseBody.create(content, contentType)).build();
+    }
+}
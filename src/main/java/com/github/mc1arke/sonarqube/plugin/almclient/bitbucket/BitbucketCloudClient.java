@@ -21,6 +21,7 @@ package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.JsonResponseReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BitbucketConfiguration;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
@@ -60,12 +61,14 @@ class BitbucketCloudClient implements BitbucketClient {
     private static final String LINK_TEXT = "Go to SonarQube";
 
     private final ObjectMapper objectMapper;
+    private final JsonResponseReader responseReader;
     private final OkHttpClient okHttpClient;
     private final BitbucketConfiguration bitbucketConfiguration;
 
 
     BitbucketCloudClient(ObjectMapper objectMapper, OkHttpClient okHttpClient, BitbucketConfiguration bitbucketConfiguration) {
         this.objectMapper = objectMapper;
+        this.responseReader = new JsonResponseReader(objectMapper);
         this.okHttpClient = okHttpClient;
         this.bitbucketConfiguration = bitbucketConfiguration;
     }
@@ -75,11 +78,12 @@ class BitbucketCloudClient implements BitbucketClient {
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8)))
                 .url("https://bitbucket.org/site/oauth2/access_token")
                 .post(RequestBody.create("grant_type=client_credentials", MediaType.parse("application/x-www-form-urlencoded")))
+                .tag(String.class, "negotiateBearerToken")
                 .build();
 
         try (Response response = okHttpClient.newCall(request).execute()) {
-            BitbucketCloudClient.AuthToken authToken = objectMapper.readValue(
-                    Optional.ofNullable(response.body()).orElseThrow(() -> new IllegalStateException("No response returned by Bitbucket Oauth")).string(), BitbucketCloudClient.AuthToken.class);
+            BitbucketCloudClient.AuthToken authToken = objectMapper.readerFor(BitbucketCloudClient.AuthToken.class).readValue(
+                    Optional.ofNullable(response.body()).orElseThrow(() -> new IllegalStateException("No response returned by Bitbucket Oauth")).byteStream());
             return authToken.getAccessToken();
         } catch (IOException ex) {
             throw new IllegalStateException("Could not retrieve bearer token", ex);
@@ -131,6 +135,7 @@ class BitbucketCloudClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .post(RequestBody.create(objectMapper.writeValueAsString(annotations), APPLICATION_JSON_MEDIA_TYPE))
                 .url(format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s/annotations", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey))
+                .tag(String.class, "uploadAnnotations")
                 .build();
 
         LOGGER.info("Creating annotations on bitbucket cloud");
@@ -162,6 +167,7 @@ class BitbucketCloudClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .put(RequestBody.create(body, APPLICATION_JSON_MEDIA_TYPE))
                 .url(targetUrl)
+                .tag(String.class, "uploadReport")
                 .build();
 
         LOGGER.info("Create report on bitbucket cloud: {}", targetUrl);
@@ -187,14 +193,14 @@ class BitbucketCloudClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .get()
                 .url(format("https://api.bitbucket.org/2.0/repositories/%s/%s", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository()))
+                .tag(String.class, "retrieveRepository")
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
 
-            return objectMapper.reader().forType(Repository.class)
-                    .readValue(Optional.ofNullable(response.body())
-                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
-                            .string());
+            return responseReader.read(Optional.ofNullable(response.body())
+                    .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                    .byteStream(), Repository.class);
         }
     }
 
@@ -202,6 +208,7 @@ class BitbucketCloudClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .delete()
                 .url(format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey))
+                .tag(String.class, "deleteExistingReport")
                 .build();
 
         LOGGER.info("Deleting existing reports on bitbucket cloud");
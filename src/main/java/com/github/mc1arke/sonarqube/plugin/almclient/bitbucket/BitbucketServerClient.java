@@ -19,6 +19,7 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.JsonResponseReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsReport;
@@ -58,11 +59,13 @@ class BitbucketServerClient implements BitbucketClient {
 
     private final BitbucketServerConfiguration config;
     private final ObjectMapper objectMapper;
+    private final JsonResponseReader responseReader;
     private final OkHttpClient okHttpClient;
 
     BitbucketServerClient(BitbucketServerConfiguration config, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
         this.config = config;
         this.objectMapper = objectMapper;
+        this.responseReader = new JsonResponseReader(objectMapper);
         this.okHttpClient = okHttpClient;
     }
 
@@ -96,6 +99,7 @@ class BitbucketServerClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .delete()
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s/annotations", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
+                .tag(String.class, "deleteAnnotations")
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
@@ -112,6 +116,7 @@ class BitbucketServerClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .post(RequestBody.create(objectMapper.writeValueAsString(request), APPLICATION_JSON_MEDIA_TYPE))
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s/annotations", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
+                .tag(String.class, "uploadAnnotations")
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
@@ -129,6 +134,7 @@ class BitbucketServerClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .put(RequestBody.create(body, APPLICATION_JSON_MEDIA_TYPE))
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
+                .tag(String.class, "uploadReport")
                 .build();
 
         try (Response response = okHttpClient.newCall(req).execute()) {
@@ -168,14 +174,14 @@ class BitbucketServerClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .get()
                 .url(format("%s/rest/api/1.0/projects/%s/repos/%s", config.getUrl(), config.getProject(), config.getRepository()))
+                .tag(String.class, "retrieveRepository")
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
 
-            return objectMapper.reader().forType(Repository.class)
-                    .readValue(Optional.ofNullable(response.body())
-                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
-                            .string());
+            return responseReader.read(Optional.ofNullable(response.body())
+                    .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                    .byteStream(), Repository.class);
         }
     }
 
@@ -183,14 +189,14 @@ class BitbucketServerClient implements BitbucketClient {
         Request req = new Request.Builder()
                 .get()
                 .url(format("%s/rest/api/1.0/application-properties", config.getUrl()))
+                .tag(String.class, "getServerProperties")
                 .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
 
-            return objectMapper.reader().forType(ServerProperties.class)
-                    .readValue(Optional.ofNullable(response.body())
-                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
-                            .string());
+            return responseReader.read(Optional.ofNullable(response.body())
+                    .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                    .byteStream(), ServerProperties.class);
         }
     }
 
@@ -198,8 +204,7 @@ class BitbucketServerClient implements BitbucketClient {
         if (!response.isSuccessful()) {
             ErrorResponse errors = null;
             if (response.body() != null) {
-                errors = objectMapper.reader().forType(ErrorResponse.class)
-                        .readValue(response.body().string());
+                errors = responseReader.read(response.body().byteStream(), ErrorResponse.class);
             }
             throw new BitbucketException(response.code(), errors);
         }
@@ -22,6 +22,10 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BitbucketConfiguration;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.BitbucketServerConfiguration;
 import okhttp3.OkHttpClient;
@@ -49,10 +53,19 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
 
     private final HttpClientBuilderFactory httpClientBuilderFactory;
     private final Settings settings;
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmResponseCache responseCache;
+    private final AlmRateLimiter rateLimiter;
+    private final AlmCircuitBreaker circuitBreaker;
 
-    public DefaultBitbucketClientFactory(Settings settings, HttpClientBuilderFactory httpClientBuilderFactory) {
+    public DefaultBitbucketClientFactory(Settings settings, HttpClientBuilderFactory httpClientBuilderFactory, AlmApiMetrics almApiMetrics,
+                                         AlmResponseCache responseCache, AlmRateLimiter rateLimiter, AlmCircuitBreaker circuitBreaker) {
         this.httpClientBuilderFactory = httpClientBuilderFactory;
         this.settings = settings;
+        this.almApiMetrics = almApiMetrics;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
     }
 
     @Override
@@ -61,7 +74,9 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM Repo must be set in configuration"));
 
         ObjectMapper objectMapper = createObjectMapper();
-        OkHttpClient.Builder clientBuilder = createBaseClientBuilder(httpClientBuilderFactory);
+        OkHttpClient.Builder clientBuilder = createBaseClientBuilder(httpClientBuilderFactory, almApiMetrics);
+        AlmResilienceInterceptor resilienceInterceptor = new AlmResilienceInterceptor(circuitBreaker, almApiMetrics);
+        AlmRateLimitInterceptor rateLimitInterceptor = new AlmRateLimitInterceptor(rateLimiter.getBucket(almSettingDto), almApiMetrics);
 
         if (almSettingDto.getAlm() == ALM.BITBUCKET_CLOUD) {
             String appId = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getAppId()))
@@ -71,7 +86,9 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
             String clientSecret = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedClientSecret(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "Client Secret must be set in configuration"));
             String bearerToken = BitbucketCloudClient.negotiateBearerToken(clientId, clientSecret, objectMapper, clientBuilder.build());
-            return new BitbucketCloudClient(objectMapper, createAuthorisingClient(clientBuilder, bearerToken), new BitbucketConfiguration(appId, almRepo));
+            return new BitbucketCloudClient(objectMapper, createAuthorisingClient(clientBuilder, bearerToken, new AlmResponseCacheInterceptor(responseCache, clientId + ':' + clientSecret),
+                    resilienceInterceptor, rateLimitInterceptor),
+                    new BitbucketConfiguration(appId, almRepo));
         } else {
             String almSlug = Optional.ofNullable(StringUtils.trimToNull(projectAlmSettingDto.getAlmSlug()))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM slug must be set in configuration"));
@@ -79,7 +96,9 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "URL must be set in configuration"));
             String personalAccessToken = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Personal access token must be set in configuration"));
-            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper, createAuthorisingClient(clientBuilder, personalAccessToken));
+            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper,
+                    createAuthorisingClient(clientBuilder, personalAccessToken, new AlmResponseCacheInterceptor(responseCache, personalAccessToken),
+                            resilienceInterceptor, rateLimitInterceptor));
         }
     }
 
@@ -90,19 +109,29 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .findAndRegisterModules();
     }
 
-    private static OkHttpClient.Builder createBaseClientBuilder(HttpClientBuilderFactory httpClientBuilderFactory) {
+    private static OkHttpClient.Builder createBaseClientBuilder(HttpClientBuilderFactory httpClientBuilderFactory, AlmApiMetrics almApiMetrics) {
         HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(LOGGER::debug);
         httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        return httpClientBuilderFactory.createClientBuilder().addInterceptor(httpLoggingInterceptor);
+        return httpClientBuilderFactory.createClientBuilder()
+                .addInterceptor(new AlmApiMetricsInterceptor(almApiMetrics))
+                .addInterceptor(new AlmRequestTimeoutInterceptor())
+                .addInterceptor(httpLoggingInterceptor);
     }
 
-    private static OkHttpClient createAuthorisingClient(OkHttpClient.Builder clientBuilder, String bearerToken) {
+    private static OkHttpClient createAuthorisingClient(OkHttpClient.Builder clientBuilder, String bearerToken,
+                                                        AlmResponseCacheInterceptor responseCacheInterceptor,
+                                                        AlmResilienceInterceptor resilienceInterceptor,
+                                                        AlmRateLimitInterceptor rateLimitInterceptor) {
         return clientBuilder.addInterceptor(chain -> {
                     Request newRequest = chain.request().newBuilder()
                             .addHeader("Authorization", format("Bearer %s", bearerToken))
                             .addHeader("Accept", "application/json")
                             .build();
                     return chain.proceed(newRequest);
-                }).build();
+                })
+                .addInterceptor(responseCacheInterceptor)
+                .addInterceptor(resilienceInterceptor)
+                .addInterceptor(rateLimitInterceptor)
+                .build();
     }
 }
@@ -18,15 +18,99 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
+import org.sonar.api.Startable;
 import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.server.ServerSide;
 
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns a single long-lived {@link OkHttpClient} that every Bitbucket client is derived from, so the connection pool and
+ * dispatcher threads are shared across decorations rather than being discarded after each one. Unlike
+ * {@link AlmHttpClientPool}, which holds a pool for each ALM setting, this one pool serves every Bitbucket host, so the
+ * number of idle connections it keeps is configured separately from the connections kept for each host, and is shared
+ * between all hosts. Idle connections are closed after the same timeout as {@link AlmHttpClientPool} uses.
+ * <br>
+ * The Bitbucket clients only make synchronous calls, which OkHttp doesn't queue through the dispatcher, so the
+ * dispatcher's request limits are left at their defaults.
+ */
 @ServerSide
 @ComputeEngineSide
-public class HttpClientBuilderFactory {
+public class HttpClientBuilderFactory implements Startable {
+
+    public static final String MAX_IDLE_CONNECTIONS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.http.bitbucket.max-idle-connections";
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 50;
+
+    private final OkHttpClient baseClient;
+
+    public HttpClientBuilderFactory(Configuration configuration, AlmApiMetrics almApiMetrics) {
+        super();
+        int maxIdleConnections = Math.max(1, configuration.getInt(MAX_IDLE_CONNECTIONS).orElse(DEFAULT_MAX_IDLE_CONNECTIONS));
+        long idleTimeoutSeconds = Math.max(1, configuration.getLong(AlmHttpClientPool.IDLE_TIMEOUT_SECONDS).orElse(AlmHttpClientPool.DEFAULT_IDLE_TIMEOUT_SECONDS));
+
+        this.baseClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, idleTimeoutSeconds, TimeUnit.SECONDS))
+                .eventListenerFactory(call -> new ConnectionReuseListener(almApiMetrics))
+                .build();
+    }
+
+    @Override
+    public void start() {
+        // the base client is created on construction
+    }
 
+    @Override
+    public void stop() {
+        baseClient.dispatcher().executorService().shutdown();
+        baseClient.connectionPool().evictAll();
+    }
+
+    /**
+     * @return a new builder sharing the connection pool and dispatcher of the base client, so any client built from it
+     * reuses connections opened by every other client
+     */
     public OkHttpClient.Builder createClientBuilder() {
-        return new OkHttpClient.Builder();
+        return baseClient.newBuilder();
+    }
+
+    OkHttpClient getBaseClient() {
+        return baseClient;
+    }
+
+    /**
+     * Records whether each connection a call obtains was newly opened or reused from the pool. A call can obtain more
+     * than one connection if it's redirected or retried, so the state is reset after each connection is acquired.
+     */
+    static final class ConnectionReuseListener extends EventListener {
+
+        private final AlmApiMetrics almApiMetrics;
+        private boolean connecting;
+
+        ConnectionReuseListener(AlmApiMetrics almApiMetrics) {
+            super();
+            this.almApiMetrics = almApiMetrics;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connecting = true;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            almApiMetrics.recordConnection(call.request().url().toString(), !connecting);
+            connecting = false;
+        }
     }
 }
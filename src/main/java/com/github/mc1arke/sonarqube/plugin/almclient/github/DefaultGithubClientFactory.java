@@ -19,8 +19,12 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.github;
 
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlGithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.server.ServerSide;
@@ -34,14 +38,28 @@ import java.util.Optional;
 @ComputeEngineSide
 public class DefaultGithubClientFactory implements GithubClientFactory {
 
+    public static final String MAX_ANNOTATIONS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.github.max-annotations";
+
+    public static final int DEFAULT_MAX_ANNOTATIONS = 0;
+
     private final GithubApplicationAuthenticationProvider githubApplicationAuthenticationProvider;
     private final Settings settings;
     private final GraphqlProvider graphqlProvider;
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmRateLimiter rateLimiter;
+    private final AlmCircuitBreaker circuitBreaker;
+    private final AlmOperationExecutor almOperationExecutor;
 
-    public DefaultGithubClientFactory(GithubApplicationAuthenticationProvider githubApplicationAuthenticationProvider, Settings settings, GraphqlProvider graphqlProvider) {
+    public DefaultGithubClientFactory(GithubApplicationAuthenticationProvider githubApplicationAuthenticationProvider, Settings settings,
+                                      GraphqlProvider graphqlProvider, AlmApiMetrics almApiMetrics, AlmRateLimiter rateLimiter,
+                                      AlmCircuitBreaker circuitBreaker, AlmOperationExecutor almOperationExecutor) {
         this.githubApplicationAuthenticationProvider = githubApplicationAuthenticationProvider;
         this.settings = settings;
         this.graphqlProvider = graphqlProvider;
+        this.almApiMetrics = almApiMetrics;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.almOperationExecutor = almOperationExecutor;
     }
 
     @Override
@@ -55,7 +73,9 @@ public class DefaultGithubClientFactory implements GithubClientFactory {
             RepositoryAuthenticationToken repositoryAuthenticationToken =
                     githubApplicationAuthenticationProvider.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath);
 
-            return new GraphqlGithubClient(graphqlProvider, apiUrl, repositoryAuthenticationToken);
+            return new GraphqlGithubClient(graphqlProvider, apiUrl, repositoryAuthenticationToken, almApiMetrics,
+                    almOperationExecutor, Math.max(0, settings.getInt(MAX_ANNOTATIONS)), rateLimiter.getBucket(almSettingDto),
+                    circuitBreaker.getCircuitForUrl(apiUrl));
         } catch (IOException ex) {
             throw new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Could not create Github client - " + ex.getMessage(), ex);
         }
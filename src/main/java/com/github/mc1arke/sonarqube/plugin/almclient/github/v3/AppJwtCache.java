@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.impl.DefaultJwtBuilder;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the parsed private key of each GitHub App, and the JWT most recently signed with it, so the key only has to be
+ * parsed when it changes and a JWT only has to be signed when the previous one is close to expiring.
+ * <br>
+ * Entries are held against the API URL and App ID, along with a hash of the key they were created from rather than the
+ * key itself. A change to the key in the ALM setting results in a different hash, which replaces the entry.
+ */
+@ServerSide
+@ComputeEngineSide
+public class AppJwtCache {
+
+    static final Duration JWT_VALIDITY = Duration.ofMinutes(2);
+    static final Duration JWT_REFRESH_MARGIN = Duration.ofSeconds(30);
+
+    private final Map<AppKey, SigningEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @return a JWT for the App that remains valid for at least {@link #JWT_REFRESH_MARGIN} after the given time
+     */
+    String getJwt(String apiUrl, String appId, String apiPrivateKey, Instant now) throws IOException {
+        AppKey appKey = new AppKey(apiUrl, appId);
+        String keyHash = hash(apiPrivateKey);
+
+        SigningEntry entry = entries.get(appKey);
+        if (null == entry || !entry.keyHash.equals(keyHash)) {
+            entry = new SigningEntry(keyHash, createPrivateKey(apiPrivateKey));
+        }
+
+        synchronized (entry) {
+            if (null == entry.jwt || !now.isBefore(entry.jwtExpiresAt.minus(JWT_REFRESH_MARGIN))) {
+                Instant issued = now.minus(10, ChronoUnit.SECONDS);
+                Instant expiry = issued.plus(JWT_VALIDITY);
+                entry.jwt = new DefaultJwtBuilder().issuedAt(Date.from(issued)).expiration(Date.from(expiry))
+                        .claim("iss", appId).signWith(entry.privateKey, Jwts.SIG.RS256).compact();
+                entry.jwtExpiresAt = expiry;
+            }
+            entries.put(appKey, entry);
+            return entry.jwt;
+        }
+    }
+
+    private static String hash(String apiPrivateKey) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(apiPrivateKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static PrivateKey createPrivateKey(String apiPrivateKey) throws IOException {
+        try (PEMParser pemParser = new PEMParser(new StringReader(apiPrivateKey))) {
+            return new JcaPEMKeyConverter().getPrivateKey(((PEMKeyPair) pemParser.readObject()).getPrivateKeyInfo());
+        }
+    }
+
+    private static final class SigningEntry {
+
+        private final String keyHash;
+        private final PrivateKey privateKey;
+        private String jwt;
+        private Instant jwtExpiresAt;
+
+        private SigningEntry(String keyHash, PrivateKey privateKey) {
+            this.keyHash = keyHash;
+            this.privateKey = privateKey;
+        }
+    }
+
+    private static final class AppKey {
+
+        private final String apiUrl;
+        private final String appId;
+
+        private AppKey(String apiUrl, String appId) {
+            this.apiUrl = apiUrl;
+            this.appId = appId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            AppKey appKey = (AppKey) o;
+            return Objects.equals(apiUrl, appKey.apiUrl) && Objects.equals(appId, appKey.appId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, appId);
+        }
+    }
+}
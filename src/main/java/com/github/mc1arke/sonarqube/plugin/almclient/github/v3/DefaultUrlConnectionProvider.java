@@ -18,6 +18,7 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.server.ServerSide;
 
@@ -31,7 +32,11 @@ public final class DefaultUrlConnectionProvider implements UrlConnectionProvider
 
     @Override
     public URLConnection createUrlConnection(String url) throws IOException {
-        return new URL(url).openConnection();
+        URLConnection urlConnection = new URL(url).openConnection();
+        int timeoutMillis = AlmRequestDeadline.getRequestTimeoutMillis();
+        urlConnection.setConnectTimeout(timeoutMillis);
+        urlConnection.setReadTimeout(timeoutMillis);
+        return urlConnection;
     }
 
 }
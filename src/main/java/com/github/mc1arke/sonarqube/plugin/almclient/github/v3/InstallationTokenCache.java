@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppInstallation;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.Repository;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the installation tokens minted for each GitHub App and repository until shortly before they expire, along with
+ * an index of the installation each repository was last found in, so that a repository's token can be minted directly
+ * from its installation rather than by searching every installation the App has.
+ * <br>
+ * The index is populated from the repositories seen whilst searching installations, so it's built up lazily as
+ * repositories are looked up. An entry is only removed when minting a token from its installation fails, at which point
+ * the next lookup for the repository searches all installations again.
+ */
+@ServerSide
+@ComputeEngineSide
+public class InstallationTokenCache {
+
+    static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+
+    private final Map<CacheKey, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Map<CacheKey, IndexedRepository> repositories = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cached token for the repository, unless it expires within {@link #REFRESH_MARGIN} of the given time
+     */
+    Optional<RepositoryAuthenticationToken> getToken(String apiUrl, String appId, String projectPath, Instant now) {
+        CacheKey key = new CacheKey(apiUrl, appId, projectPath);
+        CachedToken cachedToken = tokens.get(key);
+        if (null == cachedToken) {
+            return Optional.empty();
+        }
+        if (now.isBefore(cachedToken.expiresAt.minus(REFRESH_MARGIN))) {
+            return Optional.of(cachedToken.token);
+        }
+        tokens.remove(key, cachedToken);
+        return Optional.empty();
+    }
+
+    void putToken(String apiUrl, String appId, String projectPath, RepositoryAuthenticationToken token, Instant expiresAt) {
+        tokens.put(new CacheKey(apiUrl, appId, projectPath), new CachedToken(token, expiresAt));
+    }
+
+    Optional<IndexedRepository> getRepository(String apiUrl, String appId, String projectPath) {
+        return Optional.ofNullable(repositories.get(new CacheKey(apiUrl, appId, projectPath)));
+    }
+
+    void putRepository(String apiUrl, String appId, AppInstallation installation, Repository repository) {
+        repositories.put(new CacheKey(apiUrl, appId, repository.getFullName()), new IndexedRepository(installation, repository));
+    }
+
+    void evictRepository(String apiUrl, String appId, String projectPath) {
+        CacheKey key = new CacheKey(apiUrl, appId, projectPath);
+        repositories.remove(key);
+        tokens.remove(key);
+    }
+
+    static final class IndexedRepository {
+
+        private final AppInstallation installation;
+        private final Repository repository;
+
+        private IndexedRepository(AppInstallation installation, Repository repository) {
+            this.installation = installation;
+            this.repository = repository;
+        }
+
+        AppInstallation getInstallation() {
+            return installation;
+        }
+
+        Repository getRepository() {
+            return repository;
+        }
+    }
+
+    private static final class CachedToken {
+
+        private final RepositoryAuthenticationToken token;
+        private final Instant expiresAt;
+
+        private CachedToken(RepositoryAuthenticationToken token, Instant expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final String apiUrl;
+        private final String appId;
+        private final String projectPath;
+
+        private CacheKey(String apiUrl, String appId, String projectPath) {
+            this.apiUrl = apiUrl;
+            this.appId = appId;
+            this.projectPath = projectPath;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(apiUrl, cacheKey.apiUrl) && Objects.equals(appId, cacheKey.appId) && Objects.equals(projectPath, cacheKey.projectPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, appId, projectPath);
+        }
+    }
+}
@@ -21,6 +21,8 @@ package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
@@ -28,26 +30,28 @@ import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppInstalla
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.InstallationRepositories;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.Repository;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.impl.DefaultJwtBuilder;
-import org.bouncycastle.openssl.PEMKeyPair;
-import org.bouncycastle.openssl.PEMParser;
-import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.ALM;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
-import java.security.PrivateKey;
 import java.time.Clock;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Date;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @ServerSide
 @ComputeEngineSide
@@ -55,112 +59,280 @@ public class RestApplicationAuthenticationProvider implements GithubApplicationA
 
     private static final String ACCEPT_HEADER = "Accept";
     private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String LINK_HEADER = "Link";
     private static final String BEARER_AUTHORIZATION_HEADER_PREFIX = "Bearer ";
 
     private static final String APP_PREVIEW_ACCEPT_HEADER = "application/vnd.github.machine-man-preview+json";
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestApplicationAuthenticationProvider.class);
+
     private final Clock clock;
     private final LinkHeaderReader linkHeaderReader;
     private final UrlConnectionProvider urlProvider;
     private final ObjectMapper objectMapper;
+    private final AlmApiMetrics almApiMetrics;
+    private final InstallationTokenCache installationTokenCache;
+    private final AppJwtCache appJwtCache;
+    private final AlmResponseCache responseCache;
+    private final AlmOperationExecutor almOperationExecutor;
 
-    public RestApplicationAuthenticationProvider(Clock clock, LinkHeaderReader linkHeaderReader, UrlConnectionProvider urlProvider) {
+    public RestApplicationAuthenticationProvider(Clock clock, LinkHeaderReader linkHeaderReader, UrlConnectionProvider urlProvider,
+                                                 AlmApiMetrics almApiMetrics, InstallationTokenCache installationTokenCache,
+                                                 AppJwtCache appJwtCache, AlmResponseCache responseCache,
+                                                 AlmOperationExecutor almOperationExecutor) {
         super();
+        this.appJwtCache = appJwtCache;
+        this.responseCache = responseCache;
+        this.almOperationExecutor = almOperationExecutor;
         this.clock = clock;
         this.urlProvider = urlProvider;
         this.linkHeaderReader = linkHeaderReader;
+        this.almApiMetrics = almApiMetrics;
+        this.installationTokenCache = installationTokenCache;
         this.objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     }
 
     @Override
     public RepositoryAuthenticationToken getInstallationToken(String apiUrl, String appId, String apiPrivateKey,
                                                               String projectPath) throws IOException {
+        String v3Url = getV3Url(apiUrl);
+        Instant now = clock.instant();
+
+        Optional<RepositoryAuthenticationToken> cachedToken = installationTokenCache.getToken(v3Url, appId, projectPath, now);
+        if (cachedToken.isPresent()) {
+            return cachedToken.get();
+        }
 
-        Instant issued = clock.instant().minus(10, ChronoUnit.SECONDS);
-        Instant expiry = issued.plus(2, ChronoUnit.MINUTES);
-        String jwtToken = new DefaultJwtBuilder().issuedAt(Date.from(issued)).expiration(Date.from(expiry))
-                .claim("iss", appId).signWith(createPrivateKey(apiPrivateKey), Jwts.SIG.RS256).compact();
+        String jwtToken = appJwtCache.getJwt(v3Url, appId, apiPrivateKey, now);
 
-        Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findTokenFromAppInstallationList(getV3Url(apiUrl) + "/app/installations", jwtToken, projectPath);
+        SearchContext searchContext = new SearchContext(v3Url, appId, jwtToken, projectPath);
+        Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findTokenFromIndexedInstallation(searchContext);
+        if (repositoryAuthenticationToken.isEmpty()) {
+            repositoryAuthenticationToken = findTokenFromRepositoryInstallation(searchContext);
+        }
+        if (repositoryAuthenticationToken.isEmpty()) {
+            repositoryAuthenticationToken = findTokenFromAppInstallationList(v3Url + "/app/installations", searchContext);
+        }
 
         return repositoryAuthenticationToken.orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT,
             "No token could be found with access to the requested repository using the given application ID and key"));
     }
 
-    private Optional<RepositoryAuthenticationToken> findTokenFromAppInstallationList(String apiUrl, String jwtToken, String projectPath) throws IOException {
+    private Optional<RepositoryAuthenticationToken> findTokenFromIndexedInstallation(SearchContext searchContext) {
+        Optional<InstallationTokenCache.IndexedRepository> indexedRepository = installationTokenCache.getRepository(searchContext.apiUrl, searchContext.appId, searchContext.projectPath);
+        if (indexedRepository.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            AppToken appToken = createAppToken(indexedRepository.get().getInstallation(), searchContext.jwtToken);
+            return Optional.of(createRepositoryAuthenticationToken(searchContext, appToken, indexedRepository.get().getRepository()));
+        } catch (IOException ex) {
+            LOGGER.debug("Could not create token from the installation last used for {}. Searching all installations", searchContext.projectPath, ex);
+            installationTokenCache.evictRepository(searchContext.apiUrl, searchContext.appId, searchContext.projectPath);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Asks GitHub which installation of the App the repository belongs to, so only that installation's token has to be
+     * minted. Older GitHub Enterprise versions don't offer this lookup, so any failure results in an empty response and
+     * the caller searching through every installation instead.
+     */
+    private Optional<RepositoryAuthenticationToken> findTokenFromRepositoryInstallation(SearchContext searchContext) {
+        String installationUrl = searchContext.apiUrl + "/repos/" + searchContext.projectPath + "/installation";
+        try {
+            URLConnection installationConnection = urlProvider.createUrlConnection(installationUrl);
+            installationConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
+            installationConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + searchContext.jwtToken);
+
+            AppInstallation installation = readCachedResponse(installationUrl, installationConnection, "getRepositoryInstallation",
+                    searchContext, AppInstallation.class).value;
+
+            AppToken appToken = createAppToken(installation, searchContext.jwtToken);
+
+            String repositoryUrl = searchContext.apiUrl + "/repos/" + searchContext.projectPath;
+            URLConnection repositoryConnection = urlProvider.createUrlConnection(repositoryUrl);
+            repositoryConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
+            repositoryConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + appToken.getToken());
+
+            Repository repository = readCachedResponse(repositoryUrl, repositoryConnection, "getRepository", searchContext,
+                    Repository.class).value;
+
+            installationTokenCache.putRepository(searchContext.apiUrl, searchContext.appId, installation, repository);
+            return Optional.of(createRepositoryAuthenticationToken(searchContext, appToken, repository));
+        } catch (IOException ex) {
+            LOGGER.debug("Could not look up the installation for {} directly. Searching all installations", searchContext.projectPath, ex);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<RepositoryAuthenticationToken> findTokenFromAppInstallationList(String apiUrl, SearchContext searchContext) throws IOException {
         URLConnection appConnection = urlProvider.createUrlConnection(apiUrl);
         appConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
-        appConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + jwtToken);
+        appConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + searchContext.jwtToken);
 
-        try (Reader reader = new InputStreamReader(appConnection.getInputStream())) {
-            AppInstallation[] appInstallations = objectMapper.readerFor(AppInstallation[].class).readValue(reader);
-            for (AppInstallation appInstallation : appInstallations) {
-                Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findAppTokenFromAppInstallation(appInstallation, jwtToken, projectPath);
+        CachedReadResponse<AppInstallation[]> response = readCachedResponse(apiUrl, appConnection, "listAppInstallations",
+                searchContext, AppInstallation[].class);
+        AppInstallation[] appInstallations = response.value;
+        Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findTokenFromAppInstallations(Arrays.asList(appInstallations), searchContext);
 
-                if (repositoryAuthenticationToken.isPresent()) {
-                    return repositoryAuthenticationToken;
-                }
-            }
+        if (repositoryAuthenticationToken.isPresent()) {
+            return repositoryAuthenticationToken;
         }
 
-        Optional<String> nextLink = linkHeaderReader.findNextLink(appConnection.getHeaderField("Link"));
+        Optional<String> nextLink = linkHeaderReader.findNextLink(response.link);
         if (nextLink.isEmpty()) {
             return Optional.empty();
         }
 
-        return findTokenFromAppInstallationList(nextLink.get(), jwtToken, projectPath);
+        return findTokenFromAppInstallationList(nextLink.get(), searchContext);
     }
 
-    private Optional<RepositoryAuthenticationToken> findAppTokenFromAppInstallation(AppInstallation installation, String jwtToken, String projectPath) throws IOException {
+    /**
+     * Searches the installations through the shared {@link AlmOperationExecutor}, with any searches not yet started
+     * once one finds the repository returning without making any requests. A failure searching any installation is only
+     * reported if no installation has the repository.
+     */
+    private Optional<RepositoryAuthenticationToken> findTokenFromAppInstallations(List<AppInstallation> appInstallations, SearchContext searchContext) throws IOException {
+        AtomicReference<RepositoryAuthenticationToken> result = new AtomicReference<>();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        almOperationExecutor.executeAll(ALM.GITHUB, appInstallations, appInstallation -> {
+            if (null != result.get()) {
+                return;
+            }
+            try {
+                findAppTokenFromAppInstallation(appInstallation, searchContext).ifPresent(token -> result.compareAndSet(null, token));
+            } catch (IOException ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }, false);
+
+        if (null != result.get()) {
+            return Optional.of(result.get());
+        }
+        if (null != failure.get()) {
+            throw failure.get();
+        }
+        return Optional.empty();
+    }
+
+    private Optional<RepositoryAuthenticationToken> findAppTokenFromAppInstallation(AppInstallation installation, SearchContext searchContext) throws IOException {
+        AppToken appToken = createAppToken(installation, searchContext.jwtToken);
+        return findRepositoryAuthenticationToken(installation, appToken, installation.getRepositoriesUrl(), searchContext);
+    }
+
+    private AppToken createAppToken(AppInstallation installation, String jwtToken) throws IOException {
         URLConnection accessTokenConnection = urlProvider.createUrlConnection(installation.getAccessTokensUrl());
         ((HttpURLConnection) accessTokenConnection).setRequestMethod("POST");
         accessTokenConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
         accessTokenConnection
                 .setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + jwtToken);
 
-        try (Reader reader = new InputStreamReader(accessTokenConnection.getInputStream())) {
-            AppToken appToken = objectMapper.readerFor(AppToken.class).readValue(reader);
-
-            String targetUrl = installation.getRepositoriesUrl();
-
-            Optional<RepositoryAuthenticationToken> potentialRepositoryAuthenticationToken = findRepositoryAuthenticationToken(appToken, targetUrl, projectPath);
-
-            if (potentialRepositoryAuthenticationToken.isPresent()) {
-                return potentialRepositoryAuthenticationToken;
-            }
-
+        try (Reader reader = new InputStreamReader(openStream(installation.getAccessTokensUrl(), accessTokenConnection, "createInstallationToken"))) {
+            return objectMapper.readerFor(AppToken.class).readValue(reader);
         }
-
-        return Optional.empty();
     }
 
-    private Optional<RepositoryAuthenticationToken> findRepositoryAuthenticationToken(AppToken appToken, String targetUrl,
-                                                                                      String projectPath) throws IOException {
+    private Optional<RepositoryAuthenticationToken> findRepositoryAuthenticationToken(AppInstallation installation, AppToken appToken, String targetUrl,
+                                                                                      SearchContext searchContext) throws IOException {
         URLConnection installationRepositoriesConnection = urlProvider.createUrlConnection(targetUrl);
         ((HttpURLConnection) installationRepositoriesConnection).setRequestMethod("GET");
         installationRepositoriesConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
         installationRepositoriesConnection.setRequestProperty(AUTHORIZATION_HEADER,
                                                               BEARER_AUTHORIZATION_HEADER_PREFIX + appToken.getToken());
 
-        try (Reader installationRepositoriesReader = new InputStreamReader(
-                installationRepositoriesConnection.getInputStream())) {
-            InstallationRepositories installationRepositories =
-                    objectMapper.readerFor(InstallationRepositories.class).readValue(installationRepositoriesReader);
-            for (Repository repository : installationRepositories.getRepositories()) {
-                if (projectPath.equals(repository.getFullName())) {
-                    return Optional.of(new RepositoryAuthenticationToken(repository.getNodeId(), appToken.getToken(), repository.getHtmlUrl(), repository.getName(), repository.getOwner().getLogin()));
-                }
+        CachedReadResponse<InstallationRepositories> response = readCachedResponse(targetUrl, installationRepositoriesConnection,
+                "listInstallationRepositories", searchContext, InstallationRepositories.class);
+        InstallationRepositories installationRepositories = response.value;
+        for (Repository repository : installationRepositories.getRepositories()) {
+            installationTokenCache.putRepository(searchContext.apiUrl, searchContext.appId, installation, repository);
+            if (searchContext.projectPath.equals(repository.getFullName())) {
+                return Optional.of(createRepositoryAuthenticationToken(searchContext, appToken, repository));
             }
-
         }
 
-        Optional<String> nextLink = linkHeaderReader.findNextLink(installationRepositoriesConnection.getHeaderField("Link"));
+        Optional<String> nextLink = linkHeaderReader.findNextLink(response.link);
 
         if (nextLink.isEmpty()) {
             return Optional.empty();
         }
 
-        return findRepositoryAuthenticationToken(appToken, nextLink.get(), projectPath);
+        return findRepositoryAuthenticationToken(installation, appToken, nextLink.get(), searchContext);
+    }
+
+    private RepositoryAuthenticationToken createRepositoryAuthenticationToken(SearchContext searchContext, AppToken appToken, Repository repository) {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = new RepositoryAuthenticationToken(repository.getNodeId(), appToken.getToken(), repository.getHtmlUrl(), repository.getName(), repository.getOwner().getLogin());
+        parseExpiry(appToken.getExpiresAt()).ifPresent(expiresAt -> installationTokenCache.putToken(searchContext.apiUrl, searchContext.appId, searchContext.projectPath, repositoryAuthenticationToken, expiresAt));
+        return repositoryAuthenticationToken;
+    }
+
+    private static Optional<Instant> parseExpiry(String expiresAt) {
+        if (null == expiresAt) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.parse(expiresAt));
+        } catch (DateTimeParseException ex) {
+            LOGGER.debug("Could not parse installation token expiry '{}'. Token will not be cached", expiresAt, ex);
+            return Optional.empty();
+        }
+    }
+
+    private InputStream openStream(String url, URLConnection connection, String operation) throws IOException {
+        try (AlmApiMetrics.Call call = almApiMetrics.startCall(url, operation)) {
+            InputStream inputStream = connection.getInputStream();
+            call.setPayloadBytes(connection.getContentLengthLong());
+            call.succeeded();
+            return inputStream;
+        }
+    }
+
+    /**
+     * Reads the response for the connection, sending the validators for any earlier response held in
+     * {@link AlmResponseCache} and reusing that response's body if GitHub says it's unchanged. Fresh bodies are only
+     * buffered where they carry a validator and fit in the cache, otherwise they're parsed directly from the
+     * connection. Responses are cached against the App rather than the token used to read them, since JWTs and
+     * installation tokens are replaced far more often than the installations and repositories they're used to read.
+     */
+    private <T> CachedReadResponse<T> readCachedResponse(String url, URLConnection connection, String operation,
+                                                         SearchContext searchContext, Class<T> type) throws IOException {
+        String cacheCredential = "app:" + searchContext.appId;
+        Optional<AlmResponseCache.CachedResponse> cachedResponse = responseCache.get(url, cacheCredential);
+        cachedResponse.ifPresent(cached -> cached.addValidators(connection::setRequestProperty));
+
+        try (AlmApiMetrics.Call call = almApiMetrics.startCall(url, operation);
+             InputStream inputStream = connection.getInputStream()) {
+            if (cachedResponse.isPresent() && connection instanceof HttpURLConnection
+                    && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                call.succeeded();
+                return new CachedReadResponse<>(objectMapper.readerFor(type).readValue(cachedResponse.get().getBody()),
+                        cachedResponse.get().getHeader(LINK_HEADER).orElse(null));
+            }
+
+            String link = connection.getHeaderField(LINK_HEADER);
+            long maxBodySize = responseCache.getMaxBodySize();
+            long contentLength = connection.getContentLengthLong();
+            if (!AlmResponseCache.hasValidator(connection::getHeaderField) || maxBodySize == 0 || contentLength > maxBodySize) {
+                T value = objectMapper.readerFor(type).readValue(inputStream);
+                call.setPayloadBytes(Math.max(contentLength, 0));
+                call.succeeded();
+                return new CachedReadResponse<>(value, link);
+            }
+
+            byte[] body = responseCache.readBodyPrefix(inputStream);
+            if (body.length > maxBodySize) {
+                T value = objectMapper.readerFor(type).readValue(new SequenceInputStream(new ByteArrayInputStream(body), inputStream));
+                call.setPayloadBytes(Math.max(contentLength, body.length));
+                call.succeeded();
+                return new CachedReadResponse<>(value, link);
+            }
+
+            call.setPayloadBytes(body.length);
+            call.succeeded();
+            responseCache.put(url, cacheCredential, connection::getHeaderField, body);
+            return new CachedReadResponse<>(objectMapper.readerFor(type).readValue(body), link);
+        }
     }
 
     private static String getV3Url(String apiUrl) {
@@ -173,9 +345,29 @@ public class RestApplicationAuthenticationProvider implements GithubApplicationA
         return apiUrl;
     }
 
-    private static PrivateKey createPrivateKey(String apiPrivateKey) throws IOException {
-        try (PEMParser pemParser = new PEMParser(new StringReader(apiPrivateKey))) {
-            return new JcaPEMKeyConverter().getPrivateKey(((PEMKeyPair) pemParser.readObject()).getPrivateKeyInfo());
+    private static final class CachedReadResponse<T> {
+
+        private final T value;
+        private final String link;
+
+        private CachedReadResponse(T value, String link) {
+            this.value = value;
+            this.link = link;
+        }
+    }
+
+    private static final class SearchContext {
+
+        private final String apiUrl;
+        private final String appId;
+        private final String jwtToken;
+        private final String projectPath;
+
+        private SearchContext(String apiUrl, String appId, String jwtToken, String projectPath) {
+            this.apiUrl = apiUrl;
+            this.appId = appId;
+            this.jwtToken = jwtToken;
+            this.projectPath = projectPath;
         }
     }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2021 Julien Roy
+ * Copyright (C) 2024 Michael Clarke
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -18,23 +18,27 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import io.aexp.nodes.graphql.annotations.GraphQLArgument;
-import io.aexp.nodes.graphql.annotations.GraphQLProperty;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
 
-@GraphQLProperty(name = "addComment", arguments = {@GraphQLArgument(name = "input")})
-public class AddComment {
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
-    private final String clientMutationId;
+/**
+ * The response to a mutation document containing several aliased mutations, holding the result of each mutation
+ * against the alias it was requested under.
+ */
+public class AliasedMutations {
+
+    private final Map<String, Object> results = new HashMap<>();
 
-    @JsonCreator
-    public AddComment(@JsonProperty("clientMutationId") String clientMutationId) {
-        this.clientMutationId = clientMutationId;
+    @JsonAnySetter
+    public void putResult(String alias, Object result) {
+        results.put(alias, result);
     }
 
-    public String getClientMutationId() {
-        return clientMutationId;
+    public Map<String, Object> getResults() {
+        return Collections.unmodifiableMap(results);
     }
 
 }
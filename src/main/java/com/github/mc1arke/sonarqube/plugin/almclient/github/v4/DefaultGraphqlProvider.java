@@ -18,6 +18,7 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
 import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
 import org.sonar.api.ce.ComputeEngineSide;
@@ -29,7 +30,8 @@ public final class DefaultGraphqlProvider implements GraphqlProvider {
 
     @Override
     public GraphQLTemplate createGraphQLTemplate() {
-        return new GraphQLTemplate();
+        int timeoutMillis = AlmRequestDeadline.getRequestTimeoutMillis();
+        return new GraphQLTemplate(timeoutMillis, timeoutMillis);
     }
 
     @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2021-2022 Julien Roy, Michael Clarke
+ * Copyright (C) 2024 Michael Clarke
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -23,33 +23,52 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.aexp.nodes.graphql.annotations.GraphQLArgument;
 import io.aexp.nodes.graphql.annotations.GraphQLProperty;
 
-@GraphQLProperty(name = "repository", arguments = {@GraphQLArgument(name = "owner"), @GraphQLArgument(name = "name")})
-public class GetRepository {
+/**
+ * Fetches everything needed to find the summary comments previously posted on a pull request in a single query: the
+ * login of the authenticated user, the ID of the pull request, and a page of its comments, working backwards from
+ * the most recent.
+ */
+public class GetSummaryComments {
 
-    private final String url;
+    private final Viewer viewer;
 
-    @GraphQLProperty(name = "pullRequest", arguments = {@GraphQLArgument(name = "number")})
-    private final PullRequest pullRequest;
+    @GraphQLProperty(name = "repository", arguments = {@GraphQLArgument(name = "owner"), @GraphQLArgument(name = "name")})
+    private final Repository repository;
 
     @JsonCreator
-    public GetRepository(@JsonProperty("url") String url, @JsonProperty("pullRequest") PullRequest pullRequest) {
-        this.url = url;
-        this.pullRequest = pullRequest;
+    public GetSummaryComments(@JsonProperty("viewer") Viewer viewer, @JsonProperty("repository") Repository repository) {
+        this.viewer = viewer;
+        this.repository = repository;
+    }
+
+    public Viewer getViewer() {
+        return viewer;
     }
 
-    public String getUrl() {
-        return url;
+    public Repository getRepository() {
+        return repository;
     }
 
-    public PullRequest getPullRequest() {
-        return pullRequest;
+    public static class Repository {
+
+        @GraphQLProperty(name = "pullRequest", arguments = {@GraphQLArgument(name = "number")})
+        private final PullRequest pullRequest;
+
+        @JsonCreator
+        public Repository(@JsonProperty("pullRequest") PullRequest pullRequest) {
+            this.pullRequest = pullRequest;
+        }
+
+        public PullRequest getPullRequest() {
+            return pullRequest;
+        }
     }
 
     public static class PullRequest {
 
         private final String id;
 
-        @GraphQLProperty(name = "comments", arguments = {@GraphQLArgument(name = "first", optional = true, type = "Integer"), @GraphQLArgument(name = "after", optional = true, type = "String")})
+        @GraphQLProperty(name = "comments", arguments = {@GraphQLArgument(name = "last", optional = true, type = "Integer"), @GraphQLArgument(name = "before", optional = true, type = "String")})
         private final Comments comments;
 
         @JsonCreator
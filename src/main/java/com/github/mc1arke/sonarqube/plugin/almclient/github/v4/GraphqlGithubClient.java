@@ -18,32 +18,46 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmUnavailableException;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.Annotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.CheckRunDetails;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.CommentClassifiers;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.RequestableCheckStatusState;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import io.aexp.nodes.graphql.Argument;
 import io.aexp.nodes.graphql.Arguments;
 import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLResponseEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
+import io.aexp.nodes.graphql.Variable;
+import io.aexp.nodes.graphql.exceptions.GraphQLException;
 import io.aexp.nodes.graphql.internal.Error;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.db.alm.setting.ALM;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.apache.commons.lang.ArrayUtils.isEmpty;
 
@@ -53,18 +67,49 @@ public class GraphqlGithubClient implements GithubClient {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX")
             .withZone(ZoneId.of("UTC"));
     private static final String INPUT = "input";
+    private static final int ANNOTATION_BATCH_SIZE = 50;
+    // keeps each mutation document well within the complexity GitHub allows for a single request
+    private static final int MUTATIONS_PER_REQUEST = 25;
+    // a summary left showing because minimising it failed is older than the newest minimised summary where other
+    // summaries in the same request were minimised, so a bounded number of older pages is still checked for one
+    private static final int PAGES_CHECKED_BEYOND_MINIMISED_SUMMARY = 1;
 
     private final GraphqlProvider graphqlProvider;
     private final RepositoryAuthenticationToken repositoryAuthenticationToken;
     private final String apiUrl;
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmOperationExecutor almOperationExecutor;
+    private final int maxAnnotations;
+    private final AlmRateLimiter.Bucket rateLimitBucket;
+    private final AlmCircuitBreaker.Circuit circuit;
 
 
     public GraphqlGithubClient(GraphqlProvider graphqlProvider, String apiUrl,
-                               RepositoryAuthenticationToken repositoryAuthenticationToken) {
+                               RepositoryAuthenticationToken repositoryAuthenticationToken, AlmApiMetrics almApiMetrics) {
+        this(graphqlProvider, apiUrl, repositoryAuthenticationToken, almApiMetrics, null, 0, AlmRateLimiter.createUnsharedBucket(apiUrl),
+                AlmCircuitBreaker.createUnsharedCircuit(apiUrl));
+    }
+
+    /**
+     * @param almOperationExecutor the executor to send check run updates through when reporting more annotations
+     *                             than fit in a single request, or null to send the updates one after another
+     * @param maxAnnotations the maximum number of annotations to report on a check run, or 0 to report all of them
+     * @param rateLimitBucket the bucket pacing calls made to the Github instance
+     * @param circuit the circuit tracking whether calls to the Github instance are succeeding
+     */
+    public GraphqlGithubClient(GraphqlProvider graphqlProvider, String apiUrl,
+                               RepositoryAuthenticationToken repositoryAuthenticationToken, AlmApiMetrics almApiMetrics,
+                               AlmOperationExecutor almOperationExecutor, int maxAnnotations, AlmRateLimiter.Bucket rateLimitBucket,
+                               AlmCircuitBreaker.Circuit circuit) {
         super();
         this.graphqlProvider = graphqlProvider;
         this.apiUrl = apiUrl;
         this.repositoryAuthenticationToken = repositoryAuthenticationToken;
+        this.almApiMetrics = almApiMetrics;
+        this.almOperationExecutor = almOperationExecutor;
+        this.maxAnnotations = maxAnnotations;
+        this.rateLimitBucket = rateLimitBucket;
+        this.circuit = circuit;
     }
 
     @Override
@@ -73,7 +118,8 @@ public class GraphqlGithubClient implements GithubClient {
         headers.put("Authorization", "Bearer " + repositoryAuthenticationToken.getAuthenticationToken());
         headers.put("Accept", "application/vnd.github.antiope-preview+json");
 
-        List<InputObject<Object>> annotations = createAnnotations(checkRunDetails.getAnnotations());
+        List<Annotation> reportableAnnotations = limitAnnotations(checkRunDetails.getAnnotations());
+        List<InputObject<Object>> annotations = createAnnotations(reportableAnnotations);
 
         InputObject.Builder<Object> checkRunOutputContentBuilder = graphqlProvider.createInputObject().put("title", checkRunDetails.getTitle())
                 .put("summary", checkRunDetails.getSummary())
@@ -109,8 +155,8 @@ public class GraphqlGithubClient implements GithubClient {
         GraphQLResponseEntity<CreateCheckRun> graphQLResponseEntity = executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t),
                                                                                      graphQLRequestEntity, CreateCheckRun.class);
 
-        reportRemainingAnnotations(checkRunDetails.getAnnotations(), graphQLResponseEntity.getResponse().getCheckRun().getId(),
-                              inputObjectArguments, checkRunOutputContentBuilder, graphQLRequestEntityBuilder);
+        reportRemainingAnnotations(reportableAnnotations, graphQLResponseEntity.getResponse().getCheckRun().getId(),
+                              inputObjectArguments, checkRunDetails, graphqlUrl, headers);
 
 
         if (postSummaryComment) {
@@ -127,139 +173,302 @@ public class GraphqlGithubClient implements GithubClient {
     }
 
     private void postSummaryComment(String graphqlUrl, Map<String, String> headers, int pullRequestKey, String summary, String projectId) throws IOException {
-        String login = getLogin(graphqlUrl, headers);
-
-        GetRepository.PullRequest pullRequest = getPullRequest(graphqlUrl, headers, pullRequestKey);
-        String pullRequestId = pullRequest.getId();
         String projectCommentMarker = String.format("**Project ID:** %s%n", projectId);
 
-        getComments(pullRequest, graphqlUrl, headers, pullRequestKey).stream()
-            .filter(c -> "Bot".equalsIgnoreCase(c.getAuthor().getType()) && login.equalsIgnoreCase(c.getAuthor().getLogin()))
-            .filter(c -> !c.isMinimized())
-            .filter(c -> c.getBody().contains(projectCommentMarker))
-            .map(Comments.CommentNode::getId)
-            .forEach(commentId -> this.minimizeComment(graphqlUrl, headers, commentId));
-
-        InputObject.Builder<Object> repositoryInputObjectBuilder = graphqlProvider.createInputObject();
-
-        InputObject<Object> input = repositoryInputObjectBuilder
-            .put("body", summary)
-            .put("subjectId", pullRequestId)
-            .build();
-
-        GraphQLRequestEntity graphQLRequestEntity =
-            graphqlProvider.createRequestBuilder()
-                .url(graphqlUrl)
-                .headers(headers)
-                .request(AddComment.class)
-                .arguments(new Arguments("addComment", new Argument<>(INPUT, input)))
-                .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
-                .build();
-
-        executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, AddComment.class);
-
-    }
-
-    private List<Comments.CommentNode> getComments(GetRepository.PullRequest pullRequest, String graphqlUrl, Map<String, String> headers, int pullRequestKey) throws MalformedURLException {
-        List<Comments.CommentNode> comments = new ArrayList<>(pullRequest.getComments().getNodes());
+        List<String> outdatedCommentIds = new ArrayList<>();
+        String pullRequestId = null;
+        String before = null;
+        boolean foundMinimisedSummary = false;
+        int pagesCheckedBeyondMinimisedSummary = 0;
+        boolean complete = false;
+        while (!complete) {
+            GetSummaryComments response = getSummaryComments(graphqlUrl, headers, pullRequestKey, before);
+            String login = response.getViewer().getLogin().replace("[bot]", "");
+            GetSummaryComments.PullRequest pullRequest = response.getRepository().getPullRequest();
+            pullRequestId = pullRequest.getId();
+
+            List<Comments.CommentNode> comments = pullRequest.getComments().getNodes();
+            for (int i = comments.size() - 1; i >= 0; i--) {
+                Comments.CommentNode comment = comments.get(i);
+                if (!"Bot".equalsIgnoreCase(comment.getAuthor().getType()) || !login.equalsIgnoreCase(comment.getAuthor().getLogin())
+                        || !comment.getBody().contains(projectCommentMarker)) {
+                    continue;
+                }
+                if (comment.isMinimized()) {
+                    foundMinimisedSummary = true;
+                } else {
+                    outdatedCommentIds.add(comment.getId());
+                }
+            }
 
-        PageInfo currentPageInfo = pullRequest.getComments().getPageInfo();
-        if (currentPageInfo.hasNextPage()) {
-            GetRepository.PullRequest response = getPullRequest(graphqlUrl, headers, pullRequestKey, currentPageInfo);
-            comments.addAll(getComments(response, graphqlUrl, headers, pullRequestKey));
+            PageInfo pageInfo = pullRequest.getComments().getPageInfo();
+            // every summary older than the newest minimised one was minimised by an earlier decoration, so there's no
+            // need to page back through the rest of the pull request's history
+            complete = !pageInfo.hasPreviousPage()
+                    || (foundMinimisedSummary && pagesCheckedBeyondMinimisedSummary++ >= PAGES_CHECKED_BEYOND_MINIMISED_SUMMARY);
+            before = pageInfo.getStartCursor();
         }
+        Collections.reverse(outdatedCommentIds);
+
+        List<AliasedMutation> mutations = new ArrayList<>();
+        for (int i = 0; i < outdatedCommentIds.size(); i++) {
+            Map<String, Object> minimizeInput = new HashMap<>();
+            minimizeInput.put("subjectId", outdatedCommentIds.get(i));
+            minimizeInput.put("classifier", CommentClassifiers.OUTDATED);
+            mutations.add(new AliasedMutation("minimizeComment" + i, "minimizeComment", "MinimizeCommentInput", minimizeInput));
+        }
+        Map<String, Object> addCommentInput = new HashMap<>();
+        addCommentInput.put("body", summary);
+        addCommentInput.put("subjectId", pullRequestId);
+        AliasedMutation addComment = new AliasedMutation("addComment", "addComment", "AddCommentInput", addCommentInput);
+        // the new summary goes in the same request as the last of the outdated summaries being minimised, so a pull
+        // request with only a few outdated summaries is updated in a single round-trip
+        mutations.add(addComment);
+
+        for (int start = 0; start < mutations.size(); start += MUTATIONS_PER_REQUEST) {
+            List<AliasedMutation> chunk = mutations.subList(start, Math.min(start + MUTATIONS_PER_REQUEST, mutations.size()));
+            GraphQLResponseEntity<AliasedMutations> response;
+            try {
+                response = executeMutations(graphqlUrl, headers, chunk);
+            } catch (IOException | RuntimeException ex) {
+                if (chunk.contains(addComment)) {
+                    throw ex;
+                }
+                LOGGER.error("Error during minimize comment", ex);
+                continue;
+            }
 
-        return comments;
+            // Github still performs the other mutations in the request when one fails, returning a null result for
+            // the failed mutation's alias alongside the errors, so only a failure to post the new summary is fatal
+            Map<String, Object> results = Optional.ofNullable(response.getResponse())
+                    .map(AliasedMutations::getResults)
+                    .orElse(Collections.emptyMap());
+            List<String> failedAliases = chunk.stream()
+                    .map(AliasedMutation::getAlias)
+                    .filter(alias -> null == results.get(alias))
+                    .collect(Collectors.toList());
+            if (failedAliases.contains(addComment.getAlias())) {
+                throw new IllegalStateException("Could not post summary comment" + formatErrors(response.getErrors()));
+            }
+            if (!failedAliases.isEmpty()) {
+                LOGGER.error("Error during minimize comment for {}{}", failedAliases, formatErrors(response.getErrors()));
+            }
+        }
     }
 
-    private GetRepository.PullRequest getPullRequest(String graphqlUrl, Map<String, String> headers, int pullRequestKey) throws MalformedURLException {
-        return getPullRequest(graphqlUrl, headers, pullRequestKey, null);
+    /**
+     * Sends the given mutations as aliased fields of a single mutation document, so they're all performed in one
+     * request. GitHub runs the fields of a mutation in the order they're listed, so the mutations are applied in
+     * list order. The input for each mutation is sent as a variable rather than being written into the document, so
+     * values such as comment bodies are escaped as JSON rather than having to be escaped as GraphQL string literals.
+     *
+     * @return the response, including any errors, so the caller can decide which failed mutations it can tolerate
+     */
+    private GraphQLResponseEntity<AliasedMutations> executeMutations(String graphqlUrl, Map<String, String> headers, List<AliasedMutation> mutations) throws MalformedURLException {
+        GraphQLRequestEntity graphQLRequestEntity = graphqlProvider.createRequestBuilder()
+            .url(graphqlUrl)
+            .headers(headers)
+            .request(mutations.stream().map(AliasedMutation::getVariableDefinition).collect(Collectors.joining(", ", "mutation (", ") { "))
+                    + mutations.stream().map(AliasedMutation::getField).collect(Collectors.joining(" ")) + " } ")
+            .variables(mutations.stream().map(AliasedMutation::getVariable).collect(Collectors.toList()))
+            .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
+            .build();
+
+        return sendRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, AliasedMutations.class, false);
     }
 
-    private GetRepository.PullRequest getPullRequest(String graphqlUrl, Map<String, String> headers, int pullRequestKey, PageInfo pageInfo) throws MalformedURLException {
-        GraphQLRequestEntity getPullRequest =
+    private GetSummaryComments getSummaryComments(String graphqlUrl, Map<String, String> headers, int pullRequestKey, String before) throws MalformedURLException {
+        GraphQLRequestEntity getSummaryComments =
                 graphqlProvider.createRequestBuilder()
                         .url(graphqlUrl)
                         .headers(headers)
-                        .request(GetRepository.class)
+                        .request(GetSummaryComments.class)
                         .arguments(
                                 new Arguments("repository", new Argument<>("owner", repositoryAuthenticationToken.getOwnerName()), new Argument<>("name", repositoryAuthenticationToken.getRepositoryName())),
                                 new Arguments("repository.pullRequest", new Argument<>("number", pullRequestKey)),
-                                new Arguments("repository.pullRequest.comments", new Argument<>("first", 100), new Argument<>("after", Optional.ofNullable(pageInfo).map(PageInfo::getEndCursor).orElse(null)))
+                                new Arguments("repository.pullRequest.comments", new Argument<>("last", 100), new Argument<>("before", before))
                         )
                         .build();
 
-        return executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), getPullRequest, GetRepository.class).getResponse().getPullRequest();
+        return executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), getSummaryComments, GetSummaryComments.class, true).getResponse();
     }
 
-    private void minimizeComment(String graphqlUrl, Map<String, String> headers, String commentId) {
-            InputObject<Object> input = graphqlProvider.createInputObject()
-                .put("subjectId", commentId)
-                .put("classifier", CommentClassifiers.OUTDATED)
-                .build();
+    private void acquireCircuit() {
+        try {
+            circuit.acquire();
+        } catch (AlmUnavailableException ex) {
+            throw new IllegalStateException("Could not call the Github API", ex);
+        }
+    }
 
+    private void acquireRateLimitPermit() {
         try {
+            rateLimitBucket.acquire();
+        } catch (InterruptedIOException ex) {
+            throw new IllegalStateException("Interrupted whilst waiting to call the Github API", ex);
+        }
+    }
 
-            GraphQLRequestEntity graphQLRequestEntity = graphqlProvider.createRequestBuilder()
-                .url(graphqlUrl)
-                .headers(headers)
-                .request(MinimizeComment.class)
-                .arguments(new Arguments("minimizeComment", new Argument<>(INPUT, input)))
-                .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
-                .build();
+    /**
+     * The GraphQL client doesn't expose the headers of an error response, so the bucket is only told the status, and
+     * a {@code 403} is only treated as rate limited where Github's message says so, since it's also used for calls
+     * the token isn't permitted to make.
+     */
+    private static boolean isRateLimited(GraphQLException ex, int status) {
+        boolean rateLimitMessage = Stream.of(ex.getMessage(), ex.getDescription())
+                .anyMatch(message -> null != message && message.toLowerCase(Locale.ENGLISH).contains("rate limit"));
+        return status == 429 || (status == 403 && rateLimitMessage);
+    }
 
-            executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, MinimizeComment.class);
+    /**
+     * @return the status of the response the exception was raised for, or -1 where no response was received
+     */
+    private static int getStatus(GraphQLException ex) {
+        try {
+            return Integer.parseInt(String.valueOf(ex.getStatus()));
+        } catch (NumberFormatException numberFormatException) {
+            return -1;
+        }
+    }
 
-        } catch (IOException e) {
-            LOGGER.error("Error during minimize comment", e);
+    private void backOff(int retries, GraphQLException ex) {
+        boolean retry;
+        try {
+            retry = AlmRetryPolicy.backOff(retries);
+        } catch (InterruptedIOException interruptedIOException) {
+            ex.addSuppressed(interruptedIOException);
+            retry = false;
+        }
+        if (!retry) {
+            throw ex;
         }
     }
 
-    private String getLogin(String graphqlUrl, Map<String, String> headers) throws IOException {
-        GraphQLRequestEntity viewerQuery = graphqlProvider.createRequestBuilder()
-                .url(graphqlUrl)
-                .headers(headers)
-                .request(Viewer.class)
-                .build();
+    private <R> GraphQLResponseEntity<R> executeRequest(
+            BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType) {
+        return executeRequest(executor, graphQLRequestEntity, responseType, false);
+    }
 
-        GraphQLResponseEntity<Viewer> response =
-            executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), viewerQuery, Viewer.class);
+    /**
+     * @param idempotent whether the request can be sent again without changing the outcome, so can be retried if it
+     *                   fails with a transient error. Queries are idempotent, but mutations generally aren't.
+     */
+    private <R> GraphQLResponseEntity<R> executeRequest(
+            BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType,
+            boolean idempotent) {
+        GraphQLResponseEntity<R> response = sendRequest(executor, graphQLRequestEntity, responseType, idempotent);
 
-        return response.getResponse().getLogin().replace("[bot]", "");
+        if (!isEmpty(response.getErrors())) {
+            throw new IllegalStateException("An error was returned in the response from the Github API" + formatErrors(response.getErrors()));
+        }
+
+        return response;
     }
 
-    private static <R> GraphQLResponseEntity<R> executeRequest(
-            BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType) {
+    /**
+     * Sends the request, retrying where permitted, and returns the response without checking it for errors.
+     */
+    private <R> GraphQLResponseEntity<R> sendRequest(
+            BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType,
+            boolean idempotent) {
         LOGGER.atDebug().setMessage("Using request: {}").addArgument(graphQLRequestEntity::getRequest).log();
 
-        GraphQLResponseEntity<R> response = executor.apply(graphQLRequestEntity, responseType);
+        GraphQLResponseEntity<R> response = null;
+        for (int retries = 0; null == response; retries++) {
+            acquireCircuit();
+            acquireRateLimitPermit();
+            try (AlmApiMetrics.Call call = almApiMetrics.startCall(apiUrl, responseType.getSimpleName())) {
+                response = executor.apply(graphQLRequestEntity, responseType);
+                if (isEmpty(response.getErrors())) {
+                    call.succeeded();
+                }
+            } catch (GraphQLException ex) {
+                int status = getStatus(ex);
+                if (status < 0 || AlmRetryPolicy.isServerError(status)) {
+                    circuit.recordFailure();
+                } else {
+                    circuit.recordSuccess();
+                }
+
+                if (isRateLimited(ex, status)) {
+                    rateLimitBucket.update(429, name -> null);
+                    if (!rateLimitBucket.shouldRetry(retries)) {
+                        throw ex;
+                    }
+                } else if (idempotent && (status < 0 || AlmRetryPolicy.isRetryableStatus(status))) {
+                    backOff(retries, ex);
+                } else {
+                    throw ex;
+                }
+                almApiMetrics.recordRetry(apiUrl, responseType.getSimpleName());
+                continue;
+            }
+            circuit.recordSuccess();
+            Map<String, List<String>> headers = getHeaders(response);
+            rateLimitBucket.update(200, name -> headers.entrySet().stream()
+                    .filter(header -> name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty())
+                    .map(header -> header.getValue().get(0))
+                    .findFirst()
+                    .orElse(null));
+        }
 
         LOGGER.debug("Received response: {}", response);
 
-        if (!isEmpty(response.getErrors())) {
-            List<String> errors = new ArrayList<>();
-            for (Error error : response.getErrors()) {
-                errors.add("- " + error.toString());
-            }
-            throw new IllegalStateException(
-                    "An error was returned in the response from the Github API:" + System.lineSeparator() +
-                    errors.stream().collect(Collectors.joining(System.lineSeparator())));
+        return response;
+    }
+
+    private static String formatErrors(Error[] errors) {
+        if (isEmpty(errors)) {
+            return "";
         }
+        return ":" + System.lineSeparator() + Stream.of(errors)
+                .map(error -> "- " + error)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
 
-        return response;
+    private static Map<String, List<String>> getHeaders(GraphQLResponseEntity<?> response) {
+        try {
+            return response.getHeaders();
+        } catch (NullPointerException ex) {
+            // the response entity wraps its headers without checking whether any were set on it
+            return Collections.emptyMap();
+        }
     }
 
-    private void reportRemainingAnnotations(List<Annotation> outstandingAnnotations, String checkRunId,
-                                            Map<String, Object> repositoryInputArguments, InputObject.Builder<Object> outputObjectBuilder,
-                                            GraphQLRequestEntity.RequestBuilder graphQLRequestEntityBuilder) {
+    private List<Annotation> limitAnnotations(List<Annotation> annotations) {
+        if (maxAnnotations <= 0 || annotations.size() <= maxAnnotations) {
+            return annotations;
+        }
+        LOGGER.info("Reporting {} of {} annotations on check run as the annotation limit has been reached", maxAnnotations, annotations.size());
+        return annotations.subList(0, maxAnnotations);
+    }
 
-        if (outstandingAnnotations.size() <= 50) {
-            return;
+    /**
+     * Sends every annotation after the first batch, which is included when the check run is created, as a series of
+     * check run updates. Each batch is a view onto the annotation list, and is only converted into a request when it's
+     * about to be sent. Updates are sent through the shared {@link AlmOperationExecutor}, which skips any batches not
+     * yet sent once the decoration time limit is reached.
+     */
+    private void reportRemainingAnnotations(List<Annotation> annotations, String checkRunId, Map<String, Object> repositoryInputArguments,
+                                            CheckRunDetails checkRunDetails, String graphqlUrl, Map<String, String> headers) {
+        List<List<Annotation>> batches = new ArrayList<>();
+        for (int start = ANNOTATION_BATCH_SIZE; start < annotations.size(); start += ANNOTATION_BATCH_SIZE) {
+            batches.add(annotations.subList(start, Math.min(start + ANNOTATION_BATCH_SIZE, annotations.size())));
         }
 
-        List<Annotation> annotations = outstandingAnnotations.subList(50, outstandingAnnotations.size());
+        Consumer<List<Annotation>> update = batch -> updateCheckRunAnnotations(batch, checkRunId, repositoryInputArguments, checkRunDetails, graphqlUrl, headers);
+        if (null == almOperationExecutor) {
+            batches.forEach(update);
+        } else {
+            almOperationExecutor.executeAllBeforeDeadline(ALM.GITHUB, "check run annotation update(s)", batches, update, false);
+        }
+    }
 
-        InputObject<Object> outputObject = outputObjectBuilder
+    private void updateCheckRunAnnotations(List<Annotation> annotations, String checkRunId, Map<String, Object> repositoryInputArguments,
+                                           CheckRunDetails checkRunDetails, String graphqlUrl, Map<String, String> headers) {
+        InputObject<Object> outputObject = graphqlProvider.createInputObject()
+                .put("title", checkRunDetails.getTitle())
+                .put("summary", checkRunDetails.getSummary())
                 .put("annotations", createAnnotations(annotations))
                 .build();
 
@@ -271,20 +480,25 @@ public class GraphqlGithubClient implements GithubClient {
                 .put("output", outputObject)
                 .build();
 
-       GraphQLRequestEntity graphQLRequestEntity = graphQLRequestEntityBuilder
-               .request(UpdateCheckRun.class)
-               .arguments(new Arguments("updateCheckRun", new Argument<>(INPUT, repositoryInputObject)))
-                        .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
-                        .build();
-
-       executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, UpdateCheckRun.class);
+        GraphQLRequestEntity graphQLRequestEntity;
+        try {
+            graphQLRequestEntity = graphqlProvider.createRequestBuilder()
+                    .url(graphqlUrl)
+                    .headers(headers)
+                    .request(UpdateCheckRun.class)
+                    .arguments(new Arguments("updateCheckRun", new Argument<>(INPUT, repositoryInputObject)))
+                    .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
+                    .build();
+        } catch (MalformedURLException ex) {
+            throw new IllegalStateException("Could not create check run update request", ex);
+        }
 
-       reportRemainingAnnotations(annotations, checkRunId, repositoryInputArguments, outputObjectBuilder, graphQLRequestEntityBuilder);
+        executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, UpdateCheckRun.class);
     }
 
     private List<InputObject<Object>> createAnnotations(List<Annotation> annotations) {
         return annotations.stream()
-                .limit(50)
+                .limit(ANNOTATION_BATCH_SIZE)
                 .map(annotation -> {
             InputObject<Object> issueLocation = graphqlProvider.createInputObject()
                     .put("startLine", Optional.ofNullable(annotation.getLine()).orElse(0))
@@ -311,4 +525,35 @@ public class GraphqlGithubClient implements GithubClient {
         return apiUrl;
     }
 
+    private static final class AliasedMutation {
+
+        private final String alias;
+        private final String mutation;
+        private final String inputType;
+        private final Map<String, Object> input;
+
+        private AliasedMutation(String alias, String mutation, String inputType, Map<String, Object> input) {
+            this.alias = alias;
+            this.mutation = mutation;
+            this.inputType = inputType;
+            this.input = input;
+        }
+
+        private String getAlias() {
+            return alias;
+        }
+
+        private String getVariableDefinition() {
+            return String.format("$%s: %s!", alias, inputType);
+        }
+
+        private String getField() {
+            return String.format("%s : %s (input: $%s) { clientMutationId }", alias, mutation, alias);
+        }
+
+        private Variable<Map<String, Object>> getVariable() {
+            return new Variable<>(alias, input);
+        }
+    }
+
 }
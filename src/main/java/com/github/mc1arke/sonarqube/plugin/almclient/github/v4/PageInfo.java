@@ -22,20 +22,20 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class PageInfo {
-    private final boolean hasNextPage;
-    private final String endCursor;
+    private final boolean hasPreviousPage;
+    private final String startCursor;
 
     @JsonCreator
-    public PageInfo(@JsonProperty("hasNextPage") boolean hasNextPage, @JsonProperty("endCursor") String endCursor) {
-        this.hasNextPage = hasNextPage;
-        this.endCursor = endCursor;
+    public PageInfo(@JsonProperty("hasPreviousPage") boolean hasPreviousPage, @JsonProperty("startCursor") String startCursor) {
+        this.hasPreviousPage = hasPreviousPage;
+        this.startCursor = startCursor;
     }
 
-    public boolean hasNextPage() {
-        return hasNextPage;
+    public boolean hasPreviousPage() {
+        return hasPreviousPage;
     }
 
-    public String getEndCursor() {
-        return endCursor;
+    public String getStartCursor() {
+        return startCursor;
     }
 }
@@ -21,9 +21,10 @@ package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.impl.client.HttpClients;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.server.ServerSide;
@@ -39,11 +40,16 @@ public class DefaultGitlabClientFactory implements GitlabClientFactory {
     private final ObjectMapper objectMapper;
     private final LinkHeaderReader linkHeaderReader;
     private final Settings settings;
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmHttpClientPool almHttpClientPool;
 
-    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings) {
+    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings, AlmApiMetrics almApiMetrics,
+                                      AlmHttpClientPool almHttpClientPool) {
         super();
         this.linkHeaderReader = linkHeaderReader;
         this.settings = settings;
+        this.almApiMetrics = almApiMetrics;
+        this.almHttpClientPool = almHttpClientPool;
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT, true)
                 .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
@@ -56,6 +62,6 @@ public class DefaultGitlabClientFactory implements GitlabClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "ALM URL must be specified"));
         String apiToken = almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption());
 
-        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, HttpClients::createSystem);
+        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, almHttpClientPool.getHttpClient(almSettingDto), almApiMetrics);
     }
 }
@@ -19,6 +19,11 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.JsonResponseReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.CommitNote;
@@ -28,21 +33,27 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNo
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Project;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -51,7 +62,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
 
 class GitlabRestClient implements GitlabClient {
 
@@ -59,36 +69,39 @@ class GitlabRestClient implements GitlabClient {
 
     private final String baseGitlabApiUrl;
     private final String authToken;
-    private final ObjectMapper objectMapper;
+    private final JsonResponseReader responseReader;
     private final LinkHeaderReader linkHeaderReader;
-    private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final CloseableHttpClient httpClient;
+    private final AlmApiMetrics almApiMetrics;
 
-    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper,
+                     CloseableHttpClient httpClient, AlmApiMetrics almApiMetrics) {
         this.baseGitlabApiUrl = baseGitlabApiUrl;
         this.authToken = authToken;
         this.linkHeaderReader = linkHeaderReader;
-        this.objectMapper = objectMapper;
-        this.httpClientFactory = httpClientFactory;
+        this.responseReader = new JsonResponseReader(objectMapper);
+        this.httpClient = httpClient;
+        this.almApiMetrics = almApiMetrics;
     }
 
     @Override
     public MergeRequest getMergeRequest(String projectSlug, long mergeRequestIid) throws IOException {
-        return entity(new HttpGet(String.format("%s/projects/%s/merge_requests/%s", baseGitlabApiUrl, URLEncoder.encode(projectSlug, StandardCharsets.UTF_8), mergeRequestIid)), MergeRequest.class);
+        return entity("getMergeRequest", new HttpGet(String.format("%s/projects/%s/merge_requests/%s", baseGitlabApiUrl, URLEncoder.encode(projectSlug, StandardCharsets.UTF_8), mergeRequestIid)), MergeRequest.class);
     }
 
     @Override
     public User getCurrentUser() throws IOException {
-        return entity(new HttpGet(String.format("%s/user", baseGitlabApiUrl)), User.class);
+        return entity("getCurrentUser", new HttpGet(String.format("%s/user", baseGitlabApiUrl)), User.class);
     }
 
     @Override
     public List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid)), Commit.class);
+        return entities("getMergeRequestCommits", new HttpGet(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid)), Commit.class);
     }
 
     @Override
     public List<Discussion> getMergeRequestDiscussions(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid)), Discussion.class);
+        return entities("getMergeRequestDiscussions", new HttpGet(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid)), Discussion.class);
     }
 
     @Override
@@ -114,7 +127,7 @@ class GitlabRestClient implements GitlabClient {
         HttpPost httpPost = new HttpPost(targetUrl);
         httpPost.addHeader("Content-type", ContentType.APPLICATION_FORM_URLENCODED.getMimeType());
         httpPost.setEntity(new UrlEncodedFormEntity(requestContent, StandardCharsets.UTF_8));
-        return entity(httpPost, Discussion.class, httpResponse -> validateResponse(httpResponse, 201, "Discussion successfully created"));
+        return entity("addMergeRequestDiscussion", httpPost, Discussion.class, httpResponse -> validateResponse(httpResponse, 201, "Discussion successfully created"));
     }
 
     @Override
@@ -123,7 +136,7 @@ class GitlabRestClient implements GitlabClient {
 
         HttpPost httpPost = new HttpPost(targetUrl);
         httpPost.setEntity(new UrlEncodedFormEntity(Collections.singletonList(new BasicNameValuePair("body", noteContent)), StandardCharsets.UTF_8));
-        entity(httpPost, null, httpResponse -> validateResponse(httpResponse, 201, "Commit discussions note added"));
+        entity("addMergeRequestDiscussionNote", httpPost, null, httpResponse -> validateResponse(httpResponse, 201, "Commit discussions note added"));
     }
 
     @Override
@@ -131,7 +144,7 @@ class GitlabRestClient implements GitlabClient {
         String discussionIdUrl = String.format("%s/projects/%s/merge_requests/%s/discussions/%s?resolved=true", baseGitlabApiUrl, projectId, mergeRequestIid, discussionId);
 
         HttpPut httpPut = new HttpPut(discussionIdUrl);
-        entity(httpPut, null);
+        entity("resolveMergeRequestDiscussion", httpPut, null);
     }
 
     @Override
@@ -149,63 +162,101 @@ class GitlabRestClient implements GitlabClient {
         HttpPost httpPost = new HttpPost(statusUrl);
         httpPost.addHeader("Content-type", ContentType.APPLICATION_FORM_URLENCODED.getMimeType());
         httpPost.setEntity(new UrlEncodedFormEntity(entityFields, StandardCharsets.UTF_8));
-        entity(httpPost, null, httpResponse -> {
+        // setting the same status again has no further effect, so the request can be retried despite being a POST
+        entity("setMergeRequestPipelineStatus", httpPost, null, httpResponse -> {
             if (httpResponse.toString().contains("Cannot transition status")) {
                 // Workaround for https://gitlab.com/gitlab-org/gitlab-ce/issues/25807
                 LOGGER.debug("Transition status is already {}", status);
             } else {
                 validateResponse(httpResponse, 201, "Comment posted");
             }
-        });
+        }, AlmRetryPolicy.createIdempotentContext());
     }
 
     @Override
     public Project getProject(String projectSlug) throws IOException {
-        return entity(new HttpGet(String.format("%s/projects/%s", baseGitlabApiUrl, URLEncoder.encode(projectSlug, StandardCharsets.UTF_8))), Project.class);
+        return entity("getProject", new HttpGet(String.format("%s/projects/%s", baseGitlabApiUrl, URLEncoder.encode(projectSlug, StandardCharsets.UTF_8))), Project.class);
     }
 
-    private <X> X entity(HttpRequestBase httpRequest, Class<X> type) throws IOException {
-        return entity(httpRequest, type, httpResponse -> validateResponse(httpResponse, 200, null));
+    private <X> X entity(String operation, HttpRequestBase httpRequest, Class<X> type) throws IOException {
+        return entity(operation, httpRequest, type, httpResponse -> validateResponse(httpResponse, 200, null));
     }
 
-    private <X> X entity(HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
-        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+    private <X> X entity(String operation, HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
+        return entity(operation, httpRequest, type, responseValidator, HttpClientContext.create());
+    }
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
+    private <X> X entity(String operation, HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator,
+                         HttpContext httpContext) throws IOException {
+        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
+        httpRequest.setConfig(createRequestConfig());
 
+        try (AlmApiMetrics.Call call = almApiMetrics.startCall(baseGitlabApiUrl, operation);
+             CloseableHttpResponse httpResponse = httpClient.execute(httpRequest, httpContext)) {
             responseValidator.accept(httpResponse);
 
-            if (null == type) {
-                return null;
-            }
-            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+            X entity = null == type ? null : readEntity(httpResponse, type, call);
+            call.succeeded();
+            return entity;
         }
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type) throws IOException {
-        return entities(httpRequest, type, httpResponse -> validateResponse(httpResponse, 200, null));
+    private <X> List<X> entities(String operation, HttpGet httpRequest, Class<X> type) throws IOException {
+        List<X> entities = new ArrayList<>();
+        forEachEntity(operation, httpRequest, type, entities::add);
+        return entities;
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
-        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
-
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
+    /**
+     * Reads every page of a list endpoint, passing each entity to the consumer as it is parsed from the response
+     * stream, so parsing doesn't wait for a page to be buffered in full. Pages are still requested conditionally, so a
+     * page that hasn't changed is parsed from the response cache instead of being downloaded again, and a downloaded
+     * page is copied into the cache as it's read, as long as it's no larger than the cache would store.
+     */
+    private <X> void forEachEntity(String operation, HttpGet httpRequest, Class<X> type, Consumer<X> consumer) throws IOException {
+        HttpGet pageRequest = httpRequest;
+        while (null != pageRequest) {
+            pageRequest.addHeader("PRIVATE-TOKEN", authToken);
+            pageRequest.setConfig(createRequestConfig());
+
+            Optional<String> nextURL;
+            try (AlmApiMetrics.Call call = almApiMetrics.startCall(baseGitlabApiUrl, operation);
+                 CloseableHttpResponse httpResponse = httpClient.execute(pageRequest, AlmResponseCache.createStreamingContext())) {
+                validateResponse(httpResponse, 200, null);
+
+                HttpEntity httpEntity = httpResponse.getEntity();
+                if (null != httpEntity) {
+                    try (InputStream content = call.countPayloadBytes(httpEntity.getContent())) {
+                        responseReader.readEach(content, type, consumer);
+                    }
+                }
 
-            responseValidator.accept(httpResponse);
+                nextURL = Optional.ofNullable(httpResponse.getFirstHeader("Link"))
+                        .map(NameValuePair::getValue)
+                        .flatMap(linkHeaderReader::findNextLink);
+                call.succeeded();
+            }
 
-            List<X> entities = new ArrayList<>(objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8),
-                    objectMapper.getTypeFactory().constructCollectionType(List.class, type)));
+            pageRequest = nextURL.map(HttpGet::new).orElse(null);
+        }
+    }
 
-            Optional<String> nextURL = Optional.ofNullable(httpResponse.getFirstHeader("Link"))
-                    .map(NameValuePair::getValue)
-                    .flatMap(linkHeaderReader::findNextLink);
-            if (nextURL.isPresent()) {
-                entities.addAll(entities(new HttpGet(nextURL.get()), type, responseValidator));
-            }
+    private static RequestConfig createRequestConfig() {
+        int timeoutMillis = AlmRequestDeadline.getRequestTimeoutMillis();
+        return RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build();
+    }
 
-            return entities;
+    private <X> X readEntity(HttpResponse httpResponse, Class<X> type, AlmApiMetrics.Call call) throws IOException {
+        HttpEntity httpEntity = httpResponse.getEntity();
+        if (null == httpEntity) {
+            return null;
+        }
+        try (InputStream content = call.countPayloadBytes(httpEntity.getContent())) {
+            return responseReader.read(content, type);
         }
     }
 
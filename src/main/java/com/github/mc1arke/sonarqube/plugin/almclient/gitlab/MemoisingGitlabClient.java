@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCallMemo;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Project;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wraps a {@link GitlabClient} for the duration of a single decoration, only calling through to Gitlab for the first
+ * of any repeated reads. Discussions created through this client are added to the recorded discussion list, whereas
+ * adding a note to, or resolving, a discussion discards the recorded list, since Gitlab does not return the updated
+ * discussion.
+ */
+public final class MemoisingGitlabClient implements GitlabClient {
+
+    private static final String GET_MERGE_REQUEST_DISCUSSIONS = "getMergeRequestDiscussions";
+
+    private final GitlabClient delegate;
+    private final AlmCallMemo memo = new AlmCallMemo();
+
+    public MemoisingGitlabClient(GitlabClient delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public User getCurrentUser() throws IOException {
+        return memo.get("getCurrentUser", List.of(), delegate::getCurrentUser);
+    }
+
+    @Override
+    public MergeRequest getMergeRequest(String projectId, long mergeRequestIid) throws IOException {
+        return memo.get("getMergeRequest", Arrays.asList(projectId, mergeRequestIid),
+                () -> delegate.getMergeRequest(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid) throws IOException {
+        return memo.get("getMergeRequestCommits", List.of(projectId, mergeRequestIid),
+                () -> delegate.getMergeRequestCommits(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public List<Discussion> getMergeRequestDiscussions(long projectId, long mergeRequestIid) throws IOException {
+        return memo.get(GET_MERGE_REQUEST_DISCUSSIONS, List.of(projectId, mergeRequestIid),
+                () -> delegate.getMergeRequestDiscussions(projectId, mergeRequestIid));
+    }
+
+    @Override
+    public Discussion addMergeRequestDiscussion(long projectId, long mergeRequestIid, MergeRequestNote commitNote) throws IOException {
+        List<Object> discussionsKey = List.of(projectId, mergeRequestIid);
+        try {
+            Discussion discussion = delegate.addMergeRequestDiscussion(projectId, mergeRequestIid, commitNote);
+            if (null == discussion) {
+                memo.invalidate(GET_MERGE_REQUEST_DISCUSSIONS, discussionsKey);
+            } else {
+                memo.append(GET_MERGE_REQUEST_DISCUSSIONS, discussionsKey, discussion);
+            }
+            return discussion;
+        } catch (IOException | RuntimeException ex) {
+            // the discussion may still have been created, so the recorded discussions can no longer be trusted
+            memo.invalidate(GET_MERGE_REQUEST_DISCUSSIONS, discussionsKey);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void addMergeRequestDiscussionNote(long projectId, long mergeRequestIid, String discussionId, String noteContent) throws IOException {
+        try {
+            delegate.addMergeRequestDiscussionNote(projectId, mergeRequestIid, discussionId, noteContent);
+        } finally {
+            memo.invalidate(GET_MERGE_REQUEST_DISCUSSIONS, List.of(projectId, mergeRequestIid));
+        }
+    }
+
+    @Override
+    public void resolveMergeRequestDiscussion(long projectId, long mergeRequestIid, String discussionId) throws IOException {
+        try {
+            delegate.resolveMergeRequestDiscussion(projectId, mergeRequestIid, discussionId);
+        } finally {
+            memo.invalidate(GET_MERGE_REQUEST_DISCUSSIONS, List.of(projectId, mergeRequestIid));
+        }
+    }
+
+    @Override
+    public void setMergeRequestPipelineStatus(long projectId, String commitRevision, PipelineStatus status) throws IOException {
+        delegate.setMergeRequestPipelineStatus(projectId, commitRevision, status);
+    }
+
+    @Override
+    public Project getProject(String projectSlug) throws IOException {
+        return memo.get("getProject", Collections.singletonList(projectSlug),
+                () -> delegate.getProject(projectSlug));
+    }
+}
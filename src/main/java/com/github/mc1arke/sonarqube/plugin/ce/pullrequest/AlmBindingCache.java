@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Holds the ALM binding of each project, and the ALM settings it refers to, for a short period after they're read from
+ * the database, so that consecutive pull request analyses for the same project don't each have to query for them.
+ * <br>
+ * The bindings are maintained through the web server, which runs in a separate process to the Compute Engine, so
+ * there is no way for a change to a binding to evict an entry from this cache. Entries instead expire after a fixed
+ * time, which bounds how long a change can take to be used for decoration. Setting the expiry to 0 disables caching.
+ */
+@ComputeEngineSide
+public class AlmBindingCache {
+
+    public static final String CACHE_EXPIRY_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.binding-cache.expiry-seconds";
+
+    public static final long DEFAULT_EXPIRY_SECONDS = 60;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmBindingCache.class);
+
+    private final DbClient dbClient;
+    private final Configuration configuration;
+    private final Clock clock;
+    private final Map<String, CacheEntry<ProjectAlmSettingDto>> projectAlmSettings = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry<AlmSettingDto>> almSettings = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public AlmBindingCache(DbClient dbClient, Configuration configuration, Clock clock) {
+        super();
+        this.dbClient = dbClient;
+        this.configuration = configuration;
+        this.clock = clock;
+    }
+
+    public Optional<ProjectAlmSettingDto> getProjectAlmSetting(String projectUuid) {
+        return get(projectAlmSettings, projectUuid, (dbSession, key) -> dbClient.projectAlmSettingDao().selectByProject(dbSession, key));
+    }
+
+    public Optional<AlmSettingDto> getAlmSetting(String almSettingUuid) {
+        return get(almSettings, almSettingUuid, (dbSession, key) -> dbClient.almSettingDao().selectByUuid(dbSession, key));
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the proportion of lookups, between 0 and 1, that were answered without querying the database
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return 0 == total ? 0 : (double) hits / total;
+    }
+
+    private <T> Optional<T> get(Map<String, CacheEntry<T>> cache, String key, BiFunction<DbSession, String, Optional<T>> loader) {
+        Duration expiry = Duration.ofSeconds(Math.max(0, configuration.getLong(CACHE_EXPIRY_SECONDS).orElse(DEFAULT_EXPIRY_SECONDS)));
+        Instant now = clock.instant();
+
+        CacheEntry<T> entry = cache.get(key);
+        if (null != entry && now.isBefore(entry.expiresAt)) {
+            hitCount.incrementAndGet();
+            return Optional.ofNullable(entry.value);
+        }
+
+        missCount.incrementAndGet();
+        Optional<T> value;
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            value = loader.apply(dbSession, key);
+        }
+
+        if (expiry.isZero()) {
+            cache.remove(key);
+        } else {
+            cache.put(key, new CacheEntry<>(value.orElse(null), now.plus(expiry)));
+        }
+
+        LOGGER.atDebug().setMessage("ALM binding cache: {} hits, {} misses ({} hit rate)")
+                .addArgument(this::getHitCount)
+                .addArgument(this::getMissCount)
+                .addArgument(() -> String.format("%.2f", getHitRate()))
+                .log();
+        return value;
+    }
+
+    private static final class CacheEntry<T> {
+
+        private final T value;
+        private final Instant expiresAt;
+
+        private CacheEntry(T value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.ALM;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs batches of independent ALM operations, such as resolving discussions or posting comments, on a bounded pool
+ * of threads for each ALM. The pools are shared by all decorations running in the Compute Engine, so the number of
+ * concurrent requests made to an ALM is capped regardless of how many pull requests are being decorated. The executor
+ * is also available on the server, so the ALM client factories can be shared by both sides, but no pools are created
+ * there unless an operation is run through it.
+ */
+@ServerSide
+@ComputeEngineSide
+public class AlmOperationExecutor implements Startable {
+
+    public static final String ALM_OPERATION_THREADS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.alm-operation.threads";
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmOperationExecutor.class);
+
+    private final Configuration configuration;
+    private final Map<ALM, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    public AlmOperationExecutor(Configuration configuration) {
+        super();
+        this.configuration = configuration;
+    }
+
+    @Override
+    public void start() {
+        // pools are created on first use for each ALM
+    }
+
+    @Override
+    public void stop() {
+        executors.values().forEach(ExecutorService::shutdownNow);
+        executors.clear();
+    }
+
+    /**
+     * Applies the operation to every item, using the pool for the given ALM unless the operations have to be
+     * performed in order, in which case they are run one at a time on the calling thread. Every item is attempted
+     * even if an earlier one fails, and once all operations have completed any failures are reported as a single
+     * {@link IllegalStateException}, with the first failure (in item order) as the cause and the remainder as
+     * suppressed exceptions.
+     */
+    public <T> void executeAll(ALM alm, List<T> items, Consumer<T> operation, boolean ordered) {
+        int threads = getThreadCount();
+        List<RuntimeException> failures;
+        if (ordered || threads <= 1 || items.size() <= 1) {
+            failures = executeSerially(items, operation);
+        } else {
+            failures = executeConcurrently(executors.computeIfAbsent(alm, key -> createExecutor(key, threads)), items,
+                    AlmRequestDeadline.inCurrentDeadline(AlmApiMetrics.inCurrentTask(operation)));
+        }
+
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        IllegalStateException exception = new IllegalStateException(String.format("%d of %d %s operations failed", failures.size(), items.size(), alm), failures.get(0));
+        failures.stream().skip(1).forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Applies the operation to every item as {@link #executeAll(ALM, List, Consumer, boolean)} does, but treats the
+     * operations as optional, so once the {@link AlmRequestDeadline} active on the calling thread has passed, any
+     * items not yet started are skipped rather than processed. The number of items skipped is logged using the given
+     * description of the operation.
+     */
+    public <T> void executeAllBeforeDeadline(ALM alm, String description, List<T> items, Consumer<T> operation, boolean ordered) {
+        AtomicInteger skipped = new AtomicInteger();
+        try {
+            executeAll(alm, items, item -> {
+                if (AlmRequestDeadline.isCurrentDeadlineExpired()) {
+                    skipped.incrementAndGet();
+                } else {
+                    operation.accept(item);
+                }
+            }, ordered);
+        } finally {
+            if (skipped.get() > 0) {
+                LOGGER.warn("Decoration time limit reached: skipped {} of {} {}", skipped.get(), items.size(), description);
+            }
+        }
+    }
+
+    private int getThreadCount() {
+        return configuration.getInt(ALM_OPERATION_THREADS).orElse(DEFAULT_THREADS);
+    }
+
+    private static <T> List<RuntimeException> executeSerially(List<T> items, Consumer<T> operation) {
+        List<RuntimeException> failures = new ArrayList<>();
+        for (T item : items) {
+            try {
+                operation.accept(item);
+            } catch (RuntimeException ex) {
+                failures.add(ex);
+            }
+        }
+        return failures;
+    }
+
+    private static <T> List<RuntimeException> executeConcurrently(ExecutorService executorService, List<T> items, Consumer<T> operation) {
+        List<Callable<Void>> tasks = items.stream()
+                .map(item -> (Callable<Void>) () -> {
+                    operation.accept(item);
+                    return null;
+                })
+                .collect(Collectors.toList());
+
+        List<Future<Void>> results;
+        try {
+            results = executorService.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for ALM operations to complete", ex);
+        }
+
+        List<RuntimeException> failures = new ArrayList<>();
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException ex) {
+                failures.add(ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new IllegalStateException(ex.getCause()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted whilst waiting for ALM operations to complete", ex);
+            }
+        }
+        return failures;
+    }
+
+    private static ExecutorService createExecutor(ALM alm, int threads) {
+        LOGGER.debug("Creating pool of {} thread(s) for {} operations", threads, alm);
+        AtomicInteger threadCount = new AtomicInteger();
+        String threadNamePrefix = "alm-operation-" + alm.name().toLowerCase(Locale.ENGLISH) + "-";
+        ThreadPoolExecutor executorService = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executorService.allowCoreThreadTimeOut(true);
+        return executorService;
+    }
+}
@@ -28,6 +28,7 @@ import org.sonar.ce.task.projectanalysis.component.Component;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -40,17 +41,54 @@ public class AnalysisDetails {
     private final String pullRequestId;
     private final String commitId;
     private List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private IssueCounts issueCounts;
     private final QualityGate qualityGate;
     private final PostProjectAnalysisTask.ProjectAnalysis projectAnalysis;
+    private final Project project;
+    private final Analysis analysis;
+    private final Map<String, String> scannerProperties;
+    private final Map<String, Double> projectMeasures;
 
     AnalysisDetails(String pullRequestId, String commitId, List<PostAnalysisIssueVisitor.ComponentIssue> issues,
                     QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+        this(pullRequestId, commitId, issues, null, qualityGate, projectAnalysis);
+    }
+
+    /**
+     * @param issueCounts the counts already aggregated for {@code issues}, or {@code null} if they should be
+     *                    calculated when first requested
+     */
+    AnalysisDetails(String pullRequestId, String commitId, List<PostAnalysisIssueVisitor.ComponentIssue> issues,
+                    IssueCounts issueCounts, QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+        this(pullRequestId, commitId, issues, issueCounts, qualityGate, projectAnalysis, null, null, null, null);
+    }
+
+    private AnalysisDetails(String pullRequestId, String commitId, List<PostAnalysisIssueVisitor.ComponentIssue> issues,
+                            IssueCounts issueCounts, QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis,
+                            Project project, Analysis analysis, Map<String, String> scannerProperties,
+                            Map<String, Double> projectMeasures) {
         super();
         this.pullRequestId = pullRequestId;
         this.commitId = commitId;
         this.issues = issues;
+        this.issueCounts = issueCounts;
         this.qualityGate = qualityGate;
         this.projectAnalysis = projectAnalysis;
+        this.project = project;
+        this.analysis = analysis;
+        this.scannerProperties = scannerProperties;
+        this.projectMeasures = projectMeasures;
+    }
+
+    /**
+     * Captures the values this analysis exposes so they can be read after the Compute Engine task that produced
+     * them has completed. The returned instance no longer references the task's {@link PostProjectAnalysisTask.ProjectAnalysis},
+     * and holds its own copy of the issue list and scanner properties, along with the project measures read from the
+     * task's measure repository, since that repository can't be read once the task has finished.
+     */
+    AnalysisDetails snapshot(Map<String, Double> projectMeasures) {
+        return new AnalysisDetails(pullRequestId, commitId, List.copyOf(issues), getIssueCounts(), qualityGate, null,
+                getProject(), getAnalysis(), Map.copyOf(getScannerProperties()), Map.copyOf(projectMeasures));
     }
 
     public String getPullRequestId() {
@@ -72,7 +110,7 @@ public class AnalysisDetails {
     }
 
     public Optional<String> getScannerProperty(String propertyName) {
-        return Optional.ofNullable(projectAnalysis.getScannerContext().getProperties().get(propertyName));
+        return Optional.ofNullable(getScannerProperties().get(propertyName));
     }
 
     public Date getAnalysisDate() {
@@ -97,6 +135,14 @@ public class AnalysisDetails {
 
     public void setIssues(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
         this.issues = issues;
+        this.issueCounts = IssueCounts.of(issues);
+    }
+
+    public IssueCounts getIssueCounts() {
+        if (null == issueCounts) {
+            issueCounts = IssueCounts.of(issues);
+        }
+        return issueCounts;
     }
 
     public List<PostAnalysisIssueVisitor.ComponentIssue> getScmReportableIssues() {
@@ -108,16 +154,37 @@ public class AnalysisDetails {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * @return the project measures captured when this instance was created by {@link #snapshot(Map)}, keyed by metric,
+     * or an empty response if the measures have to be read from the Compute Engine task
+     */
+    public Optional<Map<String, Double>> getProjectMeasures() {
+        return Optional.ofNullable(projectMeasures);
+    }
+
     public Optional<QualityGate.Condition> findQualityGateCondition(String metricKey) {
         return qualityGate.getConditions().stream().filter(c -> metricKey.equals(c.getMetricKey())).findFirst();
     }
 
     private Analysis getAnalysis() {
+        if (null != analysis) {
+            return analysis;
+        }
         return projectAnalysis.getAnalysis().orElseThrow();
     }
 
     private Project getProject() {
+        if (null != project) {
+            return project;
+        }
         return projectAnalysis.getProject();
     }
 
+    private Map<String, String> getScannerProperties() {
+        if (null != scannerProperties) {
+            return scannerProperties;
+        }
+        return projectAnalysis.getScannerContext().getProperties();
+    }
+
 }
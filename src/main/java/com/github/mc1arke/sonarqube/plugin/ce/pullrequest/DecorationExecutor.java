@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs pull request decorations on a bounded pool of threads owned by the Compute Engine, rather than on the thread
+ * processing the analysis task, so that a slow ALM does not hold up the analysis queue. The pool is only created
+ * when asynchronous decoration has been enabled; otherwise, and whenever the pool's queue is full, decorations are
+ * run on the calling thread.
+ * <p>
+ * Decorations queued for the same pull request are coalesced: only the most recently submitted decoration for a
+ * {@link DecorationKey} is run once it reaches the head of the queue, and any older ones still waiting are dropped,
+ * since the ALM only needs to reflect the latest analysis. Decorations for the same key never run concurrently: a
+ * decoration reaching the head of the queue while another for its key is still running waits for it to finish, then
+ * checks again whether it's still the latest before running.
+ */
+@ComputeEngineSide
+public class DecorationExecutor implements Startable {
+
+    public static final String ASYNC_DECORATION_ENABLED = "com.github.mc1arke.sonarqube.plugin.branch.decoration.async.enabled";
+    public static final String ASYNC_DECORATION_THREADS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.async.threads";
+    public static final String ASYNC_DECORATION_QUEUE_SIZE = "com.github.mc1arke.sonarqube.plugin.branch.decoration.async.queue-size";
+
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 50;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecorationExecutor.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Configuration configuration;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong supersededCount = new AtomicLong();
+    private final Map<DecorationKey, Object> latestSubmissions = new ConcurrentHashMap<>();
+    private final Map<DecorationKey, KeyLock> keyLocks = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    public DecorationExecutor(Configuration configuration) {
+        super();
+        this.configuration = configuration;
+    }
+
+    @Override
+    public void start() {
+        if (!configuration.getBoolean(ASYNC_DECORATION_ENABLED).orElse(false)) {
+            LOGGER.debug("Asynchronous pull request decoration is disabled");
+            return;
+        }
+
+        int threads = Math.max(1, configuration.getInt(ASYNC_DECORATION_THREADS).orElse(DEFAULT_THREADS));
+        int queueSize = Math.max(1, configuration.getInt(ASYNC_DECORATION_QUEUE_SIZE).orElse(DEFAULT_QUEUE_SIZE));
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new DecorationThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        LOGGER.info("Pull request decoration will run asynchronously using {} thread(s) and a queue of {}", threads, queueSize);
+    }
+
+    @Override
+    public void stop() {
+        if (null == executor) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Pending pull request decorations did not complete before shutdown and have been abandoned");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return null != executor;
+    }
+
+    /**
+     * Queues the decoration to run on the decoration pool, superseding any decoration for the same key that is still
+     * waiting in the queue. The decoration is run on the calling thread if asynchronous decoration is disabled, or the
+     * queue has reached capacity. Any failure from a decoration run on the pool is logged, since there is no longer a
+     * caller to report it to.
+     */
+    public void execute(DecorationKey key, Runnable decoration) {
+        if (null == executor) {
+            decoration.run();
+            return;
+        }
+
+        Object submission = new Object();
+        latestSubmissions.put(key, submission);
+        try {
+            executor.execute(() -> runIfLatest(key, submission, decoration));
+        } catch (RejectedExecutionException ex) {
+            rejectedCount.incrementAndGet();
+            LOGGER.warn("Pull request decoration queue is full ({} pending, {} rejected so far). Decorating on the current thread",
+                    getQueueDepth(), getRejectedCount());
+            runIfLatest(key, submission, decoration);
+            return;
+        }
+
+        LOGGER.atDebug().setMessage("Pull request decoration queued: {} pending, {} active, {} completed, {} rejected, {} superseded")
+                .addArgument(this::getQueueDepth)
+                .addArgument(this::getActiveCount)
+                .addArgument(this::getCompletedCount)
+                .addArgument(this::getRejectedCount)
+                .addArgument(this::getSupersededCount)
+                .log();
+    }
+
+    public int getQueueDepth() {
+        return null == executor ? 0 : executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return null == executor ? 0 : executor.getActiveCount();
+    }
+
+    public long getCompletedCount() {
+        return null == executor ? 0 : executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+
+    private void runIfLatest(DecorationKey key, Object submission, Runnable decoration) {
+        if (latestSubmissions.get(key) != submission) {
+            skipSuperseded(key);
+            return;
+        }
+
+        KeyLock keyLock = keyLocks.compute(key, (k, existing) -> (null == existing ? new KeyLock() : existing).acquire());
+        keyLock.lock.lock();
+        try {
+            // another decoration for the key may have been submitted while this one waited for the lock
+            if (latestSubmissions.get(key) != submission) {
+                skipSuperseded(key);
+                return;
+            }
+
+            try {
+                decoration.run();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Could not decorate {}", key, ex);
+            } finally {
+                latestSubmissions.remove(key, submission);
+            }
+        } finally {
+            keyLock.lock.unlock();
+            keyLocks.computeIfPresent(key, (k, existing) -> existing.release());
+        }
+    }
+
+    private void skipSuperseded(DecorationKey key) {
+        supersededCount.incrementAndGet();
+        LOGGER.debug("Skipping decoration of {} since a more recent analysis has been queued", key);
+    }
+
+    /**
+     * The lock serialising decorations for a key, counting the decorations holding or waiting for it so it can be
+     * discarded once none are left. The count is only changed while the lock is being computed in the map.
+     */
+    private static final class KeyLock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+
+        private KeyLock acquire() {
+            users++;
+            return this;
+        }
+
+        private KeyLock release() {
+            users--;
+            return 0 == users ? null : this;
+        }
+    }
+
+    /**
+     * Identifies the pull request a decoration is for, and the project decorating it, so decorations of the same pull
+     * request by the same project can be coalesced. Projects in a monorepo share a pull request, but each decorates it
+     * with its own results, so are kept apart.
+     */
+    public static final class DecorationKey {
+
+        private final String projectUuid;
+        private final String almSettingUuid;
+        private final String almRepo;
+        private final String almSlug;
+        private final String pullRequestId;
+
+        public DecorationKey(String projectUuid, String almSettingUuid, String almRepo, String almSlug, String pullRequestId) {
+            this.projectUuid = projectUuid;
+            this.almSettingUuid = almSettingUuid;
+            this.almRepo = almRepo;
+            this.almSlug = almSlug;
+            this.pullRequestId = pullRequestId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DecorationKey that = (DecorationKey) o;
+            return Objects.equals(projectUuid, that.projectUuid) &&
+                    Objects.equals(almSettingUuid, that.almSettingUuid) &&
+                    Objects.equals(almRepo, that.almRepo) &&
+                    Objects.equals(almSlug, that.almSlug) &&
+                    Objects.equals(pullRequestId, that.pullRequestId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectUuid, almSettingUuid, almRepo, almSlug, pullRequestId);
+        }
+
+        @Override
+        public String toString() {
+            return "pull request " + pullRequestId + " in " + (null == almSlug ? almRepo : almRepo + "/" + almSlug)
+                    + " for project " + projectUuid + " (ALM setting " + almSettingUuid + ")";
+        }
+    }
+
+    private static final class DecorationThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pull-request-decoration-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.config.Configuration;
+import org.sonar.api.issue.Issue;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.source.NewLinesRepository;
+import org.sonar.core.issue.DefaultIssue;
+
+import java.util.function.BiPredicate;
+
+/**
+ * Decides which issues {@link PostAnalysisIssueVisitor} needs to retain for pull request decoration. Only pull request
+ * analyses are decorated, so nothing is retained for any other analysis, and closed or resolved issues are never
+ * counted or reported, so are never retained. Retention can optionally be narrowed further to issues on files with an
+ * SCM path, and to issues on files the pull request has changed lines in.
+ */
+final class DecorationIssueRetentionPredicate implements BiPredicate<Component, DefaultIssue> {
+
+    private final AnalysisMetadataHolder analysisMetadataHolder;
+    private final NewLinesRepository newLinesRepository;
+    private final boolean scmFilesOnly;
+    private final boolean changedFilesOnly;
+
+    DecorationIssueRetentionPredicate(AnalysisMetadataHolder analysisMetadataHolder, NewLinesRepository newLinesRepository,
+                                      Configuration configuration) {
+        this.analysisMetadataHolder = analysisMetadataHolder;
+        this.newLinesRepository = newLinesRepository;
+        this.changedFilesOnly = configuration.getBoolean(PostAnalysisIssueVisitor.RETAIN_CHANGED_FILE_ISSUES_ONLY).orElse(false);
+        this.scmFilesOnly = changedFilesOnly || configuration.getBoolean(PostAnalysisIssueVisitor.RETAIN_SCM_FILE_ISSUES_ONLY).orElse(false);
+    }
+
+    @Override
+    public boolean test(Component component, DefaultIssue issue) {
+        if (!analysisMetadataHolder.isPullRequest()) {
+            return false;
+        }
+
+        if (Issue.STATUS_CLOSED.equals(issue.status()) || Issue.STATUS_RESOLVED.equals(issue.status())) {
+            return false;
+        }
+
+        if (scmFilesOnly && (Component.Type.FILE != component.getType() || component.getReportAttributes().getScmPath().isEmpty())) {
+            return false;
+        }
+
+        // where the scanner couldn't provide changed lines for the file, the issue is kept rather than risk losing it
+        return !changedFilesOnly || newLinesRepository.getNewLines(component).map(lines -> !lines.isEmpty()).orElse(true);
+    }
+}
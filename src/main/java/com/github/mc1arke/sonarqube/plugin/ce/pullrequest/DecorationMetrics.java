@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records the time taken by each pull request decoration, logs a summary of the ALM calls each decoration made, and
+ * periodically publishes the {@link AlmApiMetrics} collected by the Compute Engine, along with the rate limit quota
+ * each ALM last reported to the {@link AlmRateLimiter}, to the database, since the web server runs in a separate
+ * process and can't read them directly.
+ */
+@ComputeEngineSide
+public class DecorationMetrics {
+
+    public static final String SNAPSHOT_PROPERTY_KEY = "communityBranch.decoration.metrics";
+
+    static final String DECORATE_OPERATION = "decorate";
+    static final Duration PUBLISH_INTERVAL = Duration.ofMinutes(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecorationMetrics.class);
+
+    private final AlmApiMetrics almApiMetrics;
+    private final AlmRateLimiter almRateLimiter;
+    private final DbClient dbClient;
+    private final Clock clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicReference<Instant> lastPublished = new AtomicReference<>(Instant.MIN);
+
+    public DecorationMetrics(AlmApiMetrics almApiMetrics, AlmRateLimiter almRateLimiter, DbClient dbClient, Clock clock) {
+        super();
+        this.almApiMetrics = almApiMetrics;
+        this.almRateLimiter = almRateLimiter;
+        this.dbClient = dbClient;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the decoration, recording how long it took against the ALM at the given URL, and logs a single line
+     * summarising the ALM calls made for it once it completes, whether or not it succeeds.
+     */
+    public void recordDecoration(String almUrl, String pullRequestId, Runnable decoration) {
+        long startNanos = System.nanoTime();
+        boolean succeeded = false;
+        try (AlmApiMetrics.Call decorateCall = almApiMetrics.startCall(almUrl, DECORATE_OPERATION);
+             AlmApiMetrics.TaskSummary taskSummary = almApiMetrics.startTask()) {
+            try {
+                decoration.run();
+                decorateCall.succeeded();
+                succeeded = true;
+            } finally {
+                LOGGER.info("Decoration of pull request {} {} in {}ms: {} ALM call(s) taking {}ms, {} failed, {} retried, {} bytes received",
+                        pullRequestId, succeeded ? "completed" : "failed", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                        taskSummary.getCalls(), taskSummary.getTotalMillis(), taskSummary.getFailures(), taskSummary.getRetries(),
+                        taskSummary.getPayloadBytes());
+            }
+        } finally {
+            publishIfDue();
+        }
+    }
+
+    private void publishIfDue() {
+        Instant now = clock.instant();
+        Instant previous = lastPublished.get();
+        if (now.isBefore(previous.plus(PUBLISH_INTERVAL)) || !lastPublished.compareAndSet(previous, now)) {
+            return;
+        }
+
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("publishedAt", now.toString());
+            snapshot.put("operations", almApiMetrics.getSnapshot());
+            snapshot.put("connections", almApiMetrics.getConnectionSnapshot());
+            snapshot.put("rateLimits", almRateLimiter.getSnapshot());
+            dbClient.internalPropertiesDao().save(dbSession, SNAPSHOT_PROPERTY_KEY, objectMapper.writeValueAsString(snapshot));
+            dbSession.commit();
+        } catch (JsonProcessingException | RuntimeException ex) {
+            LOGGER.warn("Could not publish pull request decoration metrics", ex);
+        }
+    }
+}
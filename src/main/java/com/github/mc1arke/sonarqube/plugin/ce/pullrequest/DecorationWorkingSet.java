@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The files changed in a pull request, and the issues and issue keys a decoration is working with, indexed once so
+ * each lookup made whilst decorating is a hash lookup rather than a scan of a list.
+ * <br>
+ * Paths are stored without any leading {@code /}, since some ALMs report changed files with one and SCM paths never
+ * have one, so a path matches regardless of which form either side uses.
+ */
+final class DecorationWorkingSet {
+
+    private final Set<String> changedFiles;
+    private final List<PostAnalysisIssueVisitor.ComponentIssue> issuesInChangedFiles;
+    private final Set<String> openIssueKeys;
+
+    private DecorationWorkingSet(Set<String> changedFiles, List<PostAnalysisIssueVisitor.ComponentIssue> issuesInChangedFiles,
+                                 Set<String> openIssueKeys) {
+        this.changedFiles = changedFiles;
+        this.issuesInChangedFiles = issuesInChangedFiles;
+        this.openIssueKeys = openIssueKeys;
+    }
+
+    /**
+     * @param changedFiles the paths of the files changed in the pull request, as reported by the ALM
+     * @param issues all issues for the analysis, which are retained where their file is in {@code changedFiles}
+     * @param openIssues the issues that are still open and can be reported on
+     */
+    static DecorationWorkingSet create(Collection<String> changedFiles,
+                                       List<PostAnalysisIssueVisitor.ComponentIssue> issues,
+                                       List<PostAnalysisIssueVisitor.ComponentIssue> openIssues) {
+        Set<String> normalisedChangedFiles = new HashSet<>(capacityFor(changedFiles.size()));
+        for (String changedFile : changedFiles) {
+            normalisedChangedFiles.add(normalisePath(changedFile));
+        }
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> issuesInChangedFiles = new ArrayList<>();
+        for (PostAnalysisIssueVisitor.ComponentIssue issue : issues) {
+            Optional<String> scmPath = issue.getScmPath();
+            if (scmPath.isEmpty()) {
+                continue;
+            }
+            if (normalisedChangedFiles.contains(normalisePath(scmPath.get()))) {
+                issuesInChangedFiles.add(issue);
+            }
+        }
+
+        Set<String> openIssueKeys = new HashSet<>(capacityFor(openIssues.size()));
+        for (PostAnalysisIssueVisitor.ComponentIssue openIssue : openIssues) {
+            openIssueKeys.add(openIssue.getIssue().key());
+        }
+
+        return new DecorationWorkingSet(normalisedChangedFiles, Collections.unmodifiableList(issuesInChangedFiles), openIssueKeys);
+    }
+
+    boolean isChangedFile(String path) {
+        return changedFiles.contains(normalisePath(path));
+    }
+
+    /**
+     * @return the issues in files changed by the pull request, in the order they were originally provided
+     */
+    List<PostAnalysisIssueVisitor.ComponentIssue> getIssuesInChangedFiles() {
+        return issuesInChangedFiles;
+    }
+
+    boolean isOpenIssue(String issueKey) {
+        return openIssueKeys.contains(issueKey);
+    }
+
+    static String normalisePath(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return path.substring(start);
+    }
+
+    private static int capacityFor(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+}
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.ce.task.projectanalysis.scm.Changeset;
 import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
@@ -40,8 +41,10 @@ import java.io.StringReader;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -57,13 +60,17 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     private static final String VIEW_IN_SONARQUBE_LABEL = "View in SonarQube";
     private static final Pattern NOTE_MARKDOWN_VIEW_LINK_PATTERN = Pattern.compile("^\\[" + VIEW_IN_SONARQUBE_LABEL + "]\\(([^)]+)(.*?)\\)$");
 
+    // task scoped, so can't be read when decorating after the task has finished. See PullRequestPostAnalysisTask
     private final ScmInfoRepository scmInfoRepository;
     private final ReportGenerator reportGenerator;
+    private final AlmOperationExecutor almOperationExecutor;
 
-    protected DiscussionAwarePullRequestDecorator(ScmInfoRepository scmInfoRepository, ReportGenerator reportGenerator) {
+    protected DiscussionAwarePullRequestDecorator(ScmInfoRepository scmInfoRepository, ReportGenerator reportGenerator,
+                                                  AlmOperationExecutor almOperationExecutor) {
         super();
         this.scmInfoRepository = scmInfoRepository;
         this.reportGenerator = reportGenerator;
+        this.almOperationExecutor = almOperationExecutor;
     }
 
     @Override
@@ -85,33 +92,22 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
         List<String> changeSetForRequest = getFileChangesetForPullRequest(client, pullRequest);
         LOGGER.warn("dbg changeSets: " + String.join(" , ", changeSetForRequest));
 
-        analysis.setIssues(analysis.getIssues()
-                .stream()
-                .filter(
-                        issue -> {
-                            boolean passIssue = issue.getScmPath().isPresent() && (
-                                    changeSetForRequest.contains("/"+issue.getScmPath().get()) || changeSetForRequest.contains(issue.getScmPath().get())
-                            );
-                            if (passIssue) {
-                                LOGGER.warn("dbg issue present: " +  issue.getIssue().key() + " : " + (issue.getScmPath().isPresent() ? issue.getScmPath().get() : ""));
-                            }
-                            return passIssue;
-                        }
-                )
-                .collect(Collectors.toList())
-        );
+        DecorationWorkingSet workingSet = DecorationWorkingSet.create(changeSetForRequest, analysis.getIssues(), openSonarqubeIssues);
+        workingSet.getIssuesInChangedFiles().forEach(issue -> LOGGER.warn("dbg issue present: " + issue.getIssue().key() + " : " + issue.getScmPath().orElse("")));
+        analysis.setIssues(workingSet.getIssuesInChangedFiles());
 
         AnalysisSummary analysisSummary = reportGenerator.createAnalysisSummary(analysis);
         submitSummaryNote(client, pullRequest, analysis, analysisSummary);
 
         try {
-            List<String> commentKeysForOpenComments = closeOldDiscussionsAndExtractRemainingKeys(client,
+            Set<String> commentKeysForOpenComments = closeOldDiscussionsAndExtractRemainingKeys(client,
                     user,
                     currentProjectSonarqubeComments,
-                    openSonarqubeIssues,
+                    workingSet,
                     pullRequest);
 
             List<String> keysInComments = getIssueKeysInPrThread(client, pullRequest);
+            Set<String> issueKeysInComments = new HashSet<>(keysInComments);
             LOGGER.warn("dbg keyincommn: " + String.join(" , ", keysInComments));
 
             List<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> uncommentedIssues = findIssuesWithoutComments(openSonarqubeIssues,
@@ -120,13 +116,13 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                     .map(DiscussionAwarePullRequestDecorator::loadScmPathsForIssues)
                     .filter(Optional::isPresent)
                     .map(Optional::get)
-                    .filter(issue -> !keysInComments.contains(issue.getLeft().getIssue().key()))
-                    .filter(issue -> changeSetForRequest.contains(issue.getRight()) || changeSetForRequest.contains("/" + issue.getRight()))
+                    .filter(issue -> !issueKeysInComments.contains(issue.getLeft().getIssue().key()))
+                    .filter(issue -> workingSet.isChangedFile(issue.getRight()))
                     //.filter(issue -> isIssueFromCommitInCurrentRequest(issue.getLeft(), commitIds, scmInfoRepository))
                     .collect(Collectors.toList());
 
             if (analysisSummary.getTotalIssueCount() < 50 && keysInComments.size() < 10) {
-                uncommentedIssues.stream()
+                List<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> issuesToComment = uncommentedIssues.stream()
                         // only blockers and criticals
                         .filter(issue -> {
                             if("MAJOR CRITICAL BLOCKER".contains(issue.getLeft().getIssue().severity().toUpperCase())) {
@@ -136,12 +132,16 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                             return false;
                         })
                         .limit(10)
-                        .forEach(issue -> submitCommitNoteForIssue(client,
+                        .collect(Collectors.toList());
+
+                almOperationExecutor.executeAllBeforeDeadline(getOperationAlm(), "issue comment(s)", issuesToComment,
+                        issue -> submitCommitNoteForIssue(client,
                                 pullRequest,
                                 issue.getLeft(),
                                 issue.getRight(),
                                 analysis,
-                                reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis)));
+                                reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis)),
+                        requiresOrderedOperations());
             } else {
                 LOGGER.warn("dbg limit skip by count TotalIssueCount=" + analysisSummary.getTotalIssueCount() + "keysInComments:" + keysInComments.size());
             }
@@ -156,6 +156,14 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
         return builder.build();
     }
 
+    /**
+     * Whether discussions have to be resolved, and notes posted, one at a time in the order they're found. Where this
+     * is not required, these operations are run concurrently through the {@link AlmOperationExecutor}.
+     */
+    protected boolean requiresOrderedOperations() {
+        return false;
+    }
+
     protected abstract C createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto);
 
     protected abstract Optional<String> createFrontEndUrl(P pullRequest, AnalysisDetails analysisDetails);
@@ -194,7 +202,7 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     protected abstract boolean isNoteFromCurrentUser(N note, U user);
 
     private static List<PostAnalysisIssueVisitor.ComponentIssue> findIssuesWithoutComments(List<PostAnalysisIssueVisitor.ComponentIssue> openSonarqubeIssues,
-                                                                                           List<String> openGitlabIssueIdentifiers) {
+                                                                                           Set<String> openGitlabIssueIdentifiers) {
         return openSonarqubeIssues.stream()
                 .filter(issue -> !openGitlabIssueIdentifiers.contains(issue.getIssue().key()))
                 .filter(issue -> issue.getIssue().getLine() != null)
@@ -237,15 +245,12 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                 .collect(Collectors.toList());
     }
 
-    private List<String> closeOldDiscussionsAndExtractRemainingKeys(C client, U currentUser,
-                                                                    List<Triple<D, N, Optional<ProjectIssueIdentifier>>> openSonarqubeComments,
-                                                                    List<PostAnalysisIssueVisitor.ComponentIssue> openIssues,
-                                                                    P pullRequest) {
-        List<String> openIssueKeys = openIssues.stream()
-                .map(issue -> issue.getIssue().key())
-                .collect(Collectors.toList());
-
-        List<String> remainingCommentKeys = new ArrayList<>();
+    private Set<String> closeOldDiscussionsAndExtractRemainingKeys(C client, U currentUser,
+                                                                   List<Triple<D, N, Optional<ProjectIssueIdentifier>>> openSonarqubeComments,
+                                                                   DecorationWorkingSet workingSet,
+                                                                   P pullRequest) {
+        Set<String> remainingCommentKeys = new HashSet<>();
+        List<D> staleDiscussions = new ArrayList<>();
 
         for (Triple<D, N, Optional<ProjectIssueIdentifier>> openSonarqubeComment : openSonarqubeComments) {
             Optional<ProjectIssueIdentifier> noteIdentifier = openSonarqubeComment.getRight();
@@ -255,16 +260,24 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
             }
 
             String issueKey = noteIdentifier.get().getIssueKey();
-            if (!openIssueKeys.contains(issueKey)) {
-                resolveOrPlaceFinalCommentOnDiscussion(client, currentUser, discussion, pullRequest);
+            if (!workingSet.isOpenIssue(issueKey)) {
+                staleDiscussions.add(discussion);
             } else {
                 remainingCommentKeys.add(issueKey);
             }
         }
 
+        almOperationExecutor.executeAllBeforeDeadline(getOperationAlm(), "stale discussion update(s)", staleDiscussions,
+                discussion -> resolveOrPlaceFinalCommentOnDiscussion(client, currentUser, discussion, pullRequest),
+                requiresOrderedOperations());
+
         return remainingCommentKeys;
     }
 
+    private ALM getOperationAlm() {
+        return alm().get(0);
+    }
+
     private boolean isResolved(C client, D discussion, List<N> notesInDiscussion, U currentUser) {
         return isClosed(discussion, notesInDiscussion) || notesInDiscussion.stream()
                 .filter(message -> isNoteFromCurrentUser(message, currentUser))
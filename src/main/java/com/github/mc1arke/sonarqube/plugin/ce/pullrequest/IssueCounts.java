@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Running totals of the open issues in an analysis, by type, by severity and by file. The totals are accumulated as
+ * each issue is retained, so a summary of the analysis can be read without walking the issue list again.
+ * <br>
+ * Closed and resolved issues are never counted.
+ */
+public final class IssueCounts {
+
+    private static final RuleType[] RULE_TYPES = RuleType.values();
+
+    private final long[] countsByType = new long[RULE_TYPES.length];
+    private final long[] countsBySeverity = new long[Severity.ALL.size()];
+    private final Map<String, int[]> countsByFile = new HashMap<>();
+    private long total;
+
+    IssueCounts() {
+        super();
+    }
+
+    /**
+     * Aggregates the counts for a list of issues, such as when the issues being reported on have been narrowed to
+     * the files changed in a pull request.
+     */
+    public static IssueCounts of(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
+        IssueCounts issueCounts = new IssueCounts();
+        for (PostAnalysisIssueVisitor.ComponentIssue issue : issues) {
+            issueCounts.add(issue);
+        }
+        return issueCounts;
+    }
+
+    void add(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
+        PostAnalysisIssueVisitor.LightIssue issue = componentIssue.getIssue();
+        if (Issue.STATUS_CLOSED.equals(issue.status()) || Issue.STATUS_RESOLVED.equals(issue.status())) {
+            return;
+        }
+
+        total++;
+        if (null != issue.type()) {
+            countsByType[issue.type().ordinal()]++;
+        }
+        int severityIndex = Severity.ALL.indexOf(issue.severity());
+        if (severityIndex >= 0) {
+            countsBySeverity[severityIndex]++;
+        }
+        Optional<String> scmPath = componentIssue.getScmPath();
+        if (scmPath.isPresent()) {
+            countsByFile.computeIfAbsent(scmPath.get(), k -> new int[1])[0]++;
+        }
+    }
+
+    public long getCount(RuleType ruleType) {
+        return countsByType[ruleType.ordinal()];
+    }
+
+    /**
+     * @param severity one of the values in {@link Severity#ALL}
+     */
+    public long getCountForSeverity(String severity) {
+        int severityIndex = Severity.ALL.indexOf(severity);
+        return severityIndex < 0 ? 0 : countsBySeverity[severityIndex];
+    }
+
+    public int getCountForFile(String scmPath) {
+        int[] count = countsByFile.get(scmPath);
+        return null == count ? 0 : count[0];
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
@@ -18,33 +18,72 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.issue.IssueVisitor;
+import org.sonar.ce.task.projectanalysis.source.NewLinesRepository;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.protobuf.DbIssues;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.CheckForNull;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiPredicate;
 
 public class PostAnalysisIssueVisitor extends IssueVisitor {
 
+    public static final String RETAIN_SCM_FILE_ISSUES_ONLY = "com.github.mc1arke.sonarqube.plugin.branch.decoration.issues.scm-files-only";
+    public static final String RETAIN_CHANGED_FILE_ISSUES_ONLY = "com.github.mc1arke.sonarqube.plugin.branch.decoration.issues.changed-files-only";
+
     private final List<ComponentIssue> collectedIssues = new ArrayList<>();
+    private final ValueDictionary valueDictionary = new ValueDictionary();
+    private final IssueCounts issueCounts = new IssueCounts();
+    private final BiPredicate<Component, DefaultIssue> retentionPredicate;
+
+    @Autowired
+    public PostAnalysisIssueVisitor(AnalysisMetadataHolder analysisMetadataHolder, NewLinesRepository newLinesRepository,
+                                    Configuration configuration) {
+        this(new DecorationIssueRetentionPredicate(analysisMetadataHolder, newLinesRepository, configuration));
+    }
+
+    public PostAnalysisIssueVisitor() {
+        this((component, issue) -> true);
+    }
+
+    public PostAnalysisIssueVisitor(BiPredicate<Component, DefaultIssue> retentionPredicate) {
+        super();
+        this.retentionPredicate = retentionPredicate;
+    }
 
     @Override
     public void onIssue(Component component, DefaultIssue defaultIssue) {
-        collectedIssues.add(new ComponentIssue(component, new LightIssue(defaultIssue)));
+        if (!retentionPredicate.test(component, defaultIssue)) {
+            return;
+        }
+        ComponentIssue componentIssue = new ComponentIssue(component, new LightIssue(defaultIssue, valueDictionary));
+        collectedIssues.add(componentIssue);
+        issueCounts.add(componentIssue);
     }
 
     public List<ComponentIssue> getIssues() {
         return Collections.unmodifiableList(collectedIssues);
     }
 
+    public IssueCounts getIssueCounts() {
+        return issueCounts;
+    }
+
     public static class ComponentIssue {
 
         private final Component component;
@@ -80,34 +119,49 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
      */
     public static class LightIssue {
 
-        private final Long effortInMinutes;
+        private static final int NO_LINE = 0;
+        private static final long NO_EFFORT = -1;
+        private static final byte NO_VALUE = -1;
+        private static final RuleType[] RULE_TYPES = RuleType.values();
+        private static final ValueCodes SEVERITIES = new ValueCodes("severities");
+        private static final ValueCodes STATUSES = new ValueCodes("statuses");
+
+        private final long effortInMinutes;
         private final String key;
-        private final Integer line;
+        private final int line;
         private final String message;
         private final String resolution;
-        private final String severity;
-        private final String status;
-        private final RuleType type;
-        private final DbIssues.Locations locations;
+        private final byte severity;
+        private final byte status;
+        private final byte type;
+        private final byte[] locations;
         private final RuleKey ruleKey;
 
         LightIssue(DefaultIssue issue) {
-            this.effortInMinutes = issue.effortInMinutes();
+            this(issue, new ValueDictionary());
+        }
+
+        LightIssue(DefaultIssue issue, ValueDictionary valueDictionary) {
+            Long issueEffort = issue.effortInMinutes();
+            this.effortInMinutes = null == issueEffort ? NO_EFFORT : issueEffort;
             this.key = issue.key();
-            this.line = issue.getLine();
-            this.message = issue.getMessage();
+            Integer issueLine = issue.getLine();
+            this.line = null == issueLine ? NO_LINE : issueLine;
+            this.message = valueDictionary.canonical(issue.getMessage());
 
-            this.resolution = issue.resolution();
-            this.severity = issue.severity();
-            this.status = issue.status();
-            this.type = issue.type();
-            this.locations = issue.getLocations();
-            this.ruleKey = issue.getRuleKey();
+            this.resolution = valueDictionary.canonical(issue.resolution());
+            this.severity = SEVERITIES.encode(issue.severity());
+            this.status = STATUSES.encode(issue.status());
+            RuleType issueType = issue.type();
+            this.type = null == issueType ? NO_VALUE : (byte) issueType.ordinal();
+            DbIssues.Locations issueLocations = issue.getLocations();
+            this.locations = null == issueLocations ? null : issueLocations.toByteArray();
+            this.ruleKey = valueDictionary.canonical(issue.getRuleKey());
         }
 
         @CheckForNull
         public Long effortInMinutes() {
-            return effortInMinutes;
+            return NO_EFFORT == effortInMinutes ? null : effortInMinutes;
         }
 
         public String key() {
@@ -116,7 +170,7 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
 
         @CheckForNull
         public Integer getLine() {
-            return line;
+            return NO_LINE == line ? null : line;
         }
 
         @CheckForNull
@@ -130,23 +184,35 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
         }
 
         public String severity() {
-            return severity;
+            return SEVERITIES.decode(severity);
         }
 
         public String getStatus() {
-            return status;
+            return STATUSES.decode(status);
         }
 
         public String status() {
-            return status;
+            return getStatus();
         }
 
         public RuleType type() {
-            return type;
+            return NO_VALUE == type ? null : RULE_TYPES[type];
         }
 
+        /**
+         * Locations are held in their serialised form, since they're rarely read compared to the number of issues
+         * retained, so are parsed each time this is called.
+         */
+        @CheckForNull
         public DbIssues.Locations getLocations() {
-            return locations;
+            if (null == locations) {
+                return null;
+            }
+            try {
+                return DbIssues.Locations.parseFrom(locations);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new IllegalStateException("Could not read locations for issue " + key, ex);
+            }
         }
 
         public RuleKey getRuleKey() {
@@ -167,15 +233,67 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
                 return false;
             }
             LightIssue other = (LightIssue) obj;
-            return Objects.equals(effortInMinutes, other.effortInMinutes)
+            return effortInMinutes == other.effortInMinutes
                     && Objects.equals(key, other.key)
-                    && Objects.equals(line, other.line)
+                    && line == other.line
                     && Objects.equals(message, other.message)
                     && Objects.equals(resolution, other.resolution)
-                    && Objects.equals(severity, other.severity)
-                    && Objects.equals(status, other.status)
+                    && severity == other.severity
+                    && status == other.status
                     && type == other.type;
         }
 
     }
+
+    /**
+     * Returns a single shared instance for each distinct value it's given, so that values repeated across many issues,
+     * such as resolutions, rule keys and rule messages, are only held in memory once per analysis rather than once per
+     * issue.
+     */
+    static final class ValueDictionary {
+
+        private final Map<Object, Object> values = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        <T> T canonical(T value) {
+            if (null == value) {
+                return null;
+            }
+            return (T) values.computeIfAbsent(value, v -> v);
+        }
+    }
+
+    /**
+     * Maps each distinct value of a small, closed set, such as issue severities or statuses, to a byte code, so an
+     * issue holds a single byte for the value rather than a reference to it. Codes are handed out as values are first
+     * seen and are shared by every analysis, since the set of values is fixed by SonarQube rather than by the project.
+     */
+    static final class ValueCodes {
+
+        private final String description;
+        private final List<String> values = new CopyOnWriteArrayList<>();
+
+        ValueCodes(String description) {
+            this.description = description;
+        }
+
+        synchronized byte encode(String value) {
+            if (null == value) {
+                return LightIssue.NO_VALUE;
+            }
+            int code = values.indexOf(value);
+            if (code < 0) {
+                if (values.size() > Byte.MAX_VALUE) {
+                    throw new IllegalStateException("More than " + (Byte.MAX_VALUE + 1) + " distinct " + description + " have been seen");
+                }
+                values.add(value);
+                code = values.size() - 1;
+            }
+            return (byte) code;
+        }
+
+        String decode(byte code) {
+            return LightIssue.NO_VALUE == code ? null : values.get(code);
+        }
+    }
 }
@@ -18,12 +18,15 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.Analysis;
 import org.sonar.api.ce.posttask.Branch;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
@@ -33,23 +36,52 @@ import org.sonar.db.component.BranchDao;
 import org.sonar.db.component.BranchDto;
 import org.sonar.db.protobuf.DbProjectBranches;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Decorates the pull request an analysis was run for, either on the Compute Engine task's thread or, where
+ * {@link DecorationExecutor} is running decorations asynchronously, after the task has finished.
+ * <br>
+ * Once the task has finished its container is torn down, so an asynchronous decoration can't rely on anything the
+ * container scopes to the task: the report, the component tree, and the measure and SCM repositories. Everything it
+ * needs from them is read into an {@link AnalysisDetails} snapshot before the task returns. The decorators, client
+ * factories and {@link ReportGenerator} are created by the task container but only hold Compute Engine level
+ * collaborators (settings, HTTP client pool, caches, executors) beyond those repositories, so remain usable with the
+ * snapshot. Anything added to the decoration path that reads task-scoped state has to be captured in the snapshot too.
+ */
 public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
 
+    public static final String DECORATION_TIMEOUT_SECONDS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.timeout-seconds";
+
+    public static final long DEFAULT_DECORATION_TIMEOUT_SECONDS = 300;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PullRequestPostAnalysisTask.class);
 
     private final List<PullRequestBuildStatusDecorator> pullRequestDecorators;
     private final PostAnalysisIssueVisitor postAnalysisIssueVisitor;
     private final DbClient dbClient;
+    private final DecorationExecutor decorationExecutor;
+    private final AlmBindingCache almBindingCache;
+    private final DecorationMetrics decorationMetrics;
+    private final Configuration configuration;
+    private final ReportGenerator reportGenerator;
 
     public PullRequestPostAnalysisTask(List<PullRequestBuildStatusDecorator> pullRequestDecorators,
-                                       PostAnalysisIssueVisitor postAnalysisIssueVisitor, DbClient dbClient) {
+                                       PostAnalysisIssueVisitor postAnalysisIssueVisitor, DbClient dbClient,
+                                       DecorationExecutor decorationExecutor, AlmBindingCache almBindingCache,
+                                       DecorationMetrics decorationMetrics, Configuration configuration,
+                                       ReportGenerator reportGenerator) {
         super();
         this.pullRequestDecorators = pullRequestDecorators;
         this.postAnalysisIssueVisitor = postAnalysisIssueVisitor;
         this.dbClient = dbClient;
+        this.decorationExecutor = decorationExecutor;
+        this.almBindingCache = almBindingCache;
+        this.decorationMetrics = decorationMetrics;
+        this.configuration = configuration;
+        this.reportGenerator = reportGenerator;
     }
 
     @Override
@@ -75,24 +107,17 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
             return;
         }
 
-        ProjectAlmSettingDto projectAlmSettingDto;
-        Optional<AlmSettingDto> optionalAlmSettingDto;
-        try (DbSession dbSession = dbClient.openSession(false)) {
-
-            Optional<ProjectAlmSettingDto> optionalProjectAlmSettingDto =
-                    dbClient.projectAlmSettingDao().selectByProject(dbSession, projectAnalysis.getProject().getUuid());
-
-            if (optionalProjectAlmSettingDto.isEmpty()) {
-                LOGGER.debug("No ALM has been set on the current project");
-                return;
-            }
-
-            projectAlmSettingDto = optionalProjectAlmSettingDto.get();
-            String almSettingUuid = projectAlmSettingDto.getAlmSettingUuid();
-            optionalAlmSettingDto = dbClient.almSettingDao().selectByUuid(dbSession, almSettingUuid);
+        Optional<ProjectAlmSettingDto> optionalProjectAlmSettingDto =
+                almBindingCache.getProjectAlmSetting(projectAnalysis.getProject().getUuid());
 
+        if (optionalProjectAlmSettingDto.isEmpty()) {
+            LOGGER.debug("No ALM has been set on the current project");
+            return;
         }
 
+        ProjectAlmSettingDto projectAlmSettingDto = optionalProjectAlmSettingDto.get();
+        Optional<AlmSettingDto> optionalAlmSettingDto = almBindingCache.getAlmSetting(projectAlmSettingDto.getAlmSettingUuid());
+
         if (optionalAlmSettingDto.isEmpty()) {
             LOGGER.warn("The ALM configured for this project could not be found");
             return;
@@ -132,13 +157,38 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
 
         AnalysisDetails analysisDetails =
                 new AnalysisDetails(optionalPullRequestId.get(), commitId,
-                                    postAnalysisIssueVisitor.getIssues(), qualityGate, projectAnalysis);
+                                    postAnalysisIssueVisitor.getIssues(), postAnalysisIssueVisitor.getIssueCounts(),
+                                    qualityGate, projectAnalysis);
 
         PullRequestBuildStatusDecorator pullRequestDecorator = optionalPullRequestDecorator.get();
         LOGGER.info("Using pull request decorator {}", pullRequestDecorator.getClass().getName());
-        DecorationResult decorationResult = pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+        String projectUuid = projectAnalysis.getProject().getUuid();
+
+        if (decorationExecutor.isEnabled()) {
+            AnalysisDetails analysisDetailsSnapshot = analysisDetails.snapshot(reportGenerator.readProjectMeasures());
+            DecorationExecutor.DecorationKey decorationKey = new DecorationExecutor.DecorationKey(projectUuid, almSettingDto.getUuid(),
+                    projectAlmSettingDto.getAlmRepo(), projectAlmSettingDto.getAlmSlug(), analysisDetails.getPullRequestId());
+            decorationExecutor.execute(decorationKey, () -> decorate(pullRequestDecorator, analysisDetailsSnapshot, almSettingDto, projectAlmSettingDto, projectUuid));
+        } else {
+            decorate(pullRequestDecorator, analysisDetails, almSettingDto, projectAlmSettingDto, projectUuid);
+        }
+    }
 
-        decorationResult.getPullRequestUrl().ifPresent(pullRequestUrl -> persistPullRequestUrl(pullRequestUrl, projectAnalysis, optionalPullRequestId.get()));
+    private void decorate(PullRequestBuildStatusDecorator pullRequestDecorator, AnalysisDetails analysisDetails,
+                          AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto, String projectUuid) {
+        Duration timeout = Duration.ofSeconds(Math.max(1, configuration.getLong(DECORATION_TIMEOUT_SECONDS).orElse(DEFAULT_DECORATION_TIMEOUT_SECONDS)));
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(timeout)) {
+            decorationMetrics.recordDecoration(almSettingDto.getUrl(), analysisDetails.getPullRequestId(), () -> {
+                DecorationResult decorationResult = pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+                decorationResult.getPullRequestUrl().ifPresent(pullRequestUrl -> persistPullRequestUrl(pullRequestUrl, projectUuid, analysisDetails.getPullRequestId()));
+            });
+
+            if (deadline.isExpired()) {
+                LOGGER.warn("Decoration of pull request {} exceeded its time limit of {} seconds, so optional updates may have been skipped",
+                        analysisDetails.getPullRequestId(), timeout.toSeconds());
+            }
+        }
     }
 
 
@@ -156,11 +206,11 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
         return Optional.empty();
     }
 
-    private void persistPullRequestUrl(String pullRequestUrl, ProjectAnalysis projectAnalysis, String branchName) {
+    private void persistPullRequestUrl(String pullRequestUrl, String projectUuid, String branchName) {
         try (DbSession dbSession = dbClient.openSession(false)) {
             BranchDao branchDao = dbClient.branchDao();
             Optional<BranchDto> optionalBranchDto = branchDao
-                    .selectByPullRequestKey(dbSession, projectAnalysis.getProject().getUuid(), branchName);
+                    .selectByPullRequestKey(dbSession, projectUuid, branchName);
             if (optionalBranchDto.isPresent()) {
                 BranchDto branchDto = optionalBranchDto.get();
                 DbProjectBranches.PullRequestData.Builder pullRequestDataBuilder = DbProjectBranches.PullRequestData.newBuilder(branchDto.getPullRequestData());
@@ -20,6 +20,7 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.azuredevops;
 
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.MemoisingAzureDevopsClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Comment;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentPosition;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
@@ -33,6 +34,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullReque
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentType;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.mappers.GitStatusStateMapper;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DiscussionAwarePullRequestDecorator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
@@ -66,13 +68,15 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
 
     private static final Logger logger = LoggerFactory.getLogger(AzureDevOpsPullRequestDecorator.class);
     private static final Pattern NOTE_MARKDOWN_LEGACY_SEE_LINK_PATTERN = Pattern.compile("^\\[See in SonarQube]\\((.*?)\\)$");
+    private static final Pattern ISSUE_KEY_PATTERN = Pattern.compile("\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
     private final AzureDevopsClientFactory azureDevopsClientFactory;
     private final MarkdownFormatterFactory markdownFormatterFactory;
 
     public AzureDevOpsPullRequestDecorator(ScmInfoRepository scmInfoRepository,
                                            AzureDevopsClientFactory azureDevopsClientFactory,
-                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory) {
-        super(scmInfoRepository, reportGenerator);
+                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory,
+                                           AlmOperationExecutor almOperationExecutor) {
+        super(scmInfoRepository, reportGenerator, almOperationExecutor);
         this.azureDevopsClientFactory = azureDevopsClientFactory;
         this.markdownFormatterFactory = markdownFormatterFactory;
     }
@@ -84,7 +88,8 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
 
     @Override
     protected AzureDevopsClient createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto) {
-        return azureDevopsClientFactory.createClient(projectAlmSettingDto, almSettingDto);
+        // a new client is created for each decoration, so reads are only remembered until the decoration completes
+        return new MemoisingAzureDevopsClient(azureDevopsClientFactory.createClient(projectAlmSettingDto, almSettingDto));
     }
 
     @Override
@@ -150,17 +155,18 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     @Override
     protected List<String> getIssueKeysInPrThread(AzureDevopsClient client, PullRequest pullRequest) {
         try {
-            String allComments = client.retrieveThreads(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId()).stream()
-                    .map(commentThread -> commentThread.getComments()
-                            .stream().map(Comment::getContent)
-                            .collect(Collectors.joining(" : "))
-                    ).collect(Collectors.joining(" : "));
-
-            Pattern pattern = Pattern.compile("\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
-            Matcher matcher = pattern.matcher(allComments);
+            // each comment is scanned in place, rather than joining every comment in the pull request into one string
             List<String> uuids = new ArrayList<>();
-            while (matcher.find()) {
-                uuids.add(matcher.group());
+            for (CommentThread commentThread : client.retrieveThreads(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId())) {
+                for (Comment comment : commentThread.getComments()) {
+                    if (null == comment.getContent()) {
+                        continue;
+                    }
+                    Matcher matcher = ISSUE_KEY_PATTERN.matcher(comment.getContent());
+                    while (matcher.find()) {
+                        uuids.add(matcher.group());
+                    }
+                }
             }
             return uuids;
         } catch (IOException ex) {
@@ -18,6 +18,7 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketException;
@@ -149,6 +150,11 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
         int totalAnnotationsCounter = 1;
         for (Set<CodeInsightsAnnotation> annotations : annotationChunks.values()) {
             try {
+                if (AlmRequestDeadline.isCurrentDeadlineExpired()) {
+                    LOGGER.warn("Decoration time limit reached: skipped {} of {} annotation upload(s)",
+                            annotationChunks.size() - totalAnnotationsCounter + 1, annotationChunks.size());
+                    break;
+                }
                 if (exceedsMaximumNumberOfAnnotations(totalAnnotationsCounter++, uploadLimit)) {
                     LOGGER.warn("This project has too many issues. The provider only supports {}." +
                             " The remaining annotations will be truncated.", uploadLimit.getTotalAllowedAnnotations());
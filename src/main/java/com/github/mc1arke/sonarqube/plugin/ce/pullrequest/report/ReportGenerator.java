@@ -20,10 +20,10 @@ package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report;
 
 import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.IssueCounts;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Configuration;
-import org.sonar.api.issue.Issue;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.platform.Server;
@@ -40,7 +40,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -49,8 +49,6 @@ import java.util.stream.Collectors;
 
 public class ReportGenerator {
 
-    private static final List<String> CLOSED_ISSUE_STATUS = Arrays.asList(Issue.STATUS_CLOSED, Issue.STATUS_RESOLVED);
-
     private static final List<BigDecimal> COVERAGE_LEVELS = List.of(BigDecimal.valueOf(100),
                     BigDecimal.valueOf(90),
                     BigDecimal.valueOf(60),
@@ -63,6 +61,8 @@ public class ReportGenerator {
                     new DuplicationMapping(BigDecimal.TEN, "10"),
                     new DuplicationMapping(BigDecimal.valueOf(20), "20"));
 
+    private static final List<String> PROJECT_MEASURE_KEYS = List.of(CoreMetrics.COVERAGE_KEY, CoreMetrics.DUPLICATED_LINES_DENSITY_KEY);
+
     private final Server server;
     private final Configuration configuration;
     private final MeasureRepository measureRepository;
@@ -103,8 +103,7 @@ public class ReportGenerator {
                 .map(BigDecimal::new)
                 .orElse(null);
 
-        BigDecimal coverage = findMeasure(CoreMetrics.COVERAGE_KEY)
-                .map(Measure::getDoubleValue)
+        BigDecimal coverage = findMeasureValue(analysisDetails, CoreMetrics.COVERAGE_KEY)
                 .map(BigDecimal::new)
                 .orElse(null);
 
@@ -114,13 +113,11 @@ public class ReportGenerator {
                 .map(BigDecimal::new)
                 .orElse(null);
 
-        BigDecimal duplications = findMeasure(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)
-                .map(Measure::getDoubleValue)
+        BigDecimal duplications = findMeasureValue(analysisDetails, CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)
                 .map(BigDecimal::valueOf)
                 .orElse(null);
 
-        Map<RuleType, Long> issueCounts = countRuleByType(analysisDetails.getIssues());
-        long issueTotal = issueCounts.values().stream().mapToLong(l -> l).sum();
+        IssueCounts issueCounts = analysisDetails.getIssueCounts();
 
         List<QualityGate.Condition> failedConditions = analysisDetails.findFailedQualityGateConditions();
 
@@ -129,10 +126,10 @@ public class ReportGenerator {
         return AnalysisSummary.builder()
                 .withProjectKey(analysisDetails.getAnalysisProjectKey())
                 .withSummaryImageUrl(baseImageUrl + "/common/icon.png")
-                .withBugCount(issueCounts.get(RuleType.BUG))
+                .withBugCount(issueCounts.getCount(RuleType.BUG))
                 .withBugUrl(getIssuesUrlForRuleType(analysisDetails, RuleType.BUG))
                 .withBugImageUrl(baseImageUrl + "/common/bug.png")
-                .withCodeSmellCount(issueCounts.get(RuleType.CODE_SMELL))
+                .withCodeSmellCount(issueCounts.getCount(RuleType.CODE_SMELL))
                 .withCodeSmellUrl(getIssuesUrlForRuleType(analysisDetails, RuleType.CODE_SMELL))
                 .withCodeSmellImageUrl(baseImageUrl + "/common/code_smell.png")
                 .withCoverage(coverage)
@@ -151,9 +148,9 @@ public class ReportGenerator {
                 .withStatusImageUrl(QualityGate.Status.OK == analysisDetails.getQualityGateStatus()
                         ? baseImageUrl + "/checks/QualityGateBadge/passed.png"
                         : baseImageUrl + "/checks/QualityGateBadge/failed.png")
-                .withTotalIssueCount(issueTotal)
-                .withSecurityHotspotCount(issueCounts.get(RuleType.SECURITY_HOTSPOT))
-                .withVulnerabilityCount(issueCounts.get(RuleType.VULNERABILITY))
+                .withTotalIssueCount(issueCounts.getTotal())
+                .withSecurityHotspotCount(issueCounts.getCount(RuleType.SECURITY_HOTSPOT))
+                .withVulnerabilityCount(issueCounts.getCount(RuleType.VULNERABILITY))
                 .withVulnerabilityUrl(getIssuesUrlForRuleType(analysisDetails, RuleType.VULNERABILITY))
                 .withVulnerabilityImageUrl(baseImageUrl + "/common/vulnerability.png")
                 .build();
@@ -191,6 +188,26 @@ public class ReportGenerator {
         }
     }
 
+    /**
+     * Reads the project measures {@link #createAnalysisSummary(AnalysisDetails)} uses from the task's measure
+     * repository, so they can be held in an {@link AnalysisDetails} that's decorated after the task has finished.
+     */
+    public Map<String, Double> readProjectMeasures() {
+        Map<String, Double> projectMeasures = new HashMap<>();
+        for (String metricKey : PROJECT_MEASURE_KEYS) {
+            findMeasure(metricKey).ifPresent(measure -> projectMeasures.put(metricKey, measure.getDoubleValue()));
+        }
+        return projectMeasures;
+    }
+
+    private Optional<Double> findMeasureValue(AnalysisDetails analysisDetails, String metricKey) {
+        Optional<Map<String, Double>> projectMeasures = analysisDetails.getProjectMeasures();
+        if (projectMeasures.isPresent()) {
+            return Optional.ofNullable(projectMeasures.get().get(metricKey));
+        }
+        return findMeasure(metricKey).map(Measure::getDoubleValue);
+    }
+
     private Optional<Measure> findMeasure(String metricKey) {
         return measureRepository.getRawMeasure(treeRootHolder.getRoot(), metricRepository.getByKey(metricKey));
     }
@@ -247,15 +264,6 @@ public class ReportGenerator {
         }
     }
 
-    private static Map<RuleType, Long> countRuleByType(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
-        return Arrays.stream(RuleType.values()).collect(Collectors.toMap(k -> k,
-                k -> issues.stream()
-                        .map(PostAnalysisIssueVisitor.ComponentIssue::getIssue)
-                        .filter(i -> !CLOSED_ISSUE_STATUS.contains(i.status()))
-                        .filter(i -> k == i.type())
-                        .count()));
-    }
-
     private static class DuplicationMapping {
 
         private final BigDecimal duplicationLevel;
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.action;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationMetrics;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.server.user.UserSession;
+import org.sonarqube.ws.MediaTypes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Returns the ALM call metrics most recently published by the Compute Engine. The metrics are collected in the Compute
+ * Engine process, so are only as current as the last time a decoration published them.
+ */
+public class MetricsAction implements CommunityBranchWsAction {
+
+    private static final String NO_METRICS = "{\"operations\":[]}";
+
+    private final DbClient dbClient;
+    private final UserSession userSession;
+
+    public MetricsAction(DbClient dbClient, UserSession userSession) {
+        super();
+        this.dbClient = dbClient;
+        this.userSession = userSession;
+    }
+
+    @Override
+    public void define(WebService.NewController controller) {
+        controller.createAction("metrics")
+                .setDescription("Counts and latencies of the calls made to each ALM whilst decorating pull requests, and the rate limit quota each ALM last reported. Requires the 'Administer System' permission.")
+                .setInternal(true)
+                .setHandler(this);
+    }
+
+    @Override
+    public void handle(Request request, Response response) {
+        userSession.checkIsSystemAdministrator();
+
+        String metrics;
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            metrics = dbClient.internalPropertiesDao().selectByKey(dbSession, DecorationMetrics.SNAPSHOT_PROPERTY_KEY).orElse(NO_METRICS);
+        }
+
+        Response.Stream stream = response.stream();
+        stream.setMediaType(MediaTypes.JSON);
+        try (OutputStream outputStream = stream.output()) {
+            outputStream.write(metrics.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not write metrics response", ex);
+        }
+    }
+}
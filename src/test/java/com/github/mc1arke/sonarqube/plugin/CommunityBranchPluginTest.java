@@ -18,16 +18,28 @@
  */
 package com.github.mc1arke.sonarqube.plugin;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsCommitChangesCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.DefaultGithubClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.AppJwtCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.DefaultUrlConnectionProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.InstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.DefaultGraphqlProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmBindingCache;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationExecutor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationMetrics;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -54,6 +66,8 @@ import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.SetGithubBindingAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.SetGitlabBindingAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.binding.action.ValidateBindingAction;
+import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.CommunityBranchWs;
+import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.action.MetricsAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.PullRequestWs;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.action.DeleteAction;
 import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.pullrequest.action.ListAction;
@@ -116,8 +130,18 @@ class CommunityBranchPluginTest {
 
         testCase.load(context);
 
-        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class);
-        verify(context).addExtensions(any(PropertyDefinition.class), eq(MonoRepoFeature.class));
+        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class, DecorationExecutor.class, AlmOperationExecutor.class,
+                AlmBindingCache.class, AlmApiMetrics.class, DecorationMetrics.class, AlmHttpClientPool.class,
+                AlmResponseCache.class, AlmRateLimiter.class, AlmCircuitBreaker.class, HttpClientBuilderFactory.class, InstallationTokenCache.class, AppJwtCache.class,
+                AzureDevopsCommitChangesCache.class);
+        verify(context).addExtensions(any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class),
+                eq(MonoRepoFeature.class));
     }
 
 
@@ -143,23 +167,41 @@ class CommunityBranchPluginTest {
                 eq(DeleteAction.class),
                 eq(ListAction.class),
                 eq(PullRequestWs.class),
+                eq(MetricsAction.class),
+                eq(CommunityBranchWs.class),
                 eq(GithubValidator.class),
                 eq(DefaultGraphqlProvider.class),
                 eq(DefaultGithubClientFactory.class),
                 eq(DefaultLinkHeaderReader.class),
                 eq(DefaultUrlConnectionProvider.class),
                 eq(RestApplicationAuthenticationProvider.class),
+                eq(InstallationTokenCache.class),
+                eq(AppJwtCache.class),
                 eq(HttpClientBuilderFactory.class),
                 eq(DefaultBitbucketClientFactory.class),
                 eq(BitbucketValidator.class),
                 eq(GitlabValidator.class),
                 eq(DefaultGitlabClientFactory.class),
                 eq(DefaultAzureDevopsClientFactory.class),
+                eq(AzureDevopsCommitChangesCache.class),
                 eq(AzureDevopsValidator.class),
+                eq(AlmApiMetrics.class),
+                eq(AlmHttpClientPool.class),
+                eq(AlmResponseCache.class),
+                eq(AlmRateLimiter.class),
+                eq(AlmCircuitBreaker.class),
+                eq(AlmOperationExecutor.class),
                 any(PropertyDefinition.class),
                 any(PropertyDefinition.class));
 
-        verify(context).addExtensions(any(PropertyDefinition.class), eq(MonoRepoFeature.class));
+        verify(context).addExtensions(any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class),
+                eq(MonoRepoFeature.class));
     }
 
     @Test
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
+
+class AlmApiMetricsTest {
+
+    private final ThreadLocal<Long> nanoTime = ThreadLocal.withInitial(() -> 0L);
+    private final AlmApiMetrics underTest = new AlmApiMetrics(nanoTime::get);
+
+    @Test
+    void shouldRecordCallsByHostAndOperation() {
+        performCall("https://gitlab.example.com/api/v4", "getMergeRequest", 20, 100, true);
+        performCall("https://gitlab.example.com/api/v4/other", "getMergeRequest", 700, 50, false);
+        performCall("https://github.example.com/api", "createCheckRun", 12000, 0, true);
+        underTest.recordRetry("https://gitlab.example.com", "getMergeRequest");
+
+        List<AlmApiMetrics.OperationSnapshot> snapshot = underTest.getSnapshot();
+
+        assertThat(snapshot).extracting(AlmApiMetrics.OperationSnapshot::getHost, AlmApiMetrics.OperationSnapshot::getOperation)
+                .containsExactly(tuple("github.example.com", "createCheckRun"),
+                        tuple("gitlab.example.com", "getMergeRequest"));
+
+        AlmApiMetrics.OperationSnapshot gitlab = snapshot.get(1);
+        assertThat(gitlab.getCalls()).isEqualTo(2);
+        assertThat(gitlab.getFailures()).isEqualTo(1);
+        assertThat(gitlab.getRetries()).isEqualTo(1);
+        assertThat(gitlab.getTotalMillis()).isEqualTo(720);
+        assertThat(gitlab.getMaxMillis()).isEqualTo(700);
+        assertThat(gitlab.getPayloadBytes()).isEqualTo(150);
+        assertThat(gitlab.getLatencyHistogram()).contains(entry("25", 1L), entry("1000", 1L), entry("+Inf", 0L));
+
+        assertThat(snapshot.get(0).getLatencyHistogram()).contains(entry("10000", 0L), entry("+Inf", 1L));
+    }
+
+    @Test
+    void shouldOnlyRecordCallOnceIfClosedRepeatedly() {
+        AlmApiMetrics.Call call = underTest.startCall("http://host", "operation");
+        call.close();
+        call.close();
+
+        assertThat(underTest.getSnapshot()).singleElement().extracting(AlmApiMetrics.OperationSnapshot::getCalls).isEqualTo(1L);
+    }
+
+    @Test
+    void shouldTotalCallsForCurrentTaskIncludingOtherThreads() throws InterruptedException {
+        performCall("http://host", "beforeTask", 5, 10, true);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (AlmApiMetrics.TaskSummary taskSummary = underTest.startTask()) {
+            performCall("http://host", "inTask", 30, 10, true);
+            underTest.recordRetry("http://host", "inTask");
+
+            Consumer<String> operation = AlmApiMetrics.inCurrentTask(item -> performCall("http://host", item, 40, 5, false));
+            executorService.submit(() -> operation.accept("otherThread"));
+            executorService.submit(() -> performCall("http://host", "unwrapped", 1000, 1000, true));
+            executorService.shutdown();
+            assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(taskSummary.getCalls()).isEqualTo(2);
+            assertThat(taskSummary.getFailures()).isEqualTo(1);
+            assertThat(taskSummary.getRetries()).isEqualTo(1);
+            assertThat(taskSummary.getTotalMillis()).isEqualTo(70);
+            assertThat(taskSummary.getPayloadBytes()).isEqualTo(15);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Consumer<String> outsideTask = item -> {};
+        assertThat(AlmApiMetrics.inCurrentTask(outsideTask)).isSameAs(outsideTask);
+        assertThat(underTest.getSnapshot()).hasSize(4);
+    }
+
+    @Test
+    void shouldCountOpenedAndReusedConnectionsByHost() {
+        underTest.recordConnection("https://host2.example.com/api", false);
+        underTest.recordConnection("https://host1.example.com/api", false);
+        underTest.recordConnection("https://host1.example.com/other", true);
+        underTest.recordConnection("https://host1.example.com/api", true);
+
+        assertThat(underTest.getConnectionSnapshot())
+                .extracting(AlmApiMetrics.ConnectionSnapshot::getHost, AlmApiMetrics.ConnectionSnapshot::getOpened, AlmApiMetrics.ConnectionSnapshot::getReused)
+                .containsExactly(tuple("host1.example.com", 1L, 2L), tuple("host2.example.com", 1L, 0L));
+    }
+
+    @Test
+    void shouldCountPayloadBytesReadFromResponseStream() throws IOException {
+        try (AlmApiMetrics.Call call = underTest.startCall("https://gitlab.example.com/api/v4", "getMergeRequestDiscussions");
+             InputStream inputStream = call.countPayloadBytes(new ByteArrayInputStream("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8)))) {
+            assertThat(inputStream.read()).isEqualTo('[');
+            assertThat(inputStream.skip(2)).isEqualTo(2);
+            assertThat(inputStream.readAllBytes()).hasSize(7);
+            assertThat(inputStream.read()).isEqualTo(-1);
+        }
+
+        assertThat(underTest.getSnapshot()).singleElement()
+                .extracting(AlmApiMetrics.OperationSnapshot::getPayloadBytes)
+                .isEqualTo(10L);
+    }
+
+    @Test
+    void shouldUseUnknownHostForInvalidUrls() {
+        assertThat(AlmApiMetrics.getHost(null)).isEqualTo("unknown");
+        assertThat(AlmApiMetrics.getHost("not a url")).isEqualTo("unknown");
+        assertThat(AlmApiMetrics.getHost("relative/path")).isEqualTo("unknown");
+        assertThat(AlmApiMetrics.getHost(" https://host.example.com:8443/api ")).isEqualTo("host.example.com");
+    }
+
+    private void performCall(String url, String operation, long durationMillis, long payloadBytes, boolean succeeded) {
+        nanoTime.set(0L);
+        try (AlmApiMetrics.Call call = underTest.startCall(url, operation)) {
+            call.setPayloadBytes(payloadBytes);
+            if (succeeded) {
+                call.succeeded();
+            }
+            nanoTime.set(TimeUnit.MILLISECONDS.toNanos(durationMillis));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmCircuitBreakerTest {
+
+    private static final long START_MILLIS = Instant.parse("2024-01-01T10:00:00Z").toEpochMilli();
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final Clock clock = mock(Clock.class);
+    private final AtomicLong nowMillis = new AtomicLong(START_MILLIS);
+    private final AlmCircuitBreaker underTest = new AlmCircuitBreaker(configuration, clock);
+
+    AlmCircuitBreakerTest() {
+        when(clock.millis()).thenAnswer(i -> nowMillis.get());
+        when(configuration.getInt(AlmCircuitBreaker.FAILURE_THRESHOLD)).thenReturn(Optional.of(2));
+        when(configuration.getInt(AlmCircuitBreaker.OPEN_SECONDS)).thenReturn(Optional.of(10));
+    }
+
+    @Test
+    void shouldShareCircuitForSameHost() {
+        assertThat(underTest.getCircuitForUrl("https://Alm.Test/api/v4"))
+                .isSameAs(underTest.getCircuit("alm.test"))
+                .isNotSameAs(underTest.getCircuit("other.test"));
+    }
+
+    @Test
+    void shouldOpenCircuitOnceConsecutiveFailuresReachThreshold() throws AlmUnavailableException {
+        AlmCircuitBreaker.Circuit circuit = underTest.getCircuit("alm.test");
+
+        circuit.acquire();
+        circuit.recordFailure();
+        circuit.acquire();
+        circuit.recordSuccess();
+        circuit.acquire();
+        circuit.recordFailure();
+        circuit.acquire();
+        circuit.recordFailure();
+
+        assertThatThrownBy(circuit::acquire)
+                .isInstanceOf(AlmUnavailableException.class)
+                .hasMessage("Calls to alm.test are failing, so are not being attempted until 2024-01-01T10:00:10Z");
+        assertThatCode(() -> underTest.getCircuit("other.test").acquire()).doesNotThrowAnyException();
+    }
+
+    @Test
+    void shouldLetSingleTrialCallThroughOnceOpenPeriodHasPassed() throws AlmUnavailableException {
+        AlmCircuitBreaker.Circuit circuit = underTest.getCircuit("alm.test");
+        circuit.recordFailure();
+        circuit.recordFailure();
+
+        nowMillis.addAndGet(10000);
+        circuit.acquire();
+
+        assertThatThrownBy(circuit::acquire).isInstanceOf(AlmUnavailableException.class);
+
+        circuit.recordSuccess();
+
+        assertThatCode(circuit::acquire).doesNotThrowAnyException();
+        assertThatCode(circuit::acquire).doesNotThrowAnyException();
+    }
+
+    @Test
+    void shouldReopenCircuitIfTrialCallFails() throws AlmUnavailableException {
+        AlmCircuitBreaker.Circuit circuit = underTest.getCircuit("alm.test");
+        circuit.recordFailure();
+        circuit.recordFailure();
+
+        nowMillis.addAndGet(10000);
+        circuit.acquire();
+        nowMillis.addAndGet(1000);
+        circuit.recordFailure();
+
+        nowMillis.addAndGet(9999);
+        assertThatThrownBy(circuit::acquire).isInstanceOf(AlmUnavailableException.class);
+        nowMillis.addAndGet(1);
+        assertThatCode(circuit::acquire).doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.time.Clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmHttpClientPoolTest {
+
+    private final AlmHttpClientPool underTest = new AlmHttpClientPool(mock(Configuration.class), new AlmResponseCache(mock(Configuration.class)), new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()), new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()));
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void shouldReuseClientForSameAlmSetting() {
+        AlmSettingDto almSettingDto = createAlmSetting("uuid", "http://url.test");
+        AlmSettingDto otherAlmSettingDto = createAlmSetting("otherUuid", "http://url.test");
+
+        CloseableHttpClient httpClient = underTest.getHttpClient(almSettingDto);
+
+        assertThat(underTest.getHttpClient(almSettingDto)).isSameAs(httpClient);
+        assertThat(underTest.getHttpClient(otherAlmSettingDto)).isNotSameAs(httpClient);
+    }
+
+    @Test
+    void shouldKeyOnUrlIfAlmSettingHasNoUuid() {
+        CloseableHttpClient httpClient = underTest.getHttpClient(createAlmSetting(null, "http://url.test"));
+
+        assertThat(underTest.getHttpClient(createAlmSetting(null, "http://url.test"))).isSameAs(httpClient);
+        assertThat(underTest.getHttpClient(createAlmSetting(null, "http://other.test"))).isNotSameAs(httpClient);
+    }
+
+    @Test
+    void shouldCreateNewClientsAfterStop() {
+        AlmSettingDto almSettingDto = createAlmSetting("uuid", "http://url.test");
+        CloseableHttpClient httpClient = underTest.getHttpClient(almSettingDto);
+
+        underTest.stop();
+
+        assertThat(underTest.getHttpClient(almSettingDto)).isNotSameAs(httpClient);
+    }
+
+    @Test
+    void shouldCapServerKeepAliveAtConfiguredMaximum() {
+        ConnectionKeepAliveStrategy keepAliveStrategy = AlmHttpClientPool.createKeepAliveStrategy(60000);
+
+        assertThat(keepAliveStrategy.getKeepAliveDuration(createResponse("timeout=5"), new BasicHttpContext())).isEqualTo(5000);
+        assertThat(keepAliveStrategy.getKeepAliveDuration(createResponse("timeout=300"), new BasicHttpContext())).isEqualTo(60000);
+    }
+
+    @Test
+    void shouldUseConfiguredMaximumIfServerSendsNoKeepAlive() {
+        ConnectionKeepAliveStrategy keepAliveStrategy = AlmHttpClientPool.createKeepAliveStrategy(60000);
+
+        assertThat(keepAliveStrategy.getKeepAliveDuration(createResponse(null), new BasicHttpContext())).isEqualTo(60000);
+    }
+
+    private static HttpResponse createResponse(String keepAlive) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        if (keepAlive != null) {
+            response.addHeader("Keep-Alive", keepAlive);
+        }
+        return response;
+    }
+
+    private static AlmSettingDto createAlmSetting(String uuid, String url) {
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn(uuid);
+        when(almSettingDto.getUrl()).thenReturn(url);
+        return almSettingDto;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmRateLimiterTest {
+
+    private static final long START_MILLIS = Instant.parse("2024-01-01T10:00:00Z").toEpochMilli();
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final Clock clock = mock(Clock.class);
+    private final AtomicLong nowMillis = new AtomicLong(START_MILLIS);
+    private final List<Long> sleeps = new ArrayList<>();
+    private final AlmRateLimiter underTest = new AlmRateLimiter(configuration, clock, millis -> {
+        sleeps.add(millis);
+        nowMillis.addAndGet(millis);
+    });
+
+    AlmRateLimiterTest() {
+        when(clock.millis()).thenAnswer(i -> nowMillis.get());
+    }
+
+    @Test
+    void shouldNotDelayCallsWhileQuotaIsUnknownOrAboveThreshold() throws InterruptedIOException {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "github"));
+
+        bucket.acquire();
+        bucket.update(200, headers("X-RateLimit-Remaining", "51", "X-RateLimit-Reset", epochSeconds(60)));
+        bucket.acquire();
+
+        assertThat(sleeps).isEmpty();
+    }
+
+    @Test
+    void shouldSpreadCallsOverTimeUntilResetOnceQuotaIsLow() throws InterruptedIOException {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "gitlab"));
+        bucket.update(200, headers("RateLimit-Remaining", "10", "RateLimit-Reset", epochSeconds(10)));
+
+        bucket.acquire();
+        bucket.acquire();
+        bucket.acquire();
+
+        assertThat(sleeps).containsExactly(1000L, 1111L);
+    }
+
+    @Test
+    void shouldHoldCallsUntilResetOnceQuotaIsExhausted() throws InterruptedIOException {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "github"));
+        bucket.update(200, headers("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", epochSeconds(30)));
+
+        bucket.acquire();
+        bucket.acquire();
+
+        assertThat(sleeps).containsExactly(30000L);
+    }
+
+    @Test
+    void shouldHoldCallsForRetryAfterOfRateLimitedResponse() throws InterruptedIOException {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "bitbucket"));
+
+        assertThat(bucket.update(429, headers("Retry-After", "5"))).isTrue();
+        assertThat(bucket.shouldRetry(0)).isTrue();
+        assertThat(bucket.shouldRetry(AlmRateLimiter.MAX_RETRIES)).isFalse();
+        bucket.acquire();
+
+        assertThat(sleeps).containsExactly(5000L);
+    }
+
+    @Test
+    void shouldOnlyTreatForbiddenResponseAsRateLimitedIfQuotaExhaustedOrRetryRequested() {
+        assertThat(AlmRateLimiter.isRateLimited(403, headers())).isFalse();
+        assertThat(AlmRateLimiter.isRateLimited(403, headers("X-RateLimit-Remaining", "10"))).isFalse();
+        assertThat(AlmRateLimiter.isRateLimited(403, headers("X-RateLimit-Remaining", "0"))).isTrue();
+        assertThat(AlmRateLimiter.isRateLimited(403, headers("Retry-After", "60"))).isTrue();
+        assertThat(AlmRateLimiter.isRateLimited(429, headers())).isTrue();
+        assertThat(AlmRateLimiter.isRateLimited(200, headers("X-RateLimit-Remaining", "0"))).isFalse();
+    }
+
+    @Test
+    void shouldUseDefaultPauseIfRateLimitedWithoutRetryAfterOrReset() {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "azure"));
+
+        bucket.update(429, headers());
+
+        assertThat(bucket.shouldRetry(0)).isTrue();
+        when(configuration.getInt(AlmRateLimiter.MAX_WAIT_SECONDS)).thenReturn(Optional.of(30));
+        AlmRateLimiter.Bucket otherBucket = underTest.getBucket(createAlmSetting("otherUuid", "azure"));
+        otherBucket.update(429, headers());
+        assertThat(otherBucket.shouldRetry(0)).isFalse();
+    }
+
+    @Test
+    void shouldNotWaitLongerThanMaximumWaitOrCurrentDeadline() throws InterruptedIOException {
+        when(configuration.getInt(AlmRateLimiter.MAX_WAIT_SECONDS)).thenReturn(Optional.of(20));
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "github"));
+        bucket.update(429, headers("Retry-After", "120"));
+
+        bucket.acquire();
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofSeconds(5), () -> 0L)) {
+            bucket.acquire();
+        }
+
+        assertThat(sleeps).containsExactly(20000L, 5000L);
+        assertThat(bucket.shouldRetry(0)).isFalse();
+    }
+
+    @Test
+    void shouldShareBucketBetweenClientsOfSameAlmSettingAndReportQuota() {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "github"));
+        assertThat(underTest.getBucket(createAlmSetting("uuid", "github"))).isSameAs(bucket);
+        assertThat(underTest.getBucket(createAlmSetting("otherUuid", "bitbucket"))).isNotSameAs(bucket);
+
+        bucket.update(200, headers("X-RateLimit-Limit", "5000", "X-RateLimit-Remaining", "4999", "X-RateLimit-Reset", epochSeconds(3600)));
+        bucket.update(429, headers("Retry-After", "1"));
+
+        assertThat(underTest.getSnapshot())
+                .extracting(AlmRateLimiter.BucketSnapshot::getAlmSetting, AlmRateLimiter.BucketSnapshot::getLimit,
+                        AlmRateLimiter.BucketSnapshot::getRemaining, AlmRateLimiter.BucketSnapshot::getResetAt,
+                        AlmRateLimiter.BucketSnapshot::getRateLimitedResponses)
+                .containsExactly(tuple("bitbucket", null, null, null, 0L),
+                        tuple("github", 5000L, 4999L, "2024-01-01T11:00:00Z", 1L));
+    }
+
+    @Test
+    void shouldForgetRemainingQuotaOnceReset() throws InterruptedIOException {
+        AlmRateLimiter.Bucket bucket = underTest.getBucket(createAlmSetting("uuid", "github"));
+        bucket.update(200, headers("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", epochSeconds(10)));
+        nowMillis.addAndGet(10000);
+
+        bucket.acquire();
+
+        assertThat(sleeps).isEmpty();
+        assertThat(underTest.getSnapshot()).singleElement().extracting(AlmRateLimiter.BucketSnapshot::getRemaining).isNull();
+    }
+
+    private static String epochSeconds(long secondsFromStart) {
+        return String.valueOf(START_MILLIS / 1000 + secondsFromStart);
+    }
+
+    private static AlmResponseCache.HeaderLookup headers(String... namesAndValues) {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers::get;
+    }
+
+    private static AlmSettingDto createAlmSetting(String uuid, String key) {
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn(uuid);
+        when(almSettingDto.getKey()).thenReturn(key);
+        return almSettingDto;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlmRequestDeadlineTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @AfterEach
+    void tearDown() {
+        AlmRequestDeadline.current().ifPresent(AlmRequestDeadline::close);
+    }
+
+    @Test
+    void shouldUseDefaultTimeoutWithoutDeadline() {
+        assertThat(AlmRequestDeadline.current()).isEmpty();
+        assertThat(AlmRequestDeadline.isCurrentDeadlineExpired()).isFalse();
+        assertThat(AlmRequestDeadline.getRequestTimeoutMillis()).isEqualTo(AlmRequestDeadline.DEFAULT_REQUEST_TIMEOUT.toMillis());
+    }
+
+    @Test
+    void shouldLimitTimeoutToRemainingTime() {
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofSeconds(120), nanoTime::get)) {
+            assertThat(AlmRequestDeadline.current()).containsSame(deadline);
+            assertThat(AlmRequestDeadline.getRequestTimeoutMillis()).isEqualTo(AlmRequestDeadline.DEFAULT_REQUEST_TIMEOUT.toMillis());
+
+            nanoTime.set(Duration.ofSeconds(90).toNanos());
+            assertThat(deadline.getRemaining()).isEqualTo(Duration.ofSeconds(30));
+            assertThat(AlmRequestDeadline.getRequestTimeoutMillis()).isEqualTo(30000);
+            assertThat(deadline.isExpired()).isFalse();
+
+            nanoTime.set(Duration.ofSeconds(115).toNanos());
+            assertThat(AlmRequestDeadline.getRequestTimeoutMillis()).isEqualTo(AlmRequestDeadline.MINIMUM_REQUEST_TIMEOUT.toMillis());
+
+            nanoTime.set(Duration.ofSeconds(121).toNanos());
+            assertThat(deadline.getRemaining()).isEqualTo(Duration.ZERO);
+            assertThat(deadline.isExpired()).isTrue();
+            assertThat(AlmRequestDeadline.isCurrentDeadlineExpired()).isTrue();
+            assertThat(AlmRequestDeadline.getRequestTimeoutMillis()).isEqualTo(AlmRequestDeadline.MINIMUM_REQUEST_TIMEOUT.toMillis());
+        }
+
+        assertThat(AlmRequestDeadline.current()).isEmpty();
+    }
+
+    @Test
+    void shouldApplyDeadlineToOperationsRunOnOtherThreads() throws InterruptedException {
+        List<Optional<AlmRequestDeadline>> seen = new ArrayList<>();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofSeconds(10))) {
+            Consumer<String> operation = AlmRequestDeadline.inCurrentDeadline(item -> seen.add(AlmRequestDeadline.current()));
+            executorService.submit(() -> operation.accept("wrapped"));
+            executorService.submit(() -> seen.add(AlmRequestDeadline.current()));
+            executorService.shutdown();
+            assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(seen).containsExactly(Optional.of(deadline), Optional.empty());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Consumer<String> outsideDeadline = item -> {};
+        assertThat(AlmRequestDeadline.inCurrentDeadline(outsideDeadline)).isSameAs(outsideDeadline);
+    }
+}
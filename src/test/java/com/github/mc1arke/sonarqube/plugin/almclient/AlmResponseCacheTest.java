@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmResponseCacheTest {
+
+    private final Configuration configuration = mock(Configuration.class);
+
+    @Test
+    void shouldOnlyStoreResponsesWithValidator() {
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+
+        underTest.put("http://url.test/a", "credential", headers(Map.of()), body("a"));
+        underTest.put("http://url.test/b", "credential", headers(Map.of("ETag", "\"b\"", "Link", "<next>", "Other", "value")), body("b"));
+        underTest.put("http://url.test/c", "credential", headers(Map.of("Last-Modified", "Mon, 01 Jan 2024 10:00:00 GMT")), body("c"));
+
+        assertThat(underTest.get("http://url.test/a", "credential")).isEmpty();
+        AlmResponseCache.CachedResponse cachedResponse = underTest.get("http://url.test/b", "credential").orElseThrow();
+        assertThat(cachedResponse.getBody()).isEqualTo(body("b"));
+        assertThat(cachedResponse.getHeaders()).containsExactly(Map.entry("Link", "<next>"));
+        assertThat(underTest.get("http://url.test/c", "credential")).isPresent();
+    }
+
+    @Test
+    void shouldAddValidatorsForStoredResponse() {
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"etag\"", "Last-Modified", "Mon, 01 Jan 2024 10:00:00 GMT")), body("a"));
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+
+        underTest.get("http://url.test", "credential").orElseThrow().addValidators(requestHeaders::put);
+
+        assertThat(requestHeaders).containsExactly(Map.entry("If-None-Match", "\"etag\""), Map.entry("If-Modified-Since", "Mon, 01 Jan 2024 10:00:00 GMT"));
+    }
+
+    @Test
+    void shouldNotReturnResponseStoredForDifferentCredential() {
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"etag\"")), body("a"));
+
+        assertThat(underTest.get("http://url.test", "other credential")).isEmpty();
+        assertThat(underTest.get("http://url.test", null)).isEmpty();
+        assertThat(underTest.get("http://url.test", "credential")).isPresent();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedResponsesOnceSizeExceeded() {
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(1));
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+        byte[] body = new byte[200 * 1024];
+
+        for (int i = 0; i < 5; i++) {
+            underTest.put("http://url.test/" + i, "credential", headers(Map.of("ETag", "\"" + i + "\"")), body);
+        }
+        underTest.get("http://url.test/0", "credential");
+        underTest.put("http://url.test/5", "credential", headers(Map.of("ETag", "\"5\"")), body);
+
+        assertThat(underTest.get("http://url.test/0", "credential")).isPresent();
+        assertThat(underTest.get("http://url.test/1", "credential")).isEmpty();
+        assertThat(underTest.get("http://url.test/2", "credential")).isPresent();
+        assertThat(underTest.getSizeBytes()).isEqualTo(5 * 200 * 1024L);
+    }
+
+    @Test
+    void shouldReplaceResponseForSameUrlAndCredential() {
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"1\"")), body("first"));
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"2\"")), body("second"));
+
+        assertThat(underTest.get("http://url.test", "credential").orElseThrow().getBody()).isEqualTo(body("second"));
+        assertThat(underTest.getSizeBytes()).isEqualTo(body("second").length);
+    }
+
+    @Test
+    void shouldNotStoreResponsesLargerThanQuarterOfCache() {
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(1));
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"etag\"")), new byte[300 * 1024]);
+
+        assertThat(underTest.get("http://url.test", "credential")).isEmpty();
+        assertThat(underTest.getSizeBytes()).isZero();
+    }
+
+    @Test
+    void shouldNotStoreAnythingIfDisabled() {
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(0));
+        AlmResponseCache underTest = new AlmResponseCache(configuration);
+
+        underTest.put("http://url.test", "credential", headers(Map.of("ETag", "\"etag\"")), body("a"));
+
+        assertThat(underTest.get("http://url.test", "credential")).isEmpty();
+    }
+
+    private static AlmResponseCache.HeaderLookup headers(Map<String, String> headers) {
+        return headers::get;
+    }
+
+    private static byte[] body(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AlmRetryPolicyTest {
+
+    private final List<Long> ceilings = new ArrayList<>();
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Test
+    void shouldBackOffWithJitterUpToDoublingCeilingUntilRetriesUsed() throws InterruptedIOException {
+        assertThat(AlmRetryPolicy.backOff(0, this::halfCeiling, sleeps::add)).isTrue();
+        assertThat(AlmRetryPolicy.backOff(1, this::halfCeiling, sleeps::add)).isTrue();
+        assertThat(AlmRetryPolicy.backOff(AlmRetryPolicy.MAX_RETRIES, this::halfCeiling, sleeps::add)).isFalse();
+
+        assertThat(ceilings).containsExactly(500L, 1000L);
+        assertThat(sleeps).containsExactly(250L, 500L);
+    }
+
+    @Test
+    void shouldNotBackOffPastCurrentDeadline() throws InterruptedIOException {
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofMillis(100))) {
+            assertThat(AlmRetryPolicy.backOff(0, this::halfCeiling, sleeps::add)).isFalse();
+        }
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofMinutes(1))) {
+            assertThat(AlmRetryPolicy.backOff(0, this::halfCeiling, sleeps::add)).isTrue();
+        }
+
+        assertThat(sleeps).containsExactly(250L);
+    }
+
+    @Test
+    void shouldRestoreInterruptIfInterruptedWhilstBackingOff() {
+        try {
+            assertThatThrownBy(() -> AlmRetryPolicy.backOff(0, this::halfCeiling, millis -> {
+                throw new InterruptedException();
+            })).isInstanceOf(InterruptedIOException.class)
+                    .hasCauseInstanceOf(InterruptedException.class);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void shouldOnlyTreatIdempotentMethodsAsIdempotent() {
+        assertThat(AlmRetryPolicy.isIdempotentMethod("get")).isTrue();
+        assertThat(AlmRetryPolicy.isIdempotentMethod("PUT")).isTrue();
+        assertThat(AlmRetryPolicy.isIdempotentMethod("DELETE")).isTrue();
+        assertThat(AlmRetryPolicy.isIdempotentMethod("POST")).isFalse();
+        assertThat(AlmRetryPolicy.isIdempotentMethod("PATCH")).isFalse();
+        assertThat(AlmRetryPolicy.isMarkedIdempotent(AlmRetryPolicy.createIdempotentContext())).isTrue();
+    }
+
+    @Test
+    void shouldOnlyRetryTransientStatusesAndExceptions() {
+        assertThat(AlmRetryPolicy.isRetryableStatus(502)).isTrue();
+        assertThat(AlmRetryPolicy.isRetryableStatus(503)).isTrue();
+        assertThat(AlmRetryPolicy.isRetryableStatus(504)).isTrue();
+        assertThat(AlmRetryPolicy.isRetryableStatus(500)).isFalse();
+        assertThat(AlmRetryPolicy.isRetryableStatus(429)).isFalse();
+
+        assertThat(AlmRetryPolicy.isRetryableException(new ConnectException())).isTrue();
+        assertThat(AlmRetryPolicy.isRetryableException(new IOException("Connection reset"))).isTrue();
+        assertThat(AlmRetryPolicy.isRetryableException(new SocketTimeoutException())).isFalse();
+        assertThat(AlmRetryPolicy.isRetryableException(new UnknownHostException())).isFalse();
+        assertThat(AlmRetryPolicy.isRetryableException(new SSLException("handshake"))).isFalse();
+        assertThat(AlmRetryPolicy.isRetryableException(new AlmUnavailableException("open"))).isFalse();
+    }
+
+    @Test
+    void shouldNotCountCircuitBreakerRejectionAsHostFailure() {
+        assertThat(AlmRetryPolicy.isHostFailure(new SocketTimeoutException())).isTrue();
+        assertThat(AlmRetryPolicy.isHostFailure(new ConnectException())).isTrue();
+        assertThat(AlmRetryPolicy.isHostFailure(new AlmUnavailableException("open"))).isFalse();
+    }
+
+    private long halfCeiling(long ceiling) {
+        ceilings.add(ceiling);
+        return ceiling / 2;
+    }
+}
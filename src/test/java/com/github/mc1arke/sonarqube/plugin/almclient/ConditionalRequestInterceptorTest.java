@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConditionalRequestInterceptorTest {
+
+    private final AlmResponseCache responseCache = new AlmResponseCache(mock(Configuration.class));
+    private final ConditionalRequestInterceptor underTest = new ConditionalRequestInterceptor(responseCache);
+
+    @Test
+    void shouldStoreResponseWithValidatorAndReplayItWhenNotModified() throws IOException {
+        BasicHttpRequest firstRequest = createRequest("GET", "token");
+        HttpClientContext firstContext = createContext();
+        underTest.process(firstRequest, firstContext);
+        HttpResponse firstResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        firstResponse.setHeader("ETag", "\"etag\"");
+        firstResponse.setHeader("Link", "<http://url.test/api/items?page=2>; rel=\"next\"");
+        firstResponse.setEntity(new StringEntity("[1, 2, 3]"));
+        underTest.process(firstResponse, firstContext);
+
+        assertThat(firstRequest.getFirstHeader("If-None-Match")).isNull();
+        assertThat(EntityUtils.toString(firstResponse.getEntity())).isEqualTo("[1, 2, 3]");
+        assertThat(responseCache.get("http://url.test/api/items", "Authorization:token\n")).isPresent();
+
+        BasicHttpRequest secondRequest = createRequest("GET", "token");
+        HttpClientContext secondContext = createContext();
+        underTest.process(secondRequest, secondContext);
+        HttpResponse secondResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+        underTest.process(secondResponse, secondContext);
+
+        assertThat(secondRequest.getFirstHeader("If-None-Match").getValue()).isEqualTo("\"etag\"");
+        assertThat(secondResponse.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(secondResponse.getFirstHeader("Link").getValue()).isEqualTo("<http://url.test/api/items?page=2>; rel=\"next\"");
+        assertThat(EntityUtils.toString(secondResponse.getEntity())).isEqualTo("[1, 2, 3]");
+    }
+
+    @Test
+    void shouldNotMakeRequestConditionalForDifferentCredential() throws IOException {
+        HttpClientContext firstContext = createContext();
+        underTest.process(createRequest("GET", "token"), firstContext);
+        HttpResponse firstResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        firstResponse.setHeader("ETag", "\"etag\"");
+        firstResponse.setEntity(new StringEntity("[]"));
+        underTest.process(firstResponse, firstContext);
+
+        BasicHttpRequest secondRequest = createRequest("GET", "other token");
+        underTest.process(secondRequest, createContext());
+
+        assertThat(secondRequest.getFirstHeader("If-None-Match")).isNull();
+    }
+
+    @Test
+    void shouldIgnoreRequestsOtherThanGet() throws IOException {
+        BasicHttpRequest request = createRequest("POST", "token");
+        HttpClientContext context = createContext();
+        underTest.process(request, context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader("ETag", "\"etag\"");
+        response.setEntity(new StringEntity("{}"));
+        underTest.process(response, context);
+
+        assertThat(responseCache.get("http://url.test/api/items", "Authorization:token\n")).isEmpty();
+    }
+
+    @Test
+    void shouldMakeStreamedRequestsConditionalAndStoreBodyOnceItHasBeenRead() throws IOException {
+        HttpClientContext firstContext = createContext();
+        underTest.process(createRequest("GET", "token"), firstContext);
+        HttpResponse firstResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        firstResponse.setHeader("ETag", "\"etag\"");
+        firstResponse.setEntity(new StringEntity("[]"));
+        underTest.process(firstResponse, firstContext);
+
+        BasicHttpRequest streamedRequest = createRequest("GET", "token");
+        HttpClientContext streamedContext = createStreamingContext();
+        underTest.process(streamedRequest, streamedContext);
+        HttpResponse streamedResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        streamedResponse.setHeader("ETag", "\"other etag\"");
+        streamedResponse.setEntity(new InputStreamEntity(new ByteArrayInputStream("[1]".getBytes()), -1));
+        underTest.process(streamedResponse, streamedContext);
+
+        assertThat(streamedRequest.getFirstHeader("If-None-Match").getValue()).isEqualTo("\"etag\"");
+        assertThat(streamedResponse.getEntity().isStreaming()).isTrue();
+        assertThat(responseCache.get("http://url.test/api/items", "Authorization:token\n").orElseThrow().getBody()).isEqualTo("[]".getBytes());
+        assertThat(EntityUtils.toString(streamedResponse.getEntity())).isEqualTo("[1]");
+        assertThat(responseCache.get("http://url.test/api/items", "Authorization:token\n").orElseThrow().getBody()).isEqualTo("[1]".getBytes());
+
+        BasicHttpRequest revalidatedRequest = createRequest("GET", "token");
+        HttpClientContext revalidatedContext = createStreamingContext();
+        underTest.process(revalidatedRequest, revalidatedContext);
+        HttpResponse revalidatedResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 304, "Not Modified");
+        underTest.process(revalidatedResponse, revalidatedContext);
+
+        assertThat(revalidatedRequest.getFirstHeader("If-None-Match").getValue()).isEqualTo("\"other etag\"");
+        assertThat(revalidatedResponse.getStatusLine().getStatusCode()).isEqualTo(200);
+        assertThat(EntityUtils.toString(revalidatedResponse.getEntity())).isEqualTo("[1]");
+    }
+
+    @Test
+    void shouldStoreStreamedBodyClosedBeforeItsEndWasRead() throws IOException {
+        HttpClientContext context = createStreamingContext();
+        underTest.process(createRequest("GET", "token"), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader("ETag", "\"etag\"");
+        response.setEntity(new InputStreamEntity(new ByteArrayInputStream("[1]\n".getBytes()), -1));
+        underTest.process(response, context);
+
+        try (InputStream content = response.getEntity().getContent()) {
+            assertThat(content.readNBytes(3)).isEqualTo("[1]".getBytes());
+        }
+
+        assertThat(responseCache.get("http://url.test/api/items", "Authorization:token\n").orElseThrow().getBody()).isEqualTo("[1]\n".getBytes());
+    }
+
+    @Test
+    void shouldStreamBodyLargerThanCacheWouldStoreWithoutStoringIt() throws IOException {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(1));
+        AlmResponseCache smallResponseCache = new AlmResponseCache(configuration);
+        ConditionalRequestInterceptor smallCacheInterceptor = new ConditionalRequestInterceptor(smallResponseCache);
+        byte[] body = new byte[(int) smallResponseCache.getMaxBodySize() + 10];
+        Arrays.fill(body, (byte) 'a');
+
+        HttpClientContext context = createStreamingContext();
+        smallCacheInterceptor.process(createRequest("GET", "token"), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader("ETag", "\"etag\"");
+        response.setEntity(new InputStreamEntity(new ByteArrayInputStream(body), -1));
+        smallCacheInterceptor.process(response, context);
+
+        assertThat(EntityUtils.toByteArray(response.getEntity())).isEqualTo(body);
+        assertThat(smallResponseCache.get("http://url.test/api/items", "Authorization:token\n")).isEmpty();
+    }
+
+    @Test
+    void shouldPassOnResponsesLargerThanCacheWouldStoreWithoutStoringThem() throws IOException {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(1));
+        AlmResponseCache smallResponseCache = new AlmResponseCache(configuration);
+        ConditionalRequestInterceptor smallCacheInterceptor = new ConditionalRequestInterceptor(smallResponseCache);
+        byte[] body = new byte[(int) smallResponseCache.getMaxBodySize() + 10];
+        Arrays.fill(body, (byte) 'a');
+
+        HttpClientContext unknownLengthContext = createContext();
+        smallCacheInterceptor.process(createRequest("GET", "token"), unknownLengthContext);
+        HttpResponse unknownLengthResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        unknownLengthResponse.setHeader("ETag", "\"etag\"");
+        unknownLengthResponse.setEntity(new InputStreamEntity(new ByteArrayInputStream(body), -1, ContentType.APPLICATION_JSON));
+        smallCacheInterceptor.process(unknownLengthResponse, unknownLengthContext);
+
+        assertThat(unknownLengthResponse.getEntity().isStreaming()).isTrue();
+        assertThat(unknownLengthResponse.getEntity().getContentType().getValue()).isEqualTo(ContentType.APPLICATION_JSON.toString());
+        assertThat(EntityUtils.toByteArray(unknownLengthResponse.getEntity())).isEqualTo(body);
+        assertThat(smallResponseCache.get("http://url.test/api/items", "Authorization:token\n")).isEmpty();
+
+        HttpClientContext knownLengthContext = createContext();
+        smallCacheInterceptor.process(createRequest("GET", "token"), knownLengthContext);
+        HttpResponse knownLengthResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        knownLengthResponse.setHeader("ETag", "\"etag\"");
+        HttpEntity knownLengthEntity = mock(HttpEntity.class);
+        when(knownLengthEntity.getContentLength()).thenReturn((long) body.length);
+        knownLengthResponse.setEntity(knownLengthEntity);
+        smallCacheInterceptor.process(knownLengthResponse, knownLengthContext);
+
+        assertThat(knownLengthResponse.getEntity()).isSameAs(knownLengthEntity);
+        verify(knownLengthEntity, never()).getContent();
+        assertThat(smallResponseCache.get("http://url.test/api/items", "Authorization:token\n")).isEmpty();
+    }
+
+    private static BasicHttpRequest createRequest(String method, String token) {
+        BasicHttpRequest request = new BasicHttpRequest(method, "/api/items");
+        request.setHeader("Authorization", token);
+        return request;
+    }
+
+    private static HttpClientContext createContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, new HttpHost("url.test", -1, "http"));
+        return context;
+    }
+
+    private static HttpClientContext createStreamingContext() {
+        HttpClientContext context = AlmResponseCache.createStreamingContext();
+        context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, new HttpHost("url.test", -1, "http"));
+        return context;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class JsonResponseReaderTest {
+
+    private final ObjectMapper objectMapper = spy(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    private final JsonResponseReader underTest = new JsonResponseReader(objectMapper);
+    private final List<Item> items = new ArrayList<>();
+
+    @Test
+    void shouldReadValueFromStreamAndReuseReaderForType() throws IOException {
+        assertThat(underTest.read(stream("{\"id\": 1, \"ignored\": true}"), Item.class).getId()).isEqualTo(1);
+        assertThat(underTest.read(stream("{\"id\": 2}"), Item.class).getId()).isEqualTo(2);
+
+        verify(objectMapper, times(1)).reader();
+    }
+
+    @Test
+    void shouldPassEachArrayElementToConsumerInOrder() throws IOException {
+        underTest.readEach(stream("[{\"id\": 1, \"nested\": [{\"id\": 9}]}, {\"id\": 2}, {\"id\": 3}]"), Item.class, items::add);
+
+        assertThat(items).extracting(Item::getId).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void shouldTreatEmptyBodyAsEmptyArray() throws IOException {
+        underTest.readEach(stream(""), Item.class, items::add);
+        underTest.readEach(stream("[]"), Item.class, items::add);
+
+        assertThat(items).isEmpty();
+    }
+
+    @Test
+    void shouldOnlyAcceptSingleValueWhereMapperAcceptsSingleValuesAsArrays() throws IOException {
+        assertThatThrownBy(() -> underTest.readEach(stream("{\"id\": 1}"), Item.class, items::add))
+                .isInstanceOf(JsonParseException.class)
+                .hasMessageStartingWith("Expected a JSON array but found START_OBJECT");
+
+        new JsonResponseReader(new ObjectMapper().configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true))
+                .readEach(stream("{\"id\": 1}"), Item.class, items::add);
+
+        assertThat(items).extracting(Item::getId).containsExactly(1);
+    }
+
+    @Test
+    void shouldFailOnTruncatedArrayAfterPassingCompleteElements() {
+        assertThatThrownBy(() -> underTest.readEach(stream("[{\"id\": 1}, {\"id\": 2}"), Item.class, items::add))
+                .isInstanceOf(JsonParseException.class);
+
+        assertThat(items).extracting(Item::getId).containsExactly(1, 2);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Item {
+
+        private final int id;
+
+        @JsonCreator
+        Item(@JsonProperty("id") int id) {
+            this.id = id;
+        }
+
+        int getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTest {
+
+    private final AlmRateLimiter.Bucket bucket = AlmRateLimiter.createUnsharedBucket("alm");
+    private final RateLimitInterceptor underTest = new RateLimitInterceptor(bucket);
+
+    @Test
+    void shouldRetryRateLimitedResponseUntilRetriesExhausted() throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        underTest.process(new BasicHttpRequest("GET", "/api/items"), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        response.setHeader("Retry-After", "0");
+        underTest.process(response, context);
+
+        assertThat(underTest.retryRequest(response, 1, context)).isTrue();
+        assertThat(underTest.retryRequest(response, AlmRateLimiter.MAX_RETRIES, context)).isTrue();
+        assertThat(underTest.retryRequest(response, AlmRateLimiter.MAX_RETRIES + 1, context)).isFalse();
+        assertThat(underTest.getRetryInterval()).isZero();
+    }
+
+    @Test
+    void shouldNotRetryResponseThatWasNotRateLimited() throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        underTest.process(new BasicHttpRequest("GET", "/api/items"), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 403, "Forbidden");
+        response.setHeader("X-RateLimit-Remaining", "100");
+        underTest.process(response, context);
+
+        assertThat(underTest.retryRequest(response, 1, context)).isFalse();
+    }
+
+    @Test
+    void shouldClearRateLimitedStateWhenRequestRetried() throws IOException {
+        HttpClientContext context = HttpClientContext.create();
+        underTest.process(new BasicHttpRequest("GET", "/api/items"), context);
+        HttpResponse rateLimitedResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many Requests");
+        rateLimitedResponse.setHeader("Retry-After", "0");
+        underTest.process(rateLimitedResponse, context);
+
+        underTest.process(new BasicHttpRequest("GET", "/api/items"), context);
+
+        assertThat(underTest.retryRequest(new BasicHttpResponse(HttpVersion.HTTP_1_1, 500, "Error"), 2, context)).isFalse();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class ResilienceInterceptorTest {
+
+    private final AlmCircuitBreaker circuitBreaker = new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC());
+    private final ResilienceInterceptor underTest = new ResilienceInterceptor(circuitBreaker);
+
+    @Test
+    void shouldRetryIdempotentRequestWithTransientStatusUntilRetriesExhausted() throws IOException {
+        HttpClientContext context = createContext(new BasicHttpRequest("GET", "/api/items"));
+        underTest.process(context.getRequest(), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+        underTest.process(response, context);
+
+        assertThat(underTest.retryRequest(response, 1, context)).isTrue();
+        assertThat(underTest.retryRequest(response, AlmRetryPolicy.MAX_RETRIES + 1, context)).isFalse();
+        assertThat(underTest.getRetryInterval()).isZero();
+    }
+
+    @Test
+    void shouldOnlyRetryPostIfMarkedIdempotent() throws IOException {
+        HttpClientContext context = createContext(new BasicHttpRequest("POST", "/api/statuses"));
+        underTest.process(context.getRequest(), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 502, "Bad Gateway");
+        underTest.process(response, context);
+
+        assertThat(underTest.retryRequest(response, 1, context)).isFalse();
+        assertThat(underTest.retryRequest(new ConnectException(), 1, context)).isFalse();
+
+        HttpClientContext idempotentContext = AlmRetryPolicy.createIdempotentContext();
+        idempotentContext.setAttribute(HttpClientContext.HTTP_TARGET_HOST, new HttpHost("alm.test"));
+        idempotentContext.setAttribute(HttpClientContext.HTTP_REQUEST, context.getRequest());
+        underTest.process(idempotentContext.getRequest(), idempotentContext);
+        underTest.process(response, idempotentContext);
+
+        assertThat(underTest.retryRequest(response, 1, idempotentContext)).isTrue();
+    }
+
+    @Test
+    void shouldNotRetryResponseWithoutTransientStatus() throws IOException {
+        HttpClientContext context = createContext(new BasicHttpRequest("GET", "/api/items"));
+        underTest.process(context.getRequest(), context);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 500, "Internal Server Error");
+        underTest.process(response, context);
+
+        assertThat(underTest.retryRequest(response, 1, context)).isFalse();
+    }
+
+    @Test
+    void shouldFailRequestsOnceCircuitForHostIsOpen() throws IOException {
+        HttpClientContext context = createContext(new BasicHttpRequest("GET", "/api/items"));
+        for (int i = 0; i < AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            underTest.process(context.getRequest(), context);
+            underTest.retryRequest(new ConnectException(), AlmRetryPolicy.MAX_RETRIES + 1, context);
+        }
+
+        assertThatThrownBy(() -> underTest.process(context.getRequest(), context)).isInstanceOf(AlmUnavailableException.class);
+        assertThat(underTest.retryRequest(new AlmUnavailableException("open"), 1, context)).isFalse();
+    }
+
+    private static HttpClientContext createContext(BasicHttpRequest request) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, new HttpHost("alm.test"));
+        context.setAttribute(HttpClientContext.HTTP_REQUEST, request);
+        return context;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class AzureDevopsCommitChangesCacheTest {
+
+    @Test
+    void shouldOnlyReturnChangesForSameCommitAndCredential() {
+        AzureDevopsCommitChangesCache underTest = new AzureDevopsCommitChangesCache();
+        List<Change> changes = List.of(mock(Change.class), mock(Change.class));
+
+        underTest.put("http://url.test", "credential", "project", "repository", "commit", changes);
+
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "commit")).contains(changes);
+        assertThat(underTest.get("http://url.test", "other", "project", "repository", "commit")).isEmpty();
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "other")).isEmpty();
+        assertThat(underTest.get("http://other.test", "credential", "project", "repository", "commit")).isEmpty();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedChangesOnceLimitExceeded() {
+        AzureDevopsCommitChangesCache underTest = new AzureDevopsCommitChangesCache(4);
+
+        underTest.put("http://url.test", "credential", "project", "repository", "commit1", List.of(mock(Change.class), mock(Change.class)));
+        underTest.put("http://url.test", "credential", "project", "repository", "commit2", List.of(mock(Change.class)));
+        underTest.get("http://url.test", "credential", "project", "repository", "commit1");
+        underTest.put("http://url.test", "credential", "project", "repository", "commit3", List.of(mock(Change.class), mock(Change.class)));
+
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "commit1")).isPresent();
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "commit2")).isEmpty();
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "commit3")).isPresent();
+        assertThat(underTest.getChangeCount()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldNotStoreChangesLargerThanLimit() {
+        AzureDevopsCommitChangesCache underTest = new AzureDevopsCommitChangesCache(1);
+
+        List<Change> result = underTest.put("http://url.test", "credential", "project", "repository", "commit", List.of(mock(Change.class), mock(Change.class)));
+
+        assertThat(result).hasSize(2);
+        assertThat(underTest.get("http://url.test", "credential", "project", "repository", "commit")).isEmpty();
+        assertThat(underTest.getChangeCount()).isZero();
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRetryPolicy;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitPullRequestStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitStatusContext;
@@ -12,19 +16,23 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 class AzureDevopsRestClientTest {
@@ -34,13 +42,13 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, closeableHttpClient, new AlmApiMetrics(), new AzureDevopsCommitChangesCache());
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(500);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
         when(objectMapper.writeValueAsString(any())).thenReturn("json");
 
         GitPullRequestStatus gitPullRequestStatus = mock(GitPullRequestStatus.class);
@@ -50,7 +58,7 @@ class AzureDevopsRestClientTest {
                 .hasNoCause();
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
 
         RequestBuilder request = RequestBuilder.copy(requestArgumentCaptor.getValue());
 
@@ -61,42 +69,44 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkSubmitPullRequestStatusSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, closeableHttpClient, new AlmApiMetrics(), new AzureDevopsCommitChangesCache());
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(200);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
         when(objectMapper.writeValueAsString(any())).thenReturn("json");
 
         underTest.submitPullRequestStatus("project Id With Spaces", "repository Name With Spaces", 123, new GitPullRequestStatus(GitStatusState.SUCCEEDED, "description", new GitStatusContext("name", "genre"), "url"));
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        ArgumentCaptor<HttpContext> contextArgumentCaptor = ArgumentCaptor.forClass(HttpContext.class);
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), contextArgumentCaptor.capture());
 
         RequestBuilder request = RequestBuilder.copy(requestArgumentCaptor.getValue());
 
         assertThat(request.getMethod()).isEqualTo("post");
         assertThat(request.getUri()).isEqualTo(URI.create("http://url.test/api/project%20Id%20With%20Spaces/_apis/git/repositories/repository%20Name%20With%20Spaces/pullRequests/123/statuses?api-version=4.1-preview"));
         assertThat(request.getEntity().getContent()).hasContent("json");
+        assertThat(AlmRetryPolicy.isMarkedIdempotent(contextArgumentCaptor.getValue())).isTrue();
     }
 
     @Test
     void checkAddCommentToThreadSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, closeableHttpClient, new AlmApiMetrics(), new AzureDevopsCommitChangesCache());
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(200);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
         when(objectMapper.writeValueAsString(any())).thenReturn("json");
 
         underTest.addCommentToThread("projectId", "repository Name", 123, 321, new CreateCommentRequest("comment"));
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
 
         RequestBuilder request = RequestBuilder.copy(requestArgumentCaptor.getValue());
 
@@ -107,21 +117,24 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkRetrievePullRequestReturnsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, closeableHttpClient, new AlmApiMetrics(), new AzureDevopsCommitChangesCache());
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(200);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
         when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity("content", StandardCharsets.UTF_8));
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
         PullRequest pullRequest = mock(PullRequest.class);
-        when(objectMapper.readValue(any(String.class), eq(PullRequest.class))).thenReturn(pullRequest);
+        ObjectReader objectReader = mock(ObjectReader.class);
+        when(objectMapper.reader()).thenReturn(objectReader);
+        when(objectReader.forType(PullRequest.class)).thenReturn(objectReader);
+        when(objectReader.readValue(any(InputStream.class))).thenReturn(pullRequest);
 
         PullRequest result = underTest.retrievePullRequest("projectId", "repository Name", 123);
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
 
         RequestBuilder request = RequestBuilder.copy(requestArgumentCaptor.getValue());
 
@@ -130,4 +143,41 @@ class AzureDevopsRestClientTest {
         assertThat(request.getEntity()).isNull();
         assertThat(result).isSameAs(pullRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    void checkGetCommitChangesRetrievesEveryPageAndCachesResult() throws IOException {
+        ObjectMapper realObjectMapper = new ObjectMapper();
+        AzureDevopsCommitChangesCache commitChangesCache = new AzureDevopsCommitChangesCache();
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", realObjectMapper, closeableHttpClient, new AlmApiMetrics(), commitChangesCache);
+
+        CloseableHttpResponse firstPage = createResponse("{\"changeCounts\": {\"Add\": 1, \"Edit\": 2}, \"changes\": [" +
+                "{\"item\": {\"path\": \"/src\", \"isFolder\": true}, \"changeType\": \"edit\"}," +
+                "{\"item\": {\"path\": \"/src/File.java\"}, \"changeType\": \"edit\"}]}");
+        CloseableHttpResponse secondPage = createResponse("{\"changeCounts\": {\"Add\": 1, \"Edit\": 2}, \"changes\": [" +
+                "{\"item\": {\"path\": \"/src/Other.java\"}, \"changeType\": \"add\"}]}");
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(firstPage, secondPage);
+
+        List<Change> result = underTest.getCommitChanges("projectId", "repository Name", "commitId");
+
+        assertThat(result).extracting(change -> change.getChangeItem().getPath()).containsExactly("/src", "/src/File.java", "/src/Other.java");
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
+        assertThat(requestArgumentCaptor.getAllValues()).extracting(HttpUriRequest::getURI).containsExactly(
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/commits/commitId/changes?top=1000&skip=0&api-version=4.1"),
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/commits/commitId/changes?top=1000&skip=2&api-version=4.1"));
+
+        AzureDevopsRestClient otherClient = new AzureDevopsRestClient("http://test.url", "authToken", realObjectMapper, closeableHttpClient, new AlmApiMetrics(), commitChangesCache);
+        assertThat(otherClient.getCommitChanges("projectId", "repository Name", "commitId")).isEqualTo(result);
+        verifyNoMoreInteractions(closeableHttpClient);
+    }
+
+    private static CloseableHttpResponse createResponse(String body) {
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity(body, StandardCharsets.UTF_8));
+        return closeableHttpResponse;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Change;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.internal.Encryption;
+import org.sonar.api.config.internal.Settings;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DefaultAzureDevopsClientFactoryTest {
+
+    @Test
+    void shouldShareCommitChangesBetweenClientsFromDifferentFactoryInstances() throws IOException {
+        Settings settings = mock(Settings.class);
+        when(settings.getEncryption()).thenReturn(mock(Encryption.class));
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUrl()).thenReturn("http://test.url");
+        when(almSettingDto.getDecryptedPersonalAccessToken(any())).thenReturn("token");
+
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity("{\"changeCounts\": {\"Edit\": 1}, \"changes\": [" +
+                "{\"item\": {\"path\": \"/src/File.java\"}, \"changeType\": \"edit\"}]}", StandardCharsets.UTF_8));
+        CloseableHttpClient closeableHttpClient = mock(CloseableHttpClient.class);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
+        AlmHttpClientPool almHttpClientPool = mock(AlmHttpClientPool.class);
+        when(almHttpClientPool.getHttpClient(almSettingDto)).thenReturn(closeableHttpClient);
+
+        // the factories are created for each analysis task, whereas the cache lives as long as the Compute Engine
+        AzureDevopsCommitChangesCache commitChangesCache = new AzureDevopsCommitChangesCache();
+        AzureDevopsClient firstClient = new DefaultAzureDevopsClientFactory(settings, new AlmApiMetrics(), almHttpClientPool, commitChangesCache)
+                .createClient(mock(ProjectAlmSettingDto.class), almSettingDto);
+        AzureDevopsClient secondClient = new DefaultAzureDevopsClientFactory(settings, new AlmApiMetrics(), almHttpClientPool, commitChangesCache)
+                .createClient(mock(ProjectAlmSettingDto.class), almSettingDto);
+
+        List<Change> firstChanges = firstClient.getCommitChanges("projectId", "repository", "commitId");
+        List<Change> secondChanges = secondClient.getCommitChanges("projectId", "repository", "commitId");
+
+        assertThat(secondChanges).isSameAs(firstChanges).extracting(change -> change.getChangeItem().getPath()).containsExactly("/src/File.java");
+        verify(closeableHttpClient).execute(any(HttpUriRequest.class), any(HttpContext.class));
+        assertThat(commitChangesCache.getChangeCount()).isEqualTo(1);
+    }
+}
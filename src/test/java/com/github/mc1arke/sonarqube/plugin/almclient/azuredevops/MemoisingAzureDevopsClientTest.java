@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentThreadRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullRequest;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MemoisingAzureDevopsClientTest {
+
+    private final AzureDevopsClient delegate = mock(AzureDevopsClient.class);
+    private final MemoisingAzureDevopsClient underTest = new MemoisingAzureDevopsClient(delegate);
+
+    @Test
+    void shouldOnlyRetrievePullRequestOnceForSameArguments() throws IOException {
+        PullRequest pullRequest = mock(PullRequest.class);
+        PullRequest otherPullRequest = mock(PullRequest.class);
+        when(delegate.retrievePullRequest("project", "repository", 12)).thenReturn(pullRequest);
+        when(delegate.retrievePullRequest("project", "repository", 13)).thenReturn(otherPullRequest);
+
+        assertThat(underTest.retrievePullRequest("project", "repository", 12)).isSameAs(pullRequest);
+        assertThat(underTest.retrievePullRequest("project", "repository", 12)).isSameAs(pullRequest);
+        assertThat(underTest.retrievePullRequest("project", "repository", 13)).isSameAs(otherPullRequest);
+
+        verify(delegate).retrievePullRequest("project", "repository", 12);
+        verify(delegate).retrievePullRequest("project", "repository", 13);
+    }
+
+    @Test
+    void shouldRetryReadThatPreviouslyFailed() throws IOException {
+        List<CommentThread> threads = List.of(createThread(1, CommentThreadStatus.ACTIVE));
+        when(delegate.retrieveThreads("project", "repository", 12))
+                .thenThrow(new IOException("dummy"))
+                .thenReturn(threads);
+
+        assertThatThrownBy(() -> underTest.retrieveThreads("project", "repository", 12)).isInstanceOf(IOException.class);
+        assertThat(underTest.retrieveThreads("project", "repository", 12)).isSameAs(threads);
+        assertThat(underTest.retrieveThreads("project", "repository", 12)).isSameAs(threads);
+
+        verify(delegate, times(2)).retrieveThreads("project", "repository", 12);
+    }
+
+    @Test
+    void shouldAddCreatedThreadAndCloseResolvedThreadWithoutRetrievingThreadsAgain() throws IOException {
+        CommentThread existingThread = createThread(1, CommentThreadStatus.ACTIVE);
+        CommentThread createdThread = createThread(2, CommentThreadStatus.ACTIVE);
+        List<CommentThread> threads = List.of(existingThread);
+        when(delegate.retrieveThreads("project", "repository", 12)).thenReturn(threads);
+        when(delegate.createThread(any(), any(), anyInt(), any())).thenReturn(createdThread);
+
+        assertThat(underTest.retrieveThreads("project", "repository", 12)).containsExactly(existingThread);
+        assertThat(underTest.createThread("project", "repository", 12, mock(CreateCommentThreadRequest.class))).isSameAs(createdThread);
+        underTest.resolvePullRequestThread("project", "repository", 12, 1);
+
+        assertThat(underTest.retrieveThreads("project", "repository", 12))
+                .extracting(CommentThread::getId, CommentThread::getStatus)
+                .containsExactly(tuple(1, CommentThreadStatus.CLOSED),
+                        tuple(2, CommentThreadStatus.ACTIVE));
+        assertThat(threads).containsExactly(existingThread);
+        verify(delegate).retrieveThreads("project", "repository", 12);
+        verify(delegate).resolvePullRequestThread("project", "repository", 12, 1);
+    }
+
+    @Test
+    void shouldRetrieveThreadsAgainAfterCommentAdded() throws IOException {
+        when(delegate.retrieveThreads("project", "repository", 12)).thenReturn(List.of(createThread(1, CommentThreadStatus.ACTIVE)));
+
+        underTest.retrieveThreads("project", "repository", 12);
+        underTest.addCommentToThread("project", "repository", 12, 1, mock(CreateCommentRequest.class));
+        underTest.retrieveThreads("project", "repository", 12);
+
+        verify(delegate, times(2)).retrieveThreads("project", "repository", 12);
+    }
+
+    @Test
+    void shouldRetrieveThreadsAgainAfterFailedWrite() throws IOException {
+        when(delegate.retrieveThreads("project", "repository", 12)).thenReturn(List.of(createThread(1, CommentThreadStatus.ACTIVE)));
+        doThrow(new IOException("dummy")).when(delegate).resolvePullRequestThread("project", "repository", 12, 1);
+
+        underTest.retrieveThreads("project", "repository", 12);
+        assertThatThrownBy(() -> underTest.resolvePullRequestThread("project", "repository", 12, 1)).isInstanceOf(IOException.class);
+        underTest.retrieveThreads("project", "repository", 12);
+
+        verify(delegate, times(2)).retrieveThreads("project", "repository", 12);
+    }
+
+    private static CommentThread createThread(int id, CommentThreadStatus status) {
+        return new CommentThread(status, List.of(), null, id, false);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2022 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlmRateLimitInterceptorTest {
+
+    private final AlmApiMetrics almApiMetrics = mock(AlmApiMetrics.class);
+    private final AlmRateLimitInterceptor underTest = new AlmRateLimitInterceptor(AlmRateLimiter.createUnsharedBucket("bitbucket"), almApiMetrics);
+
+    @Test
+    void shouldRetryRateLimitedRequestAndReturnSuccessfulResponse() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/items").tag(String.class, "listItems").build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 429))
+                .thenAnswer(i -> createResponse(i.getArgument(0), 200));
+
+        Response response = underTest.intercept(chain);
+
+        assertThat(response.code()).isEqualTo(200);
+        verify(chain, times(2)).proceed(request);
+        verify(almApiMetrics).recordRetry("http://url.test/rest/api/items", "listItems");
+    }
+
+    @Test
+    void shouldReturnRateLimitedResponseOnceRetriesExhausted() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/items").build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 429));
+
+        Response response = underTest.intercept(chain);
+
+        assertThat(response.code()).isEqualTo(429);
+        verify(chain, times(AlmRateLimiter.MAX_RETRIES + 1)).proceed(request);
+        verify(almApiMetrics, times(AlmRateLimiter.MAX_RETRIES)).recordRetry("http://url.test/rest/api/items", "GET");
+    }
+
+    private static Response createResponse(Request request, int code) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Too Many Requests")
+                .header("Retry-After", "0")
+                .body(ResponseBody.create("{}", null))
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmUnavailableException;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlmResilienceInterceptorTest {
+
+    private final AlmApiMetrics almApiMetrics = mock(AlmApiMetrics.class);
+    private final AlmResilienceInterceptor underTest = new AlmResilienceInterceptor(new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almApiMetrics);
+
+    @Test
+    void shouldRetryIdempotentRequestAfterTransientFailures() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/items").tag(String.class, "listItems").build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenThrow(new ConnectException("Connection refused"))
+                .thenAnswer(i -> createResponse(i.getArgument(0), 502))
+                .thenAnswer(i -> createResponse(i.getArgument(0), 200));
+
+        Response response = underTest.intercept(chain);
+
+        assertThat(response.code()).isEqualTo(200);
+        verify(chain, times(3)).proceed(request);
+        verify(almApiMetrics, times(2)).recordRetry("http://url.test/rest/api/items", "listItems");
+    }
+
+    @Test
+    void shouldNotRetryNonIdempotentRequest() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/comments")
+                .post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 503));
+
+        Response response = underTest.intercept(chain);
+
+        assertThat(response.code()).isEqualTo(503);
+        verify(chain).proceed(request);
+        verify(almApiMetrics, never()).recordRetry(anyString(), anyString());
+    }
+
+    @Test
+    void shouldFailWithoutCallingHostOnceCircuitIsOpen() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/comments")
+                .post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 500));
+
+        for (int i = 0; i < AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            assertThat(underTest.intercept(chain).code()).isEqualTo(500);
+        }
+
+        assertThatThrownBy(() -> underTest.intercept(chain)).isInstanceOf(AlmUnavailableException.class);
+        verify(chain, times(AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD)).proceed(request);
+    }
+
+    private static Response createResponse(Request request, int code) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Error")
+                .body(ResponseBody.create("{}", null))
+                .build();
+    }
+}
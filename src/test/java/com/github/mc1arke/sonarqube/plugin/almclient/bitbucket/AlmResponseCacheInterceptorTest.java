@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlmResponseCacheInterceptorTest {
+
+    private final AlmResponseCache responseCache = new AlmResponseCache(mock(Configuration.class));
+
+    @Test
+    void shouldStoreResponseWithValidatorAndReplayItWhenNotModified() throws IOException {
+        Request request = new Request.Builder().url("http://url.test/rest/api/items").build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 200, "{\"values\": []}", "\"etag\""))
+                .thenAnswer(i -> createResponse(i.getArgument(0), 304, "", "\"etag\""));
+        AlmResponseCacheInterceptor underTest = new AlmResponseCacheInterceptor(responseCache, "credential");
+
+        Response first = underTest.intercept(chain);
+        Response second = underTest.intercept(chain);
+
+        assertThat(first.body().string()).isEqualTo("{\"values\": []}");
+        assertThat(second.code()).isEqualTo(200);
+        assertThat(second.header("Link")).isEqualTo("<http://url.test/rest/api/items?page=2>");
+        assertThat(second.body().string()).isEqualTo("{\"values\": []}");
+        assertThat(second.body().contentType()).isEqualTo(MediaType.get("application/json"));
+
+        ArgumentCaptor<Request> requestArgumentCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(chain, times(2)).proceed(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).extracting(r -> r.header("If-None-Match")).containsExactly(null, "\"etag\"");
+    }
+
+    @Test
+    void shouldNotStoreResponseWithoutValidatorOrForOtherMethods() throws IOException {
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 200, "{}", null));
+        AlmResponseCacheInterceptor underTest = new AlmResponseCacheInterceptor(responseCache, "credential");
+
+        when(chain.request()).thenReturn(new Request.Builder().url("http://url.test/get").build());
+        underTest.intercept(chain);
+        when(chain.request()).thenReturn(new Request.Builder().url("http://url.test/post").post(RequestBody.create(new byte[0])).build());
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 200, "{}", "\"etag\""));
+        underTest.intercept(chain);
+
+        assertThat(responseCache.get("http://url.test/get", "credential")).isEmpty();
+        assertThat(responseCache.get("http://url.test/post", "credential")).isEmpty();
+    }
+
+    @Test
+    void shouldPassOnResponsesLargerThanCacheWouldStoreWithoutStoringThem() throws IOException {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmResponseCache.MAX_SIZE_MB)).thenReturn(Optional.of(1));
+        AlmResponseCache smallResponseCache = new AlmResponseCache(configuration);
+        byte[] content = new byte[(int) smallResponseCache.getMaxBodySize() + 10];
+        Arrays.fill(content, (byte) 'a');
+        Request request = new Request.Builder().url("http://url.test/rest/api/items").build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        ResponseBody unknownLengthBody = ResponseBody.create(new Buffer().write(content), MediaType.get("application/json"), -1);
+        ResponseBody knownLengthBody = mock(ResponseBody.class);
+        when(knownLengthBody.contentLength()).thenReturn((long) content.length);
+        when(chain.proceed(any())).thenAnswer(i -> createResponse(i.getArgument(0), 200, "", "\"etag\"").newBuilder().body(unknownLengthBody).build())
+                .thenAnswer(i -> createResponse(i.getArgument(0), 200, "", "\"etag\"").newBuilder().body(knownLengthBody).build());
+        AlmResponseCacheInterceptor underTest = new AlmResponseCacheInterceptor(smallResponseCache, "credential");
+
+        Response unknownLengthResponse = underTest.intercept(chain);
+        Response knownLengthResponse = underTest.intercept(chain);
+
+        assertThat(unknownLengthResponse.body()).isSameAs(unknownLengthBody);
+        assertThat(unknownLengthResponse.body().bytes()).isEqualTo(content);
+        assertThat(knownLengthResponse.body()).isSameAs(knownLengthBody);
+        verify(knownLengthBody, never()).source();
+        assertThat(smallResponseCache.get("http://url.test/rest/api/items", "credential")).isEmpty();
+    }
+
+    private static Response createResponse(Request request, int code, String body, String etag) {
+        Response.Builder builder = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Not Modified")
+                .body(ResponseBody.create(body, code == 200 ? MediaType.get("application/json") : null));
+        if (code == 200) {
+            builder.header("Link", "<http://url.test/rest/api/items?page=2>");
+            builder.header("Content-Type", "application/json");
+        }
+        if (null != etag) {
+            builder.header("ETag", etag);
+        }
+        return builder.build();
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -7,13 +11,17 @@ import okhttp3.ResponseBody;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,7 +45,7 @@ public class DefaultBitbucketClientFactoryUnitTest {
         when(builder.addInterceptor(any())).thenReturn(builder);
 
         ResponseBody responseBody = mock(ResponseBody.class);
-        when(responseBody.string()).thenReturn("{\"access_token\": \"dummy\"}");
+        when(responseBody.byteStream()).thenReturn(new ByteArrayInputStream("{\"access_token\": \"dummy\"}".getBytes(StandardCharsets.UTF_8)));
         when(builder.build().newCall(any()).execute().body()).thenReturn(responseBody);
 
         Settings settings = mock(Settings.class);
@@ -47,13 +55,17 @@ public class DefaultBitbucketClientFactoryUnitTest {
         when(settings.getEncryption()).thenReturn(encryption);
         HttpClientBuilderFactory httpClientBuilderFactory = mock(HttpClientBuilderFactory.class);
         when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, new AlmApiMetrics(), new AlmResponseCache(mock(Configuration.class)), new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC())).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertTrue(client instanceof BitbucketCloudClient);
 
         ArgumentCaptor<Interceptor> interceptorArgumentCaptor = ArgumentCaptor.forClass(Interceptor.class);
-        verify(builder, times(2)).addInterceptor(interceptorArgumentCaptor.capture());
+        verify(builder, times(7)).addInterceptor(interceptorArgumentCaptor.capture());
+        assertTrue(interceptorArgumentCaptor.getAllValues().get(4) instanceof AlmResponseCacheInterceptor);
+        assertTrue(interceptorArgumentCaptor.getAllValues().get(5) instanceof AlmResilienceInterceptor);
+        assertTrue(interceptorArgumentCaptor.getAllValues().get(6) instanceof AlmRateLimitInterceptor);
 
         Interceptor.Chain chain = mock(Interceptor.Chain.class);
         Request request = mock(Request.class);
@@ -65,7 +77,7 @@ public class DefaultBitbucketClientFactoryUnitTest {
         Request request2 = mock(Request.class);
         when(requestBuilder.build()).thenReturn(request2);
 
-        interceptorArgumentCaptor.getValue().intercept(chain);
+        interceptorArgumentCaptor.getAllValues().get(3).intercept(chain);
 
         verify(requestBuilder).addHeader("Authorization", "Bearer dummy");
         verify(requestBuilder).addHeader("Accept", "application/json");
@@ -89,7 +101,8 @@ public class DefaultBitbucketClientFactoryUnitTest {
         when(settings.getEncryption()).thenReturn(encryption);
         HttpClientBuilderFactory httpClientBuilderFactory = mock(HttpClientBuilderFactory.class);
         when(httpClientBuilderFactory.createClientBuilder()).then(i -> mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS));
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory, new AlmApiMetrics(), new AlmResponseCache(mock(Configuration.class)), new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC())).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertTrue(client instanceof BitbucketServerClient);
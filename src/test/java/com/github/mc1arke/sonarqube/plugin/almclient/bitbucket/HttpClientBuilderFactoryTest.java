@@ -18,19 +18,84 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class HttpClientBuilderFactoryTest {
 
+    private final Configuration configuration = mock(Configuration.class);
+    private final AlmApiMetrics almApiMetrics = new AlmApiMetrics();
+
     @Test
     void verifyNotSameInstanceReturnedByFactory() {
-        HttpClientBuilderFactory underTest = new HttpClientBuilderFactory();
+        HttpClientBuilderFactory underTest = new HttpClientBuilderFactory(configuration, almApiMetrics);
         OkHttpClient.Builder builder1 = underTest.createClientBuilder();
         OkHttpClient.Builder builder2 = underTest.createClientBuilder();
 
         assertThat(builder1).isNotSameAs(builder2);
     }
+
+    @Test
+    void shouldShareConnectionPoolAndDispatcherBetweenClients() {
+        HttpClientBuilderFactory underTest = new HttpClientBuilderFactory(configuration, almApiMetrics);
+        OkHttpClient client1 = underTest.createClientBuilder().addInterceptor(chain -> chain.proceed(chain.request())).build();
+        OkHttpClient client2 = underTest.createClientBuilder().build();
+
+        assertThat(client1.connectionPool()).isSameAs(client2.connectionPool()).isSameAs(underTest.getBaseClient().connectionPool());
+        assertThat(client1.dispatcher()).isSameAs(client2.dispatcher()).isSameAs(underTest.getBaseClient().dispatcher());
+    }
+
+    @Test
+    void shouldSizeIdleConnectionsAcrossAllHostsSeparatelyFromConnectionsPerHost() {
+        when(configuration.getInt(AlmHttpClientPool.MAX_CONNECTIONS_PER_ROUTE)).thenReturn(Optional.of(3));
+        when(configuration.getInt(HttpClientBuilderFactory.MAX_IDLE_CONNECTIONS)).thenReturn(Optional.of(20));
+        HttpClientBuilderFactory underTest = new HttpClientBuilderFactory(configuration, almApiMetrics);
+
+        assertThat(underTest.getBaseClient().connectionPool()).extracting("delegate.maxIdleConnections").isEqualTo(20);
+        assertThat(underTest.getBaseClient().dispatcher().getMaxRequestsPerHost()).isEqualTo(new Dispatcher().getMaxRequestsPerHost());
+    }
+
+    @Test
+    void shouldShutDownDispatcherOnStop() {
+        HttpClientBuilderFactory underTest = new HttpClientBuilderFactory(configuration, almApiMetrics);
+        underTest.start();
+
+        underTest.stop();
+
+        assertThat(underTest.getBaseClient().dispatcher().executorService().isShutdown()).isTrue();
+        assertThat(underTest.getBaseClient().connectionPool().connectionCount()).isZero();
+    }
+
+    @Test
+    void shouldRecordNewAndReusedConnections() {
+        Call call = mock(Call.class);
+        when(call.request()).thenReturn(new Request.Builder().url("https://bitbucket.example.com/rest/api").build());
+        Connection connection = mock(Connection.class);
+        HttpClientBuilderFactory.ConnectionReuseListener underTest = new HttpClientBuilderFactory.ConnectionReuseListener(almApiMetrics);
+
+        underTest.connectStart(call, new InetSocketAddress(443), Proxy.NO_PROXY);
+        underTest.connectionAcquired(call, connection);
+        underTest.connectionAcquired(call, connection);
+
+        assertThat(almApiMetrics.getConnectionSnapshot()).singleElement().satisfies(snapshot -> {
+            assertThat(snapshot.getHost()).isEqualTo("bitbucket.example.com");
+            assertThat(snapshot.getOpened()).isEqualTo(1);
+            assertThat(snapshot.getReused()).isEqualTo(1);
+        });
+    }
 }
@@ -19,18 +19,24 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.github;
 
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlGithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import org.assertj.core.api.Condition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
 import java.io.IOException;
+import java.time.Clock;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -45,6 +51,8 @@ class DefaultGithubClientFactoryTest {
     private final RestApplicationAuthenticationProvider restApplicationAuthenticationProvider = mock(RestApplicationAuthenticationProvider.class);
     private final Settings settings = mock(Settings.class);
     private final GraphqlProvider graphqlProvider = mock(GraphqlProvider.class);
+    private final AlmApiMetrics almApiMetrics = new AlmApiMetrics();
+    private final AlmOperationExecutor almOperationExecutor = mock(AlmOperationExecutor.class);
 
     @BeforeEach
     public void setUp() {
@@ -58,7 +66,8 @@ class DefaultGithubClientFactoryTest {
     @Test
     void testExceptionThrownIfUrlMissing() {
         when(almSettingDto.getUrl()).thenReturn(null);
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         assertThatThrownBy(() -> underTest.createClient(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
                 .hasMessage("No URL has been set for Github connections")
@@ -68,7 +77,8 @@ class DefaultGithubClientFactoryTest {
     @Test
     void testExceptionThrownIfPrivateKeyMissing() {
         when(almSettingDto.getDecryptedPrivateKey(any())).thenReturn(null);
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         assertThatThrownBy(() -> underTest.createClient(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
                 .hasMessage("No private key has been set for Github connections")
@@ -78,7 +88,8 @@ class DefaultGithubClientFactoryTest {
     @Test
     void testExceptionThrownIfAlmRepoMissing() {
         when(projectAlmSettingDto.getAlmRepo()).thenReturn(null);
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         assertThatThrownBy(() -> underTest.createClient(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
                 .hasMessage("No repository name has been set for Github connections")
@@ -88,7 +99,8 @@ class DefaultGithubClientFactoryTest {
     @Test
     void testExceptionThrownIfAppIdMissing() {
         when(almSettingDto.getAppId()).thenReturn(null);
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         assertThatThrownBy(() -> underTest.createClient(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
                 .hasMessage("No App ID has been set for Github connections")
@@ -97,7 +109,8 @@ class DefaultGithubClientFactoryTest {
 
     @Test
     void testExceptionThrownIfAuthenticationProviderThrowsException() throws IOException {
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         when(restApplicationAuthenticationProvider.getInstallationToken(any(), any(), any(), any())).thenThrow(new IOException("dummy"));
         assertThatThrownBy(() -> underTest.createClient(projectAlmSettingDto, almSettingDto))
                 .isInstanceOf(InvalidConfigurationException.class)
@@ -107,11 +120,13 @@ class DefaultGithubClientFactoryTest {
 
     @Test
     void testHappyPath() throws IOException {
-        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider, almApiMetrics, new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()),
+                new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()), almOperationExecutor);
         when(projectAlmSettingDto.getAlmRepo()).thenReturn("alm/slug");
 
         RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
         when(restApplicationAuthenticationProvider.getInstallationToken(any(), any(), any(), any())).thenReturn(repositoryAuthenticationToken);
-        assertThat(underTest.createClient(projectAlmSettingDto, almSettingDto)).usingRecursiveComparison().isEqualTo(new GraphqlGithubClient(graphqlProvider, "url", repositoryAuthenticationToken));
+        assertThat(underTest.createClient(projectAlmSettingDto, almSettingDto)).usingRecursiveComparison().isEqualTo(new GraphqlGithubClient(graphqlProvider, "url", repositoryAuthenticationToken, almApiMetrics,
+                almOperationExecutor, 0, AlmRateLimiter.createUnsharedBucket("url"), AlmCircuitBreaker.createUnsharedCircuit("url")));
     }
 }
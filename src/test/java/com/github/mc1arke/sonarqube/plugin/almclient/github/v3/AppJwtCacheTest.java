@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AppJwtCacheTest {
+
+    private final AppJwtCache underTest = new AppJwtCache();
+
+    @Test
+    void shouldReuseJwtUntilShortlyBeforeExpiry() throws IOException {
+        String privateKey = readPrivateKey();
+        Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+        String jwt = underTest.getJwt("apiUrl", "appId", privateKey, now);
+
+        assertThat(underTest.getJwt("apiUrl", "appId", privateKey, now.plusSeconds(79))).isSameAs(jwt);
+        assertThat(underTest.getJwt("apiUrl", "appId", privateKey, now.plusSeconds(80))).isNotEqualTo(jwt);
+    }
+
+    @Test
+    void shouldSignSeparateJwtForEachApp() throws IOException {
+        String privateKey = readPrivateKey();
+        Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+        String jwt = underTest.getJwt("apiUrl", "appId", privateKey, now);
+
+        assertThat(underTest.getJwt("apiUrl", "otherAppId", privateKey, now)).isNotEqualTo(jwt);
+        assertThat(underTest.getJwt("apiUrl", "appId", privateKey, now)).isSameAs(jwt);
+    }
+
+    @Test
+    void shouldParseKeyAgainIfKeyChanges() throws IOException {
+        Instant now = Instant.parse("2024-01-01T10:00:00Z");
+        underTest.getJwt("apiUrl", "appId", readPrivateKey(), now);
+
+        assertThatThrownBy(() -> underTest.getJwt("apiUrl", "appId", "not a key", now)).isInstanceOf(RuntimeException.class);
+    }
+
+    private String readPrivateKey() throws IOException {
+        try (InputStream inputStream = Optional.ofNullable(getClass().getResourceAsStream("/rsa-private-key.pem")).orElseThrow()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -20,7 +20,11 @@ package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
 
 import org.junit.Test;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+
 import java.io.IOException;
+import java.net.URLConnection;
+import java.time.Duration;
 
 import static org.junit.Assert.assertEquals;
 
@@ -31,4 +35,19 @@ public class DefaultUrlConnectionProviderTest {
         DefaultUrlConnectionProvider testCase = new DefaultUrlConnectionProvider();
         assertEquals("http://localhost/", testCase.createUrlConnection("http://localhost/").getURL().toString());
     }
+
+    @Test
+    public void testTimeoutsSetFromDeadline() throws IOException {
+        DefaultUrlConnectionProvider testCase = new DefaultUrlConnectionProvider();
+
+        URLConnection withoutDeadline = testCase.createUrlConnection("http://localhost/");
+        assertEquals(AlmRequestDeadline.DEFAULT_REQUEST_TIMEOUT.toMillis(), withoutDeadline.getConnectTimeout());
+        assertEquals(AlmRequestDeadline.DEFAULT_REQUEST_TIMEOUT.toMillis(), withoutDeadline.getReadTimeout());
+
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ZERO)) {
+            URLConnection withDeadline = testCase.createUrlConnection("http://localhost/");
+            assertEquals(AlmRequestDeadline.MINIMUM_REQUEST_TIMEOUT.toMillis(), withDeadline.getConnectTimeout());
+            assertEquals(AlmRequestDeadline.MINIMUM_REQUEST_TIMEOUT.toMillis(), withDeadline.getReadTimeout());
+        }
+    }
 }
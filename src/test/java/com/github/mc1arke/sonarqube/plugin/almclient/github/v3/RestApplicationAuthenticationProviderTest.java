@@ -20,6 +20,8 @@ package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppInstallation;
@@ -27,11 +29,15 @@ import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.InstallationRepositories;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.Owner;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.Repository;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -48,6 +54,7 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -56,6 +63,13 @@ import static org.mockito.Mockito.when;
 
 class RestApplicationAuthenticationProviderTest {
 
+    private final List<AlmOperationExecutor> almOperationExecutors = new ArrayList<>();
+
+    @AfterEach
+    void stopExecutors() {
+        almOperationExecutors.forEach(AlmOperationExecutor::stop);
+    }
+
     @Test
     void shouldReturnTokenForPaginatedInstallationsAndTokens() throws IOException {
         ObjectMapper objectMapper = new ObjectMapper();
@@ -83,7 +97,7 @@ class RestApplicationAuthenticationProviderTest {
                 appPageContents.add(new AppInstallation("http://repository.url/item-" + itemNumber, "http://acccess-token.url/item-" + itemNumber));
 
                 HttpURLConnection appTokenConnection = mock(HttpURLConnection.class);
-                when(appTokenConnection.getInputStream()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(new AppToken("token-" + itemNumber))));
+                when(appTokenConnection.getInputStream()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(new AppToken("token-" + itemNumber, null))));
                 when(urlConnectionProvider.createUrlConnection("http://acccess-token.url/item-" + itemNumber)).thenReturn(appTokenConnection);
                 appTokenConnections.add(appTokenConnection);
 
@@ -113,9 +127,11 @@ class RestApplicationAuthenticationProviderTest {
             }
         }
 
+        mockNotFound(urlConnectionProvider, apiUrl + "/repos/" + projectPath + "/installation");
+
         RepositoryAuthenticationToken expected = new RepositoryAuthenticationToken("nodeId", "token-49", "url", "repo-49.3", "login");
 
-        RestApplicationAuthenticationProvider restApplicationAuthenticationProvider = new RestApplicationAuthenticationProvider(clock, linkHeaderReader, urlConnectionProvider);
+        RestApplicationAuthenticationProvider restApplicationAuthenticationProvider = new RestApplicationAuthenticationProvider(clock, linkHeaderReader, urlConnectionProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(1));
 
         RepositoryAuthenticationToken repositoryAuthenticationToken = restApplicationAuthenticationProvider.getInstallationToken("https://api.url/api/", appId, apiPrivateKey, projectPath);
         assertThat(repositoryAuthenticationToken).usingRecursiveComparison().isEqualTo(expected);
@@ -189,6 +205,7 @@ class RestApplicationAuthenticationProviderTest {
 
         String apiUrl = "apiUrl";
         doReturn(installationsUrlConnection).when(urlProvider).createUrlConnection(apiUrl + "/app/installations");
+        mockNotFound(urlProvider, apiUrl + "/repos/" + projectPath + "/installation");
 
         String appId = "appID";
 
@@ -197,7 +214,7 @@ class RestApplicationAuthenticationProviderTest {
             apiPrivateKey = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
         }
 
-        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider);
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(AlmOperationExecutor.DEFAULT_THREADS));
         assertThatThrownBy(() -> testCase.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath)).hasMessage(
                 "No token could be found with access to the requested repository using the given application ID and key")
                 .isExactlyInstanceOf(InvalidConfigurationException.class);
@@ -223,4 +240,216 @@ class RestApplicationAuthenticationProviderTest {
                                    "Bearer " + expectedAuthenticationToken));
 
     }
+
+    @Test
+    void shouldReuseCachedTokenUntilShortlyBeforeExpiryThenMintFromIndexedInstallation() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T10:00:00Z"));
+        HttpURLConnection accessTokensUrlConnection = mockSingleInstallation(urlProvider);
+        when(accessTokensUrlConnection.getInputStream()).thenAnswer(i -> createTokenStream("token", "2024-01-01T11:00:00Z"));
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(AlmOperationExecutor.DEFAULT_THREADS));
+
+        RepositoryAuthenticationToken first = underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T10:54:59Z"));
+        RepositoryAuthenticationToken second = underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(second).isSameAs(first);
+        verify(urlProvider).createUrlConnection("apiUrl/app/installations");
+        verify(urlProvider).createUrlConnection("tokens_url");
+        verify(urlProvider).createUrlConnection("repositories_url");
+
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T10:55:00Z"));
+        RepositoryAuthenticationToken third = underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(third).usingRecursiveComparison().isEqualTo(first);
+        verify(urlProvider).createUrlConnection("apiUrl/app/installations");
+        verify(urlProvider, times(2)).createUrlConnection("tokens_url");
+        verify(urlProvider).createUrlConnection("repositories_url");
+    }
+
+    @Test
+    void shouldNotCacheTokenWithoutExpiry() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+        HttpURLConnection accessTokensUrlConnection = mockSingleInstallation(urlProvider);
+        when(accessTokensUrlConnection.getInputStream()).thenAnswer(i -> createTokenStream("token", "not a date"));
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(AlmOperationExecutor.DEFAULT_THREADS));
+        underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+        underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+
+        verify(urlProvider).createUrlConnection("apiUrl/app/installations");
+        verify(urlProvider, times(2)).createUrlConnection("tokens_url");
+        verify(urlProvider).createUrlConnection("repositories_url");
+    }
+
+    @Test
+    void shouldSearchAllInstallationsIfIndexedInstallationCannotMintToken() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T10:00:00Z"));
+        HttpURLConnection accessTokensUrlConnection = mockSingleInstallation(urlProvider);
+        when(accessTokensUrlConnection.getInputStream())
+                .thenAnswer(i -> createTokenStream("token", "2024-01-01T11:00:00Z"))
+                .thenThrow(new IOException("Installation removed"))
+                .thenAnswer(i -> createTokenStream("token2", "2024-01-01T12:00:00Z"));
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(AlmOperationExecutor.DEFAULT_THREADS));
+        underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T10:58:00Z"));
+        RepositoryAuthenticationToken result = underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(result.getAuthenticationToken()).isEqualTo("token2");
+        verify(urlProvider, times(2)).createUrlConnection("apiUrl/app/installations");
+        verify(urlProvider, times(3)).createUrlConnection("tokens_url");
+        verify(urlProvider, times(2)).createUrlConnection("repositories_url");
+    }
+
+    @Test
+    void shouldMintSingleTokenFromRepositoryInstallation() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+        URLConnection installationConnection = mockConnection(urlProvider, "https://api.url/api/v3/repos/owner/repo/installation",
+                "{\"id\": 1, \"repositories_url\": \"repositories_url\", \"access_tokens_url\": \"tokens_url\"}");
+        mockConnection(urlProvider, "tokens_url", "{\"token\": \"token\", \"expires_at\": \"2024-01-01T11:00:00Z\"}");
+        URLConnection repositoryConnection = mockConnection(urlProvider, "https://api.url/api/v3/repos/owner/repo",
+                "{\"node_id\": \"nodeId\", \"full_name\": \"owner/repo\", \"html_url\": \"url\", \"name\": \"repo\", \"owner\": {\"login\": \"owner\"}}");
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(AlmOperationExecutor.DEFAULT_THREADS));
+        RepositoryAuthenticationToken result = underTest.getInstallationToken("https://api.url/api", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("nodeId", "token", "url", "repo", "owner"));
+        verify(installationConnection).setRequestProperty("Accept", "application/vnd.github.machine-man-preview+json");
+        verify(repositoryConnection).setRequestProperty("Authorization", "Bearer token");
+        verify(urlProvider, times(0)).createUrlConnection("https://api.url/api/v3/app/installations");
+        verify(urlProvider, times(0)).createUrlConnection("repositories_url");
+
+        assertThat(underTest.getInstallationToken("https://api.url/api", "appID", readPrivateKey(), "owner/repo")).isSameAs(result);
+        verify(urlProvider).createUrlConnection("tokens_url");
+    }
+
+    @Test
+    void shouldSearchInstallationsConcurrentlyIgnoringFailuresIfRepositoryFound() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+        mockNotFound(urlProvider, "apiUrl/repos/owner/repo/installation");
+        mockConnection(urlProvider, "apiUrl/app/installations", "[{\"repositories_url\": \"repositories_url_1\", \"access_tokens_url\": \"tokens_url_1\"}, " +
+                "{\"repositories_url\": \"repositories_url_2\", \"access_tokens_url\": \"tokens_url_2\"}, " +
+                "{\"repositories_url\": \"repositories_url_3\", \"access_tokens_url\": \"tokens_url_3\"}]");
+        mockNotFound(urlProvider, "tokens_url_1");
+        mockConnection(urlProvider, "tokens_url_2", "{\"token\": \"token2\"}");
+        mockConnection(urlProvider, "repositories_url_2", "{\"repositories\": [{\"node_id\": \"nodeId\", \"full_name\": \"owner/repo\", \"html_url\": \"url\", \"name\": \"repo\", \"owner\": {\"login\": \"owner\"}}]}");
+        mockConnection(urlProvider, "tokens_url_3", "{\"token\": \"token3\"}");
+        mockConnection(urlProvider, "repositories_url_3", "{\"repositories\": []}");
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(3));
+        RepositoryAuthenticationToken result = underTest.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("nodeId", "token2", "url", "repo", "owner"));
+    }
+
+    @Test
+    void shouldReportFailureFromConcurrentSearchIfRepositoryNotFound() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+        mockNotFound(urlProvider, "apiUrl/repos/owner/repo/installation");
+        mockConnection(urlProvider, "apiUrl/app/installations", "[{\"repositories_url\": \"repositories_url_1\", \"access_tokens_url\": \"tokens_url_1\"}, " +
+                "{\"repositories_url\": \"repositories_url_2\", \"access_tokens_url\": \"tokens_url_2\"}]");
+        mockNotFound(urlProvider, "tokens_url_1");
+        mockConnection(urlProvider, "tokens_url_2", "{\"token\": \"token2\"}");
+        mockConnection(urlProvider, "repositories_url_2", "{\"repositories\": []}");
+
+        RestApplicationAuthenticationProvider underTest = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(), new InstallationTokenCache(), new AppJwtCache(), new AlmResponseCache(mock(Configuration.class)), createExecutor(2));
+        String privateKey = readPrivateKey();
+
+        assertThatThrownBy(() -> underTest.getInstallationToken("apiUrl", "appID", privateKey, "owner/repo"))
+                .isInstanceOf(FileNotFoundException.class)
+                .hasMessage("tokens_url_1");
+    }
+
+    @Test
+    void shouldRevalidateAppReadsAgainstPreviouslyCachedResponses() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+        HttpURLConnection firstInstallationConnection = mock(HttpURLConnection.class);
+        when(firstInstallationConnection.getInputStream()).thenReturn(new ByteArrayInputStream(
+                "{\"id\": 1, \"repositories_url\": \"repositories_url\", \"access_tokens_url\": \"tokens_url\"}".getBytes(StandardCharsets.UTF_8)));
+        when(firstInstallationConnection.getHeaderField("ETag")).thenReturn("\"installation\"");
+        HttpURLConnection secondInstallationConnection = mock(HttpURLConnection.class);
+        when(secondInstallationConnection.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(secondInstallationConnection.getResponseCode()).thenReturn(HttpURLConnection.HTTP_NOT_MODIFIED);
+        when(urlProvider.createUrlConnection("https://api.url/api/v3/repos/owner/repo/installation"))
+                .thenReturn(firstInstallationConnection, secondInstallationConnection);
+        when(urlProvider.createUrlConnection("tokens_url")).thenAnswer(i -> {
+            HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getInputStream()).thenReturn(createTokenStream("token", "2024-01-01T11:00:00Z"));
+            return connection;
+        });
+        URLConnection repositoryConnection = mockConnection(urlProvider, "https://api.url/api/v3/repos/owner/repo",
+                "{\"node_id\": \"nodeId\", \"full_name\": \"owner/repo\", \"html_url\": \"url\", \"name\": \"repo\", \"owner\": {\"login\": \"owner\"}}");
+
+        AlmResponseCache responseCache = new AlmResponseCache(mock(Configuration.class));
+        RepositoryAuthenticationToken first = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(),
+                new InstallationTokenCache(), new AppJwtCache(), responseCache, createExecutor(AlmOperationExecutor.DEFAULT_THREADS)).getInstallationToken("https://api.url/api", "appID", readPrivateKey(), "owner/repo");
+        RepositoryAuthenticationToken second = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new AlmApiMetrics(),
+                new InstallationTokenCache(), new AppJwtCache(), responseCache, createExecutor(AlmOperationExecutor.DEFAULT_THREADS)).getInstallationToken("https://api.url/api", "appID", readPrivateKey(), "owner/repo");
+
+        assertThat(second).usingRecursiveComparison().isEqualTo(first);
+        verify(firstInstallationConnection, times(0)).setRequestProperty(eq("If-None-Match"), any());
+        verify(secondInstallationConnection).setRequestProperty("If-None-Match", "\"installation\"");
+        verify(repositoryConnection, times(0)).setRequestProperty(eq("If-None-Match"), any());
+    }
+
+    private AlmOperationExecutor createExecutor(int threads) {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(threads));
+        AlmOperationExecutor almOperationExecutor = new AlmOperationExecutor(configuration);
+        almOperationExecutors.add(almOperationExecutor);
+        return almOperationExecutor;
+    }
+
+    private static HttpURLConnection mockSingleInstallation(UrlConnectionProvider urlProvider) throws IOException {
+        URLConnection installationsUrlConnection = mock(URLConnection.class);
+        when(installationsUrlConnection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(
+                "[{\"repositories_url\": \"repositories_url\", \"access_tokens_url\": \"tokens_url\"}]".getBytes(StandardCharsets.UTF_8)));
+        when(urlProvider.createUrlConnection("apiUrl/app/installations")).thenReturn(installationsUrlConnection);
+
+        HttpURLConnection repositoriesUrlConnection = mock(HttpURLConnection.class);
+        when(repositoriesUrlConnection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(
+                ("{\"repositories\": [{\"node_id\": \"other\", \"full_name\": \"owner/other\", \"owner\": {\"login\": \"owner\"}}, " +
+                        "{\"node_id\": \"nodeId\", \"full_name\": \"owner/repo\", \"html_url\": \"url\", \"name\": \"repo\", \"owner\": {\"login\": \"owner\"}}]}")
+                        .getBytes(StandardCharsets.UTF_8)));
+        when(urlProvider.createUrlConnection("repositories_url")).thenReturn(repositoriesUrlConnection);
+
+        HttpURLConnection accessTokensUrlConnection = mock(HttpURLConnection.class);
+        when(urlProvider.createUrlConnection("tokens_url")).thenReturn(accessTokensUrlConnection);
+
+        mockNotFound(urlProvider, "apiUrl/repos/owner/repo/installation");
+        return accessTokensUrlConnection;
+    }
+
+    private static void mockNotFound(UrlConnectionProvider urlProvider, String url) throws IOException {
+        HttpURLConnection notFoundConnection = mock(HttpURLConnection.class);
+        when(notFoundConnection.getInputStream()).thenThrow(new FileNotFoundException(url));
+        when(urlProvider.createUrlConnection(url)).thenReturn(notFoundConnection);
+    }
+
+    private static URLConnection mockConnection(UrlConnectionProvider urlProvider, String url, String body) throws IOException {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(connection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(urlProvider.createUrlConnection(url)).thenReturn(connection);
+        return connection;
+    }
+
+    private static InputStream createTokenStream(String token, String expiresAt) {
+        return new ByteArrayInputStream(("{\"token\": \"" + token + "\", \"expires_at\": \"" + expiresAt + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readPrivateKey() throws IOException {
+        try (InputStream inputStream = Optional.ofNullable(getClass().getResourceAsStream("/rsa-private-key.pem")).orElseThrow()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -18,25 +18,35 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmUnavailableException;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.Annotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.CheckRunDetails;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.CheckAnnotationLevel;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.CheckConclusionState;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.CommentClassifiers;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.RequestableCheckStatusState;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import io.aexp.nodes.graphql.Arguments;
 import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLResponseEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
+import io.aexp.nodes.graphql.exceptions.GraphQLException;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.Severity;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+import org.sonar.db.alm.setting.AlmSettingDto;
 
 import java.io.IOException;
 import java.time.Clock;
@@ -45,11 +55,15 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -61,6 +75,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -87,7 +102,7 @@ class GraphqlGithubClientTest {
         when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
 
         GraphqlGithubClient testCase =
-                new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken);
+                new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken, new AlmApiMetrics());
         CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
         assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, true))
                 .hasMessage(
@@ -138,56 +153,44 @@ class GraphqlGithubClientTest {
         GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
         when(graphQLTemplate.mutate(requestEntityArgumentCaptor.capture(), eq(CreateCheckRun.class))).thenReturn(graphQLResponseEntity);
 
-        GraphQLResponseEntity<Viewer> viewerResponseEntity = objectMapper.readValue("{" +
-                "  \"response\": {" +
-                "      \"login\": \"test-sonar[bot]\"" +
-                "  }" +
-                "}",
-            objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, Viewer.class));
-        ArgumentCaptor<GraphQLRequestEntity> getViewer = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.query(getViewer.capture(), eq(Viewer.class))).thenReturn(viewerResponseEntity);
-
         String bodyString = objectMapper.writeValueAsString("**Project ID:** project-key-test" + System.lineSeparator());
-        GraphQLResponseEntity<GetRepository> getPullRequestResponseEntity =
+        GraphQLResponseEntity<GetSummaryComments> getSummaryCommentsResponseEntity =
             objectMapper.readValue("{" +
                 "\"response\": " +
                 "  {" +
-                "    \"pullRequest\": {" +
-                "      \"id\": \"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"," +
-                "      \"comments\": {" +
-                "        \"nodes\": [" +
-                "          {" +
-                "            \"id\": \"MDEyOklzc3VlQ29tbWVudDE1MDE3\"," +
-                "            \"isMinimized\": false," +
-                "            \"body\": " + bodyString + "," +
-                "            \"author\": {" +
-                "              \"__typename\": \"Bot\"," +
-                "              \"login\": \"test-sonar\"" +
-                "            }" +
-                "          }"+
-                "        ],"+
-                "        \"pageInfo\": {" +
-                "          \"hasNextPage\": false" +
-                "        } " +
-                "      }"+
+                "    \"viewer\": {" +
+                "      \"login\": \"test-sonar[bot]\"" +
+                "    }," +
+                "    \"repository\": {" +
+                "      \"pullRequest\": {" +
+                "        \"id\": \"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"," +
+                "        \"comments\": {" +
+                "          \"nodes\": [" +
+                "            {" +
+                "              \"id\": \"MDEyOklzc3VlQ29tbWVudDE1MDE3\"," +
+                "              \"isMinimized\": false," +
+                "              \"body\": " + bodyString + "," +
+                "              \"author\": {" +
+                "                \"__typename\": \"Bot\"," +
+                "                \"login\": \"test-sonar\"" +
+                "              }" +
+                "            }"+
+                "          ],"+
+                "          \"pageInfo\": {" +
+                "            \"hasPreviousPage\": false" +
+                "          } " +
+                "        }"+
+                "      }" +
                 "    }" +
                 "  }" +
-                "}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, GetRepository.class));
-
-        ArgumentCaptor<GraphQLRequestEntity> getPullRequestRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.query(getPullRequestRequestEntityArgumentCaptor.capture(), eq(GetRepository.class))).thenReturn(getPullRequestResponseEntity);
-
-        GraphQLResponseEntity<MinimizeComment> minimizeCommentResponseEntity =
-            objectMapper.readValue("{\"response\":{}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, MinimizeComment.class));
+                "}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, GetSummaryComments.class));
 
-        ArgumentCaptor<GraphQLRequestEntity> minimizeCommentRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.mutate(minimizeCommentRequestEntityArgumentCaptor.capture(), eq(MinimizeComment.class))).thenReturn(minimizeCommentResponseEntity);
+        ArgumentCaptor<GraphQLRequestEntity> getSummaryCommentsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.query(getSummaryCommentsRequestEntityArgumentCaptor.capture(), eq(GetSummaryComments.class))).thenReturn(getSummaryCommentsResponseEntity);
 
-        GraphQLResponseEntity<AddComment> addCommentResponseEntity =
-            objectMapper.readValue("{\"response\":{}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, AddComment.class));
-
-        ArgumentCaptor<GraphQLRequestEntity> addCommentRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.mutate(addCommentRequestEntityArgumentCaptor.capture(), eq(AddComment.class))).thenReturn(addCommentResponseEntity);
+        ArgumentCaptor<GraphQLRequestEntity> aliasedMutationsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(aliasedMutationsRequestEntityArgumentCaptor.capture(), eq(AliasedMutations.class)))
+                .thenAnswer(i -> createAliasedMutationsResponse(objectMapper, i.getArgument(0)));
 
         when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
 
@@ -213,10 +216,10 @@ class GraphqlGithubClientTest {
 
 
         GraphqlGithubClient testCase =
-                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken);
+                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken, new AlmApiMetrics());
         testCase.createCheckRun(checkRunDetails, true);
 
-        assertEquals(5, requestBuilders.size());
+        assertEquals(3, requestBuilders.size());
 
         Map<String, String> headers = new HashMap<>();
         headers.put("Authorization", "Bearer dummyAuthToken");
@@ -259,7 +262,7 @@ class GraphqlGithubClientTest {
             position++;
         }
 
-        assertEquals(4 + position, inputObjectBuilders.size());
+        assertEquals(2 + position, inputObjectBuilders.size());
 
         assertThat(inputObjectBuilders.get(position).build())
                 .usingRecursiveComparison()
@@ -284,41 +287,296 @@ class GraphqlGithubClientTest {
                                 .put("output", inputObjects.get(position))
                                 .build());
 
-        for (int i = 0; i < 5; i++) {
+        for (int i = 0; i < 3; i++) {
             verify(requestBuilders.get(i)).url("http://api.target.domain/api/graphql");
             verify(requestBuilders.get(i)).headers(headers);
             verify(requestBuilders.get(i)).build();
         }
 
-        // Verify GetViewer
-        assertEquals(requestEntities.get(1), getViewer.getValue());
+        // Verify GetSummaryComments
+        assertEquals(requestEntities.get(1), getSummaryCommentsRequestEntityArgumentCaptor.getValue());
         assertEquals(
-            "query { viewer { login } } ",
-            getViewer.getValue().getRequest()
+            "query { viewer { login } repository : repository (owner:\"owner\",name:\"repository\") { pullRequest : pullRequest (number:999) { comments : comments (last:100) { nodes" +
+                " { author { type : __typename login } id minimized : isMinimized body } pageInfo { hasPreviousPage startCursor } } id } } } ",
+            getSummaryCommentsRequestEntityArgumentCaptor.getValue().getRequest()
         );
 
-        // Verify GetPullRequest
-        assertEquals(requestEntities.get(2), getPullRequestRequestEntityArgumentCaptor.getValue());
+        // Validate Minimize Comment and Add Comment are sent together
+        assertEquals(requestEntities.subList(2, 3), aliasedMutationsRequestEntityArgumentCaptor.getAllValues());
         assertEquals(
-            "query { repository (owner:\"owner\",name:\"repository\") { url pullRequest : pullRequest (number:999) { comments : comments (first:100) { nodes" +
-                " { author { type : __typename login } id minimized : isMinimized body } pageInfo { hasNextPage endCursor } } id } } } ",
-            getPullRequestRequestEntityArgumentCaptor.getValue().getRequest()
+            "mutation ($minimizeComment0: MinimizeCommentInput!, $addComment: AddCommentInput!) { " +
+                "minimizeComment0 : minimizeComment (input: $minimizeComment0) { clientMutationId } " +
+                "addComment : addComment (input: $addComment) { clientMutationId } } ",
+            requestEntities.get(2).getRequest()
         );
+        assertEquals(Map.of("minimizeComment0", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "MDEyOklzc3VlQ29tbWVudDE1MDE3"),
+                "addComment", Map.of("body", "Summary message", "subjectId", "MDExOlB1bGxSZXF1ZXN0MzUzNDc=")),
+            requestEntities.get(2).getVariables());
 
-        // Validate Minimize Comment
-        assertEquals(requestEntities.get(3), minimizeCommentRequestEntityArgumentCaptor.getValue());
-        assertEquals(
-            "mutation { minimizeComment (input:{classifier:OUTDATED,subjectId:\"MDEyOklzc3VlQ29tbWVudDE1MDE3\"}) { clientMutationId } } ",
-            minimizeCommentRequestEntityArgumentCaptor.getValue().getRequest()
-        );
+    }
 
-        // Validate AddComment
-        assertEquals(requestEntities.get(4), addCommentRequestEntityArgumentCaptor.getValue());
-        assertEquals(
-          "mutation { addComment (input:{body:\"Summary message\",subjectId:\"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"}) { clientMutationId } } ",
-            addCommentRequestEntityArgumentCaptor.getValue().getRequest()
-        );
+    @Test
+    void shouldMinimiseOutdatedSummaryCommentsInAliasedMutationChunks() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(repositoryAuthenticationToken.getOwnerName()).thenReturn("owner");
+        when(repositoryAuthenticationToken.getRepositoryName()).thenReturn("repository");
+
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+        String comments = IntStream.range(0, 30)
+                .mapToObj(i -> createSummaryComment("comment" + i, false))
+                .collect(Collectors.joining(","));
+        when(graphQLTemplate.query(any(), eq(GetSummaryComments.class))).thenReturn(createSummaryCommentsPage(objectMapper, comments, false, null));
+
+        ArgumentCaptor<GraphQLRequestEntity> aliasedMutationsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(aliasedMutationsRequestEntityArgumentCaptor.capture(), eq(AliasedMutations.class)))
+                .thenAnswer(i -> createAliasedMutationsResponse(objectMapper, i.getArgument(0)));
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withSummary("Summary message")
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withPullRequestId(999)
+                .withProjectKey("project-key-test")
+                .build();
+
+        GraphqlGithubClient testCase =
+                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken, new AlmApiMetrics());
+        testCase.createCheckRun(checkRunDetails, true);
+
+        List<GraphQLRequestEntity> requests = aliasedMutationsRequestEntityArgumentCaptor.getAllValues();
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0).getRequest())
+                .startsWith("mutation ($minimizeComment0: MinimizeCommentInput!, ")
+                .contains("minimizeComment24 : minimizeComment (input: $minimizeComment24) { clientMutationId }")
+                .doesNotContain("minimizeComment25", "addComment");
+        assertThat(requests.get(0).getVariables())
+                .hasSize(25)
+                .containsEntry("minimizeComment0", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment0"))
+                .containsEntry("minimizeComment24", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment24"));
+        assertThat(requests.get(1).getRequest())
+                .startsWith("mutation ($minimizeComment25: MinimizeCommentInput!, ")
+                .endsWith("minimizeComment29 : minimizeComment (input: $minimizeComment29) { clientMutationId } "
+                        + "addComment : addComment (input: $addComment) { clientMutationId } } ");
+        assertThat(requests.get(1).getVariables())
+                .hasSize(6)
+                .containsEntry("minimizeComment25", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment25"))
+                .containsEntry("addComment", Map.of("body", "Summary message", "subjectId", "pullRequestId"));
+    }
+
+    @Test
+    void shouldStillPostSummaryCommentWhenMinimisingOutdatedCommentsFails() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(repositoryAuthenticationToken.getOwnerName()).thenReturn("owner");
+        when(repositoryAuthenticationToken.getRepositoryName()).thenReturn("repository");
+
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+        String comments = IntStream.range(0, 30)
+                .mapToObj(i -> createSummaryComment("comment" + i, false))
+                .collect(Collectors.joining(","));
+        when(graphQLTemplate.query(any(), eq(GetSummaryComments.class))).thenReturn(createSummaryCommentsPage(objectMapper, comments, false, null));
+
+        ArgumentCaptor<GraphQLRequestEntity> aliasedMutationsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(aliasedMutationsRequestEntityArgumentCaptor.capture(), eq(AliasedMutations.class)))
+                .thenAnswer(i -> createAliasedMutationsResponse(objectMapper, i.getArgument(0), "minimizeComment3", "minimizeComment27"));
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        String summary = "Summary with \"quotes\" and a \\ backslash\n**Project ID:** project-key-test\n";
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withSummary(summary)
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withPullRequestId(999)
+                .withProjectKey("project-key-test")
+                .build();
 
+        GraphqlGithubClient testCase =
+                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken, new AlmApiMetrics());
+        testCase.createCheckRun(checkRunDetails, true);
+
+        List<GraphQLRequestEntity> requests = aliasedMutationsRequestEntityArgumentCaptor.getAllValues();
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(1).getVariables())
+                .containsKeys("minimizeComment25", "minimizeComment27", "minimizeComment29")
+                .containsEntry("addComment", Map.of("body", summary, "subjectId", "pullRequestId"));
+    }
+
+    @Test
+    void shouldFailWhenPostingSummaryCommentFailsEvenWhereOutdatedCommentsWereMinimised() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(repositoryAuthenticationToken.getOwnerName()).thenReturn("owner");
+        when(repositoryAuthenticationToken.getRepositoryName()).thenReturn("repository");
+
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+        when(graphQLTemplate.query(any(), eq(GetSummaryComments.class)))
+                .thenReturn(createSummaryCommentsPage(objectMapper, createSummaryComment("comment0", false), false, null));
+        when(graphQLTemplate.mutate(any(), eq(AliasedMutations.class)))
+                .thenAnswer(i -> createAliasedMutationsResponse(objectMapper, i.getArgument(0), "addComment"));
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withSummary("Summary message")
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withPullRequestId(999)
+                .withProjectKey("project-key-test")
+                .build();
+
+        GraphqlGithubClient testCase =
+                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken, new AlmApiMetrics());
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, true))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Could not post summary comment:" + System.lineSeparator() +
+                        "- Error{message='Could not resolve to a node with the global id of addComment', locations=[]}");
+        verify(graphQLTemplate).mutate(any(), eq(AliasedMutations.class));
+    }
+
+    @Test
+    void shouldStopPagingOnePageBeyondNewestMinimisedSummary() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(repositoryAuthenticationToken.getOwnerName()).thenReturn("owner");
+        when(repositoryAuthenticationToken.getRepositoryName()).thenReturn("repository");
+
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+
+        String otherComment = "{\"id\": \"other\", \"isMinimized\": false, \"body\": \"comment\", \"author\": {\"__typename\": \"User\", \"login\": \"user\"}}";
+        ArgumentCaptor<GraphQLRequestEntity> getSummaryCommentsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.query(getSummaryCommentsRequestEntityArgumentCaptor.capture(), eq(GetSummaryComments.class))).thenReturn(
+                createSummaryCommentsPage(objectMapper, createSummaryComment("comment3", false) + "," + otherComment, true, "cursor1"),
+                createSummaryCommentsPage(objectMapper, String.join(",", createSummaryComment("comment1", true),
+                        createSummaryComment("comment2", false)), true, "cursor0"),
+                createSummaryCommentsPage(objectMapper, createSummaryComment("comment0", false), true, "cursor-1"),
+                createSummaryCommentsPage(objectMapper, createSummaryComment("commentNeverRequested", false), false, "cursor-2"));
+
+        ArgumentCaptor<GraphQLRequestEntity> aliasedMutationsRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(aliasedMutationsRequestEntityArgumentCaptor.capture(), eq(AliasedMutations.class)))
+                .thenAnswer(i -> createAliasedMutationsResponse(objectMapper, i.getArgument(0)));
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withSummary("Summary message")
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withPullRequestId(999)
+                .withProjectKey("project-key-test")
+                .build();
+
+        GraphqlGithubClient testCase =
+                new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken, new AlmApiMetrics());
+        testCase.createCheckRun(checkRunDetails, true);
+
+        assertThat(getSummaryCommentsRequestEntityArgumentCaptor.getAllValues()).hasSize(3);
+        assertThat(getSummaryCommentsRequestEntityArgumentCaptor.getAllValues().get(0).getRequest()).contains("comments : comments (last:100)");
+        assertThat(getSummaryCommentsRequestEntityArgumentCaptor.getAllValues().get(1).getRequest()).contains("comments : comments (last:100,before:\"cursor1\")");
+        assertThat(getSummaryCommentsRequestEntityArgumentCaptor.getAllValues().get(2).getRequest()).contains("comments : comments (last:100,before:\"cursor0\")");
+        assertThat(aliasedMutationsRequestEntityArgumentCaptor.getAllValues()).hasSize(1);
+        assertThat(aliasedMutationsRequestEntityArgumentCaptor.getAllValues().get(0).getVariables()).isEqualTo(Map.of(
+                "minimizeComment0", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment0"),
+                "minimizeComment1", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment2"),
+                "minimizeComment2", Map.of("classifier", CommentClassifiers.OUTDATED, "subjectId", "comment3"),
+                "addComment", Map.of("body", "Summary message", "subjectId", "pullRequestId")));
+    }
+
+    @Test
+    void shouldRecordRateLimitedRequestAndNotRetryBeyondMaximumWait() {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        GraphQLException forbidden = new GraphQLException("Resource not accessible by integration");
+        forbidden.setStatus("403");
+        GraphQLException rateLimited = new GraphQLException("API rate limit exceeded");
+        rateLimited.setStatus("403");
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenThrow(forbidden, rateLimited);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmRateLimiter.MAX_WAIT_SECONDS)).thenReturn(Optional.of(0));
+        AlmRateLimiter almRateLimiter = new AlmRateLimiter(configuration, clock);
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn("uuid");
+        when(almSettingDto.getKey()).thenReturn("github");
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken,
+                new AlmApiMetrics(), null, 230, almRateLimiter.getBucket(almSettingDto), AlmCircuitBreaker.createUnsharedCircuit("https://api.url"));
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
+
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false)).isSameAs(forbidden);
+        assertThat(almRateLimiter.getSnapshot()).singleElement().extracting(AlmRateLimiter.BucketSnapshot::getRateLimitedResponses).isEqualTo(0L);
+
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false)).isSameAs(rateLimited);
+        assertThat(almRateLimiter.getSnapshot()).singleElement().extracting(AlmRateLimiter.BucketSnapshot::getRateLimitedResponses).isEqualTo(1L);
+        verify(graphQLTemplate, times(2)).mutate(any(), eq(CreateCheckRun.class));
+    }
+
+    @Test
+    void shouldNotRetryFailedMutationAndFailFastOnceCircuitOpens() {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        GraphQLException badGateway = new GraphQLException("Bad Gateway");
+        badGateway.setStatus("502");
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenThrow(badGateway);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken,
+                new AlmApiMetrics(), null, 230, AlmRateLimiter.createUnsharedBucket("https://api.url"), AlmCircuitBreaker.createUnsharedCircuit("https://api.url"));
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
+
+        for (int i = 0; i < AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false)).isSameAs(badGateway);
+        }
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Could not call the Github API")
+                .hasCauseInstanceOf(AlmUnavailableException.class);
+
+        verify(graphQLTemplate, times(AlmCircuitBreaker.DEFAULT_FAILURE_THRESHOLD)).mutate(any(), eq(CreateCheckRun.class));
     }
 
     @Test
@@ -389,7 +647,7 @@ class GraphqlGithubClientTest {
         when(checkRunDetails.getStartTime()).thenReturn(clock.instant().atZone(ZoneId.of("UTC")));
         when(checkRunDetails.getEndTime()).thenReturn(clock.instant().atZone(ZoneId.of("UTC")));
 
-        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url/path", repositoryAuthenticationToken);
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url/path", repositoryAuthenticationToken, new AlmApiMetrics());
         testCase.createCheckRun(checkRunDetails, false);
 
         ArgumentCaptor<Class<?>> classArgumentCaptor = ArgumentCaptor.forClass(Class.class);
@@ -397,11 +655,104 @@ class GraphqlGithubClientTest {
 
         assertThat(classArgumentCaptor.getAllValues()).containsExactly(CreateCheckRun.class, UpdateCheckRun.class, UpdateCheckRun.class);
 
-        ArgumentCaptor<List<InputObject>> annotationsArgumentCaptor = ArgumentCaptor.forClass(List.class);
-        verify(builders.get(100), times(3)).put(eq("annotations"), annotationsArgumentCaptor.capture());
-        assertThat(annotationsArgumentCaptor.getAllValues().get(0)).hasSize(50);
-        assertThat(annotationsArgumentCaptor.getAllValues().get(1)).hasSize(50);
-        assertThat(annotationsArgumentCaptor.getAllValues().get(2)).hasSize(20);
+        assertThat(getAnnotationBatchSizes(builders)).containsExactly(50, 50, 20);
+    }
+
+    @Test
+    void shouldSendAnnotationUpdatesConcurrentlyAndStopAtAnnotationLimit() throws IOException {
+        List<InputObject.Builder> builders = new CopyOnWriteArrayList<>();
+
+        GraphqlProvider graphqlProvider = mock(GraphqlProvider.class);
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> {
+            InputObject.Builder builder = spy(new InputObject.Builder<>());
+            builders.add(builder);
+            return builder;
+        });
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        GraphQLResponseEntity<CreateCheckRun> graphQLResponseEntity =
+                objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(graphQLResponseEntity);
+        GraphQLResponseEntity<UpdateCheckRun> graphQLResponseEntity2 =
+                objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, UpdateCheckRun.class));
+        Set<Thread> updateThreads = ConcurrentHashMap.newKeySet();
+        when(graphQLTemplate.mutate(any(), eq(UpdateCheckRun.class))).thenAnswer(i -> {
+            updateThreads.add(Thread.currentThread());
+            return graphQLResponseEntity2;
+        });
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummy");
+
+        Clock clock = Clock.fixed(Instant.now(), ZoneId.of("UTC"));
+        CheckRunDetails checkRunDetails = mock(CheckRunDetails.class);
+        when(checkRunDetails.getAnnotations()).thenReturn(IntStream.range(0, 500).mapToObj(i -> Annotation.builder()
+                .withLine(i).withMessage("message " + i)
+                .withSeverity(CheckAnnotationLevel.NOTICE)
+                .withScmPath("path " + i)
+                .build())
+                .collect(Collectors.toList()));
+        when(checkRunDetails.getStartTime()).thenReturn(clock.instant().atZone(ZoneId.of("UTC")));
+        when(checkRunDetails.getEndTime()).thenReturn(clock.instant().atZone(ZoneId.of("UTC")));
+
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(3));
+        AlmOperationExecutor almOperationExecutor = new AlmOperationExecutor(configuration);
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url/path", repositoryAuthenticationToken, new AlmApiMetrics(), almOperationExecutor, 230,
+                AlmRateLimiter.createUnsharedBucket("https://api.url/path"), AlmCircuitBreaker.createUnsharedCircuit("https://api.url/path"));
+        try {
+            testCase.createCheckRun(checkRunDetails, false);
+        } finally {
+            almOperationExecutor.stop();
+        }
+
+        verify(graphQLTemplate).mutate(any(GraphQLRequestEntity.class), eq(CreateCheckRun.class));
+        verify(graphQLTemplate, times(4)).mutate(any(GraphQLRequestEntity.class), eq(UpdateCheckRun.class));
+        assertThat(getAnnotationBatchSizes(builders)).containsExactlyInAnyOrder(50, 50, 50, 50, 30);
+        assertThat(updateThreads).doesNotContain(Thread.currentThread());
+    }
+
+    private static String createSummaryComment(String id, boolean minimized) {
+        return "{\"id\": \"" + id + "\", \"isMinimized\": " + minimized + ", " +
+                "\"body\": \"**Project ID:** project-key-test" + System.lineSeparator().replace("\r", "\\r").replace("\n", "\\n") + "\", " +
+                "\"author\": {\"__typename\": \"Bot\", \"login\": \"test-sonar\"}}";
+    }
+
+    private static GraphQLResponseEntity<GetSummaryComments> createSummaryCommentsPage(ObjectMapper objectMapper, String comments,
+                                                                                       boolean hasPreviousPage, String startCursor) throws JsonProcessingException {
+        return objectMapper.readValue("{\"response\": {\"viewer\": {\"login\": \"test-sonar[bot]\"}, \"repository\": {\"pullRequest\": {\"id\": \"pullRequestId\", " +
+                        "\"comments\": {\"nodes\": [" + comments + "], \"pageInfo\": {\"hasPreviousPage\": " + hasPreviousPage + ", " +
+                        "\"startCursor\": " + objectMapper.writeValueAsString(startCursor) + "}}}}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, GetSummaryComments.class));
+    }
+
+    private static GraphQLResponseEntity<AliasedMutations> createAliasedMutationsResponse(ObjectMapper objectMapper, GraphQLRequestEntity request,
+                                                                                         String... failedAliases) throws JsonProcessingException {
+        Map<String, Object> results = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        for (String alias : request.getVariables().keySet()) {
+            if (List.of(failedAliases).contains(alias)) {
+                results.put(alias, null);
+                errors.add("{\"message\": \"Could not resolve to a node with the global id of " + alias + "\", \"locations\": []}");
+            } else {
+                results.put(alias, Collections.singletonMap("clientMutationId", null));
+            }
+        }
+        return objectMapper.readValue("{\"response\": " + objectMapper.writeValueAsString(results) +
+                        (errors.isEmpty() ? "" : ", \"errors\": [" + String.join(",", errors) + "]") + "}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, AliasedMutations.class));
+    }
+
+    private static List<Integer> getAnnotationBatchSizes(List<InputObject.Builder> builders) {
+        return builders.stream()
+                .flatMap(builder -> mockingDetails(builder).getInvocations().stream())
+                .filter(invocation -> "put".equals(invocation.getMethod().getName()) && "annotations".equals(invocation.getArgument(0)))
+                .map(invocation -> ((List<?>) invocation.getArgument(1)).size())
+                .collect(Collectors.toList());
     }
 
 }
@@ -1,27 +1,51 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
-import org.apache.http.HttpEntity;
+import com.github.tomakehurst.wiremock.WireMockServer;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.StatusLine;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.util.List;
-
+import java.util.Optional;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,13 +57,13 @@ class GitlabRestClientTest {
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
+        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, closeableHttpClient, new AlmApiMetrics());
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(500);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
 
         MergeRequestNote mergeRequestNote = mock(MergeRequestNote.class);
         when(mergeRequestNote.getContent()).thenReturn("note");
@@ -50,7 +74,7 @@ class GitlabRestClientTest {
                 .hasNoCause();
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
 
         HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) requestArgumentCaptor.getValue();
 
@@ -65,17 +89,18 @@ class GitlabRestClientTest {
         StatusLine statusLine = mock(StatusLine.class);
         when(statusLine.getStatusCode()).thenReturn(201);
         when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
-        HttpEntity httpEntity = mock(HttpEntity.class);
-        when(closeableHttpResponse.getEntity()).thenReturn(httpEntity);
-        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity("{\"id\": \"discussionId\"}", StandardCharsets.UTF_8));
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(closeableHttpResponse);
 
         MergeRequestNote mergeRequestNote = new MergeRequestNote("Merge request note");
 
-        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
-        underTest.addMergeRequestDiscussion(123, 321, mergeRequestNote);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), closeableHttpClient, new AlmApiMetrics());
+        Discussion discussion = underTest.addMergeRequestDiscussion(123, 321, mergeRequestNote);
+
+        assertThat(discussion.getId()).isEqualTo("discussionId");
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
-        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture(), any(HttpContext.class));
 
         HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) requestArgumentCaptor.getValue();
 
@@ -84,4 +109,63 @@ class GitlabRestClientTest {
         assertThat(request.getEntity().getContent()).hasContent("body=Merge+request+note");
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldReadDiscussionsFromEveryPage() throws IOException {
+        CloseableHttpResponse firstPage = createResponse("[{\"id\": \"one\", \"notes\": []}, {\"id\": \"two\", \"notes\": []}]");
+        when(firstPage.getFirstHeader("Link")).thenReturn(new BasicHeader("Link", "<http://api.url/next>; rel=\"next\""));
+        when(linkHeaderReader.findNextLink("<http://api.url/next>; rel=\"next\"")).thenReturn(Optional.of("http://api.url/next"));
+        CloseableHttpResponse secondPage = createResponse("[{\"id\": \"three\", \"notes\": []}]");
+        when(closeableHttpClient.execute(any(HttpUriRequest.class), any(HttpContext.class))).thenReturn(firstPage, secondPage);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), closeableHttpClient, new AlmApiMetrics());
+        List<Discussion> discussions = underTest.getMergeRequestDiscussions(123, 321);
+
+        assertThat(discussions).extracting(Discussion::getId).containsExactly("one", "two", "three");
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        ArgumentCaptor<HttpContext> contextArgumentCaptor = ArgumentCaptor.forClass(HttpContext.class);
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture(), contextArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues())
+                .extracting(request -> request.getURI().toString(), request -> request.getFirstHeader("PRIVATE-TOKEN").getValue())
+                .containsExactly(tuple("http://api.url/projects/123/merge_requests/321/discussions", "token"), tuple("http://api.url/next", "token"));
+        assertThat(contextArgumentCaptor.getAllValues()).allMatch(AlmResponseCache::isMarkedStreaming);
+    }
+
+    @Test
+    void shouldRevalidateDiscussionPagesAndReadUnchangedPagesFromResponseCache() throws IOException {
+        WireMockServer wireMockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        wireMockServer.start();
+        AlmHttpClientPool httpClientPool = new AlmHttpClientPool(mock(Configuration.class), new AlmResponseCache(mock(Configuration.class)),
+                new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()), new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC()));
+        try {
+            String discussionsPath = "/api/projects/123/merge_requests/321/discussions";
+            wireMockServer.stubFor(get(urlEqualTo(discussionsPath)).withHeader("If-None-Match", absent())
+                    .willReturn(okJson("[{\"id\": \"one\", \"notes\": []}, {\"id\": \"two\", \"notes\": []}]").withHeader("ETag", "\"discussions\"")));
+            wireMockServer.stubFor(get(urlEqualTo(discussionsPath)).withHeader("If-None-Match", equalTo("\"discussions\""))
+                    .willReturn(aResponse().withStatus(304)));
+            AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+            when(almSettingDto.getUuid()).thenReturn("uuid");
+
+            GitlabRestClient underTest = new GitlabRestClient(wireMockServer.baseUrl() + "/api", "token", new DefaultLinkHeaderReader(), new ObjectMapper(),
+                    httpClientPool.getHttpClient(almSettingDto), new AlmApiMetrics());
+
+            assertThat(underTest.getMergeRequestDiscussions(123, 321)).extracting(Discussion::getId).containsExactly("one", "two");
+            assertThat(underTest.getMergeRequestDiscussions(123, 321)).extracting(Discussion::getId).containsExactly("one", "two");
+
+            wireMockServer.verify(1, getRequestedFor(urlEqualTo(discussionsPath)).withHeader("If-None-Match", absent()));
+            wireMockServer.verify(1, getRequestedFor(urlEqualTo(discussionsPath)).withHeader("If-None-Match", equalTo("\"discussions\"")));
+        } finally {
+            httpClientPool.stop();
+            wireMockServer.stop();
+        }
+    }
+
+    private static CloseableHttpResponse createResponse(String content) {
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity(content, StandardCharsets.UTF_8));
+        return closeableHttpResponse;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MemoisingGitlabClientTest {
+
+    private final GitlabClient delegate = mock(GitlabClient.class);
+    private final MemoisingGitlabClient underTest = new MemoisingGitlabClient(delegate);
+
+    @Test
+    void shouldOnlyRetrieveCurrentUserOnce() throws IOException {
+        User user = mock(User.class);
+        when(delegate.getCurrentUser()).thenReturn(user);
+
+        assertThat(underTest.getCurrentUser()).isSameAs(user);
+        assertThat(underTest.getCurrentUser()).isSameAs(user);
+
+        verify(delegate).getCurrentUser();
+    }
+
+    @Test
+    void shouldAddCreatedDiscussionWithoutRetrievingDiscussionsAgain() throws IOException {
+        Discussion existingDiscussion = new Discussion("1", List.of());
+        Discussion createdDiscussion = new Discussion("2", List.of());
+        when(delegate.getMergeRequestDiscussions(101, 99)).thenReturn(List.of(existingDiscussion));
+        when(delegate.addMergeRequestDiscussion(anyLong(), anyLong(), any())).thenReturn(createdDiscussion);
+
+        assertThat(underTest.getMergeRequestDiscussions(101, 99)).containsExactly(existingDiscussion);
+        assertThat(underTest.addMergeRequestDiscussion(101, 99, mock(MergeRequestNote.class))).isSameAs(createdDiscussion);
+        assertThat(underTest.getMergeRequestDiscussions(101, 99)).containsExactly(existingDiscussion, createdDiscussion);
+
+        verify(delegate).getMergeRequestDiscussions(101, 99);
+    }
+
+    @Test
+    void shouldRetrieveDiscussionsAgainAfterDiscussionUpdated() throws IOException {
+        when(delegate.getMergeRequestDiscussions(101, 99)).thenReturn(List.of(new Discussion("1", List.of())));
+
+        underTest.getMergeRequestDiscussions(101, 99);
+        underTest.resolveMergeRequestDiscussion(101, 99, "1");
+        underTest.getMergeRequestDiscussions(101, 99);
+        underTest.addMergeRequestDiscussionNote(101, 99, "1", "note");
+        underTest.getMergeRequestDiscussions(101, 99);
+        underTest.getMergeRequestDiscussions(102, 99);
+
+        verify(delegate, times(3)).getMergeRequestDiscussions(101, 99);
+        verify(delegate).getMergeRequestDiscussions(102, 99);
+    }
+}
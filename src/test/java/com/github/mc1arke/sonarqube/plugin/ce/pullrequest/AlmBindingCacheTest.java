@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.alm.setting.AlmSettingDao;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDao;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AlmBindingCacheTest {
+
+    private final DbClient dbClient = mock(DbClient.class);
+    private final DbSession dbSession = mock(DbSession.class);
+    private final Configuration configuration = mock(Configuration.class);
+    private final Clock clock = mock(Clock.class);
+    private final ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+    private final AlmSettingDao almSettingDao = mock(AlmSettingDao.class);
+    private final AlmBindingCache underTest = new AlmBindingCache(dbClient, configuration, clock);
+
+    @BeforeEach
+    void setUp() {
+        when(dbClient.openSession(false)).thenReturn(dbSession);
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+        when(dbClient.almSettingDao()).thenReturn(almSettingDao);
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000));
+    }
+
+    @Test
+    void shouldReuseProjectAlmSettingUntilExpiry() {
+        ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
+        when(projectAlmSettingDao.selectByProject(dbSession, "project")).thenReturn(Optional.of(projectAlmSettingDto));
+
+        assertThat(underTest.getProjectAlmSetting("project")).contains(projectAlmSettingDto);
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000 + AlmBindingCache.DEFAULT_EXPIRY_SECONDS - 1));
+        assertThat(underTest.getProjectAlmSetting("project")).contains(projectAlmSettingDto);
+        verify(projectAlmSettingDao).selectByProject(any(), any());
+
+        when(clock.instant()).thenReturn(Instant.ofEpochSecond(1000 + AlmBindingCache.DEFAULT_EXPIRY_SECONDS));
+        assertThat(underTest.getProjectAlmSetting("project")).contains(projectAlmSettingDto);
+        verify(projectAlmSettingDao, times(2)).selectByProject(any(), any());
+        verify(dbSession, times(2)).close();
+
+        assertThat(underTest.getHitCount()).isEqualTo(1);
+        assertThat(underTest.getMissCount()).isEqualTo(2);
+        assertThat(underTest.getHitRate()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void shouldCacheMissingAlmSetting() {
+        when(almSettingDao.selectByUuid(dbSession, "alm")).thenReturn(Optional.empty());
+
+        assertThat(underTest.getAlmSetting("alm")).isEmpty();
+        assertThat(underTest.getAlmSetting("alm")).isEmpty();
+
+        verify(almSettingDao).selectByUuid(any(), any());
+    }
+
+    @Test
+    void shouldCacheEachKeySeparately() {
+        AlmSettingDto almSettingDto1 = mock(AlmSettingDto.class);
+        AlmSettingDto almSettingDto2 = mock(AlmSettingDto.class);
+        when(almSettingDao.selectByUuid(dbSession, "alm1")).thenReturn(Optional.of(almSettingDto1));
+        when(almSettingDao.selectByUuid(dbSession, "alm2")).thenReturn(Optional.of(almSettingDto2));
+
+        assertThat(underTest.getAlmSetting("alm1")).contains(almSettingDto1);
+        assertThat(underTest.getAlmSetting("alm2")).contains(almSettingDto2);
+        assertThat(underTest.getAlmSetting("alm1")).contains(almSettingDto1);
+
+        verify(almSettingDao, times(2)).selectByUuid(any(), any());
+    }
+
+    @Test
+    void shouldNotCacheIfExpiryIsZero() {
+        when(configuration.getLong(AlmBindingCache.CACHE_EXPIRY_SECONDS)).thenReturn(Optional.of(0L));
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDao.selectByUuid(dbSession, "alm")).thenReturn(Optional.of(almSettingDto));
+
+        assertThat(underTest.getAlmSetting("alm")).contains(almSettingDto);
+        assertThat(underTest.getAlmSetting("alm")).contains(almSettingDto);
+
+        verify(almSettingDao, times(2)).selectByUuid(any(), any());
+        assertThat(underTest.getHitCount()).isZero();
+    }
+
+    @Test
+    void shouldReportZeroHitRateBeforeAnyLookups() {
+        assertThat(underTest.getHitRate()).isZero();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.ALM;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AlmOperationExecutorTest {
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final AlmOperationExecutor underTest = new AlmOperationExecutor(configuration);
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void shouldRunOrderedOperationsOnCallingThreadInOrder() {
+        List<String> processed = new ArrayList<>();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        underTest.executeAll(ALM.GITLAB, List.of("a", "b", "c"), item -> {
+            processed.add(item);
+            threads.add(Thread.currentThread());
+        }, true);
+
+        assertThat(processed).containsExactly("a", "b", "c");
+        assertThat(threads).containsOnly(Thread.currentThread());
+    }
+
+    @Test
+    void shouldRunOperationsSeriallyIfSingleThreadConfigured() {
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(1));
+        List<String> processed = new ArrayList<>();
+
+        underTest.executeAll(ALM.AZURE_DEVOPS, List.of("a", "b", "c"), processed::add, false);
+
+        assertThat(processed).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void shouldRunUnorderedOperationsConcurrently() {
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(3));
+        CountDownLatch allStarted = new CountDownLatch(3);
+        List<String> processed = new CopyOnWriteArrayList<>();
+
+        underTest.executeAll(ALM.GITLAB, List.of("a", "b", "c"), item -> {
+            allStarted.countDown();
+            try {
+                assertThat(allStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            processed.add(item);
+        }, false);
+
+        assertThat(processed).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void shouldAttemptAllOperationsAndReportFailuresInItemOrder() {
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(2));
+        List<String> processed = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> underTest.executeAll(ALM.GITLAB, List.of("a", "b", "c", "d"), item -> {
+            processed.add(item);
+            if ("b".equals(item) || "d".equals(item)) {
+                throw new IllegalArgumentException("Failure " + item);
+            }
+        }, false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("2 of 4 GITLAB operations failed")
+                .hasCauseInstanceOf(IllegalArgumentException.class)
+                .hasRootCauseMessage("Failure b")
+                .satisfies(ex -> assertThat(ex.getSuppressed()).extracting(Throwable::getMessage).containsExactly("Failure d"));
+
+        assertThat(processed).containsExactlyInAnyOrder("a", "b", "c", "d");
+    }
+
+    @Test
+    void shouldSkipOptionalOperationsOnceDeadlineHasPassed() {
+        List<String> processed = new ArrayList<>();
+
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofMinutes(5))) {
+            underTest.executeAllBeforeDeadline(ALM.GITLAB, "items", List.of("a", "b"), processed::add, true);
+        }
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ZERO)) {
+            underTest.executeAllBeforeDeadline(ALM.GITLAB, "items", List.of("c", "d"), processed::add, true);
+        }
+
+        assertThat(processed).containsExactly("a", "b");
+    }
+
+    @Test
+    void shouldApplyDeadlineToConcurrentOperations() {
+        when(configuration.getInt(AlmOperationExecutor.ALM_OPERATION_THREADS)).thenReturn(Optional.of(2));
+        List<Optional<AlmRequestDeadline>> deadlines = new CopyOnWriteArrayList<>();
+
+        try (AlmRequestDeadline deadline = AlmRequestDeadline.start(Duration.ofMinutes(5))) {
+            underTest.executeAllBeforeDeadline(ALM.GITLAB, "items", List.of("a", "b"), item -> deadlines.add(AlmRequestDeadline.current()), false);
+
+            assertThat(deadlines).containsOnly(Optional.of(deadline)).hasSize(2);
+        }
+    }
+
+    @Test
+    void shouldNotFailForEmptyItems() {
+        assertThatCode(() -> underTest.executeAll(ALM.GITLAB, List.of(), item -> {
+            throw new IllegalStateException("Should not be called");
+        }, false)).doesNotThrowAnyException();
+    }
+}
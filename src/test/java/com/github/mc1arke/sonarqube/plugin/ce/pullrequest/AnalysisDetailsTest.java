@@ -25,6 +25,7 @@ import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.ce.posttask.ScannerContext;
 import org.sonar.api.issue.Issue;
+import org.sonar.api.rules.RuleType;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
 
@@ -231,4 +232,38 @@ class AnalysisDetailsTest {
 
         assertThat(underTest.getCommitSha()).isEqualTo("commit-id");
     }
+
+    @Test
+    void shouldRecalculateIssueCountsWhenIssuesReplaced() {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        doReturn(Issue.STATUS_OPEN).when(lightIssue).status();
+        doReturn(RuleType.BUG).when(lightIssue).type();
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        doReturn(lightIssue).when(componentIssue).getIssue();
+
+        IssueCounts initialCounts = IssueCounts.of(List.of(componentIssue, componentIssue));
+        AnalysisDetails testCase = new AnalysisDetails("pullRequestKey", "commitHash", List.of(componentIssue, componentIssue),
+                initialCounts, mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+
+        assertThat(testCase.getIssueCounts()).isSameAs(initialCounts);
+
+        testCase.setIssues(List.of(componentIssue));
+
+        assertThat(testCase.getIssueCounts().getTotal()).isEqualTo(1);
+        assertThat(testCase.getIssueCounts().getCount(RuleType.BUG)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCalculateIssueCountsIfNotProvided() {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        doReturn(Issue.STATUS_OPEN).when(lightIssue).status();
+        doReturn(RuleType.CODE_SMELL).when(lightIssue).type();
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        doReturn(lightIssue).when(componentIssue).getIssue();
+
+        AnalysisDetails testCase = new AnalysisDetails("pullRequestKey", "commitHash", List.of(componentIssue),
+                mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+
+        assertThat(testCase.getIssueCounts().getCount(RuleType.CODE_SMELL)).isEqualTo(1);
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DecorationExecutorTest {
+
+    private static final DecorationExecutor.DecorationKey KEY = new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", null, "123");
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final DecorationExecutor underTest = new DecorationExecutor(configuration);
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void shouldRunDecorationOnCallingThreadIfAsynchronousDecorationDisabled() {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.empty());
+        underTest.start();
+
+        AtomicReference<Thread> decorationThread = new AtomicReference<>();
+        underTest.execute(KEY, () -> decorationThread.set(Thread.currentThread()));
+
+        assertThat(underTest.isEnabled()).isFalse();
+        assertThat(decorationThread.get()).isSameAs(Thread.currentThread());
+        assertThat(underTest.getQueueDepth()).isZero();
+        assertThat(underTest.getActiveCount()).isZero();
+        assertThat(underTest.getCompletedCount()).isZero();
+    }
+
+    @Test
+    void shouldRunDecorationOnPoolThreadIfAsynchronousDecorationEnabled() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(1));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(1));
+        underTest.start();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Thread> decorationThread = new AtomicReference<>();
+        underTest.execute(KEY, () -> {
+            decorationThread.set(Thread.currentThread());
+            latch.countDown();
+        });
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(underTest.isEnabled()).isTrue();
+        assertThat(decorationThread.get()).isNotSameAs(Thread.currentThread());
+        assertThat(decorationThread.get().getName()).isEqualTo("pull-request-decoration-1");
+    }
+
+    @Test
+    void shouldRunDecorationOnCallingThreadIfQueueIsFull() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(1));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(1));
+        underTest.start();
+
+        CountDownLatch blockingStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DecorationExecutor.DecorationKey otherKey = new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", null, "456");
+        underTest.execute(otherKey, () -> {
+            blockingStarted.countDown();
+            awaitQuietly(release);
+        });
+        assertThat(blockingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        underTest.execute(otherKey, () -> {});
+
+        AtomicReference<Thread> decorationThread = new AtomicReference<>();
+        underTest.execute(KEY, () -> decorationThread.set(Thread.currentThread()));
+
+        assertThat(decorationThread.get()).isSameAs(Thread.currentThread());
+        assertThat(underTest.getRejectedCount()).isEqualTo(1);
+        assertThat(underTest.getQueueDepth()).isEqualTo(1);
+        assertThat(underTest.getActiveCount()).isEqualTo(1);
+
+        release.countDown();
+    }
+
+    @Test
+    void shouldContinueProcessingDecorationsAfterFailure() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(1));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(5));
+        underTest.start();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        underTest.execute(KEY, () -> {
+            throw new IllegalStateException("Whoops");
+        });
+        underTest.execute(KEY, latch::countDown);
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void shouldOnlyRunLatestQueuedDecorationForPullRequest() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(1));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(10));
+        underTest.start();
+
+        CountDownLatch blockingStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DecorationExecutor.DecorationKey otherKey = new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", null, "456");
+        underTest.execute(otherKey, () -> {
+            blockingStarted.countDown();
+            awaitQuietly(release);
+        });
+        assertThat(blockingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<String> decorated = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(2);
+        underTest.execute(KEY, () -> decorated.add("first"));
+        underTest.execute(new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", null, "123"), () -> decorated.add("second"));
+        underTest.execute(otherKey, () -> {
+            decorated.add("other");
+            completed.countDown();
+        });
+        underTest.execute(KEY, () -> {
+            decorated.add("third");
+            completed.countDown();
+        });
+
+        release.countDown();
+
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(decorated).containsExactly("other", "third");
+        assertThat(underTest.getSupersededCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRunOverlappingDecorationsForPullRequestConcurrently() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(2));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(10));
+        underTest.start();
+
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondCompleted = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+        List<String> decorated = new CopyOnWriteArrayList<>();
+        underTest.execute(KEY, () -> {
+            maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            firstStarted.countDown();
+            awaitQuietly(release);
+            decorated.add("first");
+            running.decrementAndGet();
+        });
+        assertThat(firstStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        underTest.execute(KEY, () -> {
+            maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            decorated.add("second");
+            running.decrementAndGet();
+            secondCompleted.countDown();
+        });
+
+        assertThat(secondCompleted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        release.countDown();
+
+        assertThat(secondCompleted.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(decorated).containsExactly("first", "second");
+        assertThat(maximumRunning.get()).isEqualTo(1);
+        assertThat(underTest.getSupersededCount()).isZero();
+    }
+
+    @Test
+    void shouldOnlyRunLatestDecorationWaitingForRunningDecorationOfPullRequest() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(2));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(10));
+        underTest.start();
+
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch thirdCompleted = new CountDownLatch(1);
+        List<String> decorated = new CopyOnWriteArrayList<>();
+        underTest.execute(KEY, () -> {
+            firstStarted.countDown();
+            awaitQuietly(release);
+            decorated.add("first");
+        });
+        assertThat(firstStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        underTest.execute(KEY, () -> decorated.add("second"));
+        underTest.execute(KEY, () -> {
+            decorated.add("third");
+            thirdCompleted.countDown();
+        });
+
+        release.countDown();
+
+        assertThat(thirdCompleted.await(10, TimeUnit.SECONDS)).isTrue();
+        underTest.stop();
+        assertThat(decorated).containsExactly("first", "third");
+        assertThat(underTest.getSupersededCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDecoratePullRequestForEveryProjectBoundToRepository() throws InterruptedException {
+        when(configuration.getBoolean(DecorationExecutor.ASYNC_DECORATION_ENABLED)).thenReturn(Optional.of(true));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_THREADS)).thenReturn(Optional.of(1));
+        when(configuration.getInt(DecorationExecutor.ASYNC_DECORATION_QUEUE_SIZE)).thenReturn(Optional.of(10));
+        underTest.start();
+
+        CountDownLatch blockingStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        underTest.execute(new DecorationExecutor.DecorationKey("blockingProjectUuid", "almUuid", "repo", null, "456"), () -> {
+            blockingStarted.countDown();
+            awaitQuietly(release);
+        });
+        assertThat(blockingStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<String> decorated = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(2);
+        underTest.execute(new DecorationExecutor.DecorationKey("firstProjectUuid", "almUuid", "repo", null, "123"), () -> {
+            decorated.add("first project");
+            completed.countDown();
+        });
+        underTest.execute(new DecorationExecutor.DecorationKey("secondProjectUuid", "almUuid", "repo", null, "123"), () -> {
+            decorated.add("second project");
+            completed.countDown();
+        });
+
+        release.countDown();
+
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(decorated).containsExactly("first project", "second project");
+        assertThat(underTest.getSupersededCount()).isZero();
+    }
+
+    @Test
+    void shouldTreatKeysWithSameValuesAsEqual() {
+        assertThat(new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", "slug", "123"))
+                .isEqualTo(new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", "slug", "123"))
+                .hasSameHashCodeAs(new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", "slug", "123"))
+                .isNotEqualTo(new DecorationExecutor.DecorationKey("projectUuid", "almUuid", "repo", "otherSlug", "123"))
+                .isNotEqualTo(new DecorationExecutor.DecorationKey("otherProjectUuid", "almUuid", "repo", "slug", "123"))
+                .hasToString("pull request 123 in repo/slug for project projectUuid (ALM setting almUuid)");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.issue.Issue;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+import org.sonar.ce.task.projectanalysis.source.NewLinesRepository;
+import org.sonar.core.issue.DefaultIssue;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DecorationIssueRetentionPredicateTest {
+
+    private final AnalysisMetadataHolder analysisMetadataHolder = mock(AnalysisMetadataHolder.class);
+    private final NewLinesRepository newLinesRepository = mock(NewLinesRepository.class);
+    private final Configuration configuration = mock(Configuration.class);
+    private final Component component = mock(Component.class);
+    private final ReportAttributes reportAttributes = mock(ReportAttributes.class);
+    private final DefaultIssue issue = mock(DefaultIssue.class);
+
+    @BeforeEach
+    void setUp() {
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        when(component.getType()).thenReturn(Component.Type.FILE);
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of("path/to/file"));
+        when(issue.status()).thenReturn(Issue.STATUS_OPEN);
+    }
+
+    @Test
+    void shouldNotRetainIssuesForNonPullRequestAnalysis() {
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(false);
+
+        assertThat(createPredicate().test(component, issue)).isFalse();
+    }
+
+    @Test
+    void shouldNotRetainClosedOrResolvedIssues() {
+        DecorationIssueRetentionPredicate underTest = createPredicate();
+
+        when(issue.status()).thenReturn(Issue.STATUS_CLOSED);
+        assertThat(underTest.test(component, issue)).isFalse();
+
+        when(issue.status()).thenReturn(Issue.STATUS_RESOLVED);
+        assertThat(underTest.test(component, issue)).isFalse();
+    }
+
+    @Test
+    void shouldRetainOpenIssuesOnAnyComponentByDefault() {
+        when(component.getType()).thenReturn(Component.Type.PROJECT);
+
+        assertThat(createPredicate().test(component, issue)).isTrue();
+    }
+
+    @Test
+    void shouldOnlyRetainIssuesOnScmFilesIfConfigured() {
+        when(configuration.getBoolean(PostAnalysisIssueVisitor.RETAIN_SCM_FILE_ISSUES_ONLY)).thenReturn(Optional.of(true));
+        DecorationIssueRetentionPredicate underTest = createPredicate();
+
+        assertThat(underTest.test(component, issue)).isTrue();
+
+        when(reportAttributes.getScmPath()).thenReturn(Optional.empty());
+        assertThat(underTest.test(component, issue)).isFalse();
+
+        when(component.getType()).thenReturn(Component.Type.DIRECTORY);
+        assertThat(underTest.test(component, issue)).isFalse();
+    }
+
+    @Test
+    void shouldOnlyRetainIssuesOnChangedFilesIfConfigured() {
+        when(configuration.getBoolean(PostAnalysisIssueVisitor.RETAIN_CHANGED_FILE_ISSUES_ONLY)).thenReturn(Optional.of(true));
+        DecorationIssueRetentionPredicate underTest = createPredicate();
+
+        when(newLinesRepository.getNewLines(component)).thenReturn(Optional.of(Set.of(1, 2)));
+        assertThat(underTest.test(component, issue)).isTrue();
+
+        when(newLinesRepository.getNewLines(component)).thenReturn(Optional.of(Set.of()));
+        assertThat(underTest.test(component, issue)).isFalse();
+
+        when(newLinesRepository.getNewLines(component)).thenReturn(Optional.empty());
+        assertThat(underTest.test(component, issue)).isTrue();
+
+        when(component.getType()).thenReturn(Component.Type.PROJECT);
+        assertThat(underTest.test(component, issue)).isFalse();
+    }
+
+    private DecorationIssueRetentionPredicate createPredicate() {
+        return new DecorationIssueRetentionPredicate(analysisMetadataHolder, newLinesRepository, configuration);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.property.InternalPropertiesDao;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DecorationMetricsTest {
+
+    private final AlmApiMetrics almApiMetrics = new AlmApiMetrics();
+    private final DbClient dbClient = mock(DbClient.class);
+    private final DbSession dbSession = mock(DbSession.class);
+    private final InternalPropertiesDao internalPropertiesDao = mock(InternalPropertiesDao.class);
+    private final Clock clock = mock(Clock.class);
+    private final AlmRateLimiter almRateLimiter = new AlmRateLimiter(mock(Configuration.class), clock);
+    private final DecorationMetrics underTest = new DecorationMetrics(almApiMetrics, almRateLimiter, dbClient, clock);
+
+    DecorationMetricsTest() {
+        when(dbClient.openSession(false)).thenReturn(dbSession);
+        when(dbClient.internalPropertiesDao()).thenReturn(internalPropertiesDao);
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T00:00:00Z"));
+        when(clock.millis()).thenReturn(Instant.parse("2024-01-01T00:00:00Z").toEpochMilli());
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+    }
+
+    @Test
+    void shouldRecordDecorationAndPublishSnapshot() {
+        underTest.recordDecoration("https://alm.example.com/api", "123", () -> {
+            try (AlmApiMetrics.Call call = almApiMetrics.startCall("https://alm.example.com/api", "getPullRequest")) {
+                call.setPayloadBytes(10);
+                call.succeeded();
+            }
+        });
+
+        assertThat(almApiMetrics.getSnapshot())
+                .extracting(AlmApiMetrics.OperationSnapshot::getOperation, AlmApiMetrics.OperationSnapshot::getFailures)
+                .containsExactly(tuple(DecorationMetrics.DECORATE_OPERATION, 0L),
+                        tuple("getPullRequest", 0L));
+
+        ArgumentCaptor<String> snapshotCaptor = ArgumentCaptor.forClass(String.class);
+        verify(internalPropertiesDao).save(eq(dbSession), eq(DecorationMetrics.SNAPSHOT_PROPERTY_KEY), snapshotCaptor.capture());
+        verify(dbSession).commit();
+        assertThat(snapshotCaptor.getValue())
+                .startsWith("{\"publishedAt\":\"2024-01-01T00:00:00Z\",\"operations\":[")
+                .contains("\"host\":\"alm.example.com\"", "\"operation\":\"getPullRequest\"", "\"payloadBytes\":10");
+    }
+
+    @Test
+    void shouldPublishRateLimitQuotaReportedByAlm() {
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn("uuid");
+        when(almSettingDto.getKey()).thenReturn("github");
+        Map<String, String> headers = Map.of("X-RateLimit-Limit", "5000", "X-RateLimit-Remaining", "4321",
+                "X-RateLimit-Reset", String.valueOf(Instant.parse("2024-01-01T00:30:00Z").getEpochSecond()));
+        almRateLimiter.getBucket(almSettingDto).update(200, headers::get);
+
+        underTest.recordDecoration("https://alm.example.com", "123", () -> {});
+
+        ArgumentCaptor<String> snapshotCaptor = ArgumentCaptor.forClass(String.class);
+        verify(internalPropertiesDao).save(eq(dbSession), eq(DecorationMetrics.SNAPSHOT_PROPERTY_KEY), snapshotCaptor.capture());
+        assertThat(snapshotCaptor.getValue())
+                .contains("\"rateLimits\":[{\"almSetting\":\"github\",\"limit\":5000,\"remaining\":4321,\"resetAt\":\"2024-01-01T00:30:00Z\"");
+    }
+
+    @Test
+    void shouldRecordFailedDecorationAndRethrowFailure() {
+        IllegalStateException failure = new IllegalStateException("Whoops");
+
+        assertThatThrownBy(() -> underTest.recordDecoration("https://alm.example.com", "123", () -> {
+            throw failure;
+        })).isSameAs(failure);
+
+        assertThat(almApiMetrics.getSnapshot()).singleElement()
+                .extracting(AlmApiMetrics.OperationSnapshot::getFailures).isEqualTo(1L);
+    }
+
+    @Test
+    void shouldOnlyPublishOncePerInterval() {
+        underTest.recordDecoration("https://alm.example.com", "1", () -> {});
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T00:00:59Z"));
+        underTest.recordDecoration("https://alm.example.com", "2", () -> {});
+        when(clock.instant()).thenReturn(Instant.parse("2024-01-01T00:01:00Z"));
+        underTest.recordDecoration("https://alm.example.com", "3", () -> {});
+
+        verify(internalPropertiesDao, times(2)).save(eq(dbSession), eq(DecorationMetrics.SNAPSHOT_PROPERTY_KEY), any());
+    }
+
+    @Test
+    void shouldNotFailDecorationIfSnapshotCannotBePublished() {
+        doThrow(new IllegalStateException("Database unavailable")).when(internalPropertiesDao).save(any(), any(), any());
+
+        assertThatCode(() -> underTest.recordDecoration("https://alm.example.com", "123", () -> {}))
+                .doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DecorationWorkingSetTest {
+
+    @Test
+    void shouldMatchChangedFilesRegardlessOfLeadingSlash() {
+        DecorationWorkingSet underTest = DecorationWorkingSet.create(List.of("/src/Changed.java", "src/Other.java"), List.of(), List.of());
+
+        assertThat(underTest.isChangedFile("src/Changed.java")).isTrue();
+        assertThat(underTest.isChangedFile("/src/Changed.java")).isTrue();
+        assertThat(underTest.isChangedFile("/src/Other.java")).isTrue();
+        assertThat(underTest.isChangedFile("src/Unchanged.java")).isFalse();
+    }
+
+    @Test
+    void shouldRetainIssuesInChangedFilesInOriginalOrder() {
+        PostAnalysisIssueVisitor.ComponentIssue issue1 = createIssue("key1", "src/Changed.java");
+        PostAnalysisIssueVisitor.ComponentIssue issue2 = createIssue("key2", "src/Unchanged.java");
+        PostAnalysisIssueVisitor.ComponentIssue issue3 = createIssue("key3", null);
+        PostAnalysisIssueVisitor.ComponentIssue issue4 = createIssue("key4", "src/Other.java");
+        PostAnalysisIssueVisitor.ComponentIssue issue5 = createIssue("key5", "src/Changed.java");
+
+        DecorationWorkingSet underTest = DecorationWorkingSet.create(List.of("/src/Changed.java", "src/Other.java"),
+                List.of(issue1, issue2, issue3, issue4, issue5), List.of());
+
+        assertThat(underTest.getIssuesInChangedFiles()).containsExactly(issue1, issue4, issue5);
+    }
+
+    @Test
+    void shouldIndexOpenIssueKeys() {
+        PostAnalysisIssueVisitor.ComponentIssue issue1 = createIssue("key1", "src/Changed.java");
+        PostAnalysisIssueVisitor.ComponentIssue issue2 = createIssue("key2", "src/Unchanged.java");
+
+        DecorationWorkingSet underTest = DecorationWorkingSet.create(List.of(), List.of(issue1, issue2), List.of(issue2));
+
+        assertThat(underTest.isOpenIssue("key2")).isTrue();
+        assertThat(underTest.isOpenIssue("key1")).isFalse();
+        assertThat(underTest.getIssuesInChangedFiles()).isEmpty();
+    }
+
+    @Test
+    void shouldStripAllLeadingSlashesWhenNormalisingPath() {
+        assertThat(DecorationWorkingSet.normalisePath("//path/to/file")).isEqualTo("path/to/file");
+        assertThat(DecorationWorkingSet.normalisePath("path/to/file")).isEqualTo("path/to/file");
+        assertThat(DecorationWorkingSet.normalisePath("/")).isEmpty();
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue createIssue(String key, String scmPath) {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(lightIssue.key()).thenReturn(key);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(componentIssue.getScmPath()).thenReturn(Optional.ofNullable(scmPath));
+        return componentIssue;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IssueCountsTest {
+
+    @Test
+    void shouldCountOpenIssuesByTypeSeverityAndFile() {
+        IssueCounts underTest = IssueCounts.of(List.of(
+                createIssue(Issue.STATUS_OPEN, RuleType.BUG, Severity.MAJOR, "src/File1.java"),
+                createIssue(Issue.STATUS_CLOSED, RuleType.BUG, Severity.MAJOR, "src/File1.java"),
+                createIssue(Issue.STATUS_RESOLVED, RuleType.CODE_SMELL, Severity.MINOR, "src/File2.java"),
+                createIssue(Issue.STATUS_OPEN, RuleType.CODE_SMELL, Severity.BLOCKER, "src/File1.java"),
+                createIssue(Issue.STATUS_REOPENED, RuleType.VULNERABILITY, Severity.MAJOR, "src/File2.java"),
+                createIssue(Issue.STATUS_TO_REVIEW, RuleType.SECURITY_HOTSPOT, Severity.INFO, null)));
+
+        assertThat(underTest.getTotal()).isEqualTo(4);
+        assertThat(underTest.getCount(RuleType.BUG)).isEqualTo(1);
+        assertThat(underTest.getCount(RuleType.CODE_SMELL)).isEqualTo(1);
+        assertThat(underTest.getCount(RuleType.VULNERABILITY)).isEqualTo(1);
+        assertThat(underTest.getCount(RuleType.SECURITY_HOTSPOT)).isEqualTo(1);
+        assertThat(underTest.getCountForSeverity(Severity.MAJOR)).isEqualTo(2);
+        assertThat(underTest.getCountForSeverity(Severity.BLOCKER)).isEqualTo(1);
+        assertThat(underTest.getCountForSeverity(Severity.MINOR)).isZero();
+        assertThat(underTest.getCountForSeverity("UNKNOWN")).isZero();
+        assertThat(underTest.getCountForFile("src/File1.java")).isEqualTo(2);
+        assertThat(underTest.getCountForFile("src/File2.java")).isEqualTo(1);
+        assertThat(underTest.getCountForFile("src/File3.java")).isZero();
+    }
+
+    @Test
+    void shouldReturnZeroCountsForNoIssues() {
+        IssueCounts underTest = IssueCounts.of(List.of());
+
+        assertThat(underTest.getTotal()).isZero();
+        assertThat(underTest.getCount(RuleType.BUG)).isZero();
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue createIssue(String status, RuleType type, String severity, String scmPath) {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(lightIssue.status()).thenReturn(status);
+        when(lightIssue.type()).thenReturn(type);
+        when(lightIssue.severity()).thenReturn(severity);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(componentIssue.getScmPath()).thenReturn(Optional.ofNullable(scmPath));
+        return componentIssue;
+    }
+}
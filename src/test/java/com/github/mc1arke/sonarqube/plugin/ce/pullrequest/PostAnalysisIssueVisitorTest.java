@@ -24,6 +24,7 @@ import org.sonar.api.rules.RuleType;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.protobuf.DbCommons;
 import org.sonar.db.protobuf.DbIssues;
 
 import java.util.ArrayList;
@@ -31,10 +32,12 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -73,6 +76,41 @@ public class PostAnalysisIssueVisitorTest {
         }
     }
 
+    @Test
+    public void shouldOnlyCollectIssuesMatchingRetentionPredicate() {
+        DefaultIssue retainedIssue = exampleDefaultIssue();
+        DefaultIssue discardedIssue = exampleDefaultIssue();
+        doReturn("discarded").when(discardedIssue).key();
+        Component component = mock(Component.class);
+
+        PostAnalysisIssueVisitor testCase = new PostAnalysisIssueVisitor((c, issue) -> !"discarded".equals(issue.key()));
+        testCase.onIssue(component, retainedIssue);
+        testCase.onIssue(component, discardedIssue);
+
+        assertThat(testCase.getIssues()).hasSize(1);
+        assertThat(testCase.getIssues().get(0).getIssue().key()).isEqualTo(EXAMPLE_ISSUE_KEY);
+        verify(discardedIssue, never()).getMessage();
+    }
+
+    @Test
+    public void shouldAggregateIssueCountsForRetainedIssues() {
+        DefaultIssue issue1 = exampleDefaultIssue();
+        DefaultIssue issue2 = exampleDefaultIssue();
+        doReturn(RuleType.CODE_SMELL).when(issue2).type();
+        DefaultIssue issue3 = exampleDefaultIssue();
+        doReturn("discarded").when(issue3).key();
+        Component component = mock(Component.class);
+
+        PostAnalysisIssueVisitor testCase = new PostAnalysisIssueVisitor((c, issue) -> !"discarded".equals(issue.key()));
+        testCase.onIssue(component, issue1);
+        testCase.onIssue(component, issue2);
+        testCase.onIssue(component, issue3);
+
+        assertThat(testCase.getIssueCounts().getTotal()).isEqualTo(2);
+        assertThat(testCase.getIssueCounts().getCount(EXAMPLE_ISSUE_TYPE)).isEqualTo(1);
+        assertThat(testCase.getIssueCounts().getCount(RuleType.CODE_SMELL)).isEqualTo(1);
+    }
+
     private DefaultIssue exampleDefaultIssue() {
         DefaultIssue defaultIssue = mock(DefaultIssue.class);
         doReturn(EXAMPLE_ISSUE_EFFORT_IN_MINUTES).when(defaultIssue).effortInMinutes();
@@ -128,6 +166,86 @@ public class PostAnalysisIssueVisitorTest {
         verifyNoMoreInteractions(defaultIssue);
     }
 
+    @Test
+    public void shouldShareRepeatedValuesBetweenIssues() {
+        DefaultIssue defaultIssue1 = exampleDefaultIssue();
+        DefaultIssue defaultIssue2 = exampleDefaultIssue();
+        doReturn(new String(EXAMPLE_ISSUE_MESSAGE)).when(defaultIssue2).getMessage();
+        doReturn(new String(EXAMPLE_ISSUE_SEVERITY)).when(defaultIssue2).severity();
+        doReturn(new String(EXAMPLE_ISSUE_STATUS)).when(defaultIssue2).status();
+        doReturn(RuleKey.of("repo", "rule")).when(defaultIssue2).getRuleKey();
+
+        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        visitor.onIssue(mock(Component.class), defaultIssue1);
+        visitor.onIssue(mock(Component.class), defaultIssue2);
+        PostAnalysisIssueVisitor.LightIssue lightIssue1 = visitor.getIssues().get(0).getIssue();
+        PostAnalysisIssueVisitor.LightIssue lightIssue2 = visitor.getIssues().get(1).getIssue();
+
+        assertThat(lightIssue2.getMessage()).isSameAs(lightIssue1.getMessage());
+        assertThat(lightIssue2.severity()).isSameAs(lightIssue1.severity());
+        assertThat(lightIssue2.status()).isSameAs(lightIssue1.status());
+        assertThat(lightIssue2.getRuleKey()).isSameAs(lightIssue1.getRuleKey());
+    }
+
+    @Test
+    public void shouldReturnNullForMissingEffortSeverityStatusAndType() {
+        DefaultIssue defaultIssue = exampleDefaultIssue();
+        doReturn(null).when(defaultIssue).effortInMinutes();
+        doReturn(null).when(defaultIssue).severity();
+        doReturn(null).when(defaultIssue).status();
+        doReturn(null).when(defaultIssue).type();
+
+        PostAnalysisIssueVisitor.LightIssue lightIssue = new PostAnalysisIssueVisitor.LightIssue(defaultIssue);
+
+        assertThat(lightIssue.effortInMinutes()).isNull();
+        assertThat(lightIssue.severity()).isNull();
+        assertThat(lightIssue.status()).isNull();
+        assertThat(lightIssue.type()).isNull();
+        assertThat(lightIssue).isNotEqualTo(new PostAnalysisIssueVisitor.LightIssue(exampleDefaultIssue()));
+    }
+
+    @Test
+    public void shouldEncodeEachDistinctValueToOneCodeUpToByteRange() {
+        PostAnalysisIssueVisitor.ValueCodes underTest = new PostAnalysisIssueVisitor.ValueCodes("values");
+
+        byte code = underTest.encode("value");
+        assertThat(underTest.encode(new String("value"))).isEqualTo(code);
+        assertThat(underTest.decode(code)).isEqualTo("value");
+        assertThat(underTest.decode(underTest.encode(null))).isNull();
+
+        for (int i = 1; i <= Byte.MAX_VALUE; i++) {
+            assertThat(underTest.decode(underTest.encode("value" + i))).isEqualTo("value" + i);
+        }
+        assertThatThrownBy(() -> underTest.encode("one too many"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("More than 128 distinct values have been seen");
+    }
+
+    @Test
+    public void shouldReturnNullForMissingLineAndLocations() {
+        DefaultIssue defaultIssue = exampleDefaultIssue();
+        doReturn(null).when(defaultIssue).getLine();
+        doReturn(null).when(defaultIssue).getLocations();
+
+        PostAnalysisIssueVisitor.LightIssue lightIssue = new PostAnalysisIssueVisitor.LightIssue(defaultIssue);
+
+        assertThat(lightIssue.getLine()).isNull();
+        assertThat(lightIssue.getLocations()).isNull();
+    }
+
+    @Test
+    public void shouldRestoreLocationsFromSerialisedForm() {
+        DbIssues.Locations locations = DbIssues.Locations.newBuilder()
+                .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(10).setEndLine(12).build())
+                .build();
+        DefaultIssue defaultIssue = exampleDefaultIssue();
+        doReturn(locations).when(defaultIssue).getLocations();
+
+        PostAnalysisIssueVisitor.LightIssue lightIssue = new PostAnalysisIssueVisitor.LightIssue(defaultIssue);
+
+        assertThat(lightIssue.getLocations()).isEqualTo(locations);
+    }
+
     @Test
     public void testEqualLightIssues() {
         DefaultIssue defaultIssue = exampleDefaultIssue();
@@ -18,6 +18,8 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestDeadline;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -27,6 +29,7 @@ import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.ce.posttask.ScannerContext;
+import org.sonar.api.config.Configuration;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
@@ -38,11 +41,14 @@ import org.sonar.db.component.BranchDao;
 import org.sonar.db.component.BranchDto;
 import org.sonar.db.protobuf.DbProjectBranches;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -50,6 +56,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -69,10 +76,15 @@ class PullRequestPostAnalysisTaskTest {
     private final DbClient dbClient = mock(DbClient.class);
     private final Project project = mock(Project.class);
     private final List<PostAnalysisIssueVisitor.ComponentIssue> componentIssues = List.of(mock(PostAnalysisIssueVisitor.ComponentIssue.class));
+    private final DecorationExecutor decorationExecutor = mock(DecorationExecutor.class);
+    private final DecorationMetrics decorationMetrics = mock(DecorationMetrics.class);
+    private final Configuration configuration = mock(Configuration.class);
+    private final ReportGenerator reportGenerator = mock(ReportGenerator.class);
 
     private final PullRequestPostAnalysisTask testCase =
             new PullRequestPostAnalysisTask(pullRequestBuildStatusDecorators,
-                    postAnalysisIssueVisitor, dbClient);
+                    postAnalysisIssueVisitor, dbClient, decorationExecutor,
+                    new AlmBindingCache(dbClient, mock(Configuration.class), Clock.systemUTC()), decorationMetrics, configuration, reportGenerator);
 
     @BeforeEach
     void init() {
@@ -83,6 +95,10 @@ class PullRequestPostAnalysisTaskTest {
         doReturn(project).when(projectAnalysis).getProject();
         doReturn("uuid").when(project).getUuid();
         doReturn(componentIssues).when(postAnalysisIssueVisitor).getIssues();
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(2).run();
+            return null;
+        }).when(decorationMetrics).recordDecoration(any(), any(), any());
     }
 
     @Test
@@ -350,6 +366,45 @@ class PullRequestPostAnalysisTaskTest {
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
+    @Test
+    void shouldApplyConfiguredTimeLimitToCallsMadeWhilstDecorating() {
+        when(configuration.getLong(PullRequestPostAnalysisTask.DECORATION_TIMEOUT_SECONDS)).thenReturn(Optional.of(30L));
+        doReturn(Branch.Type.PULL_REQUEST).when(branch).getType();
+        doReturn(Optional.of("pull-request")).when(branch).getName();
+
+        Analysis analysis = mock(Analysis.class);
+        doReturn(Optional.of("revision")).when(analysis).getRevision();
+        doReturn(Optional.of(analysis)).when(projectAnalysis).getAnalysis();
+        doReturn(mock(QualityGate.class)).when(projectAnalysis).getQualityGate();
+
+        List<Optional<AlmRequestDeadline>> deadlines = new ArrayList<>();
+        PullRequestBuildStatusDecorator decorator = mock(PullRequestBuildStatusDecorator.class);
+        doReturn(Collections.singletonList(ALM.GITHUB)).when(decorator).alm();
+        doAnswer(invocation -> {
+            deadlines.add(AlmRequestDeadline.current());
+            return DecorationResult.builder().build();
+        }).when(decorator).decorateQualityGateStatus(any(), any(), any());
+        pullRequestBuildStatusDecorators.add(decorator);
+
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        doReturn(ALM.GITHUB).when(almSettingDto).getAlm();
+        when(dbClient.openSession(anyBoolean())).thenReturn(mock(DbSession.class));
+        AlmSettingDao almSettingDao = mock(AlmSettingDao.class);
+        when(almSettingDao.selectByUuid(any(), any())).thenReturn(Optional.of(almSettingDto));
+        when(dbClient.almSettingDao()).thenReturn(almSettingDao);
+        ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+        when(projectAlmSettingDao.selectByProject(any(), anyString())).thenReturn(Optional.of(mock(ProjectAlmSettingDto.class)));
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+
+        testCase.finished(context);
+
+        assertThat(deadlines).singleElement().satisfies(deadline -> assertThat(deadline).hasValueSatisfying(value -> {
+            assertThat(value.isExpired()).isFalse();
+            assertThat(value.getRemaining()).isLessThanOrEqualTo(Duration.ofSeconds(30)).isGreaterThan(Duration.ofSeconds(20));
+        }));
+        assertThat(AlmRequestDeadline.current()).isEmpty();
+    }
+
     @Test
     void testFinishedAnalysisDecorationRequestPullRequestLinkSaved() {
         doReturn(Branch.Type.PULL_REQUEST).when(branch).getType();
@@ -498,6 +553,66 @@ class PullRequestPostAnalysisTaskTest {
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
+    @Test
+    void shouldSubmitSnapshotToDecorationExecutorWhenAsynchronousDecorationEnabled() {
+        doReturn(Branch.Type.PULL_REQUEST).when(branch).getType();
+        doReturn(Optional.of("pull-request")).when(branch).getName();
+        doReturn(new HashMap<>(Map.of("property", "value"))).when(scannerContext).getProperties();
+
+        Analysis analysis = mock(Analysis.class);
+        doReturn(Optional.of("revision")).when(analysis).getRevision();
+        doReturn(Optional.of(analysis)).when(projectAnalysis).getAnalysis();
+
+        QualityGate qualityGate = mock(QualityGate.class);
+        doReturn(qualityGate).when(projectAnalysis).getQualityGate();
+
+        PullRequestBuildStatusDecorator decorator = mock(PullRequestBuildStatusDecorator.class);
+        doReturn(Collections.singletonList(ALM.GITLAB)).when(decorator).alm();
+        doReturn(DecorationResult.builder().withPullRequestUrl("pullRequestUrl").build()).when(decorator).decorateQualityGateStatus(any(), any(), any());
+        pullRequestBuildStatusDecorators.add(decorator);
+
+        ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
+        when(projectAlmSettingDto.getAlmSettingUuid()).thenReturn("almUuid");
+        when(projectAlmSettingDto.getAlmRepo()).thenReturn("repo");
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn("almUuid");
+        when(almSettingDto.getAlm()).thenReturn(ALM.GITLAB);
+        DbSession dbSession = mock(DbSession.class);
+        when(dbClient.openSession(anyBoolean())).thenReturn(dbSession);
+        AlmSettingDao almSettingDao = mock(AlmSettingDao.class);
+        when(almSettingDao.selectByUuid(any(), any())).thenReturn(Optional.of(almSettingDto));
+        when(dbClient.almSettingDao()).thenReturn(almSettingDao);
+        ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+        when(projectAlmSettingDao.selectByProject(any(), anyString())).thenReturn(Optional.of(projectAlmSettingDto));
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+        BranchDao branchDao = mock(BranchDao.class);
+        doReturn(branchDao).when(dbClient).branchDao();
+        doReturn(Optional.empty()).when(branchDao).selectByPullRequestKey(any(), any(), any());
+
+        doReturn(true).when(decorationExecutor).isEnabled();
+        doReturn(Map.of("coverage", 81.5)).when(reportGenerator).readProjectMeasures();
+
+        testCase.finished(context);
+
+        ArgumentCaptor<Runnable> decorationCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(decorationExecutor).execute(eq(new DecorationExecutor.DecorationKey("uuid", "almUuid", "repo", null, "pull-request")), decorationCaptor.capture());
+        verify(decorator, never()).decorateQualityGateStatus(any(), any(), any());
+
+        decorationCaptor.getValue().run();
+
+        ArgumentCaptor<AnalysisDetails> analysisDetailsArgumentCaptor = ArgumentCaptor.forClass(AnalysisDetails.class);
+        verify(decorator).decorateQualityGateStatus(analysisDetailsArgumentCaptor.capture(), eq(almSettingDto), eq(projectAlmSettingDto));
+        verify(branchDao).selectByPullRequestKey(dbSession, "uuid", "pull-request");
+
+        AnalysisDetails analysisDetails = analysisDetailsArgumentCaptor.getValue();
+        assertThat(analysisDetails.getPullRequestId()).isEqualTo("pull-request");
+        assertThat(analysisDetails.getCommitSha()).isEqualTo("revision");
+        assertThat(analysisDetails.getIssues()).isEqualTo(componentIssues);
+        assertThat(analysisDetails.getScannerProperty("property")).contains("value");
+        assertThat(analysisDetails.getProjectMeasures()).contains(Map.of("coverage", 81.5));
+        assertThat(analysisDetails).extracting("projectAnalysis").isNull();
+    }
+
     @Test
     void testCorrectDescriptionReturnedForTask() {
         assertThat(testCase.getDescription()).isEqualTo("Pull Request Decoration");
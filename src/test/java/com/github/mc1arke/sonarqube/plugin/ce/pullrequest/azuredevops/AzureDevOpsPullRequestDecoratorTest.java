@@ -1,9 +1,22 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.azuredevops;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmApiMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmCircuitBreaker;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmHttpClientPool;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRateLimiter;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmResponseCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsCommitChangesCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Comment;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Project;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentType;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AlmOperationExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
@@ -16,6 +29,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.issue.Issue;
@@ -30,6 +44,8 @@ import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 import org.sonar.db.protobuf.DbIssues;
 
+import java.io.IOException;
+import java.time.Clock;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -78,7 +94,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
     private final Encryption encryption = mock(Encryption.class);
     private final ReportGenerator reportGenerator = mock(ReportGenerator.class);
     private final MarkdownFormatterFactory formatterFactory = mock(MarkdownFormatterFactory.class);
-    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, new DefaultAzureDevopsClientFactory(settings), reportGenerator, formatterFactory);
+    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, new DefaultAzureDevopsClientFactory(settings, new AlmApiMetrics(), new AlmHttpClientPool(mock(Configuration.class), new AlmResponseCache(mock(Configuration.class)), new AlmRateLimiter(mock(Configuration.class), Clock.systemUTC()), new AlmCircuitBreaker(mock(Configuration.class), Clock.systemUTC())), new AzureDevopsCommitChangesCache()), reportGenerator, formatterFactory, new AlmOperationExecutor(mock(Configuration.class)));
     private final AnalysisDetails analysisDetails = mock(AnalysisDetails.class);
 
     private final PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
@@ -513,7 +529,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
                 .willReturn(ok()));
 
 
-        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/commits/39f52d24533cc712fc845ed9fd1b6c06b3942588/changes?api-version=4.1"))
+        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/commits/39f52d24533cc712fc845ed9fd1b6c06b3942588/changes?top=1000&skip=0&api-version=4.1"))
                 .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
                 .withHeader("Authorization", equalTo(authHeader))
                 .willReturn(aResponse().withStatus(200).withBody("{" + System.lineSeparator() +
@@ -555,7 +571,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
 
     @Test
     public void testName() {
-        assertThat(new AzureDevOpsPullRequestDecorator(mock(ScmInfoRepository.class), mock(AzureDevopsClientFactory.class), mock(ReportGenerator.class), mock(MarkdownFormatterFactory.class)).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
+        assertThat(new AzureDevOpsPullRequestDecorator(mock(ScmInfoRepository.class), mock(AzureDevopsClientFactory.class), mock(ReportGenerator.class), mock(MarkdownFormatterFactory.class), mock(AlmOperationExecutor.class)).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
     }
 
     @Test
@@ -633,7 +649,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
         ReportGenerator reportGenerator = mock(ReportGenerator.class);
         MarkdownFormatterFactory markdownFormatterFactory = mock(MarkdownFormatterFactory.class);
 
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, mock(AlmOperationExecutor.class));
 
         Repository repository = mock(Repository.class);
         when(repository.getRemoteUrl()).thenReturn("https://user@domain.com/path/to/repo");
@@ -646,4 +662,31 @@ public class AzureDevOpsPullRequestDecoratorTest {
         assertThat(underTest.createFrontEndUrl(pullRequest, analysisDetails)).contains("https://domain.com/path/to/repo/pullRequest/999");
     }
 
+    @Test
+    public void shouldFindIssueKeysInEachCommentOfEveryThread() throws IOException {
+        AzureDevopsClient client = mock(AzureDevopsClient.class);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(mock(ScmInfoRepository.class), mock(AzureDevopsClientFactory.class), mock(ReportGenerator.class), mock(MarkdownFormatterFactory.class), mock(AlmOperationExecutor.class));
+
+        Project project = mock(Project.class);
+        when(project.getName()).thenReturn(azureProject);
+        Repository repository = mock(Repository.class);
+        when(repository.getProject()).thenReturn(project);
+        when(repository.getName()).thenReturn(azureRepository);
+        PullRequest pullRequest = mock(PullRequest.class);
+        when(pullRequest.getRepository()).thenReturn(repository);
+        when(pullRequest.getId()).thenReturn(999);
+
+        when(client.retrieveThreads(azureProject, azureRepository, 999)).thenReturn(List.of(
+                new CommentThread(CommentThreadStatus.ACTIVE, List.of(
+                        new Comment("[View in SonarQube](http://sonar:9000/sonar/project/issues?id=" + sonarProject + "&issues=0f8fad5b-d9cb-469f-a165-70867728950e&open=0f8fad5b-d9cb-469f-a165-70867728950e)", null, CommentType.TEXT),
+                        new Comment("Resolved", null, CommentType.TEXT)), null, 1, false),
+                new CommentThread(CommentThreadStatus.CLOSED, List.of(
+                        new Comment(null, null, CommentType.SYSTEM),
+                        new Comment("7c9e6679-7425-40de-944b-e07fc1f90ae7 is not 7c9e6679-7425-40de-944b-e07fc1f90ae", null, CommentType.TEXT)), null, 2, false)));
+
+        assertThat(underTest.getIssueKeysInPrThread(client, pullRequest)).containsExactly(
+                "0f8fad5b-d9cb-469f-a165-70867728950e", "0f8fad5b-d9cb-469f-a165-70867728950e",
+                "7c9e6679-7425-40de-944b-e07fc1f90ae7");
+    }
+
 }
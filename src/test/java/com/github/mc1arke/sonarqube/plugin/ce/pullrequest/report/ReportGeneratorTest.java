@@ -19,7 +19,9 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report;
 
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.IssueCounts;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.sonar.api.ce.posttask.Project;
@@ -41,6 +43,7 @@ import java.math.RoundingMode;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -52,6 +55,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 class ReportGeneratorTest {
 
@@ -95,6 +99,7 @@ class ReportGeneratorTest {
             doReturn(i).when(componentIssue).getIssue();
             return componentIssue;
         }).collect(Collectors.toList())).when(analysisDetails).getIssues();
+        doAnswer(i -> IssueCounts.of(analysisDetails.getIssues())).when(analysisDetails).getIssueCounts();
 
         QualityGate.Condition condition1 = mock(QualityGate.Condition.class);
         doReturn(QualityGate.EvaluationStatus.ERROR).when(condition1).getStatus();
@@ -215,6 +220,46 @@ class ReportGeneratorTest {
                 .isEqualTo(expected);
     }
 
+    @Test
+    void shouldReadProjectMeasuresForSummary() {
+        Component rootComponent = mock(Component.class);
+        TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
+        doReturn(rootComponent).when(treeRootHolder).getRoot();
+        Metric coverageMetric = mock(Metric.class);
+        Metric duplicationsMetric = mock(Metric.class);
+        MetricRepository metricRepository = mock(MetricRepository.class);
+        doReturn(coverageMetric).when(metricRepository).getByKey(CoreMetrics.COVERAGE_KEY);
+        doReturn(duplicationsMetric).when(metricRepository).getByKey(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY);
+        MeasureRepository measureRepository = mock(MeasureRepository.class);
+        doReturn(Optional.of(Measure.newMeasureBuilder().create(81.5, 1, "data"))).when(measureRepository).getRawMeasure(rootComponent, coverageMetric);
+        doReturn(Optional.empty()).when(measureRepository).getRawMeasure(rootComponent, duplicationsMetric);
+
+        ReportGenerator underTest = new ReportGenerator(mock(Server.class), mock(Configuration.class), measureRepository, metricRepository, treeRootHolder);
+
+        assertThat(underTest.readProjectMeasures()).isEqualTo(Map.of(CoreMetrics.COVERAGE_KEY, 81.5));
+    }
+
+    @Test
+    void shouldUseProjectMeasuresFromSnapshotRatherThanMeasureRepository() {
+        AnalysisDetails analysisDetails = mock(AnalysisDetails.class);
+        doReturn("5").when(analysisDetails).getPullRequestId();
+        doReturn("projectKey").when(analysisDetails).getAnalysisProjectKey();
+        doReturn(IssueCounts.of(List.of())).when(analysisDetails).getIssueCounts();
+        doReturn(Optional.of(Map.of(CoreMetrics.COVERAGE_KEY, 81.5))).when(analysisDetails).getProjectMeasures();
+        MeasureRepository measureRepository = mock(MeasureRepository.class);
+        MetricRepository metricRepository = mock(MetricRepository.class);
+        TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
+        Server server = mock(Server.class);
+        doReturn("http://localhost:9000").when(server).getPublicRootUrl();
+
+        ReportGenerator underTest = new ReportGenerator(server, mock(Configuration.class), measureRepository, metricRepository, treeRootHolder);
+        AnalysisSummary analysisSummary = underTest.createAnalysisSummary(analysisDetails);
+
+        assertThat(analysisSummary.getCoverage()).isEqualTo(new BigDecimal(81.5));
+        assertThat(analysisSummary.getDuplications()).isNull();
+        verifyNoInteractions(measureRepository, metricRepository, treeRootHolder);
+    }
+
     @CsvSource({"SECURITY_HOTSPOT, security_hotspots?id=project-key&pullRequest=pull-request-id&hotspots=issue-key",
             "BUG, project/issues?id=project-key&pullRequest=pull-request-id&issues=issue-key&open=issue-key"})
     @ParameterizedTest
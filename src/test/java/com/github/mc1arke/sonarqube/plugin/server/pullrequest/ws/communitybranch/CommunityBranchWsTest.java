@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch;
+
+import com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.action.CommunityBranchWsAction;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.server.ws.WebService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommunityBranchWsTest {
+
+    @Test
+    void shouldCallDefineOnEachAction() {
+        CommunityBranchWsAction[] actions = new CommunityBranchWsAction[]{mock(CommunityBranchWsAction.class), mock(CommunityBranchWsAction.class)};
+
+        WebService.Context context = mock(WebService.Context.class);
+        WebService.NewController controller = mock(WebService.NewController.class);
+        when(context.createController(any())).thenReturn(controller);
+
+        new CommunityBranchWs(actions).define(context);
+
+        for (CommunityBranchWsAction action : actions) {
+            verify(action).define(controller);
+        }
+        verify(context).createController("api/community_branch");
+        verify(controller).done();
+    }
+
+}
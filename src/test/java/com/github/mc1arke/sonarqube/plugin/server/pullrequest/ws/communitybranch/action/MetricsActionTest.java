@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.server.pullrequest.ws.communitybranch.action;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationMetrics;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.property.InternalPropertiesDao;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.user.UserSession;
+import org.sonarqube.ws.MediaTypes;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MetricsActionTest {
+
+    private final DbClient dbClient = mock(DbClient.class);
+    private final DbSession dbSession = mock(DbSession.class);
+    private final InternalPropertiesDao internalPropertiesDao = mock(InternalPropertiesDao.class);
+    private final UserSession userSession = mock(UserSession.class);
+    private final Response response = mock(Response.class);
+    private final Response.Stream stream = mock(Response.Stream.class);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final MetricsAction underTest = new MetricsAction(dbClient, userSession);
+
+    @Test
+    void shouldDefineEndpoint() {
+        WebService.NewController newController = mock(WebService.NewController.class);
+        WebService.NewAction newAction = mock(WebService.NewAction.class);
+        when(newController.createAction(any())).thenReturn(newAction);
+        when(newAction.setDescription(any())).thenReturn(newAction);
+        when(newAction.setInternal(anyBoolean())).thenReturn(newAction);
+
+        underTest.define(newController);
+
+        verify(newController).createAction("metrics");
+        verify(newAction).setInternal(true);
+        verify(newAction).setHandler(underTest);
+    }
+
+    @Test
+    void shouldReturnPublishedMetrics() {
+        setupDb(Optional.of("{\"publishedAt\":\"now\",\"operations\":[]}"));
+
+        underTest.handle(mock(Request.class), response);
+
+        verify(userSession).checkIsSystemAdministrator();
+        verify(stream).setMediaType(MediaTypes.JSON);
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo("{\"publishedAt\":\"now\",\"operations\":[]}");
+    }
+
+    @Test
+    void shouldReturnEmptyMetricsIfNoneHaveBeenPublished() {
+        setupDb(Optional.empty());
+
+        underTest.handle(mock(Request.class), response);
+
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo("{\"operations\":[]}");
+    }
+
+    @Test
+    void shouldRejectUsersWhoAreNotSystemAdministrators() {
+        doThrow(new ForbiddenException("Insufficient privileges")).when(userSession).checkIsSystemAdministrator();
+
+        Request request = mock(Request.class);
+        assertThatThrownBy(() -> underTest.handle(request, response)).isInstanceOf(ForbiddenException.class);
+
+        verifyNoInteractions(dbClient, response);
+    }
+
+    private void setupDb(Optional<String> metrics) {
+        when(dbClient.openSession(false)).thenReturn(dbSession);
+        when(dbClient.internalPropertiesDao()).thenReturn(internalPropertiesDao);
+        when(internalPropertiesDao.selectByKey(dbSession, DecorationMetrics.SNAPSHOT_PROPERTY_KEY)).thenReturn(metrics);
+        when(response.stream()).thenReturn(stream);
+        when(stream.output()).thenReturn(output);
+    }
+}